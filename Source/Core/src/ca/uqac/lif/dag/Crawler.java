@@ -17,18 +17,76 @@
  */
 package ca.uqac.lif.dag;
 
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Queue;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
 
 /**
  * Visits every node in a directed acyclic graph.
+ * <p>
+ * The crawl takes time linear in the number of nodes and edges it reaches:
+ * the nodes already encountered are recorded in a {@link NodeSet}, so
+ * deciding whether a neighbor still has to be visited costs a single bit
+ * test. Nodes can be visited in breadth-first (the default) or depth-first
+ * order; see {@link #setOrder(Order)}.
+ * <p>
+ * The crawl can be restricted to a part of the graph:
+ * <ul>
+ * <li>{@link #setMaxDepth(int)} ignores the nodes that are more than a given
+ * number of edges away from the starting point;</li>
+ * <li>{@link #setNodeFilter(Predicate)} ignores the nodes that do not
+ * satisfy a condition, and everything that can only be reached through
+ * them;</li>
+ * <li>{@link #setEdgeFilter(EdgeFilter)} does the same for edges;</li>
+ * <li>a call to {@link #stop()} from {@link #visit(Node)} ends the crawl
+ * after the current node.</li>
+ * </ul>
+ * Instead of calling {@link #crawl()}, the nodes can also be obtained one at
+ * a time from {@link #iterator()}. The graph is then explored only as far as
+ * the caller asks, and the iteration can be resumed at any time.
  * @author Sylvain Hallé
  */
-public class Crawler
+public class Crawler implements Iterable<Node>
 {
+	/**
+	 * The order in which a crawler visits the nodes of a graph.
+	 */
+	public enum Order
+	{
+		/**
+		 * Visits the nodes in breadth-first order: all the neighbors of a node are
+		 * visited before the neighbors of these neighbors.
+		 */
+		BREADTH_FIRST,
+		
+		/**
+		 * Visits the nodes in depth-first order: the first neighbor of a node,
+		 * and all the nodes reachable from it, are visited before its second
+		 * neighbor.
+		 */
+		DEPTH_FIRST
+	}
+	
+	/**
+	 * A condition on the edges that a crawler is allowed to take.
+	 */
+	public interface EdgeFilter
+	{
+		/**
+		 * Determines if the crawler can take an edge.
+		 * @param from The pin of the node being visited
+		 * @param to The pin of the neighbor at the other end of the edge
+		 * @param forward {@code true} if the edge is taken in the forward
+		 * direction (from an output pin to an input pin), {@code false} otherwise
+		 * @return {@code true} if the edge can be taken, {@code false} otherwise
+		 */
+		public boolean accept(/*@ non_null @*/ Pin<? extends Node> from, /*@ non_null @*/ Pin<? extends Node> to, boolean forward);
+	}
+	
 	/**
 	 * A flag that determines if the crawler is allowed to take forward
 	 * connections.
@@ -41,6 +99,34 @@ public class Crawler
 	 */
 	protected boolean m_allowBackward;
 	
+	/**
+	 * The order in which nodes are visited.
+	 */
+	/*@ non_null @*/ protected Order m_order;
+	
+	/**
+	 * The maximum distance, in edges, between the starting point and a
+	 * visited node, or -1 if there is no limit.
+	 */
+	protected int m_maxDepth;
+	
+	/**
+	 * The condition that the neighbors of a node must satisfy to be visited,
+	 * or <tt>null</tt> to accept all nodes.
+	 */
+	/*@ null @*/ protected Predicate<? super Node> m_nodeFilter;
+	
+	/**
+	 * The condition that an edge must satisfy to be taken, or <tt>null</tt> to
+	 * accept all edges.
+	 */
+	/*@ null @*/ protected EdgeFilter m_edgeFilter;
+	
+	/**
+	 * A flag set by {@link #stop()} to end the current crawl.
+	 */
+	protected boolean m_stopped;
+	
 	/**
 	 * The starting point of the crawl.
 	 */
@@ -56,54 +142,60 @@ public class Crawler
 		m_start = start;
 		m_allowForward = true;
 		m_allowBackward = true;
+		m_order = Order.BREADTH_FIRST;
+		m_maxDepth = -1;
+		m_nodeFilter = null;
+		m_edgeFilter = null;
+		m_stopped = false;
 	}
 	
 	/**
-	 * Visits every node in the graph from the specified starting point.
+	 * Visits every node in the graph from the specified starting point, until
+	 * all the nodes allowed by the filters have been visited or
+	 * {@link #stop()} is called.
 	 */
 	public void crawl()
 	{
-		Queue<Node> to_visit = new ArrayDeque<>();
-		Set<Node> visited = new HashSet<>();
-		to_visit.add(m_start);
-		while (!to_visit.isEmpty())
+		m_stopped = false;
+		Traversal t = iterator();
+		while (!m_stopped && t.hasNext())
 		{
-			Node current = to_visit.remove();
-			visited.add(current);
-			visit(current);
-			if (m_allowForward)
-			{
-				for (int i = 0; i < current.getOutputArity(); i++)
-				{
-					Collection<Pin<? extends Node>> pins = current.getOutputLinks(i);
-					for (Pin<? extends Node> pin : pins)
-					{
-						Node n = pin.getNode();
-						if (!visited.contains(n) && !to_visit.contains(n))
-						{
-							to_visit.add(n);
-						}
-					}
-				}
-			}
-			if (m_allowBackward)
-			{
-				for (int i = 0; i < current.getInputArity(); i++)
-				{
-					Collection<Pin<? extends Node>> pins = current.getInputLinks(i);
-					for (Pin<? extends Node> pin : pins)
-					{
-						Node n = pin.getNode();
-						if (!visited.contains(n) && !to_visit.contains(n))
-						{
-							to_visit.add(n);
-						}
-					}
-				}
-			}
+			visit(t.next());
 		}
 	}
 	
+	/**
+	 * Ends the current crawl. When called from {@link #visit(Node)}, no other
+	 * node is visited after the current one.
+	 */
+	public void stop()
+	{
+		m_stopped = true;
+	}
+	
+	/**
+	 * Determines if the last crawl was ended by a call to {@link #stop()}.
+	 * @return {@code true} if the crawl was stopped, {@code false} if it
+	 * visited all the nodes it could reach
+	 */
+	/*@ pure @*/ public boolean isStopped()
+	{
+		return m_stopped;
+	}
+	
+	/**
+	 * Gets an iterator over the nodes of the graph, in the order in which
+	 * {@link #crawl()} would visit them. The iterator takes the order and the
+	 * filters of the crawler at the time it is created; {@link #visit(Node)}
+	 * is not called.
+	 * @return The iterator
+	 */
+	@Override
+	/*@ non_null @*/ public Traversal iterator()
+	{
+		return new Traversal();
+	}
+	
 	/**
 	 * Visits a node in the graph. This method is called exactly once for every
 	 * visited node.
@@ -114,6 +206,17 @@ public class Crawler
 		// Do nothing. Override.
 	}
 	
+	/**
+	 * Sets the order in which the crawler visits the nodes of the graph.
+	 * @param order The order
+	 * @return This crawler
+	 */
+	/*@ non_null @*/ public Crawler setOrder(/*@ non_null @*/ Order order)
+	{
+		m_order = order;
+		return this;
+	}
+	
 	/**
 	 * Sets if a crawler can traverse edges in the backward direction.
 	 * @param b Set to <tt>true</tt> to allow crawling backwards, <tt>false</tt>
@@ -137,4 +240,295 @@ public class Crawler
 		m_allowForward = b;
 		return this;
 	}
+	
+	/**
+	 * Sets the maximum distance between the starting point and the nodes
+	 * visited by the crawler. In breadth-first order, this distance is the
+	 * length of a shortest path from the starting point; in depth-first order,
+	 * it is the length of the path through which the node is first reached,
+	 * which may be longer.
+	 * @param depth The maximum number of edges, or -1 for no limit
+	 * @return This crawler
+	 */
+	/*@ non_null @*/ public Crawler setMaxDepth(int depth)
+	{
+		m_maxDepth = depth;
+		return this;
+	}
+	
+	/**
+	 * Sets a condition that nodes must satisfy to be visited. The starting
+	 * point is always visited.
+	 * @param filter The condition, or <tt>null</tt> to accept all nodes
+	 * @return This crawler
+	 */
+	/*@ non_null @*/ public Crawler setNodeFilter(/*@ null @*/ Predicate<? super Node> filter)
+	{
+		m_nodeFilter = filter;
+		return this;
+	}
+	
+	/**
+	 * Sets a condition that edges must satisfy to be taken.
+	 * @param filter The condition, or <tt>null</tt> to accept all edges
+	 * @return This crawler
+	 */
+	/*@ non_null @*/ public Crawler setEdgeFilter(/*@ null @*/ EdgeFilter filter)
+	{
+		m_edgeFilter = filter;
+		return this;
+	}
+	
+	/**
+	 * An iteration over the nodes reached by a crawler. Nodes waiting to be
+	 * returned are kept in an array with their depth; the array is used as a
+	 * queue in breadth-first order and as a stack in depth-first order.
+	 * <p>
+	 * In breadth-first order, a node is marked as seen as soon as it is put in
+	 * the queue, so that it is enqueued at most once. In depth-first order, a
+	 * node is marked when it is popped from the stack; its unvisited neighbors
+	 * are pushed in reverse order, so that they are popped in the same order as
+	 * the breadth-first crawl would enqueue them.
+	 */
+	public class Traversal implements Iterator<Node>
+	{
+		/**
+		 * Whether the nodes are returned in depth-first order.
+		 */
+		protected final boolean m_depthFirst;
+		
+		/**
+		 * The nodes already marked.
+		 */
+		/*@ non_null @*/ protected final NodeSet m_seen;
+		
+		/**
+		 * The nodes waiting to be returned.
+		 */
+		/*@ non_null @*/ protected Node[] m_pending;
+		
+		/**
+		 * The distance from the starting point of each node in
+		 * {@link #m_pending}.
+		 */
+		/*@ non_null @*/ protected int[] m_depths;
+		
+		/**
+		 * The position of the first pending node; always 0 in depth-first order.
+		 */
+		protected int m_head;
+		
+		/**
+		 * The position after the last pending node.
+		 */
+		protected int m_tail;
+		
+		/**
+		 * Creates a new traversal from the starting point of the crawler.
+		 */
+		protected Traversal()
+		{
+			super();
+			m_depthFirst = m_order == Order.DEPTH_FIRST;
+			m_seen = new NodeSet();
+			m_pending = new Node[16];
+			m_depths = new int[16];
+			m_head = 0;
+			m_tail = 0;
+			if (m_start != null)
+			{
+				if (!m_depthFirst)
+				{
+					m_seen.add(m_start);
+				}
+				add(m_start, 0);
+			}
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			if (m_depthFirst)
+			{
+				// Discard the nodes pushed before they were reached by another path
+				while (m_tail > 0 && m_seen.contains(m_pending[m_tail - 1]))
+				{
+					m_pending[--m_tail] = null;
+				}
+			}
+			return m_head < m_tail;
+		}
+		
+		@Override
+		public Node next()
+		{
+			if (!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			Node current;
+			int depth;
+			if (m_depthFirst)
+			{
+				current = m_pending[--m_tail];
+				depth = m_depths[m_tail];
+				m_pending[m_tail] = null;
+				m_seen.add(current);
+			}
+			else
+			{
+				current = m_pending[m_head];
+				depth = m_depths[m_head];
+				m_pending[m_head++] = null;
+			}
+			if (m_maxDepth < 0 || depth < m_maxDepth)
+			{
+				if (m_depthFirst)
+				{
+					if (m_allowBackward)
+					{
+						for (int i = current.getInputArity() - 1; i >= 0; i--)
+						{
+							pushAll(fromPin(current, i, false), current.getInputLinks(i), false, depth + 1);
+						}
+					}
+					if (m_allowForward)
+					{
+						for (int i = current.getOutputArity() - 1; i >= 0; i--)
+						{
+							pushAll(fromPin(current, i, true), current.getOutputLinks(i), true, depth + 1);
+						}
+					}
+				}
+				else
+				{
+					if (m_allowForward)
+					{
+						for (int i = 0; i < current.getOutputArity(); i++)
+						{
+							enqueueAll(fromPin(current, i, true), current.getOutputLinks(i), true, depth + 1);
+						}
+					}
+					if (m_allowBackward)
+					{
+						for (int i = 0; i < current.getInputArity(); i++)
+						{
+							enqueueAll(fromPin(current, i, false), current.getInputLinks(i), false, depth + 1);
+						}
+					}
+				}
+			}
+			return current;
+		}
+		
+		/**
+		 * Gets the pin of the current node from which edges are taken. Pins are
+		 * only given to the edge filter, so that they are not created when there
+		 * is none.
+		 * @param current The current node
+		 * @param index The index of the pin
+		 * @param forward Whether the edges are taken forward, from an output pin
+		 * @return The pin, or <tt>null</tt> if the crawler has no edge filter
+		 */
+		/*@ null @*/ protected Pin<? extends Node> fromPin(/*@ non_null @*/ Node current, int index, boolean forward)
+		{
+			if (m_edgeFilter == null)
+			{
+				return null;
+			}
+			return forward ? current.getOutputPin(index) : current.getInputPin(index);
+		}
+		
+		/**
+		 * Enqueues the neighbors at the end of a list of edges that have not been
+		 * seen yet and that are allowed by the filters.
+		 * @param from The pin of the current node, or <tt>null</tt> if there is
+		 * no edge filter
+		 * @param pins The pins of the neighbors
+		 * @param forward Whether the edges are taken forward
+		 * @param depth The depth of the neighbors
+		 */
+		protected void enqueueAll(Pin<? extends Node> from, Iterable<Pin<? extends Node>> pins, boolean forward, int depth)
+		{
+			for (Pin<? extends Node> pin : pins)
+			{
+				Node n = pin.getNode();
+				if (!m_seen.contains(n) && accept(from, pin, forward))
+				{
+					m_seen.add(n);
+					add(n, depth);
+				}
+			}
+		}
+		
+		/**
+		 * Pushes, in reverse order, the neighbors at the end of a list of edges
+		 * that have not been visited yet and that are allowed by the filters.
+		 * @param from The pin of the current node, or <tt>null</tt> if there is
+		 * no edge filter
+		 * @param pins The pins of the neighbors
+		 * @param forward Whether the edges are taken forward
+		 * @param depth The depth of the neighbors
+		 */
+		protected void pushAll(Pin<? extends Node> from, Collection<Pin<? extends Node>> pins, boolean forward, int depth)
+		{
+			List<Pin<? extends Node>> l_pins = pins instanceof List ? (List<Pin<? extends Node>>) pins : new ArrayList<>(pins);
+			for (int j = l_pins.size() - 1; j >= 0; j--)
+			{
+				Pin<? extends Node> pin = l_pins.get(j);
+				if (!m_seen.contains(pin.getNode()) && accept(from, pin, forward))
+				{
+					add(pin.getNode(), depth);
+				}
+			}
+		}
+		
+		/**
+		 * Determines if an edge can be taken.
+		 * @param from The pin of the current node, or <tt>null</tt> if there is
+		 * no edge filter
+		 * @param to The pin of the neighbor
+		 * @param forward Whether the edge is taken forward
+		 * @return {@code true} if the edge and the neighbor are accepted by the
+		 * filters
+		 */
+		protected boolean accept(Pin<? extends Node> from, Pin<? extends Node> to, boolean forward)
+		{
+			return (m_edgeFilter == null || m_edgeFilter.accept(from, to, forward)) && (m_nodeFilter == null || m_nodeFilter.test(to.getNode()));
+		}
+		
+		/**
+		 * Adds a node at the end of the pending nodes.
+		 * @param n The node
+		 * @param depth Its distance from the starting point
+		 */
+		protected void add(Node n, int depth)
+		{
+			if (m_tail == m_pending.length)
+			{
+				int size = m_tail - m_head;
+				if (m_head > 0 && size < m_pending.length / 2)
+				{
+					// Reclaim the space freed at the head of the queue
+					System.arraycopy(m_pending, m_head, m_pending, 0, size);
+					System.arraycopy(m_depths, m_head, m_depths, 0, size);
+					Arrays.fill(m_pending, size, m_tail, null);
+				}
+				else
+				{
+					Node[] pending = new Node[m_pending.length * 2];
+					int[] depths = new int[m_pending.length * 2];
+					System.arraycopy(m_pending, m_head, pending, 0, size);
+					System.arraycopy(m_depths, m_head, depths, 0, size);
+					m_pending = pending;
+					m_depths = depths;
+				}
+				m_head = 0;
+				m_tail = size;
+			}
+			m_pending[m_tail] = n;
+			m_depths[m_tail] = depth;
+			m_tail++;
+		}
+	}
 }
@@ -17,16 +17,23 @@
  */
 package ca.uqac.lif.dag;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Crawler that produces a copy of a graph and explodes the contents of any
  * {@link NestedNode} directly into the global graph. This has for effect of
  * removing these nodes, producing a "flat" graph with no nested elements.
+ * <p>
+ * The crawl uses an explicit stack instead of recursion, so that arbitrarily
+ * deep graphs can be flattened. The internal graph of a nested node is
+ * processed by the same crawl as the outer graph: each distinct nested node
+ * is therefore expanded only once, however many times it is reached, and the
+ * whole operation runs in time linear in the size of the flattened graph.
  * 
  * @author Sylvain Hallé
  *
@@ -34,9 +41,15 @@ import java.util.Set;
 public class FlatteningCrawler
 {
 	/**
-	 * A map associating original nodes to their corresponding copy.
+	 * A map associating original nodes to their corresponding copy. A nested
+	 * node is associated to the copy of the node attached to its first input.
 	 */
 	/*@ non_null @*/ protected Map<Node,Node> m_copies;
+	
+	/**
+	 * The set of original nodes whose outgoing edges have already been copied.
+	 */
+	/*@ non_null @*/ protected NodeSet m_done;
 
 	/**
 	 * A connector used to connect nodes.
@@ -52,16 +65,28 @@ public class FlatteningCrawler
 	{
 		super();
 		m_start = start;
-		m_copies = new HashMap<>();
+		m_copies = new IdentityHashMap<>();
+		m_done = new NodeSet();
 		m_connector = connector;
 	}
 	
+	/**
+	 * Creates a new flattening crawler that continues the work of another one.
+	 * Nodes already copied by the other crawler are not copied again, and their
+	 * edges are not duplicated. The two crawlers share the same state, so
+	 * that a sequence of crawls over graphs with common parts takes time
+	 * proportional to the total size of the result.
+	 * @param start The starting point for the crawl
+	 * @param connector A connector used to connect nodes
+	 * @param crawler The crawler whose copies are reused, if any
+	 */
 	public FlatteningCrawler(/*@ non_null @*/ Node start, /*@ non_null @*/ NodeConnector connector, /*@ null @*/ FlatteningCrawler crawler)
 	{
 		this(start, connector);
 		if (crawler != null)
 		{
-			m_copies.putAll(crawler.m_copies);
+			m_copies = crawler.m_copies;
+			m_done = crawler.m_done;
 		}
 	}
 
@@ -72,80 +97,113 @@ public class FlatteningCrawler
 
 	public void crawl()
 	{
-		Set<Node> visited = new HashSet<>();
-		crawl(m_start, visited);
-	}
-
-	protected Node crawl(Node current, Set<Node> visited)
-	{
-		if (visited.contains(current))
-		{
-			return current;
-		}
-		visited.add(current);
-		Node copy_current = handleNode(current, visited);
-		if (current instanceof NestedNode)
+		Deque<Node> to_visit = new ArrayDeque<>();
+		getCopy(m_start);
+		to_visit.push(m_start);
+		while (!to_visit.isEmpty())
 		{
-			for (int i = 0; i < copy_current.getOutputArity(); i++)
+			Node current = to_visit.pop();
+			if (!m_done.add(current))
 			{
-				Collection<Pin<? extends Node>> pins = copy_current.getOutputLinks(i);
-				for (Pin<? extends Node> pin : pins)
+				continue;
+			}
+			if (current instanceof NestedNode)
+			{
+				expandNested((NestedNode) current, to_visit);
+			}
+			else
+			{
+				Node copy_current = getCopy(current);
+				for (int i = 0; i < current.getOutputArity(); i++)
 				{
-					Node n = pin.getNode();
-					crawl(n, visited);
+					for (Pin<? extends Node> pin : current.getOutputLinks(i))
+					{
+						Node n = pin.getNode();
+						m_connector.connectTo(copy_current, i, getCopy(n), pin.getIndex());
+						schedule(n, to_visit);
+					}
 				}
 			}
 		}
-		else
+	}
+	
+	/**
+	 * Connects the copy of the internal graph of a nested node to the copies
+	 * of the nodes downstream of it, and schedules the internal graph for
+	 * copying.
+	 * @param nn The nested node
+	 * @param to_visit The stack of nodes to visit
+	 */
+	protected void expandNested(/*@ non_null @*/ NestedNode nn, /*@ non_null @*/ Deque<Node> to_visit)
+	{
+		schedule(nn.getAssociatedInput(0).getNode(), to_visit);
+		for (int i = 0; i < nn.getOutputArity(); i++)
 		{
-			for (int i = 0; i < current.getOutputArity(); i++)
+			Pin<? extends Node> in_pin = nn.getAssociatedOutput(i);
+			Node in_node = in_pin.getNode();
+			for (Pin<? extends Node> pin : nn.getOutputLinks(i))
 			{
-				Collection<Pin<? extends Node>> pins = current.getOutputLinks(i);
-				for (Pin<? extends Node> pin : pins)
-				{
-					Node n = pin.getNode();
-					crawl(n, visited);
-					Node copy_target = m_copies.get(n);
-					m_connector.connectTo(copy_current, i, copy_target, pin.getIndex());
-				}
+				Node out_target = pin.getNode();
+				m_connector.connectTo(getCopy(in_node), in_pin.getIndex(), getCopy(out_target), pin.getIndex());
+				schedule(out_target, to_visit);
 			}
+			schedule(in_node, to_visit);
+		}
+	}
+	
+	/**
+	 * Pushes a node on the stack of nodes to visit, unless its edges have
+	 * already been copied.
+	 * @param n The node
+	 * @param to_visit The stack of nodes to visit
+	 */
+	protected void schedule(/*@ non_null @*/ Node n, /*@ non_null @*/ Deque<Node> to_visit)
+	{
+		if (!m_done.contains(n))
+		{
+			to_visit.push(n);
 		}
-		return copy_current;
 	}
 
-	/*@ non_null @*/ protected Node handleNode(/*@ non_null @*/ Node current, Set<Node> visited)
+	/**
+	 * Gets the copy of a node, creating it if it does not exist yet. The copy
+	 * of a nested node is the copy of the node attached to its first input;
+	 * since this node can itself be nested, the chain is followed until a
+	 * node that is not nested is found.
+	 * @param current The original node
+	 * @return The copy
+	 */
+	/*@ non_null @*/ protected Node getCopy(/*@ non_null @*/ Node current)
 	{
-		if (m_copies.containsKey(current))
+		Node copy = m_copies.get(current);
+		if (copy != null)
 		{
-			return m_copies.get(current);
+			return copy;
 		}
-		if (!(current instanceof NestedNode))
+		List<Node> chain = null;
+		Node n = current;
+		while (copy == null && n instanceof NestedNode)
 		{
-			Node n_copy = current.duplicate(false);
-			m_copies.put(current, n_copy);
-			return m_copies.get(current);
+			if (chain == null)
+			{
+				chain = new ArrayList<>();
+			}
+			chain.add(n);
+			n = ((NestedNode) n).getAssociatedInput(0).getNode();
+			copy = m_copies.get(n);
 		}
-		NestedNode nn_current = (NestedNode) current;
-		Node in_start = nn_current.getAssociatedInput(0).getNode();
-		FlatteningCrawler in_fc = new FlatteningCrawler(in_start, m_connector);
-		in_fc.crawl();
-		m_copies.putAll(in_fc.m_copies);
-		m_copies.put(current, in_fc.getRootCopy());
-		for (int i = 0; i < nn_current.getOutputArity(); i++)
+		if (copy == null)
 		{
-			for (Pin<? extends Node> pin : nn_current.getOutputLinks(i))
+			copy = n.duplicate(false);
+			m_copies.put(n, copy);
+		}
+		if (chain != null)
+		{
+			for (Node nn : chain)
 			{
-				Node out_target = pin.getNode();
-				Node out_target_copy = crawl(out_target, visited);
-				Pin<? extends Node> in_pin = nn_current.getAssociatedOutput(i);
-				Node copy_in = in_fc.m_copies.get(in_pin.getNode());
-				if (copy_in == null)
-				{
-					copy_in = crawl(in_pin.getNode(), visited);
-				}
-				m_connector.connectTo(copy_in, in_pin.getIndex(), out_target_copy, pin.getIndex());
+				m_copies.put(nn, copy);
 			}
 		}
-		return in_fc.getRootCopy();
+		return copy;
 	}
-}
\ No newline at end of file
+}
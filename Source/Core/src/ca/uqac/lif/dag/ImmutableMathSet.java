@@ -0,0 +1,501 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * An immutable set that behaves like a {@link MathSet}. It is meant for sets
+ * that are created once, then hashed and compared many times, such as the
+ * clauses of a formula in disjunctive normal form. Its hash code is computed
+ * only once, when the set is created, and sets are combined with methods
+ * such as {@link #with(Object) with} and {@link #union(ImmutableMathSet)
+ * union}, which return one of their operands instead of a copy whenever the
+ * result is equal to it. Since a set never changes, it can be shared freely
+ * between the results of these operations.
+ * <p>
+ * The elements are kept in an array sorted by hash code, next to an array
+ * of these hash codes. Looking up an element is a binary search, and the
+ * union of two sets is a single pass over both arrays that only calls
+ * <tt>equals</tt> on elements having the same hash code. The hash code of an
+ * element must therefore not change while it is in a set. The methods of
+ * {@link Set} that would modify the set throw an
+ * {@link UnsupportedOperationException}.
+ *
+ * @param <T> The type of the set's elements
+ */
+public class ImmutableMathSet<T> extends AbstractSet<T>
+{
+	/**
+	 * The elements of the empty set, shared by all its instances.
+	 */
+	protected static final Object[] s_noElements = new Object[0];
+	
+	/**
+	 * The hash codes of the elements of the empty set.
+	 */
+	protected static final int[] s_noHashes = new int[0];
+	
+	/**
+	 * The elements of the set, sorted by hash code.
+	 */
+	/*@ non_null @*/ protected final Object[] m_elements;
+	
+	/**
+	 * The hash codes of the elements, in the same order as
+	 * {@link #m_elements}.
+	 */
+	/*@ non_null @*/ protected final int[] m_hashes;
+	
+	/**
+	 * The hash code of the set, which is the sum of the hash codes of its
+	 * elements.
+	 */
+	protected final int m_hash;
+	
+	/**
+	 * Creates an empty set.
+	 */
+	public ImmutableMathSet()
+	{
+		this(s_noElements, s_noHashes, 0);
+	}
+	
+	/**
+	 * Creates a set containing the elements of a collection. Duplicate
+	 * elements are kept only once.
+	 * @param elements The elements
+	 */
+	public ImmutableMathSet(/*@ non_null @*/ Collection<? extends T> elements)
+	{
+		super();
+		// Nothing to sort if the other set is immutable: share its arrays
+		ImmutableMathSet<?> set = elements instanceof ImmutableMathSet ? (ImmutableMathSet<?>) elements : sort(elements.toArray(), null, elements.size());
+		m_elements = set.m_elements;
+		m_hashes = set.m_hashes;
+		m_hash = set.m_hash;
+	}
+	
+	/**
+	 * Creates a set from arrays that are already sorted and contain no
+	 * duplicates.
+	 * @param elements The elements, sorted by hash code
+	 * @param hashes The hash codes of the elements
+	 * @param hash The sum of these hash codes
+	 */
+	protected ImmutableMathSet(/*@ non_null @*/ Object[] elements, /*@ non_null @*/ int[] hashes, int hash)
+	{
+		super();
+		m_elements = elements;
+		m_hashes = hashes;
+		m_hash = hash;
+	}
+	
+	/**
+	 * Gets a set containing the elements of this set and another element.
+	 * @param e The element
+	 * @return The new set, or this set if it already contains the element
+	 */
+	/*@ pure non_null @*/ public ImmutableMathSet<T> with(/*@ non_null @*/ T e)
+	{
+		int h = e.hashCode();
+		int pos = firstIndex(h);
+		while (pos < m_hashes.length && m_hashes[pos] == h)
+		{
+			if (m_elements[pos].equals(e))
+			{
+				return this;
+			}
+			pos++;
+		}
+		Object[] elements = new Object[m_elements.length + 1];
+		int[] hashes = new int[m_hashes.length + 1];
+		System.arraycopy(m_elements, 0, elements, 0, pos);
+		System.arraycopy(m_hashes, 0, hashes, 0, pos);
+		elements[pos] = e;
+		hashes[pos] = h;
+		System.arraycopy(m_elements, pos, elements, pos + 1, m_elements.length - pos);
+		System.arraycopy(m_hashes, pos, hashes, pos + 1, m_hashes.length - pos);
+		return new ImmutableMathSet<T>(elements, hashes, m_hash + h);
+	}
+	
+	/**
+	 * Gets the union of this set and another set.
+	 * @param set The other set
+	 * @return The union, which is this set if it contains all the elements of
+	 * the other set, and the other set if it contains all the elements of this
+	 * one
+	 */
+	/*@ pure non_null @*/ public ImmutableMathSet<T> union(/*@ non_null @*/ ImmutableMathSet<T> set)
+	{
+		int a = m_elements.length, b = set.m_elements.length;
+		if (set == this || b == 0)
+		{
+			return this;
+		}
+		if (a == 0)
+		{
+			return set;
+		}
+		Object[] elements = new Object[a + b];
+		int[] hashes = new int[a + b];
+		int i = 0, j = 0, size = 0, hash = 0;
+		while (i < a || j < b)
+		{
+			int h;
+			if (j == b || (i < a && m_hashes[i] < set.m_hashes[j]))
+			{
+				h = m_hashes[i];
+				elements[size] = m_elements[i++];
+			}
+			else if (i == a || set.m_hashes[j] < m_hashes[i])
+			{
+				h = set.m_hashes[j];
+				elements[size] = set.m_elements[j++];
+			}
+			else
+			{
+				// Same hash code on both sides: copy the run of this set, then
+				// the elements of the other run that are not in it
+				h = m_hashes[i];
+				int run = size;
+				while (i < a && m_hashes[i] == h)
+				{
+					hashes[size] = h;
+					hash += h;
+					elements[size++] = m_elements[i++];
+				}
+				int end = size;
+				for (; j < b && set.m_hashes[j] == h; j++)
+				{
+					if (indexIn(elements, run, end, set.m_elements[j]) < 0)
+					{
+						hashes[size] = h;
+						hash += h;
+						elements[size++] = set.m_elements[j];
+					}
+				}
+				continue;
+			}
+			hashes[size++] = h;
+			hash += h;
+		}
+		if (size == a)
+		{
+			return this;
+		}
+		if (size == b)
+		{
+			return set;
+		}
+		return new ImmutableMathSet<T>(Arrays.copyOf(elements, size), Arrays.copyOf(hashes, size), hash);
+	}
+	
+	/**
+	 * Gets the union of a list of sets. The elements of all the sets are
+	 * put in a single array, which is sorted once; this takes
+	 * <i>O</i>(<i>n</i> log <i>n</i>) time for <i>n</i> elements in total,
+	 * whereas {@link #union(ImmutableMathSet) union}ing the sets one by one
+	 * copies the union built so far for each set.
+	 * @param <T> The type of the elements
+	 * @param sets The sets
+	 * @return The union, which is one of the sets if it contains all the
+	 * elements of the others
+	 */
+	@SuppressWarnings("unchecked")
+	/*@ non_null @*/ public static <T> ImmutableMathSet<T> union(/*@ non_null @*/ List<? extends ImmutableMathSet<? extends T>> sets)
+	{
+		ImmutableMathSet<? extends T> largest = null;
+		int total = 0, non_empty = 0;
+		for (ImmutableMathSet<? extends T> set : sets)
+		{
+			total += set.size();
+			if (!set.isEmpty())
+			{
+				non_empty++;
+			}
+			if (largest == null || set.size() > largest.size())
+			{
+				largest = set;
+			}
+		}
+		if (largest == null)
+		{
+			return new ImmutableMathSet<T>();
+		}
+		if (non_empty <= 1)
+		{
+			return (ImmutableMathSet<T>) largest;
+		}
+		Object[] in = new Object[total];
+		int[] in_hashes = new int[total];
+		int pos = 0;
+		for (ImmutableMathSet<? extends T> set : sets)
+		{
+			System.arraycopy(set.m_elements, 0, in, pos, set.size());
+			System.arraycopy(set.m_hashes, 0, in_hashes, pos, set.size());
+			pos += set.size();
+		}
+		ImmutableMathSet<T> union = sort(in, in_hashes, total);
+		return union.size() == largest.size() ? (ImmutableMathSet<T>) largest : union;
+	}
+	
+	/**
+	 * Gets a set containing the elements of this set, except one.
+	 * @param o The element to leave out
+	 * @return The new set, or this set if it does not contain the element
+	 */
+	/*@ pure non_null @*/ public ImmutableMathSet<T> without(Object o)
+	{
+		int pos = indexOf(o);
+		if (pos < 0)
+		{
+			return this;
+		}
+		int size = m_elements.length - 1;
+		Object[] elements = new Object[size];
+		int[] hashes = new int[size];
+		System.arraycopy(m_elements, 0, elements, 0, pos);
+		System.arraycopy(m_hashes, 0, hashes, 0, pos);
+		System.arraycopy(m_elements, pos + 1, elements, pos, size - pos);
+		System.arraycopy(m_hashes, pos + 1, hashes, pos, size - pos);
+		return new ImmutableMathSet<T>(elements, hashes, m_hash - m_hashes[pos]);
+	}
+	
+	/**
+	 * Gets a set containing the elements of this set that satisfy a condition.
+	 * @param condition The condition
+	 * @return The new set, or this set if all its elements satisfy the
+	 * condition
+	 */
+	@SuppressWarnings("unchecked")
+	/*@ pure non_null @*/ public ImmutableMathSet<T> filter(/*@ non_null @*/ Predicate<? super T> condition)
+	{
+		Object[] elements = new Object[m_elements.length];
+		int[] hashes = new int[m_hashes.length];
+		int size = 0, hash = 0;
+		for (int i = 0; i < m_elements.length; i++)
+		{
+			if (condition.test((T) m_elements[i]))
+			{
+				elements[size] = m_elements[i];
+				hashes[size++] = m_hashes[i];
+				hash += m_hashes[i];
+			}
+		}
+		if (size == m_elements.length)
+		{
+			return this;
+		}
+		return new ImmutableMathSet<T>(Arrays.copyOf(elements, size), Arrays.copyOf(hashes, size), hash);
+	}
+	
+	@Override
+	public int size()
+	{
+		return m_elements.length;
+	}
+	
+	@Override
+	public boolean isEmpty()
+	{
+		return m_elements.length == 0;
+	}
+	
+	@Override
+	public boolean contains(Object o)
+	{
+		return indexOf(o) >= 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public Iterator<T> iterator()
+	{
+		// The iterator of an array list view does not support removal
+		return (Iterator<T>) Arrays.asList(m_elements).iterator();
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return m_hash;
+	}
+	
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == this)
+		{
+			return true;
+		}
+		if (!(o instanceof Set))
+		{
+			return false;
+		}
+		Set<?> set = (Set<?>) o;
+		if (set.size() != size() || (o instanceof ImmutableMathSet && ((ImmutableMathSet<?>) o).m_hash != m_hash))
+		{
+			return false;
+		}
+		for (Object e : m_elements)
+		{
+			if (!set.contains(e))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder out = new StringBuilder();
+		out.append("{");
+		for (int i = 0; i < m_elements.length; i++)
+		{
+			if (i > 0)
+			{
+				out.append(",");
+			}
+			out.append(m_elements[i]);
+		}
+		out.append("}");
+		return out.toString();
+	}
+	
+	/**
+	 * Finds the position of an element in the set.
+	 * @param o The element
+	 * @return The position, or -1 if the element is not in the set
+	 */
+	protected int indexOf(Object o)
+	{
+		if (o == null)
+		{
+			return -1;
+		}
+		int h = o.hashCode();
+		for (int pos = firstIndex(h); pos < m_hashes.length && m_hashes[pos] == h; pos++)
+		{
+			if (m_elements[pos].equals(o))
+			{
+				return pos;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Finds the first position whose hash code is greater than or equal to a
+	 * value.
+	 * @param h The value
+	 * @return The position
+	 */
+	protected int firstIndex(int h)
+	{
+		int low = 0, high = m_hashes.length;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (m_hashes[mid] < h)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Creates a set from an array of elements in any order, which may contain
+	 * duplicates.
+	 * @param <T> The type of the elements
+	 * @param in The elements
+	 * @param in_hashes The hash codes of the elements, or <tt>null</tt> to
+	 * compute them
+	 * @param length The number of elements to read from the array
+	 * @return The set
+	 */
+	/*@ non_null @*/ protected static <T> ImmutableMathSet<T> sort(/*@ non_null @*/ Object[] in, /*@ null @*/ int[] in_hashes, int length)
+	{
+		long[] keys = new long[length];
+		for (int i = 0; i < length; i++)
+		{
+			// Hash code in the high bits, so that sorting the keys sorts by hash
+			int h = in_hashes == null ? in[i].hashCode() : in_hashes[i];
+			keys[i] = ((long) h << 32) | i;
+		}
+		Arrays.sort(keys);
+		Object[] out = new Object[length];
+		int[] hashes = new int[length];
+		int size = 0, hash = 0, run = 0;
+		for (long key : keys)
+		{
+			Object o = in[(int) key];
+			int h = (int) (key >>> 32);
+			if (size == 0 || hashes[size - 1] != h)
+			{
+				run = size;
+			}
+			else if (indexIn(out, run, size, o) >= 0)
+			{
+				continue;
+			}
+			out[size] = o;
+			hashes[size] = h;
+			hash += h;
+			size++;
+		}
+		if (size == 0)
+		{
+			return new ImmutableMathSet<T>();
+		}
+		return new ImmutableMathSet<T>(size == out.length ? out : Arrays.copyOf(out, size), size == hashes.length ? hashes : Arrays.copyOf(hashes, size), hash);
+	}
+	
+	/**
+	 * Finds an element in a range of an array.
+	 * @param elements The array
+	 * @param from The start of the range, inclusive
+	 * @param to The end of the range, exclusive
+	 * @param o The element
+	 * @return The position of the element, or -1 if it is not in the range
+	 */
+	protected static int indexIn(Object[] elements, int from, int to, Object o)
+	{
+		for (int i = from; i < to; i++)
+		{
+			if (elements[i].equals(o))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -18,6 +18,7 @@
 package ca.uqac.lif.dag;
 
 import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Set implementation that behaves like a real set, i.e. two sets
@@ -78,12 +79,11 @@ public class MathSet<T> extends HashSet<T>
 		{
 			return true;
 		}
-		if (o == null || !(o instanceof MathSet))
+		if (o == null || !(o instanceof Set))
 		{
 			return false;
 		}
-		@SuppressWarnings("unchecked")
-		MathSet<T> h = (MathSet<T>) o;
+		Set<?> h = (Set<?>) o;
 		if (h.size() != size())
 		{
 			return false;
@@ -20,11 +20,11 @@ package ca.uqac.lif.dag;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A node that itself encloses a directed acyclic graph of other nodes. The
@@ -51,6 +51,42 @@ public class NestedNode extends Node
 	 * pin of some internal node.
 	 */
 	protected Map<Integer,Pin<? extends Node>> m_outputAssociations;
+	
+	/**
+	 * A map giving, for each internal node, the input pin of the nested node
+	 * associated to each of its input pins. This is the reverse of
+	 * {@link #m_inputAssociations}, kept so that
+	 * {@link #getNestedInput(Node, int)} does not need to scan all the
+	 * associations.
+	 */
+	protected Map<Node,int[]> m_nestedInputs;
+	
+	/**
+	 * A map giving, for each internal node, the output pin of the nested node
+	 * associated to each of its output pins. This is the reverse of
+	 * {@link #m_outputAssociations}.
+	 */
+	protected Map<Node,int[]> m_nestedOutputs;
+	
+	/**
+	 * The frozen topology of the internal graph, or <tt>null</tt> if the node
+	 * has not been frozen. This object is shared by the node and all its
+	 * duplicates.
+	 */
+	/*@ null @*/ protected Template m_template;
+	
+	/**
+	 * The internal nodes of this node that are part of its template, in the
+	 * order of their position in the template, or <tt>null</tt> if the node
+	 * has not been frozen.
+	 */
+	/*@ null @*/ protected Node[] m_templateNodes;
+	
+	/**
+	 * The {@linkplain Template#getVersion(Node[]) version} of the wiring
+	 * of the internal nodes of this node when its template was created.
+	 */
+	protected long m_templateVersion;
 
 	/**
 	 * Creates a new nested node from a tree of connected nodes.
@@ -92,6 +128,10 @@ public class NestedNode extends Node
 		{
 			m_outputAssociations.put(i, null);
 		}
+		m_nestedInputs = new HashMap<>();
+		m_nestedOutputs = new HashMap<>();
+		m_template = null;
+		m_templateNodes = null;
 	}
 
 	/**
@@ -102,7 +142,9 @@ public class NestedNode extends Node
 	 */
 	public void associateInput(int i, Pin<? extends Node> p)
 	{
-		m_inputAssociations.put(i, p);
+		Pin<? extends Node> old = m_inputAssociations.put(i, p);
+		updateReverse(m_nestedInputs, m_inputAssociations, i, old, p);
+		m_template = null;
 	}
 
 	/**
@@ -124,7 +166,9 @@ public class NestedNode extends Node
 	 */
 	public void associateOutput(int i, Pin<? extends Node> p)
 	{
-		m_outputAssociations.put(i, p);
+		Pin<? extends Node> old = m_outputAssociations.put(i, p);
+		updateReverse(m_nestedOutputs, m_outputAssociations, i, old, p);
+		m_template = null;
 	}
 
 	/**
@@ -145,6 +189,7 @@ public class NestedNode extends Node
 	public void addNodes(Collection<? extends Node> nodes)
 	{
 		m_internalNodes.addAll(nodes);
+		m_template = null;
 	}
 
 	/**
@@ -154,6 +199,17 @@ public class NestedNode extends Node
 	public void addNodes(Node ... nodes)
 	{
 		m_internalNodes.addAll(Arrays.asList(nodes));
+		m_template = null;
+	}
+
+	/**
+	 * Gets the internal nodes of this nested node, in the order in which they
+	 * were added.
+	 * @return An unmodifiable view of the list of internal nodes
+	 */
+	/*@ pure non_null @*/ public List<Node> getInternalNodes()
+	{
+		return Collections.unmodifiableList(m_internalNodes);
 	}
 
 	/**
@@ -166,15 +222,7 @@ public class NestedNode extends Node
 	 */
 	public int getNestedInput(Node node, int index)
 	{
-		for (Map.Entry<Integer,Pin<? extends Node>> e : m_inputAssociations.entrySet())
-		{
-			Pin<? extends Node> pin = e.getValue();
-			if (pin.getNode().equals(node) && pin.getIndex() == index)
-			{
-				return e.getKey();
-			}
-		}
-		return -1;
+		return lookupReverse(m_nestedInputs, node, index);
 	}
 
 	/**
@@ -187,15 +235,76 @@ public class NestedNode extends Node
 	 */
 	public int getNestedOutput(Node node, int index)
 	{
-		for (Map.Entry<Integer,Pin<? extends Node>> e : m_outputAssociations.entrySet())
+		return lookupReverse(m_nestedOutputs, node, index);
+	}
+	
+	/**
+	 * Looks up the pin of the nested node associated to the pin of an inner
+	 * node in one of the reverse maps.
+	 * @param reverse The reverse map
+	 * @param node The inner node
+	 * @param index The index of the pin of the inner node
+	 * @return The index of the pin of the nested node, or -1 if there is none
+	 */
+	protected static int lookupReverse(Map<Node,int[]> reverse, Node node, int index)
+	{
+		int[] indices = reverse.get(node);
+		if (indices == null || index < 0 || index >= indices.length)
 		{
-			Pin<? extends Node> pin = e.getValue();
-			if (pin.getNode().equals(node) && pin.getIndex() == index)
+			return -1;
+		}
+		return indices[index];
+	}
+	
+	/**
+	 * Updates a reverse map after the pin associated to the i-th pin of the
+	 * nested node has changed. When several pins of the nested node are
+	 * associated to the same inner pin, the reverse map points to the one
+	 * with the lowest index.
+	 * @param reverse The reverse map
+	 * @param associations The associations, already containing the new pin
+	 * @param i The index of the pin of the nested node
+	 * @param old_pin The inner pin previously associated to it, if any
+	 * @param new_pin The inner pin now associated to it, if any
+	 */
+	protected static void updateReverse(Map<Node,int[]> reverse, Map<Integer,Pin<? extends Node>> associations, int i, Pin<? extends Node> old_pin, Pin<? extends Node> new_pin)
+	{
+		if (old_pin != null)
+		{
+			int[] indices = reverse.get(old_pin.getNode());
+			if (indices != null && indices[old_pin.getIndex()] == i)
 			{
-				return e.getKey();
+				// Fall back on another pin associated to the same inner pin
+				int replacement = -1;
+				for (Map.Entry<Integer,Pin<? extends Node>> e : associations.entrySet())
+				{
+					Pin<? extends Node> pin = e.getValue();
+					if (pin != null && pin.getNode() == old_pin.getNode() && pin.getIndex() == old_pin.getIndex() && (replacement < 0 || e.getKey() < replacement))
+					{
+						replacement = e.getKey();
+					}
+				}
+				indices[old_pin.getIndex()] = replacement;
+			}
+		}
+		if (new_pin != null)
+		{
+			Node n = new_pin.getNode();
+			int index = new_pin.getIndex();
+			int[] indices = reverse.get(n);
+			if (indices == null || index >= indices.length)
+			{
+				int old_length = indices == null ? 0 : indices.length;
+				int[] new_indices = Arrays.copyOf(indices == null ? new int[0] : indices, index + 1);
+				Arrays.fill(new_indices, old_length, new_indices.length, -1);
+				indices = new_indices;
+				reverse.put(n, indices);
+			}
+			if (indices[index] < 0 || i < indices[index])
+			{
+				indices[index] = i;
 			}
 		}
-		return -1;
 	}
 
 	@Override
@@ -206,10 +315,60 @@ public class NestedNode extends Node
 		return nn;
 	}
 
+	/**
+	 * Freezes the wiring of the internal graph of this node. The connections
+	 * between internal nodes and the associations of the node's pins are
+	 * recorded once into an immutable {@link Template}, which is shared by
+	 * this node and all its subsequent duplicates. Duplicating a frozen node
+	 * only creates copies of its internal nodes, without crawling the internal
+	 * graph; these copies do not store their links, and instead read them from
+	 * the template until they are connected or disconnected. Freezing a node
+	 * does not modify its internal nodes, nor the order in which
+	 * {@link #getInternalNodes()} returns them.
+	 * <p>
+	 * Adding nodes or changing the pin associations of the node un-freezes
+	 * it. Connecting or disconnecting internal nodes after the node has been
+	 * frozen is detected when the node is next duplicated, by comparing the
+	 * {@linkplain PinList#getVersion() versions} of the pin lists of the
+	 * internal nodes with those recorded by the template; the template is
+	 * then created anew.
+	 * @return This node
+	 */
+	/*@ non_null @*/ public NestedNode freeze()
+	{
+		if (!m_internalNodes.isEmpty())
+		{
+			List<Node> nodes = Template.collect(this);
+			m_template = new Template(this, nodes);
+			m_templateNodes = nodes.toArray(new Node[nodes.size()]);
+			m_templateVersion = Template.getVersion(m_templateNodes);
+		}
+		return this;
+	}
+	
+	/**
+	 * Determines if this node has been frozen.
+	 * @return <tt>true</tt> if the node is frozen, <tt>false</tt> otherwise
+	 * @see #freeze()
+	 */
+	/*@ pure @*/ public boolean isFrozen()
+	{
+		return m_template != null;
+	}
+
 	protected void copyInto(NestedNode nn, boolean with_state)
 	{
 		super.copyInto(nn, with_state);
-		if (!m_internalNodes.isEmpty())
+		if (m_template != null && m_templateVersion != Template.getVersion(m_templateNodes))
+		{
+			// Internal nodes were rewired since the node was frozen
+			freeze();
+		}
+		if (m_template != null)
+		{
+			m_template.instantiate(this, nn, with_state);
+		}
+		else if (!m_internalNodes.isEmpty())
 		{
 			CopyCrawler c = new CopyCrawler(m_internalNodes.get(0), getConnector(), with_state);
 			c.crawl();
@@ -229,6 +388,335 @@ public class NestedNode extends Node
 		return NodeConnector.instance;
 	}
 
+	/**
+	 * The wiring of the internal graph of a nested node, frozen into arrays of
+	 * integers. Internal nodes are designated by their position in the
+	 * template, which is the order in which they are reached by a crawl
+	 * starting from the first internal node; only these nodes are part of the
+	 * template, as is the case for {@link CopyCrawler}. Each connection is
+	 * recorded twice, once in the order of the output links of its source and
+	 * once in the order of the input links of its target, so that instances
+	 * reproduce both orders exactly.
+	 * <p>
+	 * The links of each node are stored consecutively, sorted by pin, so that
+	 * the links of a given pin can be found directly. This makes it possible
+	 * for the copies created by {@link #instantiate(NestedNode, NestedNode,
+	 * boolean) instantiate()} to read their links from the template through
+	 * an {@link Instance}, instead of each storing them in its own
+	 * {@link PinList}s.
+	 */
+	protected static final class Template
+	{
+		/**
+		 * The number of internal nodes in the template.
+		 */
+		protected final int m_size;
+		
+		/**
+		 * The output links of each node, as quadruples (source node, output
+		 * index, target node, input index).
+		 */
+		/*@ non_null @*/ protected final int[] m_outputLinks;
+		
+		/**
+		 * The input links of each node, as quadruples (target node, input
+		 * index, source node, output index).
+		 */
+		/*@ non_null @*/ protected final int[] m_inputLinks;
+		
+		/**
+		 * The position in {@link #m_outputStarts} of the first output pin of
+		 * each node.
+		 */
+		/*@ non_null @*/ protected final int[] m_outputPins;
+		
+		/**
+		 * The number of the first link in {@link #m_outputLinks} of each output
+		 * pin of each node, followed by the total number of links.
+		 */
+		/*@ non_null @*/ protected final int[] m_outputStarts;
+		
+		/**
+		 * The position in {@link #m_inputStarts} of the first input pin of each
+		 * node.
+		 */
+		/*@ non_null @*/ protected final int[] m_inputPins;
+		
+		/**
+		 * The number of the first link in {@link #m_inputLinks} of each input
+		 * pin of each node, followed by the total number of links.
+		 */
+		/*@ non_null @*/ protected final int[] m_inputStarts;
+		
+		/**
+		 * The input pin associations of the nested node, as pairs (node, input
+		 * index). A node position of -1 indicates a pin with no association.
+		 */
+		/*@ non_null @*/ protected final int[] m_inputAssociations;
+		
+		/**
+		 * The output pin associations of the nested node, as pairs (node,
+		 * output index).
+		 */
+		/*@ non_null @*/ protected final int[] m_outputAssociations;
+		
+		/**
+		 * Lists the internal nodes of a nested node that are part of its
+		 * template, in the order of their position in the template.
+		 * @param nn The nested node
+		 * @return The list of nodes
+		 */
+		/*@ non_null @*/ protected static List<Node> collect(/*@ non_null @*/ NestedNode nn)
+		{
+			NodeCollector c = new NodeCollector(nn.m_internalNodes.get(0));
+			c.crawl();
+			return c.m_nodes;
+		}
+		
+		/**
+		 * Freezes the internal graph of a nested node.
+		 * @param nn The nested node
+		 * @param nodes The internal nodes of the nested node that are part of
+		 * the template, as returned by {@link #collect(NestedNode)}
+		 */
+		protected Template(/*@ non_null @*/ NestedNode nn, /*@ non_null @*/ List<Node> nodes)
+		{
+			super();
+			m_size = nodes.size();
+			Map<Node,Integer> positions = new IdentityHashMap<>(m_size);
+			int num_outputs = 0, num_inputs = 0;
+			for (int i = 0; i < m_size; i++)
+			{
+				Node n = nodes.get(i);
+				positions.put(n, i);
+				num_outputs += n.getOutputArity();
+				num_inputs += n.getInputArity();
+			}
+			int num_links = 0;
+			for (Node n : nodes)
+			{
+				for (int i = 0; i < n.getOutputArity(); i++)
+				{
+					num_links += n.getOutputLinks(i).size();
+				}
+			}
+			m_outputLinks = new int[4 * num_links];
+			m_inputLinks = new int[4 * num_links];
+			m_outputPins = new int[m_size];
+			m_inputPins = new int[m_size];
+			m_outputStarts = new int[num_outputs + 1];
+			m_inputStarts = new int[num_inputs + 1];
+			int out_pos = 0, in_pos = 0, out_pin = 0, in_pin = 0;
+			for (int k = 0; k < m_size; k++)
+			{
+				Node n = nodes.get(k);
+				m_outputPins[k] = out_pin;
+				for (int i = 0; i < n.getOutputArity(); i++)
+				{
+					m_outputStarts[out_pin++] = out_pos / 4;
+					for (Pin<? extends Node> pin : n.getOutputLinks(i))
+					{
+						m_outputLinks[out_pos++] = k;
+						m_outputLinks[out_pos++] = i;
+						m_outputLinks[out_pos++] = positions.get(pin.getNode());
+						m_outputLinks[out_pos++] = pin.getIndex();
+					}
+				}
+				m_inputPins[k] = in_pin;
+				for (int i = 0; i < n.getInputArity(); i++)
+				{
+					m_inputStarts[in_pin++] = in_pos / 4;
+					for (Pin<? extends Node> pin : n.getInputLinks(i))
+					{
+						m_inputLinks[in_pos++] = k;
+						m_inputLinks[in_pos++] = i;
+						m_inputLinks[in_pos++] = positions.get(pin.getNode());
+						m_inputLinks[in_pos++] = pin.getIndex();
+					}
+				}
+			}
+			m_outputStarts[out_pin] = out_pos / 4;
+			m_inputStarts[in_pin] = in_pos / 4;
+			m_inputAssociations = freezeAssociations(nn.m_inputAssociations, nn.getInputArity(), positions);
+			m_outputAssociations = freezeAssociations(nn.m_outputAssociations, nn.getOutputArity(), positions);
+		}
+		
+		/**
+		 * Populates a nested node with copies of the internal nodes of another
+		 * one, connected according to the template. If the target node is empty,
+		 * it becomes frozen with the same template.
+		 * @param source The nested node whose internal nodes are copied
+		 * @param target The nested node receiving the copies
+		 * @param with_state Set to {@code true} to make a stateful duplication of
+		 * inner nodes, {@code false} otherwise
+		 */
+		protected void instantiate(/*@ non_null @*/ NestedNode source, /*@ non_null @*/ NestedNode target, boolean with_state)
+		{
+			boolean was_empty = target.m_internalNodes.isEmpty();
+			Node[] copies = new Node[m_size];
+			Instance links = new Instance(copies);
+			for (int i = 0; i < m_size; i++)
+			{
+				Node copy = source.m_templateNodes[i].duplicate(with_state);
+				copy.m_sharedLinks = links;
+				copy.m_sharedPosition = i;
+				copies[i] = copy;
+			}
+			target.m_internalNodes.addAll(Arrays.asList(copies));
+			for (int i = 0; i < m_inputAssociations.length; i += 2)
+			{
+				if (m_inputAssociations[i] >= 0)
+				{
+					target.associateInput(i / 2, copies[m_inputAssociations[i]].getInputPin(m_inputAssociations[i + 1]));
+				}
+			}
+			for (int i = 0; i < m_outputAssociations.length; i += 2)
+			{
+				if (m_outputAssociations[i] >= 0)
+				{
+					target.associateOutput(i / 2, copies[m_outputAssociations[i]].getOutputPin(m_outputAssociations[i + 1]));
+				}
+			}
+			if (was_empty)
+			{
+				target.m_template = this;
+				target.m_templateNodes = copies;
+				target.m_templateVersion = getVersion(copies);
+			}
+		}
+		
+		/**
+		 * Computes a number that changes whenever the internal nodes of a nested
+		 * node that are part of its template are connected or disconnected. This
+		 * number is the sum of the versions of the pin lists of these nodes, which
+		 * only ever increase; a node whose pin lists have not been created,
+		 * and which therefore has never been connected or disconnected, counts
+		 * for 0.
+		 * @param nodes The internal nodes that are part of the template
+		 * @return The version
+		 */
+		protected static long getVersion(/*@ non_null @*/ Node[] nodes)
+		{
+			long version = 0;
+			for (Node n : nodes)
+			{
+				version += getVersion(n.m_inputs) + getVersion(n.m_outputs);
+			}
+			return version;
+		}
+		
+		/**
+		 * Computes the sum of the versions of pin lists.
+		 * @param lists The pin lists, or <tt>null</tt>
+		 * @return The sum
+		 */
+		protected static long getVersion(/*@ null @*/ PinList[] lists)
+		{
+			long version = 0;
+			if (lists != null)
+			{
+				for (PinList links : lists)
+				{
+					version += links.getVersion();
+				}
+			}
+			return version;
+		}
+		
+		/**
+		 * Converts pin associations into pairs of integers.
+		 * @param associations The associations
+		 * @param arity The number of pins of the nested node
+		 * @param positions The position of each internal node in the template
+		 * @return The array of pairs
+		 */
+		protected static int[] freezeAssociations(Map<Integer,Pin<? extends Node>> associations, int arity, Map<Node,Integer> positions)
+		{
+			int[] frozen = new int[2 * arity];
+			for (int i = 0; i < arity; i++)
+			{
+				Pin<? extends Node> pin = associations.get(i);
+				Integer pos = pin == null ? null : positions.get(pin.getNode());
+				frozen[2 * i] = pos == null ? -1 : pos;
+				frozen[2 * i + 1] = pin == null ? 0 : pin.getIndex();
+			}
+			return frozen;
+		}
+		
+		/**
+		 * The links of the copies of internal nodes created by one call to
+		 * {@link Template#instantiate(NestedNode, NestedNode, boolean)
+		 * instantiate()}, read from the template. The position of a node is its
+		 * position in the template.
+		 */
+		protected final class Instance extends SharedLinks
+		{
+			/**
+			 * The copies of the internal nodes, in the order of their position in
+			 * the template.
+			 */
+			/*@ non_null @*/ protected final Node[] m_nodes;
+			
+			/**
+			 * Creates a new set of links.
+			 * @param nodes The copies of the internal nodes, in the order of their
+			 * position in the template
+			 */
+			protected Instance(/*@ non_null @*/ Node[] nodes)
+			{
+				super();
+				m_nodes = nodes;
+			}
+			
+			@Override
+			/*@ pure @*/ protected int size(int position, boolean input, int index)
+			{
+				int[] starts = input ? m_inputStarts : m_outputStarts;
+				int pin = (input ? m_inputPins : m_outputPins)[position] + index;
+				return starts[pin + 1] - starts[pin];
+			}
+			
+			@Override
+			/*@ pure non_null @*/ protected Pin<? extends Node> get(int position, boolean input, int index, int j)
+			{
+				if (input)
+				{
+					int link = 4 * (m_inputStarts[m_inputPins[position] + index] + j);
+					return m_nodes[m_inputLinks[link + 2]].getOutputPin(m_inputLinks[link + 3]);
+				}
+				int link = 4 * (m_outputStarts[m_outputPins[position] + index] + j);
+				return m_nodes[m_outputLinks[link + 2]].getInputPin(m_outputLinks[link + 3]);
+			}
+		}
+	}
+	
+	/**
+	 * A crawler that lists the nodes it visits, in the order of the visit.
+	 */
+	protected static class NodeCollector extends Crawler
+	{
+		/**
+		 * The list of visited nodes.
+		 */
+		/*@ non_null @*/ protected final List<Node> m_nodes;
+		
+		/**
+		 * Creates a new node collector.
+		 * @param start The starting point of the crawl
+		 */
+		public NodeCollector(/*@ non_null @*/ Node start)
+		{
+			super(start);
+			m_nodes = new ArrayList<>();
+		}
+		
+		@Override
+		public void visit(/*@ non_null @*/ Node n)
+		{
+			m_nodes.add(n);
+		}
+	}
+
 	/**
 	 * A crawler that creates copies of all visited nodes and connects them in
 	 * the same way as the originals.
@@ -244,7 +732,7 @@ public class NestedNode extends Node
 		 * The set of nodes that have been expanded (i.e. their output links
 		 * have been visited).
 		 */
-		/*@ non_null @*/ protected Set<Node> m_expanded;
+		/*@ non_null @*/ protected NodeSet m_expanded;
 
 		/**
 		 * A connector used to connect nodes.
@@ -266,10 +754,10 @@ public class NestedNode extends Node
 		public CopyCrawler(/*@ non_null @*/ Node start, /*@ non_null @*/ NodeConnector connector, boolean with_state)
 		{
 			super(start);
-			m_copies = new HashMap<>();
+			m_copies = new IdentityHashMap<>();
 			m_connector = connector;
 			m_withState = with_state;
-			m_expanded = new HashSet<>(m_internalNodes.size());
+			m_expanded = new NodeSet();
 		}
 
 		/**
@@ -283,13 +771,13 @@ public class NestedNode extends Node
 			{
 				Pin<? extends Node> pin = e.getValue();
 				Node target = m_copies.get(pin.getNode());
-				nn.m_inputAssociations.put(e.getKey(), target.getInputPin(pin.getIndex()));
+				nn.associateInput(e.getKey(), target.getInputPin(pin.getIndex()));
 			}
 			for (Map.Entry<Integer,Pin<? extends Node>> e : m_outputAssociations.entrySet())
 			{
 				Pin<? extends Node> pin = e.getValue();
 				Node target = m_copies.get(pin.getNode());
-				nn.m_outputAssociations.put(e.getKey(), target.getOutputPin(pin.getIndex()));
+				nn.associateOutput(e.getKey(), target.getOutputPin(pin.getIndex()));
 			}
 		}
 
@@ -309,9 +797,8 @@ public class NestedNode extends Node
 				{
 					Node target = pin.getNode();
 					Node target_copy = null;
-					if (!m_expanded.contains(target))
+					if (m_expanded.add(target))
 					{
-						m_expanded.add(target);
 						target_copy = target.duplicate(m_withState);
 						m_copies.put(target, target_copy);
 					}
@@ -343,6 +830,12 @@ public class NestedNode extends Node
 		 * each execution.
 		 */
 		/*@ non_null @*/ protected List<Node> m_allNodes;
+		
+		/**
+		 * The set of nodes in {@link #m_allNodes}, used to check in constant time
+		 * if a node has already been recorded.
+		 */
+		/*@ non_null @*/ protected NodeSet m_recorded;
 
 		/**
 		 * Creates a new crawler.
@@ -353,15 +846,18 @@ public class NestedNode extends Node
 			super(start);
 			m_leaves = new ArrayList<>();
 			m_allNodes = new ArrayList<>();
+			m_recorded = new NodeSet();
 		}
 
 		@Override
 		public void visit(/*@ non_null @*/ Node n)
 		{
-			if (!m_allNodes.contains(n))
+			if (!m_recorded.add(n))
 			{
-				m_allNodes.add(n);
+				// Node already recorded, and classified as a leaf or not
+				return;
 			}
+			m_allNodes.add(n);
 			boolean is_leaf = true;
 			for (int i = 0; i < n.getOutputArity(); i++)
 			{
@@ -371,7 +867,7 @@ public class NestedNode extends Node
 					break;
 				}
 			}
-			if (is_leaf && !m_leaves.contains(n))
+			if (is_leaf)
 			{
 				m_leaves.add(n);
 			}
@@ -17,33 +17,103 @@
  */
 package ca.uqac.lif.dag;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ca.uqac.lif.util.Duplicable;
 
 /**
  * Abstract entity having input and output pins that can be linked to pins of
  * of other nodes.
+ * <p>
+ * The links of each pin are stored in an array indexed by pin number, whose
+ * elements are compact {@link PinList}s. Looking up the links of a pin is
+ * therefore a simple array access. These arrays are only created when the
+ * node is first connected: until then, the node either has no link, or reads
+ * its links from {@link SharedLinks} common to a group of nodes, such as the
+ * copies of the internal nodes of a frozen {@link NestedNode}. The lists
+ * returned by {@link #getInputLinks(int)} and {@link #getOutputLinks(int)}
+ * are therefore only meant to be read; links are added and removed with
+ * methods such as {@link #addToInput(int, Pin)}.
+ * <p>
+ * The {@link Pin} objects designating the node's own pins are created once
+ * and reused: two calls to {@link #getInputPin(int)} with the same index
+ * return the same object, so that pins can be compared by identity.
+ * <p>
+ * Each node also receives an integer identifier when it is created. These
+ * identifiers are consecutive, so that the state of a traversal can be kept
+ * in a {@link NodeSet} indexed by them instead of a hash set of nodes.
  * 
  * @author Sylvain Hallé
  */
 public class Node implements Connectable, Duplicable
 {
 	/**
-	 * A map associating input pin indices with a list of output pins of other
-	 * nodes.
+	 * An array associating each input pin index with a list of output pins of
+	 * other nodes, or <tt>null</tt> if the input links of the node have never
+	 * been modified.
 	 */
-	protected Map<Integer,List<Pin<? extends Node>>> m_inputs;
+	/*@ null @*/ protected PinList[] m_inputs;
 	
 	/**
-	 * A map associating output pin indices with a list of input pins of other
-	 * nodes.
+	 * The counter used to give an identifier to each new node. It is visible
+	 * to the package so that tests can simulate the exhaustion of the
+	 * identifiers.
 	 */
-	protected Map<Integer,List<Pin<? extends Node>>> m_outputs;
+	static final AtomicLong s_idCounter = new AtomicLong();
+	
+	/**
+	 * The identifier of this node.
+	 */
+	private final int m_id;
+	
+	/**
+	 * An array associating each output pin index with a list of input pins of
+	 * other nodes, or <tt>null</tt> if the output links of the node have never
+	 * been modified.
+	 */
+	/*@ null @*/ protected PinList[] m_outputs;
+	
+	/**
+	 * The number of input pins on this node.
+	 */
+	private final int m_inputArity;
+	
+	/**
+	 * The number of output pins on this node.
+	 */
+	private final int m_outputArity;
+	
+	/**
+	 * The links from which the node reads the links of the pins whose
+	 * {@link PinList}s have not been created, or <tt>null</tt> if these pins
+	 * have no link.
+	 */
+	/*@ null @*/ protected SharedLinks m_sharedLinks;
+	
+	/**
+	 * The position of the node in {@link #m_sharedLinks}.
+	 */
+	protected int m_sharedPosition;
+	
+	/**
+	 * The input pins of this node, created on demand by
+	 * {@link #getInputPin(int)}. Pins are compared by identity, so a pin is
+	 * only ever created while holding the lock of the node; since the fields
+	 * of a pin are final, a pin read from the cache without the lock is
+	 * always complete.
+	 */
+	/*@ null @*/ private volatile Pin<? extends Node>[] m_inputPinCache;
+	
+	/**
+	 * The output pins of this node, created on demand by
+	 * {@link #getOutputPin(int)}, in the same way as
+	 * {@link #m_inputPinCache}.
+	 */
+	/*@ null @*/ private volatile Pin<? extends Node>[] m_outputPinCache;
 	
 	/**
 	 * Creates a new node.
@@ -53,35 +123,47 @@ public class Node implements Connectable, Duplicable
 	public Node(int in_arity, int out_arity)
 	{
 		super();
-		m_inputs = new HashMap<>(in_arity);
-		for (int i = 0; i < in_arity; i++)
-		{
-			m_inputs.put(i, new ArrayList<>());
-		}
-		m_outputs = new HashMap<>(out_arity);
-		for (int i = 0; i < out_arity; i++)
-		{
-			m_outputs.put(i, new ArrayList<>());
-		}
+		long id = s_idCounter.getAndIncrement();
+		m_id = id <= Integer.MAX_VALUE ? (int) id : -1;
+		m_inputArity = in_arity;
+		m_outputArity = out_arity;
+		m_inputs = null;
+		m_outputs = null;
+		m_sharedLinks = null;
+	}
+	
+	/**
+	 * Gets the identifier of this node. Nodes are numbered in the order in
+	 * which they are created, starting from 0, so that two nodes with a
+	 * non-negative identifier are the same node if and only if their
+	 * identifiers are equal. Once {@link Integer#MAX_VALUE} is reached, the
+	 * nodes created afterwards all have the identifier -1, and must be told
+	 * apart by identity. The identifier is not preserved by
+	 * {@link #duplicate()}.
+	 * @return The identifier, or -1 if the node has none
+	 */
+	/*@ pure @*/ public final int getId()
+	{
+		return m_id;
 	}
 	
 	@Override
 	/*@ pure @*/ public int getInputArity()
 	{
-		return m_inputs.size();
+		return m_inputArity;
 	}
 	
 	@Override
 	/*@ pure @*/ public int getOutputArity()
 	{
-		return m_outputs.size();
+		return m_outputArity;
 	}
 	
 	@Override
 	/*@ pure @*/ public int getInputNodeCount()
 	{
 		int total = 0;
-		for (int i = 0; i < getInputArity(); i++)
+		for (int i = 0; i < m_inputArity; i++)
 		{
 			total += getInputLinks(i).size();
 		}
@@ -92,7 +174,7 @@ public class Node implements Connectable, Duplicable
 	/*@ pure @*/ public int getOutputNodeCount()
 	{
 		int total = 0;
-		for (int i = 0; i < getOutputArity(); i++)
+		for (int i = 0; i < m_outputArity; i++)
 		{
 			total += getOutputLinks(i).size();
 		}
@@ -102,103 +184,218 @@ public class Node implements Connectable, Duplicable
 	@Override
 	/*@ pure non_null @*/ public Collection<Pin<? extends Node>> getInputLinks(int index)
 	{
-		if (index < 0 || index >= m_inputs.size())
+		if (index < 0 || index >= m_inputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		return m_inputs.get(index);
+		PinList[] lists = m_inputs;
+		if (lists != null)
+		{
+			return lists[index];
+		}
+		return m_sharedLinks == null ? PinList.NO_LINKS : new LinkView(true, index);
 	}
 	
 	@Override
 	/*@ pure non_null @*/ public List<Pin<? extends Node>> getOutputLinks(int index)
 	{
-		if (index < 0 || index >= m_outputs.size())
+		if (index < 0 || index >= m_outputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		return m_outputs.get(index);
+		PinList[] lists = m_outputs;
+		if (lists != null)
+		{
+			return lists[index];
+		}
+		return m_sharedLinks == null ? PinList.NO_LINKS : new LinkView(false, index);
 	}
 	
 	@Override
 	public void addToInput(int index, /*@ non_null @*/ Pin<? extends Node> pin)
 	{
-		if (index < 0 || index >= m_inputs.size())
+		if (index < 0 || index >= m_inputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		m_inputs.get(index).add(pin);
+		getInputLists()[index].add(pin);
 	}
 	
 	@Override
 	public void setToInput(int index, /*@ non_null @*/ Pin<? extends Node> pin)
 	{
-		if (index < 0 || index >= m_inputs.size())
+		if (index < 0 || index >= m_inputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		m_inputs.get(index).clear();
-		m_inputs.get(index).add(pin);
+		PinList links = getInputLists()[index];
+		links.clear();
+		links.add(pin);
 	}
 	
 	@Override
 	public void removeFromInput(int index, /*@ non_null @*/ Pin<? extends Node> pin)
 	{
-		if (index < 0 || index >= m_inputs.size())
+		if (index < 0 || index >= m_inputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		m_inputs.get(index).remove(pin);
+		getInputLists()[index].remove(pin);
 	}
 	
 	@Override
 	public void addToOutput(int index, /*@ non_null @*/ Pin<? extends Node> pin)
 	{
-		if (index < 0 || index >= m_outputs.size())
+		if (index < 0 || index >= m_outputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		m_outputs.get(index).add(pin);
+		getOutputLists()[index].add(pin);
 	}
 	
 	@Override
 	/*@ non_null @*/ public void setToOutput(int index, /*@ non_null @*/ Pin<? extends Node> pin)
 	{
-		if (index < 0 || index >= m_outputs.size())
+		if (index < 0 || index >= m_outputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		m_outputs.get(index).clear();
-		m_outputs.get(index).add(pin);
+		PinList links = getOutputLists()[index];
+		links.clear();
+		links.add(pin);
 	}
 	
 	@Override
 	public void removeFromOutput(int index, /*@ non_null @*/ Pin<? extends Node> pin)
 	{
-		if (index < 0 || index >= m_outputs.size())
+		if (index < 0 || index >= m_outputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		m_outputs.get(index).remove(pin);
+		getOutputLists()[index].remove(pin);
 	}
 	
 	@Override
 	/*@ non_null @*/ public Pin<? extends Node> getInputPin(int index) throws IndexOutOfBoundsException
 	{
-		if (index < 0 || index >= m_inputs.size())
+		if (index < 0 || index >= m_inputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		return new Pin<>(this, index);
+		Pin<? extends Node>[] cache = m_inputPinCache;
+		Pin<? extends Node> pin = cache == null ? null : cache[index];
+		if (pin != null)
+		{
+			return pin;
+		}
+		synchronized (this)
+		{
+			if (m_inputPinCache == null)
+			{
+				m_inputPinCache = newPinArray(m_inputArity);
+			}
+			cache = m_inputPinCache;
+			if (cache[index] == null)
+			{
+				cache[index] = new Pin<>(this, index);
+			}
+			return cache[index];
+		}
 	}
 	
 	@Override
 	/*@ non_null @*/ public Pin<? extends Node> getOutputPin(int index) throws IndexOutOfBoundsException
 	{
-		if (index < 0 || index >= m_outputs.size())
+		if (index < 0 || index >= m_outputArity)
 		{
 			throw new IndexOutOfBoundsException();
 		}
-		return new Pin<>(this, index);
+		Pin<? extends Node>[] cache = m_outputPinCache;
+		Pin<? extends Node> pin = cache == null ? null : cache[index];
+		if (pin != null)
+		{
+			return pin;
+		}
+		synchronized (this)
+		{
+			if (m_outputPinCache == null)
+			{
+				m_outputPinCache = newPinArray(m_outputArity);
+			}
+			cache = m_outputPinCache;
+			if (cache[index] == null)
+			{
+				cache[index] = new Pin<>(this, index);
+			}
+			return cache[index];
+		}
+	}
+	
+	/**
+	 * Gets the lists of input links of this node, creating them if they do
+	 * not exist yet. Calling this method detaches the input pins of the node
+	 * from its {@linkplain #m_sharedLinks shared links}, if any.
+	 * @return The array of lists, indexed by input pin
+	 */
+	/*@ non_null @*/ protected PinList[] getInputLists()
+	{
+		if (m_inputs == null)
+		{
+			m_inputs = newLinkLists(true, m_inputArity);
+		}
+		return m_inputs;
+	}
+	
+	/**
+	 * Gets the lists of output links of this node, creating them if they do
+	 * not exist yet. Calling this method detaches the output pins of the node
+	 * from its {@linkplain #m_sharedLinks shared links}, if any.
+	 * @return The array of lists, indexed by output pin
+	 */
+	/*@ non_null @*/ protected PinList[] getOutputLists()
+	{
+		if (m_outputs == null)
+		{
+			m_outputs = newLinkLists(false, m_outputArity);
+		}
+		return m_outputs;
+	}
+	
+	/**
+	 * Creates the lists of links of one side of the node, filled with the
+	 * shared links of the node, if any.
+	 * @param input Set to <tt>true</tt> for the input pins, <tt>false</tt>
+	 * for the output pins
+	 * @param arity The number of pins on this side
+	 * @return The array of lists
+	 */
+	/*@ non_null @*/ private PinList[] newLinkLists(boolean input, int arity)
+	{
+		PinList[] lists = new PinList[arity];
+		for (int i = 0; i < arity; i++)
+		{
+			lists[i] = new PinList();
+			if (m_sharedLinks != null)
+			{
+				int size = m_sharedLinks.size(m_sharedPosition, input, i);
+				for (int j = 0; j < size; j++)
+				{
+					lists[i].add(m_sharedLinks.get(m_sharedPosition, input, i, j));
+				}
+			}
+		}
+		return lists;
+	}
+	
+	/**
+	 * Creates an empty array of pins.
+	 * @param size The size of the array
+	 * @return The array
+	 */
+	@SuppressWarnings("unchecked")
+	private static Pin<? extends Node>[] newPinArray(int size)
+	{
+		return (Pin<? extends Node>[]) new Pin<?>[size];
 	}
 	
 	@Override
@@ -225,4 +422,118 @@ public class Node implements Connectable, Duplicable
 	{
 		// Nothing to do
 	}
+	
+	/**
+	 * The links of a group of nodes, read by these nodes in place of their own
+	 * {@link PinList}s as long as they are not connected or disconnected.
+	 * This makes it possible for many nodes wired in the same way to share a
+	 * single, immutable description of their links. Each node designates its
+	 * links by its {@linkplain Node#m_sharedPosition position} in the group.
+	 */
+	protected abstract static class SharedLinks
+	{
+		/**
+		 * Gets the number of links of a pin of a node.
+		 * @param position The position of the node in the group
+		 * @param input Set to <tt>true</tt> for an input pin, <tt>false</tt>
+		 * for an output pin
+		 * @param index The index of the pin
+		 * @return The number of links
+		 */
+		/*@ pure @*/ protected abstract int size(int position, boolean input, int index);
+		
+		/**
+		 * Gets a link of a pin of a node.
+		 * @param position The position of the node in the group
+		 * @param input Set to <tt>true</tt> for an input pin, <tt>false</tt>
+		 * for an output pin
+		 * @param index The index of the pin
+		 * @param j The index of the link among the links of the pin
+		 * @return The pin of the other node at the end of the link
+		 */
+		/*@ pure non_null @*/ protected abstract Pin<? extends Node> get(int position, boolean input, int index, int j);
+	}
+	
+	/**
+	 * A read-only list of the links of a pin whose {@link PinList} has not
+	 * been created. The list reads the {@linkplain Node#m_sharedLinks shared
+	 * links} of the node; once the lists of the node have been created, it
+	 * reads them instead.
+	 */
+	protected class LinkView extends AbstractList<Pin<? extends Node>> implements RandomAccess
+	{
+		/**
+		 * Whether the list contains the links of an input pin.
+		 */
+		private final boolean m_input;
+		
+		/**
+		 * The index of the pin.
+		 */
+		private final int m_index;
+		
+		/**
+		 * Creates a new view of the links of a pin.
+		 * @param input Set to <tt>true</tt> for an input pin, <tt>false</tt>
+		 * for an output pin
+		 * @param index The index of the pin
+		 */
+		protected LinkView(boolean input, int index)
+		{
+			super();
+			m_input = input;
+			m_index = index;
+		}
+		
+		@Override
+		/*@ pure non_null @*/ public Pin<? extends Node> get(int j)
+		{
+			PinList[] lists = m_input ? m_inputs : m_outputs;
+			if (lists != null)
+			{
+				return lists[m_index].get(j);
+			}
+			if (j < 0 || j >= size())
+			{
+				throw new IndexOutOfBoundsException();
+			}
+			return m_sharedLinks.get(m_sharedPosition, m_input, m_index, j);
+		}
+		
+		@Override
+		/*@ pure @*/ public int size()
+		{
+			PinList[] lists = m_input ? m_inputs : m_outputs;
+			if (lists != null)
+			{
+				return lists[m_index].size();
+			}
+			return m_sharedLinks == null ? 0 : m_sharedLinks.size(m_sharedPosition, m_input, m_index);
+		}
+		
+		@Override
+		public int indexOf(Object o)
+		{
+			int size = size();
+			for (int j = 0; j < size; j++)
+			{
+				if (get(j) == o)
+				{
+					return j;
+				}
+			}
+			return -1;
+		}
+		
+		@Override
+		public boolean contains(Object o)
+		{
+			PinList[] lists = m_input ? m_inputs : m_outputs;
+			if (lists != null)
+			{
+				return lists[m_index].contains(o);
+			}
+			return indexOf(o) >= 0;
+		}
+	}
 }
@@ -0,0 +1,254 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A set of nodes that records one bit per node, at the position given by the
+ * node's {@link Node#getId() identifier}. Membership is by identity, and
+ * adding or looking up a node is a bit test instead of a hash lookup. This
+ * set is meant to hold the state of a traversal, such as the nodes already
+ * visited; it cannot enumerate its elements, since it does not keep
+ * references to them.
+ * <p>
+ * The bits are divided into pages of {@link #PAGE_SIZE} identifiers, which
+ * are allocated only when one of their nodes is added. Since the nodes of a
+ * graph are generally created around the same time, their identifiers are
+ * close to each other, and the set occupies about one bit per identifier
+ * between the smallest and the largest of its nodes.
+ * <p>
+ * Nodes created after all the identifiers have been given out have no
+ * identifier of their own; the set keeps these nodes in an identity-based
+ * set instead.
+ */
+public class NodeSet
+{
+	/**
+	 * The base-2 logarithm of the number of identifiers in a page.
+	 */
+	protected static final int PAGE_BITS = 12;
+	
+	/**
+	 * The number of identifiers in a page.
+	 */
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+	
+	/**
+	 * The pages of bits, the first of which covers the identifiers starting at
+	 * {@link #m_firstPage} &times; {@link #PAGE_SIZE}. Pages that contain no
+	 * node are <tt>null</tt>.
+	 */
+	/*@ non_null @*/ protected long[][] m_pages;
+	
+	/**
+	 * The index of the page stored at position 0 of {@link #m_pages}, or -1 if
+	 * no page has been allocated yet.
+	 */
+	protected int m_firstPage;
+	
+	/**
+	 * The nodes of the set that have no identifier, or <tt>null</tt> if there
+	 * are none.
+	 */
+	/*@ null @*/ protected Set<Node> m_unnumbered;
+	
+	/**
+	 * The number of nodes in the set.
+	 */
+	protected int m_size;
+	
+	/**
+	 * Creates a new empty set.
+	 */
+	public NodeSet()
+	{
+		super();
+		m_pages = new long[0][];
+		m_firstPage = -1;
+		m_unnumbered = null;
+		m_size = 0;
+	}
+	
+	/**
+	 * Adds a node to the set.
+	 * @param n The node
+	 * @return <tt>true</tt> if the node was not already in the set,
+	 * <tt>false</tt> otherwise
+	 */
+	public boolean add(/*@ non_null @*/ Node n)
+	{
+		int id = n.getId();
+		if (id < 0)
+		{
+			if (m_unnumbered == null)
+			{
+				m_unnumbered = Collections.newSetFromMap(new IdentityHashMap<Node,Boolean>());
+			}
+			if (!m_unnumbered.add(n))
+			{
+				return false;
+			}
+			m_size++;
+			return true;
+		}
+		long[] page = getPage(id >>> PAGE_BITS, true);
+		int word = (id & (PAGE_SIZE - 1)) >>> 6;
+		long mask = 1L << id;
+		if ((page[word] & mask) != 0)
+		{
+			return false;
+		}
+		page[word] |= mask;
+		m_size++;
+		return true;
+	}
+	
+	/**
+	 * Determines if a node is in the set.
+	 * @param n The node
+	 * @return <tt>true</tt> if the node is in the set, <tt>false</tt> otherwise
+	 */
+	/*@ pure @*/ public boolean contains(/*@ non_null @*/ Node n)
+	{
+		int id = n.getId();
+		if (id < 0)
+		{
+			return m_unnumbered != null && m_unnumbered.contains(n);
+		}
+		long[] page = getPage(id >>> PAGE_BITS, false);
+		return page != null && (page[(id & (PAGE_SIZE - 1)) >>> 6] & (1L << id)) != 0;
+	}
+	
+	/**
+	 * Removes a node from the set.
+	 * @param n The node
+	 * @return <tt>true</tt> if the node was in the set, <tt>false</tt>
+	 * otherwise
+	 */
+	public boolean remove(/*@ non_null @*/ Node n)
+	{
+		int id = n.getId();
+		if (id < 0)
+		{
+			if (m_unnumbered == null || !m_unnumbered.remove(n))
+			{
+				return false;
+			}
+			m_size--;
+			return true;
+		}
+		long[] page = getPage(id >>> PAGE_BITS, false);
+		int word = (id & (PAGE_SIZE - 1)) >>> 6;
+		long mask = 1L << id;
+		if (page == null || (page[word] & mask) == 0)
+		{
+			return false;
+		}
+		page[word] &= ~mask;
+		m_size--;
+		return true;
+	}
+	
+	/**
+	 * Gets the number of nodes in the set.
+	 * @return The number of nodes
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Determines if the set is empty.
+	 * @return <tt>true</tt> if the set contains no node, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isEmpty()
+	{
+		return m_size == 0;
+	}
+	
+	/**
+	 * Removes all the nodes from the set, and releases its pages.
+	 */
+	public void clear()
+	{
+		m_pages = new long[0][];
+		m_firstPage = -1;
+		m_unnumbered = null;
+		m_size = 0;
+	}
+	
+	/**
+	 * Gets a page of bits.
+	 * @param index The index of the page
+	 * @param create Set to <tt>true</tt> to allocate the page if it does not
+	 * exist
+	 * @return The page, or <tt>null</tt> if it does not exist and
+	 * <tt>create</tt> is <tt>false</tt>
+	 */
+	protected long[] getPage(int index, boolean create)
+	{
+		int pos = index - m_firstPage;
+		if (m_firstPage >= 0 && pos >= 0 && pos < m_pages.length && m_pages[pos] != null)
+		{
+			return m_pages[pos];
+		}
+		if (!create)
+		{
+			return null;
+		}
+		if (m_firstPage < 0)
+		{
+			m_firstPage = index;
+			m_pages = new long[4][];
+			pos = 0;
+		}
+		else if (pos < 0)
+		{
+			// Make room before the first page
+			int shift = Math.max(-pos, m_pages.length);
+			long[][] pages = new long[m_pages.length + shift][];
+			System.arraycopy(m_pages, 0, pages, shift, m_pages.length);
+			m_pages = pages;
+			m_firstPage -= shift;
+			if (m_firstPage < 0)
+			{
+				// Pages before index 0 are never used
+				int unused = -m_firstPage;
+				pages = new long[m_pages.length - unused][];
+				System.arraycopy(m_pages, unused, pages, 0, pages.length);
+				m_pages = pages;
+				m_firstPage = 0;
+			}
+			pos = index - m_firstPage;
+		}
+		else if (pos >= m_pages.length)
+		{
+			long[][] pages = new long[Math.max(pos + 1, m_pages.length * 2)][];
+			System.arraycopy(m_pages, 0, pages, 0, m_pages.length);
+			m_pages = pages;
+		}
+		long[] page = new long[PAGE_SIZE >>> 6];
+		m_pages[pos] = page;
+		return page;
+	}
+}
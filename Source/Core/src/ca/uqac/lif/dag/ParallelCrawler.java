@@ -0,0 +1,354 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Visits every node in a directed acyclic graph, using multiple threads. The
+ * crawler behaves like a {@link Crawler}, except that the frontier of nodes
+ * left to visit is split into batches processed by the tasks of a
+ * {@link ForkJoinPool}. A node is claimed by the first task that inserts it
+ * into a concurrent set of seen nodes, so that {@link #visit(Node)} is still
+ * called exactly once for every reachable node.
+ * <p>
+ * The order in which nodes are visited is not specified, and
+ * {@link #visit(Node)} may be called concurrently from several threads:
+ * descendants of this class must make sure their implementation of this
+ * method is thread-safe. The graph itself must not be modified during the
+ * crawl.
+ */
+public class ParallelCrawler
+{
+	/**
+	 * The default maximum number of nodes in the frontier of a task. A larger
+	 * frontier is halved repeatedly, each half being handed to another task.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	
+	/**
+	 * A flag that determines if the crawler is allowed to take forward
+	 * connections.
+	 */
+	protected boolean m_allowForward;
+	
+	/**
+	 * A flag that determines if the crawler is allowed to take backward
+	 * connections.
+	 */
+	protected boolean m_allowBackward;
+	
+	/**
+	 * The starting point of the crawl.
+	 */
+	/*@ non_null @*/ protected Node m_start;
+	
+	/**
+	 * The pool of threads running the crawl.
+	 */
+	/*@ non_null @*/ protected ForkJoinPool m_pool;
+	
+	/**
+	 * The number of nodes in a frontier above which a task splits its work.
+	 */
+	protected int m_batchSize;
+	
+	/**
+	 * Creates a new parallel crawler running in the common fork-join pool.
+	 * @param start The starting point of the crawl
+	 */
+	public ParallelCrawler(/*@ non_null @*/ Node start)
+	{
+		this(start, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a new parallel crawler.
+	 * @param start The starting point of the crawl
+	 * @param pool The pool of threads running the crawl
+	 */
+	public ParallelCrawler(/*@ non_null @*/ Node start, /*@ non_null @*/ ForkJoinPool pool)
+	{
+		super();
+		m_start = start;
+		m_pool = pool;
+		m_allowForward = true;
+		m_allowBackward = true;
+		m_batchSize = DEFAULT_BATCH_SIZE;
+	}
+	
+	/**
+	 * Visits every node in the graph from the specified starting point. The
+	 * method returns once all nodes have been visited.
+	 */
+	public void crawl()
+	{
+		Set<Node> seen = ConcurrentHashMap.newKeySet();
+		seen.add(m_start);
+		m_pool.invoke(new CrawlTask(Collections.singletonList(m_start), seen));
+	}
+	
+	/**
+	 * Visits a node in the graph. This method is called exactly once for every
+	 * visited node, possibly from several threads at the same time.
+	 * @param n The node to visit
+	 */
+	public void visit(Node n)
+	{
+		// Do nothing. Override.
+	}
+	
+	/**
+	 * Sets if a crawler can traverse edges in the backward direction.
+	 * @param b Set to <tt>true</tt> to allow crawling backwards, <tt>false</tt>
+	 * otherwise
+	 * @return This crawler
+	 */
+	/*@ non_null @*/ public ParallelCrawler allowBackward(boolean b)
+	{
+		m_allowBackward = b;
+		return this;
+	}
+	
+	/**
+	 * Sets if a crawler can traverse edges in the forward direction.
+	 * @param b Set to <tt>true</tt> to allow crawling forward, <tt>false</tt>
+	 * otherwise
+	 * @return This crawler
+	 */
+	/*@ non_null @*/ public ParallelCrawler allowForward(boolean b)
+	{
+		m_allowForward = b;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of nodes in the frontier of a task. A larger
+	 * frontier is halved repeatedly, each half being handed to another task,
+	 * so that a wide level of the graph is spread over all the threads of the
+	 * pool.
+	 * @param size The number of nodes
+	 * @return This crawler
+	 */
+	/*@ non_null @*/ public ParallelCrawler setBatchSize(int size)
+	{
+		m_batchSize = Math.max(1, size);
+		return this;
+	}
+	
+	/**
+	 * A task that visits a batch of nodes and all the nodes reachable from them
+	 * that have not been claimed by another task.
+	 */
+	protected class CrawlTask extends RecursiveAction
+	{
+		/**
+		 * Dummy UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The nodes this task starts from.
+		 */
+		/*@ non_null @*/ protected final List<Node> m_nodes;
+		
+		/**
+		 * The set of nodes that have been claimed by a task.
+		 */
+		/*@ non_null @*/ protected final Set<Node> m_seen;
+		
+		/**
+		 * Creates a new crawl task.
+		 * @param nodes The nodes this task starts from
+		 * @param seen The set of nodes that have been claimed by a task
+		 */
+		public CrawlTask(/*@ non_null @*/ List<Node> nodes, /*@ non_null @*/ Set<Node> seen)
+		{
+			super();
+			m_nodes = nodes;
+			m_seen = seen;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			List<CrawlTask> forked = new ArrayList<>();
+			List<Node> frontier = m_nodes;
+			while (!frontier.isEmpty())
+			{
+				while (frontier.size() > m_batchSize)
+				{
+					// Hand the second half of the frontier to another task, which
+					// splits it again in the same way
+					int middle = frontier.size() / 2;
+					CrawlTask other = new CrawlTask(new ArrayList<>(frontier.subList(middle, frontier.size())), m_seen);
+					other.fork();
+					forked.add(other);
+					frontier = frontier.subList(0, middle);
+				}
+				List<Node> next = new ArrayList<>();
+				for (Node current : frontier)
+				{
+					visit(current);
+					if (m_allowForward)
+					{
+						for (int i = 0; i < current.getOutputArity(); i++)
+						{
+							claim(current.getOutputLinks(i), next);
+						}
+					}
+					if (m_allowBackward)
+					{
+						for (int i = 0; i < current.getInputArity(); i++)
+						{
+							claim(current.getInputLinks(i), next);
+						}
+					}
+				}
+				frontier = next;
+			}
+			for (CrawlTask t : forked)
+			{
+				t.join();
+			}
+		}
+		
+		/**
+		 * Claims the nodes attached to a collection of pins that have not been
+		 * claimed by another task.
+		 * @param pins The pins
+		 * @param next The list where claimed nodes are added
+		 */
+		protected void claim(Iterable<Pin<? extends Node>> pins, List<Node> next)
+		{
+			for (Pin<? extends Node> pin : pins)
+			{
+				Node n = pin.getNode();
+				if (m_seen.add(n))
+				{
+					next.add(n);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A parallel crawler that counts the nodes of a graph.
+	 */
+	public static class NodeCounter extends ParallelCrawler
+	{
+		/**
+		 * The number of nodes visited so far.
+		 */
+		/*@ non_null @*/ protected final LongAdder m_count;
+		
+		/**
+		 * Creates a new node counter.
+		 * @param start The starting point of the crawl
+		 * @param pool The pool of threads running the crawl
+		 */
+		public NodeCounter(/*@ non_null @*/ Node start, /*@ non_null @*/ ForkJoinPool pool)
+		{
+			super(start, pool);
+			m_count = new LongAdder();
+		}
+		
+		/**
+		 * Creates a new node counter running in the common fork-join pool.
+		 * @param start The starting point of the crawl
+		 */
+		public NodeCounter(/*@ non_null @*/ Node start)
+		{
+			this(start, ForkJoinPool.commonPool());
+		}
+		
+		@Override
+		public void visit(Node n)
+		{
+			m_count.increment();
+		}
+		
+		/**
+		 * Gets the number of nodes visited.
+		 * @return The number of nodes
+		 */
+		public long getCount()
+		{
+			return m_count.sum();
+		}
+	}
+	
+	/**
+	 * A parallel crawler that fetches the leaves of a DAG, in the same way as
+	 * {@link LeafCrawler.LeafFetcher}. Like the latter, it only traverses edges
+	 * in the forward direction by default.
+	 */
+	public static class LeafFetcher extends ParallelCrawler
+	{
+		/**
+		 * The set of leaves found so far.
+		 */
+		/*@ non_null @*/ protected final Set<Node> m_leaves;
+		
+		/**
+		 * Creates a new leaf fetcher.
+		 * @param start The starting point of the crawl
+		 * @param pool The pool of threads running the crawl
+		 */
+		public LeafFetcher(/*@ non_null @*/ Node start, /*@ non_null @*/ ForkJoinPool pool)
+		{
+			super(start, pool);
+			m_allowBackward = false;
+			m_leaves = ConcurrentHashMap.newKeySet();
+		}
+		
+		/**
+		 * Creates a new leaf fetcher running in the common fork-join pool.
+		 * @param start The starting point of the crawl
+		 */
+		public LeafFetcher(/*@ non_null @*/ Node start)
+		{
+			this(start, ForkJoinPool.commonPool());
+		}
+		
+		@Override
+		public void visit(Node n)
+		{
+			if (LeafCrawler.isLeaf(n))
+			{
+				m_leaves.add(n);
+			}
+		}
+		
+		/**
+		 * Gets the leaves found by the crawl.
+		 * @return The set of leaves
+		 */
+		/*@ pure non_null @*/ public Set<Node> getLeaves()
+		{
+			return m_leaves;
+		}
+	}
+}
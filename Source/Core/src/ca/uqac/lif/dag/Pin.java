@@ -20,6 +20,10 @@ package ca.uqac.lif.dag;
 /**
  * An object associated to a node, and that can be the incoming or the
  * outgoing extremity of a connection between nodes.
+ * <p>
+ * Nodes create each of their pins once and hand out the same object on every
+ * request. Pins are therefore compared by identity: two distinct pin objects
+ * are never equal, even if they refer to the same index on the same node.
  *
  * @param <T> The type of node the pin is attached to
  * 
@@ -67,23 +71,6 @@ public class Pin<T extends Connectable>
 		return m_node;
 	}
 	
-	@Override
-	public int hashCode()
-	{
-		return m_node.hashCode() * m_index;
-	}
-	
-	@Override
-	public boolean equals(Object o)
-	{
-		if (!(o instanceof Pin))
-		{
-			return false;
-		}
-		Pin<?> p = (Pin<?>) o;
-		return m_index == p.m_index && m_node.equals(p.m_node);
-	}
-	
 	@Override
 	public String toString()
 	{
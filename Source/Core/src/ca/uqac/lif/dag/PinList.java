@@ -0,0 +1,345 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A compact list of pins, used by a {@link Node} to store the links attached
+ * to one of its pins. The list keeps its elements in a plain array that is
+ * only allocated when the first link is added, and that grows one slot at a
+ * time for the first few elements. This makes the overwhelmingly common
+ * cases of a pin with no link or with a single link cheap in memory, while
+ * still behaving as a regular mutable {@link java.util.List}.
+ * <p>
+ * Since pins are compared by identity, membership tests only compare
+ * references. When a list grows beyond a few elements, it additionally
+ * maintains an index counting the occurrences of each pin, so that
+ * {@link #contains(Object)} on pins with many links does not degrade into a
+ * linear scan. Removing a pin that occurs only once searches for it from the
+ * end of the list, as links are most often removed in the reverse order of
+ * their creation.
+ */
+public class PinList extends AbstractList<Pin<? extends Node>> implements RandomAccess
+{
+	/**
+	 * A shared empty array, used by all lists that contain no element.
+	 */
+	private static final Pin<?>[] EMPTY = new Pin<?>[0];
+	
+	/**
+	 * The empty array of {@link #NO_LINKS}. Since {@link #ensureCapacity(int)}
+	 * refuses to replace it, no pin can be added to this list.
+	 */
+	private static final Pin<?>[] READ_ONLY = new Pin<?>[0];
+	
+	/**
+	 * A shared empty list that cannot be modified, returned by nodes for the
+	 * pins that have no link.
+	 */
+	/*@ non_null @*/ public static final PinList NO_LINKS = new PinList(READ_ONLY);
+	
+	/**
+	 * The number of elements above which the list maintains an index of the
+	 * position of its pins.
+	 */
+	protected static final int INDEX_THRESHOLD = 8;
+	
+	/**
+	 * The array containing the pins. Only the first {@link #m_size} elements
+	 * of the array are meaningful.
+	 */
+	/*@ non_null @*/ protected Pin<?>[] m_pins;
+	
+	/**
+	 * The number of pins in the list.
+	 */
+	protected int m_size;
+	
+	/**
+	 * A map associating each pin of the list with its number of occurrences.
+	 * This map is only created once the list contains more than
+	 * {@link #INDEX_THRESHOLD} elements.
+	 */
+	/*@ null @*/ protected Map<Pin<?>,Integer> m_counts;
+	
+	/**
+	 * The number of times the contents of the list have changed. Contrary to
+	 * {@link #modCount}, this number also counts the pins replaced by
+	 * {@link #set(int, Pin)}.
+	 */
+	protected int m_version;
+	
+	/**
+	 * Creates a new empty list of pins.
+	 */
+	public PinList()
+	{
+		this(EMPTY);
+	}
+	
+	/**
+	 * Creates a new empty list of pins.
+	 * @param pins The empty array used by the list
+	 */
+	private PinList(/*@ non_null @*/ Pin<?>[] pins)
+	{
+		super();
+		m_pins = pins;
+		m_size = 0;
+		m_version = 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	/*@ pure non_null @*/ public Pin<? extends Node> get(int index)
+	{
+		if (index < 0 || index >= m_size)
+		{
+			throw new IndexOutOfBoundsException();
+		}
+		return (Pin<? extends Node>) m_pins[index];
+	}
+	
+	@Override
+	/*@ pure @*/ public int size()
+	{
+		return m_size;
+	}
+	
+	@Override
+	public boolean add(/*@ non_null @*/ Pin<? extends Node> pin)
+	{
+		ensureCapacity(m_size + 1);
+		m_pins[m_size++] = pin;
+		modCount++;
+		m_version++;
+		if (m_counts != null)
+		{
+			m_counts.merge(pin, 1, Integer::sum);
+		}
+		else if (m_size > INDEX_THRESHOLD)
+		{
+			rebuildIndex();
+		}
+		return true;
+	}
+	
+	@Override
+	public void add(int index, /*@ non_null @*/ Pin<? extends Node> pin)
+	{
+		if (index < 0 || index > m_size)
+		{
+			throw new IndexOutOfBoundsException();
+		}
+		ensureCapacity(m_size + 1);
+		System.arraycopy(m_pins, index, m_pins, index + 1, m_size - index);
+		m_pins[index] = pin;
+		m_size++;
+		modCount++;
+		m_version++;
+		if (m_counts != null)
+		{
+			m_counts.merge(pin, 1, Integer::sum);
+		}
+		else if (m_size > INDEX_THRESHOLD)
+		{
+			rebuildIndex();
+		}
+	}
+	
+	@Override
+	public Pin<? extends Node> set(int index, /*@ non_null @*/ Pin<? extends Node> pin)
+	{
+		Pin<? extends Node> old = get(index);
+		m_pins[index] = pin;
+		m_version++;
+		if (m_counts != null)
+		{
+			decrementCount(old);
+			m_counts.merge(pin, 1, Integer::sum);
+		}
+		return old;
+	}
+	
+	@Override
+	public Pin<? extends Node> remove(int index)
+	{
+		Pin<? extends Node> old = get(index);
+		int to_move = m_size - index - 1;
+		if (to_move > 0)
+		{
+			System.arraycopy(m_pins, index + 1, m_pins, index, to_move);
+		}
+		m_pins[--m_size] = null;
+		modCount++;
+		m_version++;
+		if (m_counts != null)
+		{
+			decrementCount(old);
+		}
+		return old;
+	}
+	
+	/**
+	 * Gets the number of times the contents of the list have changed. Two
+	 * calls to this method return different values if the list was modified
+	 * in between.
+	 * @return The number of changes
+	 */
+	/*@ pure @*/ public int getVersion()
+	{
+		return m_version;
+	}
+	
+	@Override
+	public int indexOf(Object o)
+	{
+		if (m_counts != null && !m_counts.containsKey(o))
+		{
+			return -1;
+		}
+		for (int i = 0; i < m_size; i++)
+		{
+			if (m_pins[i] == o)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	@Override
+	public int lastIndexOf(Object o)
+	{
+		if (m_counts != null && !m_counts.containsKey(o))
+		{
+			return -1;
+		}
+		for (int i = m_size - 1; i >= 0; i--)
+		{
+			if (m_pins[i] == o)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	@Override
+	public boolean contains(Object o)
+	{
+		if (m_counts != null)
+		{
+			return m_counts.containsKey(o);
+		}
+		return indexOf(o) >= 0;
+	}
+	
+	@Override
+	public boolean remove(Object o)
+	{
+		int index;
+		if (m_counts == null)
+		{
+			index = indexOf(o);
+		}
+		else
+		{
+			Integer count = m_counts.get(o);
+			if (count == null)
+			{
+				return false;
+			}
+			// When the pin occurs once, its first occurrence is also its last
+			index = count == 1 ? lastIndexOf(o) : indexOf(o);
+		}
+		if (index < 0)
+		{
+			return false;
+		}
+		remove(index);
+		return true;
+	}
+	
+	@Override
+	public void clear()
+	{
+		if (m_size > 0)
+		{
+			Arrays.fill(m_pins, 0, m_size, null);
+			m_size = 0;
+			modCount++;
+			m_version++;
+		}
+		m_counts = null;
+	}
+	
+	/**
+	 * Makes sure the internal array can hold a given number of pins. The array
+	 * grows by one slot while it is small (most pins have a single link), and
+	 * then doubles its size.
+	 * @param capacity The number of pins
+	 */
+	protected void ensureCapacity(int capacity)
+	{
+		if (capacity <= m_pins.length)
+		{
+			return;
+		}
+		if (m_pins == READ_ONLY)
+		{
+			throw new UnsupportedOperationException();
+		}
+		int new_capacity = m_pins.length < 4 ? m_pins.length + 1 : m_pins.length * 2;
+		m_pins = Arrays.copyOf(m_pins, Math.max(capacity, new_capacity));
+	}
+	
+	/**
+	 * Recomputes the index of pin occurrences from scratch.
+	 */
+	protected void rebuildIndex()
+	{
+		m_counts = new IdentityHashMap<>(2 * m_size);
+		for (int i = 0; i < m_size; i++)
+		{
+			m_counts.merge(m_pins[i], 1, Integer::sum);
+		}
+	}
+	
+	/**
+	 * Decrements the number of occurrences of a pin in the index.
+	 * @param pin The pin
+	 */
+	protected void decrementCount(Pin<?> pin)
+	{
+		Integer count = m_counts.get(pin);
+		if (count == null || count <= 1)
+		{
+			m_counts.remove(pin);
+		}
+		else
+		{
+			m_counts.put(pin, count - 1);
+		}
+	}
+}
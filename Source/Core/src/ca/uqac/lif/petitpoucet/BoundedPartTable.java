@@ -0,0 +1,156 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link PartTable} holding at most a fixed number of values. When a new
+ * value is put into a full table, the value that was least recently read or
+ * written is removed. As in other part tables, parts are compared by
+ * identity and subjects with their <tt>equals</tt> method.
+ * @param <V> The type of the values
+ */
+public class BoundedPartTable<V> extends PartTable<V>
+{
+	/**
+	 * The values of the table, in the order in which they were last used.
+	 */
+	/*@ non_null @*/ protected final LinkedHashMap<Key,V> m_values;
+	
+	/**
+	 * The maximum number of values in the table.
+	 */
+	protected final int m_capacity;
+	
+	/**
+	 * Creates a new empty table.
+	 * @param capacity The maximum number of values in the table
+	 */
+	public BoundedPartTable(int capacity)
+	{
+		super();
+		m_capacity = capacity;
+		m_values = new LinkedHashMap<Key,V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,V> eldest)
+			{
+				return size() > m_capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Gets the maximum number of values in the table.
+	 * @return The capacity
+	 */
+	/*@ pure @*/ public int getCapacity()
+	{
+		return m_capacity;
+	}
+	
+	@Override
+	public V get(Part p, Object subject)
+	{
+		return m_values.get(new Key(p, subject));
+	}
+	
+	@Override
+	public void put(Part p, Object subject, V value)
+	{
+		m_values.put(new Key(p, subject), value);
+	}
+	
+	@Override
+	public int size()
+	{
+		return m_values.size();
+	}
+	
+	@Override
+	public List<V> values()
+	{
+		return new ArrayList<V>(m_values.values());
+	}
+	
+	@Override
+	public void clear()
+	{
+		m_values.clear();
+	}
+	
+	@Override
+	protected void copyTo(PartTable<V> table)
+	{
+		for (Map.Entry<Key,V> e : m_values.entrySet())
+		{
+			table.put(e.getKey().m_part, e.getKey().m_subject, e.getValue());
+		}
+	}
+	
+	/**
+	 * The key of a value, made of a canonical part compared by identity and
+	 * of a subject.
+	 */
+	protected static class Key
+	{
+		/**
+		 * The canonical part.
+		 */
+		/*@ non_null @*/ protected final Part m_part;
+		
+		/**
+		 * The subject.
+		 */
+		protected final Object m_subject;
+		
+		/**
+		 * Creates a new key.
+		 * @param p The canonical part
+		 * @param subject The subject
+		 */
+		public Key(/*@ non_null @*/ Part p, Object subject)
+		{
+			super();
+			m_part = p;
+			m_subject = subject;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(m_part) * 31 + (m_subject == null ? 0 : m_subject.hashCode());
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key))
+			{
+				return false;
+			}
+			Key k = (Key) o;
+			return m_part == k.m_part && (m_subject == k.m_subject || (m_subject != null && m_subject.equals(k.m_subject)));
+		}
+	}
+}
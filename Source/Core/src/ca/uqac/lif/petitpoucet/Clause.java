@@ -17,6 +17,7 @@
  */
 package ca.uqac.lif.petitpoucet;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
@@ -26,6 +27,7 @@ import java.util.Spliterator;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
+import ca.uqac.lif.dag.ImmutableMathSet;
 import ca.uqac.lif.dag.MathSet;
 import ca.uqac.lif.petitpoucet.NodeFactory.ObjectPart;
 
@@ -34,15 +36,54 @@ import ca.uqac.lif.petitpoucet.NodeFactory.ObjectPart;
  * clause can be seen as the "conjunction" of all the object part it contains,
  * i.e. the parts taken together. In turn, a collection of clauses can be
  * seen as different alternatives.
+ * <p>
+ * The parts are kept in an {@link ImmutableMathSet}, so that the hash code
+ * of a clause is not recomputed every time the clause is put in a set, and
+ * that merging two clauses shares the parts of one of them when it already
+ * contains those of the other. The methods that modify a clause replace this
+ * set by a new one; the iterator of a clause does not support removal.
+ * Since these methods never modify the set itself, a {@linkplain
+ * #Clause(Clause) copy} of a clause can share it, and the clauses computed
+ * internally can be shared between the sets of clauses of several nodes.
+ * The methods that return clauses to the caller, such as
+ * {@link GraphUtilities#asDnf(ca.uqac.lif.dag.Node) asDnf}, return copies in
+ * a new mutable set, which the caller is free to modify.
+ * <p>
+ * The clauses produced by the conversion of a graph into clauses are
+ * instead represented by the numbers given to their parts by a
+ * {@link PartIndex}, as a sorted array of these numbers. Merging two such
+ * clauses, comparing them and checking if one contains the other then only
+ * walk through arrays of integers whose length is the size of the clauses,
+ * whatever the number of parts in the index. The set of parts is only built
+ * if it is requested, for example when the clause is iterated over.
  * 
  * @author Sylvain Hallé
  */
 public class Clause implements Set<ObjectPart>
 {
 	/**
-	 * The parts.
+	 * The parts, or <tt>null</tt> if they have not been decoded from
+	 * {@link #m_ids} yet.
 	 */
-	protected final Set<ObjectPart> m_parts;
+	/*@ null @*/ protected ImmutableMathSet<ObjectPart> m_parts;
+	
+	/**
+	 * The index giving a number to the parts, or <tt>null</tt> if the clause
+	 * is only represented by its set of parts.
+	 */
+	/*@ null @*/ protected PartIndex m_index;
+	
+	/**
+	 * The numbers of the parts in {@link #m_index}, sorted in increasing order
+	 * and without duplicates, or <tt>null</tt> if the clause is only
+	 * represented by its set of parts.
+	 */
+	/*@ null @*/ protected int[] m_ids;
+	
+	/**
+	 * The hash code of the clause when it is represented by {@link #m_ids}.
+	 */
+	protected int m_hash;
 	
 	/**
 	 * Distributes the content of two lists of clauses.
@@ -50,9 +91,9 @@ public class Clause implements Set<ObjectPart>
 	 * @param list2 The second list of clauses
 	 * @return The distributed list of clauses
 	 */
-	/*@ non_null @*/ protected static Set<Clause> distributePair(/*@ non_null @*/ Set<Clause> list1, /*@ non_null @*/ Set<Clause> list2)
+	/*@ non_null @*/ protected static ImmutableMathSet<Clause> distributePair(/*@ non_null @*/ Set<Clause> list1, /*@ non_null @*/ Set<Clause> list2)
 	{
-		Set<Clause> distributed = new MathSet<Clause>();
+		List<Clause> distributed = new ArrayList<Clause>(list1.size() * list2.size());
 		for (Clause c1 : list1)
 		{
 			for (Clause c2 : list2)
@@ -60,20 +101,33 @@ public class Clause implements Set<ObjectPart>
 				distributed.add(c1.mergeWith(c2));
 			}
 		}
-		return distributed;
+		// Duplicate clauses are removed when the set is created
+		return new ImmutableMathSet<Clause>(distributed);
 	}
 	
+	/**
+	 * Distributes the content of lists of clauses.
+	 * @param lists The lists of clauses
+	 * @return A new mutable set with the distributed clauses
+	 */
 	/*@ non_null @*/ public static Set<Clause> distribute(List<Set<Clause>> lists)
+	{
+		return copyOf(distributeShared(lists));
+	}
+	
+	/**
+	 * Distributes the content of lists of clauses, without copying the
+	 * clauses of the result.
+	 * @param lists The lists of clauses
+	 * @return The distributed clauses, which may share clauses with the lists
+	 */
+	/*@ non_null @*/ protected static ImmutableMathSet<Clause> distributeShared(List<? extends Set<Clause>> lists)
 	{
 		if (lists.isEmpty())
 		{
-			return new MathSet<Clause>();
+			return new ImmutableMathSet<Clause>();
 		}
-		if (lists.size() == 1)
-		{
-			return lists.get(0);
-		}
-		Set<Clause> old_list = lists.get(0);
+		ImmutableMathSet<Clause> old_list = new ImmutableMathSet<Clause>(lists.get(0));
 		for (int i = 1; i < lists.size(); i++)
 		{
 			old_list = distributePair(old_list, lists.get(i));
@@ -81,6 +135,23 @@ public class Clause implements Set<ObjectPart>
 		return old_list;
 	}
 	
+	/**
+	 * Copies clauses into a new mutable set. Each clause is copied as well,
+	 * so that modifying the set or its clauses does not affect the original
+	 * clauses.
+	 * @param clauses The clauses
+	 * @return The new set
+	 */
+	/*@ non_null @*/ public static Set<Clause> copyOf(/*@ non_null @*/ Collection<Clause> clauses)
+	{
+		Set<Clause> copy = new MathSet<Clause>();
+		for (Clause c : clauses)
+		{
+			copy.add(new Clause(c));
+		}
+		return copy;
+	}
+	
 	@SafeVarargs
 	/*@ non_null @*/ public static Set<Clause> distribute(Set<Clause> ... lists)
 	{
@@ -92,13 +163,57 @@ public class Clause implements Set<ObjectPart>
 	 * @param nodes The parts
 	 */
 	public Clause(ObjectPart ... nodes)
+	{
+		this(new ImmutableMathSet<ObjectPart>(Arrays.asList(nodes)));
+	}
+	
+	/**
+	 * Creates a copy of a clause. The copy shares the parts of the original,
+	 * which are never modified in place.
+	 * @param c The clause to copy
+	 */
+	public Clause(/*@ non_null @*/ Clause c)
 	{
 		super();
-		m_parts = new MathSet<ObjectPart>();
-		for (ObjectPart pn : nodes)
-		{
-			m_parts.add(pn);
-		}
+		m_parts = c.m_parts;
+		m_index = c.m_index;
+		m_ids = c.m_ids;
+		m_hash = c.m_hash;
+	}
+	
+	/**
+	 * Creates a new clause from a set of parts.
+	 * @param parts The parts
+	 */
+	protected Clause(/*@ non_null @*/ ImmutableMathSet<ObjectPart> parts)
+	{
+		super();
+		m_parts = parts;
+	}
+	
+	/**
+	 * Creates a new clause made of a single part of an index.
+	 * @param index The index
+	 * @param id The number of the part in the index
+	 */
+	protected Clause(/*@ non_null @*/ PartIndex index, int id)
+	{
+		this(index, new int[] {id}, index.hashOf(id));
+	}
+	
+	/**
+	 * Creates a new clause from the numbers of its parts in an index.
+	 * @param index The index
+	 * @param ids The numbers of the parts, sorted in increasing order and
+	 * without duplicates
+	 * @param hash The sum of the hash codes of these parts
+	 */
+	protected Clause(/*@ non_null @*/ PartIndex index, /*@ non_null @*/ int[] ids, int hash)
+	{
+		super();
+		m_index = index;
+		m_ids = ids;
+		m_hash = hash;
 	}
 	
 	/**
@@ -109,10 +224,70 @@ public class Clause implements Set<ObjectPart>
 	 */
 	/*@ pure non_null @*/ public Clause mergeWith(Clause c)
 	{
-		Clause merged = new Clause();
-		merged.addAll(this);
-		merged.addAll(c);
-		return merged;
+		if (sharesIndexWith(c))
+		{
+			int[] a = m_ids, b = c.m_ids;
+			int[] ids = new int[a.length + b.length];
+			int i = 0, j = 0, size = 0, hash = m_hash;
+			while (i < a.length || j < b.length)
+			{
+				if (j == b.length || (i < a.length && a[i] < b[j]))
+				{
+					ids[size++] = a[i++];
+				}
+				else if (i == a.length || b[j] < a[i])
+				{
+					hash += m_index.hashOf(b[j]);
+					ids[size++] = b[j++];
+				}
+				else
+				{
+					ids[size++] = a[i++];
+					j++;
+				}
+			}
+			if (size == a.length)
+			{
+				return new Clause(m_index, a, m_hash);
+			}
+			if (size == b.length)
+			{
+				return new Clause(m_index, b, c.m_hash);
+			}
+			return new Clause(m_index, Arrays.copyOf(ids, size), hash);
+		}
+		return new Clause(getParts().union(c.getParts()));
+	}
+	
+	/**
+	 * Gets the set of parts of this clause, decoding it from the numbers of
+	 * its parts if needed.
+	 * @return The set of parts
+	 */
+	/*@ non_null @*/ protected ImmutableMathSet<ObjectPart> getParts()
+	{
+		if (m_parts == null)
+		{
+			List<ObjectPart> parts = new ArrayList<ObjectPart>(m_ids.length);
+			for (int id : m_ids)
+			{
+				parts.add(m_index.get(id));
+			}
+			m_parts = new ImmutableMathSet<ObjectPart>(parts);
+		}
+		return m_parts;
+	}
+	
+	/**
+	 * Determines if this clause and another one are both represented by the
+	 * numbers of their parts in the same index.
+	 * @param c The other clause
+	 * @return <tt>true</tt> if the clauses share their index, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ protected boolean sharesIndexWith(/*@ non_null @*/ Clause c)
+	{
+		return m_ids != null && c.m_ids != null && m_index == c.m_index;
 	}
 	
 	/**
@@ -123,7 +298,7 @@ public class Clause implements Set<ObjectPart>
 	/*@ pure non_null @*/ public Set<Object> mentionedObjects()
 	{
 		Set<Object> objects = new MathSet<Object>();
-		for (ObjectPart pn : m_parts)
+		for (ObjectPart pn : getParts())
 		{
 			objects.add(pn.m_subject);
 		}
@@ -138,125 +313,167 @@ public class Clause implements Set<ObjectPart>
 			return false;
 		}
 		Clause c = (Clause) o;
-		if (c.size() != size())
+		if (sharesIndexWith(c))
 		{
-			return false;
+			return m_hash == c.m_hash && Arrays.equals(m_ids, c.m_ids);
 		}
-		for (ObjectPart pn : m_parts)
-		{
-			if (!c.contains(pn))
-			{
-				return false;
-			}
-		}
-		return true;
+		return hashCode() == c.hashCode() && getParts().equals(c.getParts());
 	}
 
 	@Override
 	public int hashCode()
 	{
-		int h = 0;
-		for (ObjectPart pn : m_parts)
-		{
-			h += pn.hashCode();
-		}
-		return h;
+		return m_ids != null ? m_hash : m_parts.hashCode();
 	}
 
 	@Override
 	public void forEach(Consumer<? super ObjectPart> action)
 	{
-		m_parts.forEach(action);
+		getParts().forEach(action);
 	}
 
 	@Override
 	public int size()
 	{
-		return m_parts.size();
+		return m_ids != null ? m_ids.length : m_parts.size();
 	}
 
 	@Override
 	public boolean isEmpty()
 	{
-		return m_parts.isEmpty();
+		return m_ids != null ? m_ids.length == 0 : m_parts.isEmpty();
 	}
 
 	@Override
 	public boolean contains(Object o)
 	{
+		if (m_ids != null)
+		{
+			int id = m_index.find(o);
+			return id >= 0 && Arrays.binarySearch(m_ids, id) >= 0;
+		}
 		return m_parts.contains(o);
 	}
 
 	@Override
 	public Iterator<ObjectPart> iterator()
 	{
-		return m_parts.iterator();
+		return getParts().iterator();
 	}
 
 	@Override
 	public Object[] toArray()
 	{
-		return m_parts.toArray();
+		return getParts().toArray();
 	}
 
 	@Override
 	public <T> T[] toArray(T[] a)
 	{
-		return m_parts.toArray(a);
+		return getParts().toArray(a);
 	}
 
 	@Override
 	public boolean add(ObjectPart e)
 	{
-		return m_parts.add(e);
+		return replaceParts(getParts().with(e));
 	}
 
 	@Override
 	public boolean remove(Object o)
 	{
-		return m_parts.remove(o);
+		return replaceParts(getParts().without(o));
 	}
 
 	@Override
 	public boolean containsAll(Collection<?> c)
 	{
-		return m_parts.containsAll(c);
+		if (c instanceof Clause && sharesIndexWith((Clause) c))
+		{
+			int[] ids = ((Clause) c).m_ids;
+			if (ids.length > m_ids.length)
+			{
+				return false;
+			}
+			// Both arrays are sorted: look for each number after the previous one
+			int pos = 0;
+			for (int id : ids)
+			{
+				while (pos < m_ids.length && m_ids[pos] < id)
+				{
+					pos++;
+				}
+				if (pos == m_ids.length || m_ids[pos] != id)
+				{
+					return false;
+				}
+				pos++;
+			}
+			return true;
+		}
+		for (Object o : c)
+		{
+			if (!contains(o))
+			{
+				return false;
+			}
+		}
+		return true;
 	}
 
 	@Override
 	public boolean addAll(Collection<? extends ObjectPart> c)
 	{
-		return m_parts.addAll(c);
+		return replaceParts(getParts().union(new ImmutableMathSet<ObjectPart>(c)));
 	}
 
 	@Override
 	public boolean removeAll(Collection<?> c)
 	{
-		return m_parts.removeAll(c);
+		return replaceParts(getParts().filter(p -> !c.contains(p)));
 	}
 
 	@Override
 	public boolean retainAll(Collection<?> c)
 	{
-		return m_parts.retainAll(c);
+		return replaceParts(getParts().filter(p -> c.contains(p)));
 	}
 
 	@Override
 	public boolean removeIf(Predicate<? super ObjectPart> filter)
 	{
-		return m_parts.removeIf(filter);
+		return replaceParts(getParts().filter(p -> !filter.test(p)));
 	}
 
 	@Override
 	public void clear()
 	{
-		m_parts.clear();
+		replaceParts(new ImmutableMathSet<ObjectPart>());
 	}
 
 	@Override
 	public Spliterator<ObjectPart> spliterator()
 	{
-		return m_parts.spliterator();
+		return getParts().spliterator();
+	}
+	
+	/**
+	 * Replaces the set of parts of this clause. The clause is then no longer
+	 * represented by the numbers of its parts.
+	 * @param parts The new set of parts
+	 * @return <tt>true</tt> if the new set is different from the current one,
+	 * <tt>false</tt> otherwise
+	 */
+	protected boolean replaceParts(/*@ non_null @*/ ImmutableMathSet<ObjectPart> parts)
+	{
+		if (parts == m_parts)
+		{
+			return false;
+		}
+		m_parts = parts;
+		m_index = null;
+		m_ids = null;
+		return true;
 	}
 	
 	@Override
@@ -265,7 +482,7 @@ public class Clause implements Set<ObjectPart>
 		StringBuilder out = new StringBuilder();
 		out.append("{");
 		boolean first = true;
-		for (ObjectPart pn : m_parts)
+		for (ObjectPart pn : getParts())
 		{
 			if (first)
 			{
@@ -0,0 +1,635 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+import ca.uqac.lif.dag.ImmutableMathSet;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.Pin;
+import ca.uqac.lif.petitpoucet.NodeFactory.ObjectPart;
+
+/**
+ * Produces the clauses of the disjunctive normal form of a lineage graph by
+ * increasing weight, where the weight of a clause is the sum of the weights
+ * of its distinct parts. With a weight of 1 for every part, which is the
+ * default, the clauses come by increasing size. The clauses are the same as
+ * those of {@link GraphUtilities#asDnf(Node)}, but the search only builds
+ * the clauses it needs: getting the <i>k</i> smallest explanations of an
+ * output therefore does not require enumerating all of them.
+ * <p>
+ * The search is a best-first (A*) search over partial clauses. A partial
+ * clause is made of the parts chosen so far and of a stack of nodes that
+ * remain to be explored; leaves and "and" nodes at the top of this stack are
+ * expanded right away, and each "or" node gives one successor per child. The
+ * partial clauses are explored in increasing order of a lower bound on the
+ * weight of the clauses they lead to, so that a complete clause is returned
+ * only when no other partial clause can lead to a lighter one.
+ * <p>
+ * The lower bound accounts for the parts shared by several branches of the
+ * graph. The weight of each part is split evenly among the paths that lead
+ * to it from the root; the bound of a node is then the sum of the bounds of
+ * its children for an "and" node, and their minimum for an "or" node. Since
+ * a clause reaches each of its parts through at most that many paths, the
+ * bound never exceeds the weight of a clause, and it is usually close to it
+ * when the branches of an "and" node overlap. The bound of a partial clause
+ * is the weight of its parts, plus the bounds of the nodes that remain to be
+ * explored, in which the parts already chosen count for nothing; this
+ * favors the partial clauses that reuse the parts they already have.
+ * <p>
+ * Weights must be non-negative. A clause that is equal to one already
+ * returned is skipped.
+ */
+public class ClauseSearch implements Iterator<Clause>
+{
+	/**
+	 * The kind of a leaf part node.
+	 */
+	protected static final byte LEAF = 0;
+	
+	/**
+	 * The kind of an "and" node.
+	 */
+	protected static final byte AND = 1;
+	
+	/**
+	 * The kind of an "or" node, or of any other node that is not a leaf.
+	 */
+	protected static final byte OR = 2;
+	
+	/**
+	 * The kind of a node that has no clause, such as a leaf that is not a
+	 * part node.
+	 */
+	protected static final byte DEAD = 3;
+	
+	/**
+	 * The kind of each node, indexed by its number.
+	 */
+	/*@ non_null @*/ protected final byte[] m_kinds;
+	
+	/**
+	 * The numbers of the children of each node.
+	 */
+	/*@ non_null @*/ protected final int[][] m_children;
+	
+	/**
+	 * The object part of each leaf, or <tt>null</tt> for other nodes.
+	 */
+	/*@ non_null @*/ protected final ObjectPart[] m_parts;
+	
+	/**
+	 * The weight of the part of each leaf.
+	 */
+	/*@ non_null @*/ protected final double[] m_weights;
+	
+	/**
+	 * The share of the weight of the part of each leaf that is counted each
+	 * time a partial clause goes through this leaf.
+	 */
+	/*@ non_null @*/ protected final double[] m_shares;
+	
+	/**
+	 * The lower bound on the weight of the clauses of each node.
+	 */
+	/*@ non_null @*/ protected final double[] m_bounds;
+	
+	/**
+	 * The bounds computed for the nodes that remain to be explored by the
+	 * partial clause being created, which are valid only for the nodes whose
+	 * entry in {@link #m_stamps} is equal to {@link #m_stamp}.
+	 */
+	/*@ non_null @*/ protected final double[] m_remaining;
+	
+	/**
+	 * The stamp of the last computation of the bound of each node.
+	 */
+	/*@ non_null @*/ protected final int[] m_stamps;
+	
+	/**
+	 * The stamp of the current computation of bounds.
+	 */
+	protected int m_stamp;
+	
+	/**
+	 * The stack of nodes used to compute bounds without recursion.
+	 */
+	/*@ non_null @*/ protected int[] m_stack;
+	
+	/**
+	 * The partial clauses that remain to be explored.
+	 */
+	/*@ non_null @*/ protected final PriorityQueue<State> m_queue;
+	
+	/**
+	 * The clauses returned so far.
+	 */
+	/*@ non_null @*/ protected final Set<Clause> m_returned;
+	
+	/**
+	 * The next state to return, or <tt>null</tt> if it has not been found
+	 * yet.
+	 */
+	/*@ null @*/ protected State m_next;
+	
+	/**
+	 * The weight of the clause returned last.
+	 */
+	protected double m_lastWeight;
+	
+	/**
+	 * The number of partial clauses created so far.
+	 */
+	protected long m_states;
+	
+	/**
+	 * Creates a new search that gives a weight of 1 to every part.
+	 * @param root The root of the lineage graph
+	 */
+	public ClauseSearch(/*@ non_null @*/ Node root)
+	{
+		this(root, p -> 1);
+	}
+	
+	/**
+	 * Creates a new search.
+	 * @param root The root of the lineage graph
+	 * @param weight A function giving the weight of each part, which must be
+	 * non-negative
+	 */
+	public ClauseSearch(/*@ non_null @*/ Node root, /*@ non_null @*/ ToDoubleFunction<ObjectPart> weight)
+	{
+		super();
+		List<Node> nodes = postOrder(root);
+		Map<Node,Integer> numbers = new IdentityHashMap<Node,Integer>();
+		for (Node n : nodes)
+		{
+			numbers.put(n, numbers.size());
+		}
+		int size = nodes.size();
+		m_kinds = new byte[size];
+		m_children = new int[size][];
+		m_parts = new ObjectPart[size];
+		m_weights = new double[size];
+		m_shares = new double[size];
+		m_bounds = new double[size];
+		Map<ObjectPart,Double> part_weights = new HashMap<ObjectPart,Double>();
+		for (int i = 0; i < size; i++)
+		{
+			Node n = nodes.get(i);
+			List<Integer> children = new ArrayList<Integer>();
+			for (int j = 0; j < n.getOutputArity(); j++)
+			{
+				for (Pin<? extends Node> pin : n.getOutputLinks(j))
+				{
+					children.add(numbers.get(pin.getNode()));
+				}
+			}
+			m_children[i] = new int[children.size()];
+			for (int j = 0; j < children.size(); j++)
+			{
+				m_children[i][j] = children.get(j);
+			}
+			if (!children.isEmpty())
+			{
+				m_kinds[i] = n instanceof AndNode ? AND : OR;
+			}
+			else if (n instanceof PartNode)
+			{
+				PartNode pn = (PartNode) n;
+				ObjectPart op = new ObjectPart(pn.getPart(), pn.getSubject());
+				Double w = part_weights.get(op);
+				if (w == null)
+				{
+					w = weight.applyAsDouble(op);
+					if (!(w >= 0))
+					{
+						throw new IllegalArgumentException("Part " + op + " has a negative weight");
+					}
+					part_weights.put(op, w);
+				}
+				m_kinds[i] = LEAF;
+				m_parts[i] = op;
+				m_weights[i] = w;
+			}
+			else
+			{
+				m_kinds[i] = DEAD;
+			}
+		}
+		// Count the paths from the root to each node, parents first
+		double[] paths = new double[size];
+		paths[size - 1] = 1;
+		Map<ObjectPart,Double> part_paths = new HashMap<ObjectPart,Double>();
+		for (int i = size - 1; i >= 0; i--)
+		{
+			for (int c : m_children[i])
+			{
+				paths[c] += paths[i];
+			}
+			if (m_kinds[i] == LEAF)
+			{
+				part_paths.merge(m_parts[i], paths[i], Double::sum);
+			}
+		}
+		// Compute the bounds, children first
+		for (int i = 0; i < size; i++)
+		{
+			switch (m_kinds[i])
+			{
+			case LEAF:
+				m_shares[i] = m_weights[i] == 0 ? 0 : m_weights[i] / part_paths.get(m_parts[i]);
+				m_bounds[i] = m_shares[i];
+				break;
+			case AND:
+				double sum = 0;
+				for (int c : m_children[i])
+				{
+					sum += m_bounds[c];
+				}
+				m_bounds[i] = sum;
+				break;
+			case OR:
+				double min = Double.POSITIVE_INFINITY;
+				for (int c : m_children[i])
+				{
+					min = Math.min(min, m_bounds[c]);
+				}
+				m_bounds[i] = min;
+				break;
+			default:
+				m_bounds[i] = Double.POSITIVE_INFINITY;
+			}
+		}
+		m_remaining = new double[size];
+		m_stamps = new int[size];
+		m_stamp = 0;
+		m_stack = new int[64];
+		m_queue = new PriorityQueue<State>(new StateComparator());
+		m_returned = new HashSet<Clause>();
+		m_lastWeight = 0;
+		m_states = 0;
+		enqueue(new ImmutableMathSet<ObjectPart>(), 0, 0, new Pending(size - 1, null, m_bounds[size - 1]));
+	}
+	
+	/**
+	 * Gets the weight of the clause returned last by {@link #next()}.
+	 * @return The weight
+	 */
+	/*@ pure @*/ public double getLastWeight()
+	{
+		return m_lastWeight;
+	}
+	
+	/**
+	 * Gets the number of partial clauses created by the search so far.
+	 * @return The number of partial clauses
+	 */
+	/*@ pure @*/ public long getStateCount()
+	{
+		return m_states;
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		while (m_next == null && !m_queue.isEmpty())
+		{
+			State s = m_queue.poll();
+			if (s.m_pending == null)
+			{
+				if (m_returned.add(new Clause(s.m_parts)))
+				{
+					m_next = s;
+				}
+				continue;
+			}
+			// The top of the stack is an "or" node: one successor per child
+			Pending rest = s.m_pending.m_next;
+			double rest_bound = rest == null ? 0 : rest.m_bound;
+			for (int c : m_children[s.m_pending.m_node])
+			{
+				enqueue(s.m_parts, s.m_weight, s.m_shared, new Pending(c, rest, rest_bound + m_bounds[c]));
+			}
+		}
+		return m_next != null;
+	}
+	
+	@Override
+	public Clause next()
+	{
+		if (!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		State s = m_next;
+		m_next = null;
+		m_lastWeight = s.m_weight;
+		return new Clause(s.m_parts);
+	}
+	
+	/**
+	 * Expands the leaves and the "and" nodes at the top of the stack of a
+	 * partial clause, and puts the result in the queue.
+	 * @param parts The parts chosen so far
+	 * @param weight The weight of these parts
+	 * @param shared The sum of the shares of the leaves gone through so far
+	 * @param pending The stack of nodes that remain to be explored
+	 */
+	protected void enqueue(ImmutableMathSet<ObjectPart> parts, double weight, double shared, Pending pending)
+	{
+		if (pending.m_bound == Double.POSITIVE_INFINITY)
+		{
+			// No clause can be reached from this state
+			return;
+		}
+		while (pending != null && m_kinds[pending.m_node] != OR)
+		{
+			int n = pending.m_node;
+			pending = pending.m_next;
+			if (m_kinds[n] == LEAF)
+			{
+				shared += m_shares[n];
+				if (!parts.contains(m_parts[n]))
+				{
+					parts = parts.with(m_parts[n]);
+					weight += m_weights[n];
+				}
+				continue;
+			}
+			double bound = pending == null ? 0 : pending.m_bound;
+			int[] children = m_children[n];
+			for (int i = children.length - 1; i >= 0; i--)
+			{
+				bound += m_bounds[children[i]];
+				pending = new Pending(children[i], pending, bound);
+			}
+		}
+		double priority = weight;
+		if (pending != null)
+		{
+			double remaining = parts.isEmpty() ? pending.m_bound : remainingBound(parts, pending);
+			if (remaining == Double.POSITIVE_INFINITY)
+			{
+				return;
+			}
+			priority = Math.max(weight + remaining, shared + pending.m_bound);
+		}
+		m_queue.add(new State(parts, weight, shared, pending, priority, m_states++));
+	}
+	
+	/**
+	 * Computes a lower bound on the weight of the parts that the nodes of a
+	 * stack add to a partial clause. The bound of each node is computed as in
+	 * the constructor, except that the parts already in the clause count for
+	 * nothing.
+	 * @param parts The parts of the partial clause
+	 * @param pending The stack of nodes that remain to be explored
+	 * @return The bound
+	 */
+	protected double remainingBound(ImmutableMathSet<ObjectPart> parts, Pending pending)
+	{
+		m_stamp++;
+		double total = 0;
+		for (Pending p = pending; p != null; p = p.m_next)
+		{
+			int top = 0;
+			m_stack[top++] = p.m_node;
+			while (top > 0)
+			{
+				int n = m_stack[top - 1];
+				if (m_stamps[n] == m_stamp)
+				{
+					top--;
+					continue;
+				}
+				if (m_kinds[n] == LEAF)
+				{
+					m_remaining[n] = parts.contains(m_parts[n]) ? 0 : m_shares[n];
+				}
+				else if (m_kinds[n] == DEAD)
+				{
+					m_remaining[n] = Double.POSITIVE_INFINITY;
+				}
+				else
+				{
+					// Compute the bounds of the children first
+					boolean ready = true;
+					for (int c : m_children[n])
+					{
+						if (m_stamps[c] != m_stamp)
+						{
+							if (top == m_stack.length)
+							{
+								m_stack = Arrays.copyOf(m_stack, top * 2);
+							}
+							m_stack[top++] = c;
+							ready = false;
+						}
+					}
+					if (!ready)
+					{
+						continue;
+					}
+					double bound = m_kinds[n] == AND ? 0 : Double.POSITIVE_INFINITY;
+					for (int c : m_children[n])
+					{
+						bound = m_kinds[n] == AND ? bound + m_remaining[c] : Math.min(bound, m_remaining[c]);
+					}
+					m_remaining[n] = bound;
+				}
+				m_stamps[n] = m_stamp;
+				top--;
+			}
+			total += m_remaining[p.m_node];
+		}
+		return total;
+	}
+	
+	/**
+	 * Lists the nodes of a graph such that every node comes after its
+	 * children, without recursion.
+	 * @param root The root of the graph, which comes last
+	 * @return The list of nodes
+	 */
+	/*@ non_null @*/ protected static List<Node> postOrder(/*@ non_null @*/ Node root)
+	{
+		List<Node> order = new ArrayList<Node>();
+		Map<Node,Boolean> visited = new IdentityHashMap<Node,Boolean>();
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty())
+		{
+			Node n = stack.peek();
+			Boolean done = visited.get(n);
+			if (done != null)
+			{
+				stack.pop();
+				if (!done)
+				{
+					visited.put(n, true);
+					order.add(n);
+				}
+				continue;
+			}
+			visited.put(n, false);
+			for (int i = 0; i < n.getOutputArity(); i++)
+			{
+				for (Pin<? extends Node> pin : n.getOutputLinks(i))
+				{
+					if (!visited.containsKey(pin.getNode()))
+					{
+						stack.push(pin.getNode());
+					}
+				}
+			}
+		}
+		return order;
+	}
+	
+	/**
+	 * An immutable stack of nodes that remain to be explored, which is shared
+	 * by the partial clauses derived from one another.
+	 */
+	protected static class Pending
+	{
+		/**
+		 * The number of the node at the top of the stack.
+		 */
+		protected final int m_node;
+		
+		/**
+		 * The rest of the stack, or <tt>null</tt> if it is empty.
+		 */
+		/*@ null @*/ protected final Pending m_next;
+		
+		/**
+		 * The sum of the bounds of the nodes of the stack.
+		 */
+		protected final double m_bound;
+		
+		/**
+		 * Creates a new stack.
+		 * @param node The node at the top of the stack
+		 * @param next The rest of the stack
+		 * @param bound The sum of the bounds of the nodes of the stack
+		 */
+		public Pending(int node, /*@ null @*/ Pending next, double bound)
+		{
+			super();
+			m_node = node;
+			m_next = next;
+			m_bound = bound;
+		}
+	}
+	
+	/**
+	 * A partial clause, whose stack of nodes is either empty or has an "or"
+	 * node at its top.
+	 */
+	protected static class State
+	{
+		/**
+		 * The parts chosen so far.
+		 */
+		/*@ non_null @*/ protected final ImmutableMathSet<ObjectPart> m_parts;
+		
+		/**
+		 * The weight of the parts chosen so far.
+		 */
+		protected final double m_weight;
+		
+		/**
+		 * The sum of the shares of the leaves gone through so far.
+		 */
+		protected final double m_shared;
+		
+		/**
+		 * The nodes that remain to be explored, or <tt>null</tt> if the clause
+		 * is complete.
+		 */
+		/*@ null @*/ protected final Pending m_pending;
+		
+		/**
+		 * The lower bound on the weight of the clauses this state leads to.
+		 */
+		protected final double m_priority;
+		
+		/**
+		 * The order in which the state was created.
+		 */
+		protected final long m_order;
+		
+		/**
+		 * Creates a new partial clause.
+		 * @param parts The parts chosen so far
+		 * @param weight The weight of these parts
+		 * @param shared The sum of the shares of the leaves gone through so far
+		 * @param pending The nodes that remain to be explored
+		 * @param priority The lower bound on the weight of the clauses
+		 * @param order The order in which the state was created
+		 */
+		public State(ImmutableMathSet<ObjectPart> parts, double weight, double shared, Pending pending, double priority, long order)
+		{
+			super();
+			m_parts = parts;
+			m_weight = weight;
+			m_shared = shared;
+			m_pending = pending;
+			m_priority = priority;
+			m_order = order;
+		}
+	}
+	
+	/**
+	 * Orders partial clauses by increasing lower bound. Among those with the
+	 * same bound, complete clauses come first, and then the ones created
+	 * last, so that the search goes deep before going wide.
+	 */
+	protected static class StateComparator implements Comparator<State>
+	{
+		@Override
+		public int compare(State s1, State s2)
+		{
+			int c = Double.compare(s1.m_priority, s2.m_priority);
+			if (c != 0)
+			{
+				return c;
+			}
+			if ((s1.m_pending == null) != (s2.m_pending == null))
+			{
+				return s1.m_pending == null ? -1 : 1;
+			}
+			return Long.compare(s2.m_order, s1.m_order);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.Arrays;
+
+/**
+ * A trie of clauses, in which each clause is a sorted array of distinct
+ * non-negative integers standing for its parts. Besides adding clauses, the
+ * trie finds whether one of its clauses is a subset of a given clause, by
+ * following only the branches labelled with elements of that clause. It is
+ * used by {@link GraphUtilities#minimalDnf(java.util.Set)} to remove the
+ * clauses that contain another one.
+ * <p>
+ * The nodes of the trie are numbered, and the edges are kept in a single
+ * open-addressing hash table indexed by parent node and label, so that the
+ * trie holds no object per node.
+ */
+public class ClauseTrie
+{
+	/**
+	 * The key of each entry of the edge table, made of the parent node in the
+	 * upper 32 bits and the label in the lower 32 bits. Free entries contain
+	 * -1.
+	 */
+	/*@ non_null @*/ protected long[] m_keys;
+	
+	/**
+	 * The child node of each entry of the edge table.
+	 */
+	/*@ non_null @*/ protected int[] m_children;
+	
+	/**
+	 * The number of edges in the table.
+	 */
+	protected int m_edges;
+	
+	/**
+	 * A flag for each node indicating that a clause ends at this node.
+	 */
+	/*@ non_null @*/ protected boolean[] m_ends;
+	
+	/**
+	 * The number of nodes, including the root, which is node 0.
+	 */
+	protected int m_nodes;
+	
+	/**
+	 * Creates a new empty trie.
+	 */
+	public ClauseTrie()
+	{
+		super();
+		m_keys = new long[1024];
+		Arrays.fill(m_keys, -1);
+		m_children = new int[1024];
+		m_edges = 0;
+		m_ends = new boolean[512];
+		m_nodes = 1;
+	}
+	
+	/**
+	 * Adds a clause to the trie.
+	 * @param clause The clause, as a sorted array of distinct elements
+	 */
+	public void add(/*@ non_null @*/ int[] clause)
+	{
+		int node = 0;
+		for (int e : clause)
+		{
+			int child = getChild(node, e);
+			if (child < 0)
+			{
+				child = addChild(node, e);
+			}
+			node = child;
+		}
+		m_ends[node] = true;
+	}
+	
+	/**
+	 * Determines if the trie contains a subset of a clause, including the
+	 * clause itself.
+	 * @param clause The clause, as a sorted array of distinct elements
+	 * @return <tt>true</tt> if a clause of the trie is a subset of the clause,
+	 * <tt>false</tt> otherwise
+	 */
+	/*@ pure @*/ public boolean containsSubsetOf(/*@ non_null @*/ int[] clause)
+	{
+		return containsSubsetOf(clause, 0, 0);
+	}
+	
+	/**
+	 * Determines if the subtrie below a node contains a subset of the end of
+	 * a clause.
+	 * @param clause The clause
+	 * @param from The position of the first element of the clause to consider
+	 * @param node The node
+	 * @return <tt>true</tt> if the subtrie contains a subset, <tt>false</tt>
+	 * otherwise
+	 */
+	protected boolean containsSubsetOf(int[] clause, int from, int node)
+	{
+		if (m_ends[node])
+		{
+			return true;
+		}
+		for (int i = from; i < clause.length; i++)
+		{
+			int child = getChild(node, clause[i]);
+			if (child >= 0 && containsSubsetOf(clause, i + 1, child))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the number of nodes of the trie, including its root.
+	 * @return The number of nodes
+	 */
+	/*@ pure @*/ public int getNodeCount()
+	{
+		return m_nodes;
+	}
+	
+	/**
+	 * Gets the child of a node along an edge.
+	 * @param node The node
+	 * @param label The label of the edge
+	 * @return The child, or -1 if the node has no such edge
+	 */
+	protected int getChild(int node, int label)
+	{
+		long key = ((long) node << 32) | label;
+		int mask = m_keys.length - 1;
+		for (int slot = hash(key) & mask; m_keys[slot] != -1; slot = (slot + 1) & mask)
+		{
+			if (m_keys[slot] == key)
+			{
+				return m_children[slot];
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Adds a new child to a node.
+	 * @param node The node
+	 * @param label The label of the edge leading to the child
+	 * @return The child
+	 */
+	protected int addChild(int node, int label)
+	{
+		if ((m_edges + 1) * 4 > m_keys.length * 3)
+		{
+			rehash();
+		}
+		if (m_nodes == m_ends.length)
+		{
+			m_ends = Arrays.copyOf(m_ends, m_nodes * 2);
+		}
+		int child = m_nodes++;
+		put(((long) node << 32) | label, child);
+		m_edges++;
+		return child;
+	}
+	
+	/**
+	 * Doubles the size of the edge table.
+	 */
+	protected void rehash()
+	{
+		long[] keys = m_keys;
+		int[] children = m_children;
+		m_keys = new long[keys.length * 2];
+		Arrays.fill(m_keys, -1);
+		m_children = new int[keys.length * 2];
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != -1)
+			{
+				put(keys[i], children[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Puts an edge in the first free entry of the table for its key.
+	 * @param key The key of the edge
+	 * @param child The child it leads to
+	 */
+	protected void put(long key, int child)
+	{
+		int mask = m_keys.length - 1;
+		int slot = hash(key) & mask;
+		while (m_keys[slot] != -1)
+		{
+			slot = (slot + 1) & mask;
+		}
+		m_keys[slot] = key;
+		m_children[slot] = child;
+	}
+	
+	/**
+	 * Hashes the key of an edge.
+	 */
+	protected static int hash(long key)
+	{
+		return HashUtilities.mix(HashUtilities.combine((int) (key >>> 32), (int) key));
+	}
+}
@@ -36,6 +36,17 @@ public class ComposedPart implements Part
 	 */
 	protected List<Part> m_designators;
 	
+	/**
+	 * The seed of the hash codes of composed parts.
+	 */
+	protected static final int s_seed = HashUtilities.seed(ComposedPart.class);
+	
+	/**
+	 * The hash code of the part, or 0 if it has not been computed since the
+	 * last call to {@link #add(Part) add()}.
+	 */
+	protected int m_hash;
+	
 	/**
 	 * Creates a flat composed designator out of a list of designators.
 	 * The head of the designator is the last of the list; that is, a list of
@@ -145,6 +156,7 @@ public class ComposedPart implements Part
 		{
 			return this;
 		}
+		m_hash = 0;
 		if (d instanceof ComposedPart)
 		{
 			// Don't unnecessarily nest composed designators
@@ -262,12 +274,17 @@ public class ComposedPart implements Part
 	@Override
 	public int hashCode()
 	{
-		int h = 0;
-		for (Part d : m_designators)
+		if (m_hash == 0)
 		{
-			h += d.hashCode();
+			// Combined in order, since parts composed in a different order differ
+			int h = s_seed;
+			for (Part d : m_designators)
+			{
+				h = HashUtilities.combine(h, d.hashCode());
+			}
+			m_hash = HashUtilities.mix(h ^ m_designators.size());
 		}
-		return h;
+		return m_hash;
 	}
 
 	@Override
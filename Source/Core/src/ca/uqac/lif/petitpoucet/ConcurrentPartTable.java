@@ -0,0 +1,128 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A {@link PartTable} that can be used by many threads at once. The values
+ * of each part are kept in a concurrent map from subjects to values, and
+ * {@link #computeIfAbsent(Part, Object, Supplier) computeIfAbsent} is
+ * atomic: threads asking for the value of the same part and subject all get
+ * the same value, and the supplier is called only once. Parts must be the
+ * canonical instances given by a concurrent {@link PartInterner}, and
+ * subjects must not be <tt>null</tt>.
+ * <p>
+ * The size of the table is only approximate while other threads modify it.
+ * @param <V> The type of the values
+ */
+public class ConcurrentPartTable<V> extends PartTable<V>
+{
+	/**
+	 * The number of values in the table.
+	 */
+	/*@ non_null @*/ protected final AtomicInteger m_count;
+	
+	/**
+	 * Creates a new empty table.
+	 */
+	public ConcurrentPartTable()
+	{
+		super(new ConcurrentHashMap<Part,Object>());
+		m_count = new AtomicInteger();
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Part p, Object subject)
+	{
+		Map<Object,V> values = (Map<Object,V>) m_entries.get(p);
+		return values == null ? null : values.get(subject);
+	}
+	
+	@Override
+	public void put(Part p, Object subject, V value)
+	{
+		if (valuesOf(p).put(subject, value) == null)
+		{
+			m_count.incrementAndGet();
+		}
+	}
+	
+	@Override
+	public V computeIfAbsent(Part p, Object subject, Supplier<? extends V> supplier)
+	{
+		ConcurrentMap<Object,V> values = valuesOf(p);
+		V value = values.get(subject);
+		if (value != null)
+		{
+			return value;
+		}
+		return values.computeIfAbsent(subject, k -> {
+			m_count.incrementAndGet();
+			return supplier.get();
+		});
+	}
+	
+	@Override
+	public int size()
+	{
+		return m_count.get();
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<V> values()
+	{
+		List<V> list = new ArrayList<V>(m_count.get());
+		for (Object values : m_entries.values())
+		{
+			list.addAll(((Map<Object,V>) values).values());
+		}
+		return list;
+	}
+	
+	@Override
+	public void clear()
+	{
+		m_entries.clear();
+		m_count.set(0);
+	}
+	
+	/**
+	 * Gets the map of values of a part, creating it if the part has none.
+	 * @param p The canonical part
+	 * @return The map of values
+	 */
+	@SuppressWarnings("unchecked")
+	/*@ non_null @*/ protected ConcurrentMap<Object,V> valuesOf(/*@ non_null @*/ Part p)
+	{
+		Object values = m_entries.get(p);
+		if (values == null)
+		{
+			values = ((ConcurrentMap<Part,Object>) m_entries).computeIfAbsent(p, k -> new ConcurrentHashMap<Object,V>());
+		}
+		return (ConcurrentMap<Object,V>) values;
+	}
+}
@@ -0,0 +1,596 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.Pin;
+import ca.uqac.lif.petitpoucet.NodeFactory.ObjectPart;
+
+/**
+ * Enumerates the clauses of the disjunctive normal form of a lineage graph
+ * one at a time. The clauses are the same as those returned by
+ * {@link GraphUtilities#asDnf(Node)}, but they are computed only when they
+ * are requested: an "and" node goes through the combinations of the clauses
+ * of its children like an odometer, instead of building their complete cross
+ * product. Callers that need only the first few clauses pay only for those.
+ * <p>
+ * Each node of the graph has a single {@link Sequence} of clauses, which is
+ * shared by all its parents and grows only when one of them needs a clause
+ * that has not been computed yet. A node reached through many paths is
+ * therefore enumerated once, and an "and" node that restarts the
+ * enumeration of a child reads the clauses the child has already computed.
+ * The memory used is proportional to the size of the graph and to the
+ * number of clauses computed so far at each node. The clauses are computed
+ * from an explicit stack of the sequences waiting for a clause of another
+ * one, so that the depth of the graph is not limited by the call stack.
+ * <p>
+ * The clauses are produced in a stable order, which only depends on the
+ * order of the links in the graph: the clauses of the first child of an "or"
+ * node come first, and the clauses of an "and" node vary on their last child
+ * first. A clause that is equal to one already produced is skipped. Each
+ * clause returned is a copy, which the caller is free to modify.
+ * <p>
+ * The enumeration can be bounded by a {@link #setMaxClauses(int) number of
+ * clauses} and by a {@link #setTimeout(long) duration}; when one of these
+ * limits is reached, the enumeration ends and {@link #isTruncated()} returns
+ * <tt>true</tt>. Enumerating every clause of a graph is slower than with
+ * {@link GraphUtilities#asDnf(Node)}, which should be preferred when all the
+ * clauses are needed and fit in memory.
+ */
+public class DnfEnumerator implements Iterator<Clause>
+{
+	/**
+	 * The sequence of clauses of the root of the graph.
+	 */
+	/*@ non_null @*/ protected final Sequence m_root;
+	
+	/**
+	 * The number of clauses returned so far.
+	 */
+	protected int m_returned;
+	
+	/**
+	 * The next clause to return, or <tt>null</tt> if it has not been
+	 * computed yet.
+	 */
+	/*@ null @*/ protected Clause m_next;
+	
+	/**
+	 * The maximum number of clauses to return, or -1 for no limit.
+	 */
+	protected int m_maxClauses;
+	
+	/**
+	 * The maximum duration of the enumeration, in milliseconds, or -1 for no
+	 * limit.
+	 */
+	protected long m_timeout;
+	
+	/**
+	 * The time at which the enumeration must end, as given by
+	 * {@link System#nanoTime()}, or -1 if it has not started.
+	 */
+	protected long m_deadline;
+	
+	/**
+	 * A flag indicating that the enumeration was ended by one of its limits.
+	 */
+	protected boolean m_truncated;
+	
+	/**
+	 * Creates a new enumerator for the clauses of a lineage graph.
+	 * @param root The root of the graph
+	 */
+	public DnfEnumerator(/*@ non_null @*/ Node root)
+	{
+		super();
+		m_root = sequenceOf(root, new IdentityHashMap<Node,Sequence>(), new PartIndex());
+		m_returned = 0;
+		m_maxClauses = -1;
+		m_timeout = -1;
+		m_deadline = -1;
+		m_truncated = false;
+	}
+	
+	/**
+	 * Sets the maximum number of clauses to return.
+	 * @param max The number of clauses, or -1 for no limit
+	 * @return This enumerator
+	 */
+	/*@ non_null @*/ public DnfEnumerator setMaxClauses(int max)
+	{
+		m_maxClauses = max;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum duration of the enumeration, counted from the first
+	 * call to {@link #hasNext()} or {@link #next()}.
+	 * @param ms The duration in milliseconds, or -1 for no limit
+	 * @return This enumerator
+	 */
+	/*@ non_null @*/ public DnfEnumerator setTimeout(long ms)
+	{
+		m_timeout = ms;
+		return this;
+	}
+	
+	/**
+	 * Determines if the enumeration was ended by its limit on the number of
+	 * clauses or on its duration, while clauses remained.
+	 * @return <tt>true</tt> if the enumeration was truncated, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isTruncated()
+	{
+		return m_truncated;
+	}
+	
+	/**
+	 * Gets a sequential stream of the remaining clauses.
+	 * @return The stream
+	 */
+	/*@ non_null @*/ public Stream<Clause> stream()
+	{
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		if (m_next != null)
+		{
+			return true;
+		}
+		if (m_truncated)
+		{
+			return false;
+		}
+		if (m_deadline < 0)
+		{
+			m_deadline = m_timeout < 0 ? Long.MAX_VALUE : System.nanoTime() + m_timeout * 1000000;
+		}
+		if (!fill(m_root, m_returned + 1))
+		{
+			return false;
+		}
+		if (m_maxClauses >= 0 && m_returned >= m_maxClauses)
+		{
+			m_truncated = true;
+			return false;
+		}
+		m_next = new Clause(m_root.get(m_returned));
+		return true;
+	}
+	
+	@Override
+	public Clause next()
+	{
+		if (!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		Clause c = m_next;
+		m_next = null;
+		m_returned++;
+		return c;
+	}
+	
+	/**
+	 * Computes clauses of a sequence until it contains a given number of them
+	 * or has no more clauses. The sequences that are waiting for a clause of
+	 * another one are kept on an explicit stack.
+	 * @param target The sequence
+	 * @param size The number of clauses to reach
+	 * @return <tt>true</tt> if the sequence contains this number of clauses,
+	 * <tt>false</tt> if it has fewer clauses or if the deadline of the
+	 * enumeration was reached
+	 */
+	protected boolean fill(/*@ non_null @*/ Sequence target, int size)
+	{
+		Deque<Sequence> stack = new ArrayDeque<Sequence>();
+		target.m_wanted = size;
+		stack.push(target);
+		while (!stack.isEmpty())
+		{
+			Sequence s = stack.peek();
+			if (s.size() >= s.m_wanted || s.m_done)
+			{
+				stack.pop();
+				continue;
+			}
+			if (System.nanoTime() > m_deadline)
+			{
+				m_truncated = true;
+				return false;
+			}
+			Sequence needed = s.step();
+			if (needed != null)
+			{
+				needed.m_wanted = needed.size() + 1;
+				stack.push(needed);
+			}
+		}
+		return target.size() >= size;
+	}
+	
+	/**
+	 * Gets the sequence of clauses of a node, creating it if needed. The
+	 * sequences of the children of the node are only created when the node
+	 * first needs their clauses.
+	 * @param n The node
+	 * @param sequences The sequences already created for the nodes of the
+	 * graph
+	 * @param index The index numbering the parts of the clauses
+	 * @return The sequence
+	 */
+	/*@ non_null @*/ protected static Sequence sequenceOf(/*@ non_null @*/ Node n, /*@ non_null @*/ Map<Node,Sequence> sequences, /*@ non_null @*/ PartIndex index)
+	{
+		Sequence s = sequences.get(n);
+		if (s != null)
+		{
+			return s;
+		}
+		if (n instanceof PartNode && GraphUtilities.isLeaf(n))
+		{
+			PartNode pn = (PartNode) n;
+			int id = index.getId(new ObjectPart(pn.getPart(), pn.getSubject()));
+			s = new Sequence();
+			s.add(new Clause(index, id));
+			s.m_done = true;
+		}
+		else
+		{
+			List<Node> children = new ArrayList<Node>();
+			for (int i = 0; i < n.getOutputArity(); i++)
+			{
+				for (Pin<? extends Node> pin : n.getOutputLinks(i))
+				{
+					children.add(pin.getNode());
+				}
+			}
+			if (n instanceof AndNode)
+			{
+				s = new Product(children, sequences, index);
+			}
+			else
+			{
+				s = new Union(children, sequences, index);
+			}
+		}
+		sequences.put(n, s);
+		return s;
+	}
+	
+	/**
+	 * The distinct clauses of a node, in the order in which they were
+	 * computed. A sequence computes its clauses one {@link #step() step} at a
+	 * time. A step either makes progress, or does nothing and returns the
+	 * sequence of a child that must first compute one more clause; it can
+	 * then be attempted again once this clause is available.
+	 */
+	protected static class Sequence
+	{
+		/**
+		 * The clauses computed so far.
+		 */
+		/*@ non_null @*/ protected final List<Clause> m_clauses;
+		
+		/**
+		 * The same clauses, used to skip duplicates.
+		 */
+		/*@ non_null @*/ protected final Set<Clause> m_distinct;
+		
+		/**
+		 * A flag indicating that all the clauses have been computed.
+		 */
+		protected boolean m_done;
+		
+		/**
+		 * The number of clauses that the sequence must reach before it is
+		 * removed from the stack of {@link DnfEnumerator#fill(Sequence, int)
+		 * fill()}.
+		 */
+		protected int m_wanted;
+		
+		/**
+		 * Creates a new empty sequence.
+		 */
+		public Sequence()
+		{
+			super();
+			m_clauses = new ArrayList<Clause>();
+			m_distinct = new HashSet<Clause>();
+			m_done = false;
+		}
+		
+		/**
+		 * Gets the number of clauses computed so far.
+		 * @return The number of clauses
+		 */
+		/*@ pure @*/ public int size()
+		{
+			return m_clauses.size();
+		}
+		
+		/**
+		 * Gets a clause computed so far.
+		 * @param i The position of the clause
+		 * @return The clause
+		 */
+		/*@ pure non_null @*/ public Clause get(int i)
+		{
+			return m_clauses.get(i);
+		}
+		
+		/**
+		 * Adds a clause at the end of the sequence, unless it is already in it.
+		 * @param c The clause
+		 */
+		protected void add(/*@ non_null @*/ Clause c)
+		{
+			if (m_distinct.add(c))
+			{
+				m_clauses.add(c);
+			}
+		}
+		
+		/**
+		 * Attempts to compute the next clause of the sequence. The default
+		 * sequence has no clauses to compute.
+		 * @return <tt>null</tt> if the step made progress, or the sequence of
+		 * a child that must compute one more clause first
+		 */
+		/*@ null @*/ protected Sequence step()
+		{
+			m_done = true;
+			return null;
+		}
+	}
+	
+	/**
+	 * Sequence of the clauses of a node whose clauses are computed from those
+	 * of its children.
+	 */
+	protected abstract static class InnerSequence extends Sequence
+	{
+		/**
+		 * The children of the node.
+		 */
+		/*@ non_null @*/ protected final List<Node> m_children;
+		
+		/**
+		 * The sequences of the children, or <tt>null</tt> for those that have
+		 * not been needed yet.
+		 */
+		/*@ non_null @*/ protected final Sequence[] m_childSequences;
+		
+		/**
+		 * The sequences already created for the nodes of the graph.
+		 */
+		/*@ non_null @*/ protected final Map<Node,Sequence> m_sequences;
+		
+		/**
+		 * The index numbering the parts of the clauses.
+		 */
+		/*@ non_null @*/ protected final PartIndex m_index;
+		
+		/**
+		 * Creates a new sequence.
+		 * @param children The children of the node
+		 * @param sequences The sequences already created for the nodes of the
+		 * graph
+		 * @param index The index numbering the parts of the clauses
+		 */
+		public InnerSequence(/*@ non_null @*/ List<Node> children, /*@ non_null @*/ Map<Node,Sequence> sequences, /*@ non_null @*/ PartIndex index)
+		{
+			super();
+			m_children = children;
+			m_childSequences = new Sequence[children.size()];
+			m_sequences = sequences;
+			m_index = index;
+		}
+		
+		/**
+		 * Gets the sequence of a child of the node.
+		 * @param i The position of the child
+		 * @return The sequence
+		 */
+		/*@ non_null @*/ protected Sequence child(int i)
+		{
+			if (m_childSequences[i] == null)
+			{
+				m_childSequences[i] = sequenceOf(m_children.get(i), m_sequences, m_index);
+			}
+			return m_childSequences[i];
+		}
+	}
+	
+	/**
+	 * Sequence of the clauses of each child of an "or" node, one child after
+	 * the other.
+	 */
+	protected static class Union extends InnerSequence
+	{
+		/**
+		 * The position of the child being read.
+		 */
+		protected int m_child;
+		
+		/**
+		 * The position of the next clause to read in this child.
+		 */
+		protected int m_position;
+		
+		/**
+		 * Creates a new union.
+		 * @param children The children of the node
+		 * @param sequences The sequences already created for the nodes of the
+		 * graph
+		 * @param index The index numbering the parts of the clauses
+		 */
+		public Union(/*@ non_null @*/ List<Node> children, /*@ non_null @*/ Map<Node,Sequence> sequences, /*@ non_null @*/ PartIndex index)
+		{
+			super(children, sequences, index);
+			m_child = 0;
+			m_position = 0;
+		}
+		
+		@Override
+		protected Sequence step()
+		{
+			while (m_child < m_children.size())
+			{
+				Sequence s = child(m_child);
+				if (m_position < s.size())
+				{
+					add(s.get(m_position++));
+					return null;
+				}
+				if (!s.m_done)
+				{
+					return s;
+				}
+				m_child++;
+				m_position = 0;
+			}
+			m_done = true;
+			return null;
+		}
+	}
+	
+	/**
+	 * Sequence of the combinations of the clauses of the children of an
+	 * "and" node. The sequence keeps the position of the current clause of
+	 * each child, along with the merge of the clauses of the children up to
+	 * each position, so that moving to the next combination only merges the
+	 * clauses that changed.
+	 */
+	protected static class Product extends InnerSequence
+	{
+		/**
+		 * The position of the current clause of each child.
+		 */
+		/*@ non_null @*/ protected final int[] m_positions;
+		
+		/**
+		 * The merge of the current clauses of the children up to each position.
+		 */
+		/*@ non_null @*/ protected final Clause[] m_prefixes;
+		
+		/**
+		 * The number of elements of {@link #m_prefixes} that correspond to the
+		 * current positions.
+		 */
+		protected int m_merged;
+		
+		/**
+		 * A flag indicating that the current positions form a combination that
+		 * has not been added to the sequence yet.
+		 */
+		protected boolean m_pending;
+		
+		/**
+		 * Creates a new product.
+		 * @param children The children of the node
+		 * @param sequences The sequences already created for the nodes of the
+		 * graph
+		 * @param index The index numbering the parts of the clauses
+		 */
+		public Product(/*@ non_null @*/ List<Node> children, /*@ non_null @*/ Map<Node,Sequence> sequences, /*@ non_null @*/ PartIndex index)
+		{
+			super(children, sequences, index);
+			m_positions = new int[children.size()];
+			m_prefixes = new Clause[children.size()];
+			m_merged = 0;
+			// The first combination takes the first clause of every child
+			m_pending = true;
+			m_done = children.isEmpty();
+		}
+		
+		@Override
+		protected Sequence step()
+		{
+			int n = m_children.size();
+			if (!m_pending)
+			{
+				// Find the last position that can move to its next clause, and
+				// restart the positions after it
+				int pos = n - 1;
+				for (; pos >= 0; pos--)
+				{
+					Sequence s = child(pos);
+					if (m_positions[pos] + 1 < s.size())
+					{
+						break;
+					}
+					if (!s.m_done)
+					{
+						return s;
+					}
+				}
+				if (pos < 0)
+				{
+					m_done = true;
+					return null;
+				}
+				m_positions[pos]++;
+				for (int i = pos + 1; i < n; i++)
+				{
+					m_positions[i] = 0;
+				}
+				m_merged = pos;
+				m_pending = true;
+			}
+			for (; m_merged < n; m_merged++)
+			{
+				Sequence s = child(m_merged);
+				if (m_positions[m_merged] >= s.size())
+				{
+					if (!s.m_done)
+					{
+						return s;
+					}
+					// A child without clauses leaves the node without clauses
+					m_done = true;
+					return null;
+				}
+				Clause c = s.get(m_positions[m_merged]);
+				m_prefixes[m_merged] = m_merged == 0 ? c : m_prefixes[m_merged - 1].mergeWith(c);
+			}
+			m_pending = false;
+			add(m_prefixes[n - 1]);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,418 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.uqac.lif.dag.Node;
+
+/**
+ * An immutable snapshot of a lineage graph, stored in compressed sparse row
+ * (CSR) form. Nodes are designated by integer identifiers from 0 to
+ * {@link #size()} &minus; 1, and the children of node <i>i</i> are the
+ * elements of an array of edges between positions <tt>offsets[i]</tt> and
+ * <tt>offsets[i+1]</tt>. A side table records the kind of each node
+ * ({@link PartNode}, {@link AndNode}, {@link OrNode}, {@link UnknownNode} or
+ * other) and, for part nodes, their part and subject.
+ * <p>
+ * Operations that only read a graph, such as simplification, conversion to
+ * DNF, rendering and statistics, can work on this primitive layout instead of
+ * following the links of {@link Node} objects. A snapshot is obtained by
+ * calling {@link #freeze(Node)} or {@link #freeze(List)}; nodes are numbered
+ * in breadth-first order from the roots, so that the roots are the first
+ * nodes of the snapshot. The children of a node appear in the order of its
+ * output links.
+ * <p>
+ * Nested nodes are not expanded: a graph should be
+ * {@linkplain GraphUtilities#flatten(Node) flattened} before being frozen.
+ */
+public class FrozenDag extends IndexedDag
+{
+	/**
+	 * The identifiers of the roots of the graph.
+	 */
+	/*@ non_null @*/ protected final int[] m_roots;
+	
+	/**
+	 * The position, in {@link #m_children}, of the first child of each node.
+	 * The array has one more element than the number of nodes, so that the
+	 * children of node <i>i</i> end at position <tt>m_offsets[i+1]</tt>.
+	 */
+	/*@ non_null @*/ protected final int[] m_offsets;
+	
+	/**
+	 * The identifiers of the children of all nodes, grouped by parent.
+	 */
+	/*@ non_null @*/ protected final int[] m_children;
+	
+	/**
+	 * The ordinal of the {@link Kind} of each node.
+	 */
+	/*@ non_null @*/ protected final byte[] m_kinds;
+	
+	/**
+	 * The part of each part node; other nodes have a <tt>null</tt> entry.
+	 */
+	/*@ non_null @*/ protected final Part[] m_parts;
+	
+	/**
+	 * The subject of each part node; other nodes have a <tt>null</tt> entry.
+	 */
+	/*@ non_null @*/ protected final Object[] m_subjects;
+	
+	/**
+	 * Creates a frozen snapshot of a single-rooted graph.
+	 * @param root The root of the graph
+	 * @return The snapshot
+	 */
+	/*@ non_null @*/ public static FrozenDag freeze(/*@ non_null @*/ Node root)
+	{
+		return freeze(Arrays.asList(root));
+	}
+	
+	/**
+	 * Creates a frozen snapshot of a graph with one or more roots. Nodes
+	 * reachable from more than one root appear only once in the snapshot.
+	 * @param roots The roots of the graph
+	 * @return The snapshot
+	 */
+	/*@ non_null @*/ public static FrozenDag freeze(/*@ non_null @*/ List<? extends Node> roots)
+	{
+		Builder b = new Builder();
+		int[] root_ids = b.addGraph(roots);
+		return b.build(root_ids);
+	}
+	
+	/**
+	 * Creates a new frozen graph from its arrays.
+	 * @param roots The identifiers of the roots
+	 * @param offsets The position of the first child of each node
+	 * @param children The identifiers of the children of all nodes
+	 * @param kinds The ordinal of the kind of each node
+	 * @param parts The part of each node
+	 * @param subjects The subject of each node
+	 */
+	protected FrozenDag(int[] roots, int[] offsets, int[] children, byte[] kinds, Part[] parts, Object[] subjects)
+	{
+		super();
+		m_roots = roots;
+		m_offsets = offsets;
+		m_children = children;
+		m_kinds = kinds;
+		m_parts = parts;
+		m_subjects = subjects;
+	}
+	
+	/**
+	 * Gets the number of nodes in the graph.
+	 * @return The number of nodes
+	 */
+	@Override
+	/*@ pure @*/ public int size()
+	{
+		return m_kinds.length;
+	}
+	
+	/**
+	 * Gets the number of edges in the graph.
+	 * @return The number of edges
+	 */
+	@Override
+	/*@ pure @*/ public int getEdgeCount()
+	{
+		return m_children.length;
+	}
+	
+	/**
+	 * Gets the number of roots of the graph.
+	 * @return The number of roots
+	 */
+	@Override
+	/*@ pure @*/ public int getRootCount()
+	{
+		return m_roots.length;
+	}
+	
+	/**
+	 * Gets the identifier of a root of the graph.
+	 * @param index The position of the root in the list of roots
+	 * @return The identifier of the root
+	 */
+	@Override
+	/*@ pure @*/ public int getRoot(int index)
+	{
+		return m_roots[index];
+	}
+	
+	/**
+	 * Gets the kind of a node.
+	 * @param id The identifier of the node
+	 * @return The kind
+	 */
+	@Override
+	/*@ pure non_null @*/ public Kind getKind(int id)
+	{
+		return KINDS[m_kinds[id]];
+	}
+	
+	/**
+	 * Gets the part of a part node.
+	 * @param id The identifier of the node
+	 * @return The part, or <tt>null</tt> if the node is not a part node
+	 */
+	@Override
+	/*@ pure null @*/ public Part getPart(int id)
+	{
+		return m_parts[id];
+	}
+	
+	/**
+	 * Gets the subject of a part node.
+	 * @param id The identifier of the node
+	 * @return The subject, or <tt>null</tt> if the node is not a part node
+	 */
+	@Override
+	/*@ pure null @*/ public Object getSubject(int id)
+	{
+		return m_subjects[id];
+	}
+	
+	/**
+	 * Gets the number of children of a node.
+	 * @param id The identifier of the node
+	 * @return The number of children
+	 */
+	@Override
+	/*@ pure @*/ public int getDegree(int id)
+	{
+		return m_offsets[id + 1] - m_offsets[id];
+	}
+	
+	/**
+	 * Gets a child of a node.
+	 * @param id The identifier of the node
+	 * @param index The position of the child among the node's children
+	 * @return The identifier of the child
+	 */
+	@Override
+	/*@ pure @*/ public int getChild(int id, int index)
+	{
+		return m_children[m_offsets[id] + index];
+	}
+	
+	/**
+	 * Determines if a node is a leaf, i.e. it has no children.
+	 * @param id The identifier of the node
+	 * @return {@code true} if the node is a leaf, {@code false} otherwise
+	 */
+	@Override
+	/*@ pure @*/ public boolean isLeaf(int id)
+	{
+		return m_offsets[id + 1] == m_offsets[id];
+	}
+	
+	/**
+	 * Gets the number of leaves in the graph.
+	 * @return The number of leaves
+	 */
+	@Override
+	/*@ pure @*/ public int getLeafCount()
+	{
+		int count = 0;
+		for (int i = 0; i < m_kinds.length; i++)
+		{
+			if (m_offsets[i + 1] == m_offsets[i])
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * An object that accumulates nodes and edges one at a time, and then
+	 * packs them into a {@link FrozenDag}. Edges are stored in a temporary
+	 * list of pairs, and are grouped by parent only when the graph is built,
+	 * so that nodes can receive children in any order.
+	 */
+	protected static class Builder extends IndexedDag.Builder
+	{
+		/**
+		 * The number of nodes added so far.
+		 */
+		protected int m_size;
+		
+		/**
+		 * The number of edges added so far.
+		 */
+		protected int m_edgeCount;
+		
+		/**
+		 * The parent of each edge.
+		 */
+		/*@ non_null @*/ protected int[] m_edgeSources;
+		
+		/**
+		 * The child of each edge.
+		 */
+		/*@ non_null @*/ protected int[] m_edgeTargets;
+		
+		/**
+		 * The ordinal of the kind of each node.
+		 */
+		/*@ non_null @*/ protected byte[] m_kinds;
+		
+		/**
+		 * The part of each node.
+		 */
+		/*@ non_null @*/ protected Part[] m_parts;
+		
+		/**
+		 * The subject of each node.
+		 */
+		/*@ non_null @*/ protected Object[] m_subjects;
+		
+		/**
+		 * The set of edges added so far, encoded as longs, if duplicate edges
+		 * must be ignored; <tt>null</tt> otherwise.
+		 */
+		/*@ null @*/ protected Set<Long> m_edges;
+		
+		/**
+		 * Creates a new builder that keeps duplicate edges.
+		 */
+		public Builder()
+		{
+			this(false);
+		}
+		
+		/**
+		 * Creates a new builder.
+		 * @param distinct_edges Set to {@code true} to ignore an edge that is
+		 * added more than once, {@code false} to keep all edges
+		 */
+		public Builder(boolean distinct_edges)
+		{
+			super();
+			m_size = 0;
+			m_edgeCount = 0;
+			m_edgeSources = new int[16];
+			m_edgeTargets = new int[16];
+			m_kinds = new byte[16];
+			m_parts = new Part[16];
+			m_subjects = new Object[16];
+			m_edges = distinct_edges ? new HashSet<>() : null;
+		}
+		
+		/**
+		 * Gets the number of nodes added so far.
+		 * @return The number of nodes
+		 */
+		@Override
+		/*@ pure @*/ public int size()
+		{
+			return m_size;
+		}
+		
+		/**
+		 * Adds a node.
+		 * @param k The kind of the node
+		 * @param part The part of the node, if any
+		 * @param subject The subject of the node, if any
+		 * @return The identifier given to the new node
+		 */
+		@Override
+		public int addNode(/*@ non_null @*/ Kind k, /*@ null @*/ Part part, /*@ null @*/ Object subject)
+		{
+			if (m_size == m_kinds.length)
+			{
+				int new_length = m_size * 2;
+				m_kinds = Arrays.copyOf(m_kinds, new_length);
+				m_parts = Arrays.copyOf(m_parts, new_length);
+				m_subjects = Arrays.copyOf(m_subjects, new_length);
+			}
+			m_kinds[m_size] = (byte) k.ordinal();
+			m_parts[m_size] = part;
+			m_subjects[m_size] = subject;
+			return m_size++;
+		}
+		
+		/**
+		 * Gets the kind of a node added to the builder.
+		 * @param id The identifier of the node
+		 * @return The kind
+		 */
+		/*@ pure non_null @*/ public Kind getKind(int id)
+		{
+			return KINDS[m_kinds[id]];
+		}
+		
+		/**
+		 * Adds an edge between two nodes. For a given parent, children keep the
+		 * order in which the edges are added.
+		 * @param parent The identifier of the parent
+		 * @param child The identifier of the child
+		 */
+		@Override
+		public void addChild(int parent, int child)
+		{
+			if (m_edges != null && !m_edges.add(((long) parent << 32) | (child & 0xFFFFFFFFL)))
+			{
+				return;
+			}
+			if (m_edgeCount == m_edgeSources.length)
+			{
+				m_edgeSources = Arrays.copyOf(m_edgeSources, m_edgeCount * 2);
+				m_edgeTargets = Arrays.copyOf(m_edgeTargets, m_edgeCount * 2);
+			}
+			m_edgeSources[m_edgeCount] = parent;
+			m_edgeTargets[m_edgeCount] = child;
+			m_edgeCount++;
+		}
+		
+		/**
+		 * Packs the nodes and edges added so far into a frozen graph.
+		 * @param roots The identifiers of the roots of the graph
+		 * @return The frozen graph
+		 */
+		/*@ non_null @*/ public FrozenDag build(/*@ non_null @*/ int[] roots)
+		{
+			// Counting sort of the edges by parent, which preserves the order of
+			// the children of each parent
+			int[] offsets = new int[m_size + 1];
+			for (int e = 0; e < m_edgeCount; e++)
+			{
+				offsets[m_edgeSources[e] + 1]++;
+			}
+			for (int i = 0; i < m_size; i++)
+			{
+				offsets[i + 1] += offsets[i];
+			}
+			int[] children = new int[m_edgeCount];
+			int[] next = Arrays.copyOf(offsets, m_size);
+			for (int e = 0; e < m_edgeCount; e++)
+			{
+				children[next[m_edgeSources[e]]++] = m_edgeTargets[e];
+			}
+			return new FrozenDag(roots.clone(), offsets, children, Arrays.copyOf(m_kinds, m_size), Arrays.copyOf(m_parts, m_size), Arrays.copyOf(m_subjects, m_size));
+		}
+	}
+}
@@ -0,0 +1,368 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.dag.LabelledNode;
+import ca.uqac.lif.dag.NestedNode;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.Pin;
+
+/**
+ * Reads a graph of nodes written by a {@link GraphWriter}. The reader must
+ * know every encoder named in the file; the default encoders of the writer
+ * are always known, and others are added with
+ * {@link #addEncoder(ObjectEncoder)}. Since the file chooses the encoders
+ * that decode its contents, a reader only knows the encoders it is given:
+ * in particular, {@link ObjectEncoder#serializables}, which runs Java's
+ * deserialization on bytes of the file, must be added explicitly, and only
+ * to read files that come from a trusted source.
+ * <p>
+ * A malformed file, such as one declaring a negative length or a reference
+ * outside of the graph, is rejected with an {@link IOException}.
+ * <p>
+ * Nodes are rebuilt in two passes: the first creates all the nodes, and the
+ * second connects their pins directly, without the checks performed by
+ * {@link ca.uqac.lif.dag.NodeConnector}, since a file written by a
+ * {@link GraphWriter} contains each link only once. Equal parts, and subjects
+ * that were the same object when the graph was written, are read back as a
+ * single object.
+ */
+public class GraphReader
+{
+	/**
+	 * The encoders known to this reader, indexed by their name.
+	 */
+	/*@ non_null @*/ protected final Map<String,ObjectEncoder> m_encoders;
+	
+	/**
+	 * Creates a new graph reader with the default encoders.
+	 */
+	public GraphReader()
+	{
+		super();
+		m_encoders = new HashMap<>();
+		for (ObjectEncoder e : Arrays.asList(ObjectEncoder.partConstants, ObjectEncoder.primitives, ObjectEncoder.strings, ObjectEncoder.descriptions))
+		{
+			addEncoder(e);
+		}
+	}
+	
+	/**
+	 * Adds an encoder to this reader. It replaces any encoder with the same
+	 * name.
+	 * @param e The encoder
+	 * @return This reader
+	 */
+	/*@ non_null @*/ public GraphReader addEncoder(/*@ non_null @*/ ObjectEncoder e)
+	{
+		m_encoders.put(e.getName(), e);
+		return this;
+	}
+	
+	/**
+	 * Reads a graph.
+	 * @param is The stream to read from; it is not closed, but it may be read
+	 * beyond the end of the graph
+	 * @return The roots of the graph, in the order in which they were written
+	 * @throws IOException If the stream does not contain a valid graph, or if
+	 * it uses an unknown encoder
+	 */
+	/*@ non_null @*/ public List<Node> read(/*@ non_null @*/ InputStream is) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(is, 1 << 16));
+		if (in.readInt() != GraphWriter.MAGIC)
+		{
+			throw new IOException("Not a graph file");
+		}
+		int version = readVarint(in);
+		if (version != GraphWriter.VERSION)
+		{
+			throw new IOException("Unsupported version " + version);
+		}
+		ObjectEncoder[] encoders = new ObjectEncoder[readLength(in)];
+		for (int i = 0; i < encoders.length; i++)
+		{
+			String name = readString(in);
+			encoders[i] = m_encoders.get(name);
+			if (encoders[i] == null)
+			{
+				throw new IOException("Unknown encoder " + name);
+			}
+		}
+		// Dictionaries; position 0 stands for null
+		Part[] parts = new Part[readLength(in) + 1];
+		for (int i = 1; i < parts.length; i++)
+		{
+			int encoder = readVarint(in);
+			if (encoder == 0)
+			{
+				Part[] components = new Part[readLength(in)];
+				for (int j = 0; j < components.length; j++)
+				{
+					components[j] = parts[readIndex(in, i)];
+				}
+				parts[i] = new ComposedPart(components);
+			}
+			else
+			{
+				Object o = readObject(in, encoders, encoder);
+				if (!(o instanceof Part))
+				{
+					throw new IOException("Not a part: " + o);
+				}
+				parts[i] = (Part) o;
+			}
+		}
+		Object[] subjects = new Object[readLength(in) + 1];
+		for (int i = 1; i < subjects.length; i++)
+		{
+			subjects[i] = readObject(in, encoders, readVarint(in));
+		}
+		// Nodes
+		Node[] nodes = new Node[readLength(in)];
+		for (int i = 0; i < nodes.length; i++)
+		{
+			int type = in.readUnsignedByte();
+			switch (type)
+			{
+			case GraphWriter.PART:
+				nodes[i] = new PartNode(parts[readIndex(in, parts.length)], subjects[readIndex(in, subjects.length)]);
+				break;
+			case GraphWriter.AND:
+				nodes[i] = new AndNode();
+				break;
+			case GraphWriter.OR:
+				nodes[i] = new OrNode();
+				break;
+			case GraphWriter.UNKNOWN:
+				nodes[i] = new UnknownNode();
+				break;
+			case GraphWriter.LABELLED:
+				nodes[i] = new LabelledNode(subjects[readIndex(in, subjects.length)]);
+				break;
+			case GraphWriter.NESTED:
+				nodes[i] = new NestedNode(readLength(in), readLength(in));
+				break;
+			case GraphWriter.OTHER:
+				nodes[i] = new Node(readLength(in), readLength(in));
+				break;
+			default:
+				throw new IOException("Invalid node type " + type);
+			}
+		}
+		// Links
+		for (int k = 0; k < nodes.length; k++)
+		{
+			Node n = nodes[k];
+			for (int i = 0; i < n.getOutputArity(); i++)
+			{
+				int links = readLength(in);
+				for (int j = 0; j < links; j++)
+				{
+					Node target = nodes[checkIndex(k + unzigzag(readVarint(in)), nodes.length)];
+					int pin = readVarint(in);
+					if (pin < 0 || pin >= target.getInputArity())
+					{
+						throw new IOException("Invalid pin " + pin);
+					}
+					n.addToOutput(i, target.getInputPin(pin));
+					target.addToInput(pin, n.getOutputPin(i));
+				}
+			}
+			if (n instanceof NestedNode)
+			{
+				NestedNode nn = (NestedNode) n;
+				Node[] internal = new Node[readLength(in)];
+				for (int j = 0; j < internal.length; j++)
+				{
+					internal[j] = nodes[checkIndex(k + unzigzag(readVarint(in)), nodes.length)];
+				}
+				nn.addNodes(internal);
+				for (int i = 0; i < nn.getInputArity(); i++)
+				{
+					nn.associateInput(i, readAssociation(in, nodes));
+				}
+				for (int i = 0; i < nn.getOutputArity(); i++)
+				{
+					nn.associateOutput(i, readAssociation(in, nodes));
+				}
+			}
+		}
+		List<Node> roots = new ArrayList<>();
+		int num_roots = readLength(in);
+		for (int i = 0; i < num_roots; i++)
+		{
+			roots.add(nodes[readIndex(in, nodes.length)]);
+		}
+		return roots;
+	}
+	
+	/**
+	 * Reads an object with the encoder at a given position plus one.
+	 * @param in The input to read from
+	 * @param encoders The encoders used in the file
+	 * @param encoder The position of the encoder plus one
+	 * @return The object
+	 * @throws IOException If the object cannot be read
+	 */
+	protected static Object readObject(DataInput in, ObjectEncoder[] encoders, int encoder) throws IOException
+	{
+		if (encoder < 1 || encoder > encoders.length)
+		{
+			throw new IOException("Invalid encoder " + encoder);
+		}
+		return encoders[encoder - 1].decode(in);
+	}
+	
+	/**
+	 * Reads the pin of an internal node associated to a pin of a nested node.
+	 * @param in The input to read from
+	 * @param nodes The nodes of the graph
+	 * @return The pin, or <tt>null</tt> if there is no association
+	 * @throws IOException If the pin cannot be read
+	 */
+	protected static Pin<? extends Node> readAssociation(DataInput in, Node[] nodes) throws IOException
+	{
+		int id = readVarint(in);
+		if (id == 0)
+		{
+			return null;
+		}
+		Node n = nodes[checkIndex(id - 1, nodes.length)];
+		int pin = readVarint(in);
+		int index = pin >>> 1;
+		if ((pin & 1) == 1)
+		{
+			if (index >= n.getOutputArity())
+			{
+				throw new IOException("Invalid pin " + index);
+			}
+			return n.getOutputPin(index);
+		}
+		if (index >= n.getInputArity())
+		{
+			throw new IOException("Invalid pin " + index);
+		}
+		return n.getInputPin(index);
+	}
+	
+	/**
+	 * Reads a position in an array and checks that it is valid.
+	 * @param in The input to read from
+	 * @param length The length of the array
+	 * @return The position
+	 * @throws IOException If the position is out of bounds
+	 */
+	protected static int readIndex(DataInput in, int length) throws IOException
+	{
+		return checkIndex(readVarint(in), length);
+	}
+	
+	/**
+	 * Checks that a position in an array is valid.
+	 * @param index The position
+	 * @param length The length of the array
+	 * @return The position
+	 * @throws IOException If the position is out of bounds
+	 */
+	protected static int checkIndex(int index, int length) throws IOException
+	{
+		if (index < 0 || index >= length)
+		{
+			throw new IOException("Invalid reference " + index);
+		}
+		return index;
+	}
+	
+	/**
+	 * Reverts the mapping performed by {@link GraphWriter#zigzag(int)}.
+	 * @param x The mapped integer
+	 * @return The original integer
+	 */
+	protected static int unzigzag(int x)
+	{
+		return (x >>> 1) ^ -(x & 1);
+	}
+	
+	/**
+	 * Reads a non-negative integer written by
+	 * {@link GraphWriter#writeVarint(DataOutput, int)}.
+	 * @param in The input to read from
+	 * @return The integer
+	 * @throws IOException If the integer cannot be read
+	 */
+	public static int readVarint(/*@ non_null @*/ DataInput in) throws IOException
+	{
+		int x = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			x |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return x;
+			}
+		}
+		throw new IOException("Malformed integer");
+	}
+	
+	/**
+	 * Reads a length or a number of elements, written as a non-negative
+	 * integer by {@link GraphWriter#writeVarint(DataOutput, int)}.
+	 * @param in The input to read from
+	 * @return The length
+	 * @throws IOException If the integer cannot be read, or if it is not a
+	 * valid length
+	 */
+	public static int readLength(/*@ non_null @*/ DataInput in) throws IOException
+	{
+		int length = readVarint(in);
+		// Leave room for the extra element of the dictionaries
+		if (length < 0 || length > Integer.MAX_VALUE - 16)
+		{
+			throw new IOException("Invalid length " + length);
+		}
+		return length;
+	}
+	
+	/**
+	 * Reads a string written by
+	 * {@link GraphWriter#writeString(DataOutput, String)}.
+	 * @param in The input to read from
+	 * @return The string
+	 * @throws IOException If the string cannot be read
+	 */
+	/*@ non_null @*/ public static String readString(/*@ non_null @*/ DataInput in) throws IOException
+	{
+		byte[] bytes = new byte[readLength(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
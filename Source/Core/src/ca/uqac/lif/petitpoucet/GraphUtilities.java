@@ -17,15 +17,21 @@
  */
 package ca.uqac.lif.petitpoucet;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 
 import ca.uqac.lif.dag.FlatteningCrawler;
-import ca.uqac.lif.dag.MathSet;
+import ca.uqac.lif.dag.ImmutableMathSet;
 import ca.uqac.lif.dag.Node;
 import ca.uqac.lif.dag.NodeConnector;
 import ca.uqac.lif.dag.Pin;
@@ -116,42 +122,36 @@ public class GraphUtilities
 
 	/**
 	 * Out of a list of lineage graphs, creates another graph where only
-	 * Boolean nodes and leaves are kept.
+	 * Boolean nodes and leaves are kept. The copy of a node shared by several
+	 * graphs is shared by their squashed versions.
 	 * @param roots The roots of the original graph
 	 * @return The roots of the squashed graph
 	 */
 	/*@ non_null @*/ public static List<Node> squash(/*@ non_null @*/ List<Node> roots)
 	{
-		List<Node> squashed = new ArrayList<>(roots.size());
-		Set<Node> visited = new HashSet<>();
-		Map<Node,Node> duplicates = new HashMap<>();
-		for (Node root : roots)
-		{
-			squashed.add(squash(root, visited, duplicates));
-		}
-		return squashed;
+		return squash(roots, null, false);
 	}
 
 	/**
-	 * Out of a single-rooted lineage graph, creates another graph where only
-	 * Boolean nodes and leaves are kept.
-	 * @param root The root of the original graph
-	 * @param visited A set of already visited nodes
-	 * @param duplicates A map keeping track of original nodes and their copies
-	 * in the resulting graph
-	 * @return The root of the squashed graph
+	 * Out of a list of lineage graphs, creates another graph where only
+	 * Boolean nodes and the leaves satisfying a condition are kept. This is
+	 * done in a single traversal of the original graph by a {@link Squasher}.
+	 * @param roots The roots of the original graph
+	 * @param keep_leaf The condition that a leaf must satisfy to be kept, or
+	 * <tt>null</tt> to keep all leaves
+	 * @param remove_unary Set to <tt>true</tt> to also replace the "and" and
+	 * "or" nodes that end up with a single child by that child
+	 * @return The roots of the squashed graph
 	 */
-	/*@ non_null @*/ protected static Node squash(/*@ non_null @*/ Node root, Set<Node> visited, Map<Node,Node> duplicates)
+	/*@ non_null @*/ public static List<Node> squash(/*@ non_null @*/ List<Node> roots, /*@ null @*/ Predicate<? super Node> keep_leaf, boolean remove_unary)
 	{
-		Node new_root = root.duplicate();
-		for (int i = 0; i < root.getOutputArity(); i++)
+		List<Node> squashed = new ArrayList<>(roots.size());
+		Squasher squasher = new Squasher(keep_leaf, remove_unary);
+		for (Node root : roots)
 		{
-			for (Pin<? extends Node> pin : root.getOutputLinks(i))
-			{
-				squash(new_root, i, pin, visited, duplicates);
-			}
+			squashed.add(squasher.squash(root));
 		}
-		return new_root;
+		return squashed;
 	}
 
 	/**
@@ -170,64 +170,16 @@ public class GraphUtilities
 	 * the leaves of the second are appended directly to the parent &and; node.
 	 * An identical procedure is applied for the case of an &or; node having an
 	 * &or; child.
+	 * <p>
+	 * The graph is traversed without recursion, and a node reached through
+	 * several paths is processed only once for each of its new parents.
 	 * 
 	 * @param root The root of the original graph
 	 * @return The root of the squashed graph
 	 */
 	/*@ non_null @*/ public static Node squash(/*@ non_null @*/ Node root)
 	{
-		return squash(root, new HashSet<>(), new HashMap<>());
-	}
-
-	protected static void squash(Node parent, int pin_index, Pin<? extends Node> pin, Set<Node> visited, Map<Node,Node> duplicates)
-	{
-		Node target = pin.getNode();
-		Node target_dup = null;
-		if (duplicates.containsKey(target))
-		{
-			target_dup = duplicates.get(target);
-		}
-		else
-		{
-			target_dup = target.duplicate();
-			duplicates.put(target, target_dup);
-		}
-		visited.add(parent);
-		Node out_parent = parent;
-		if (!(target instanceof AndNode) && !(target instanceof OrNode) && isLeaf(target))
-		{
-			// Don't skip over a leaf node
-			NodeConnector.connect(parent, pin_index, target_dup, pin.getIndex());
-			return;
-		}
-		if (target instanceof AndNode || target instanceof OrNode)
-		{
-			boolean is_nary = target.getOutputNodeCount() > 1;
-			if (target instanceof AndNode && is_nary && !(parent instanceof AndNode))
-			{
-				// Don't skip over an AND node of arity > 1 if parent is something else
-				NodeConnector.connect(parent, pin_index, target_dup, pin.getIndex());
-				out_parent = target_dup;
-			}
-			if (target instanceof OrNode && is_nary && !(parent instanceof OrNode))
-			{
-				// Don't skip over an OR node of arity > 1 if parent is something else
-				NodeConnector.connect(parent, pin_index, target_dup, pin.getIndex());
-				out_parent = target_dup;
-			}
-		}
-		// Otherwise, out_parent = parent, meaning that children of target will be
-		// connected to parent of current node (i.e current is skipped over)
-		if (!visited.contains(target))
-		{
-			for (int i = 0; i < target.getOutputArity(); i++)
-			{
-				for (Pin<? extends Node> t_pin : target.getOutputLinks(i))
-				{
-					squash(out_parent, i, t_pin, visited, duplicates);
-				}
-			}
-		}
+		return new Squasher().squash(root);
 	}
 
 	/**
@@ -267,44 +219,382 @@ public class GraphUtilities
 	 * together, producing the clause {a,b}. The second (right branch) is
 	 * composed of nodes c and f, along with either d or e (second "or" node),
 	 * thus producing the two other clauses {c,d,f} and {c,e,f}.
+	 * <p>
+	 * The set of clauses of each node is computed only once, however many
+	 * parents the node has, as an {@link ImmutableMathSet} that may share its
+	 * clauses with the sets of the children of the node, and the graph is
+	 * traversed without recursion. The set returned is a new mutable set of
+	 * {@linkplain Clause#copyOf(java.util.Collection) copies} of the clauses,
+	 * which the caller is free to modify. The parts of the leaves are
+	 * numbered by a {@link PartIndex}, so that clauses are merged and compared
+	 * as sorted arrays of numbers. Since all the clauses
+	 * are computed before the method returns, their number can grow
+	 * exponentially with the number of "or" nodes below an "and" node; use
+	 * {@link #enumerateDnf(Node)} to get them one at a time instead.
 	 * 
 	 * @param root The root of the lineage graph
 	 * @return The list of clauses
 	 */
 	/*@ non_null @*/ public static Set<Clause> asDnf(/*@ non_null @*/ Node root)
 	{
-		Set<Clause> clauses = new MathSet<Clause>();
-		if (root instanceof PartNode && isLeaf(root))
+		return Clause.copyOf(asSharedDnf(root));
+	}
+	
+	/**
+	 * Converts a lineage graph into a set of clauses, as
+	 * {@link #asDnf(Node)} does, without copying the clauses of the result.
+	 * @param root The root of the lineage graph
+	 * @return The set of clauses, which must not be modified
+	 */
+	/*@ non_null @*/ protected static ImmutableMathSet<Clause> asSharedDnf(/*@ non_null @*/ Node root)
+	{
+		Map<Node,ImmutableMathSet<Clause>> results = new IdentityHashMap<Node,ImmutableMathSet<Clause>>();
+		PartIndex index = new PartIndex();
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty())
 		{
-			PartNode pn = (PartNode) root;
-			ObjectPart op = new ObjectPart(pn.getPart(), pn.getSubject());
-			// Leaf: create a singleton clause with it and return
-			Clause clause = new Clause();
-			clause.add(op);
-			clauses.add(clause);
-			return clauses;
+			Node current = stack.peek();
+			if (results.containsKey(current))
+			{
+				stack.pop();
+				continue;
+			}
+			if (current instanceof PartNode && isLeaf(current))
+			{
+				// Leaf: create a singleton clause with it
+				stack.pop();
+				PartNode pn = (PartNode) current;
+				ObjectPart op = new ObjectPart(pn.getPart(), pn.getSubject());
+				results.put(current, new ImmutableMathSet<Clause>().with(new Clause(index, index.getId(op))));
+				continue;
+			}
+			// Non-leaf node: compute the set of clauses of each child first
+			List<ImmutableMathSet<Clause>> list_clauses = new ArrayList<ImmutableMathSet<Clause>>();
+			boolean ready = true;
+			for (int i = 0; i < current.getOutputArity(); i++)
+			{
+				for (Pin<? extends Node> pin : current.getOutputLinks(i))
+				{
+					ImmutableMathSet<Clause> child_clauses = results.get(pin.getNode());
+					if (child_clauses == null)
+					{
+						stack.push(pin.getNode());
+						ready = false;
+					}
+					else
+					{
+						list_clauses.add(child_clauses);
+					}
+				}
+			}
+			if (!ready)
+			{
+				continue;
+			}
+			stack.pop();
+			if (current instanceof AndNode)
+			{
+				// And node: "distribute" clause lists
+				results.put(current, Clause.distributeShared(list_clauses));
+				continue;
+			}
+			// Or node: merge all clause lists into one, sorted only once
+			results.put(current, ImmutableMathSet.union(list_clauses));
 		}
-		// Non-leaf node: first recursively get set of clauses from each child
-		List<Set<Clause>> list_clauses = new ArrayList<Set<Clause>>();
-		for (int i = 0; i < root.getOutputArity(); i++)
+		return results.get(root);
+	}
+
+	/**
+	 * Converts a lineage graph into a set of clauses, in the same way as
+	 * {@link #asDnf(Node)}, and keeps only its minimal clauses.
+	 * @param root The root of the lineage graph
+	 * @return The set of minimal clauses
+	 * @see #minimalDnf(Set)
+	 */
+	/*@ non_null @*/ public static Set<Clause> minimalDnf(/*@ non_null @*/ Node root)
+	{
+		return minimalDnf(asSharedDnf(root));
+	}
+
+	/**
+	 * Removes from a set of clauses those that contain another clause of the
+	 * set. Such a clause is redundant: the disjunction of the remaining
+	 * clauses is equivalent to that of the original ones.
+	 * <p>
+	 * The parts are numbered, each clause is encoded as a sorted array of
+	 * numbers, and the clauses are processed by increasing size. A clause is
+	 * kept if a {@link ClauseTrie} of the clauses kept so far contains none of
+	 * its subsets, which avoids comparing each pair of clauses.
+	 * @param clauses The set of clauses
+	 * @return A new mutable set with copies of the minimal clauses
+	 */
+	/*@ non_null @*/ public static Set<Clause> minimalDnf(/*@ non_null @*/ Set<Clause> clauses)
+	{
+		// Number the parts by increasing frequency, so that the first levels of
+		// the trie, which every search visits, have the fewest branches
+		Map<ObjectPart,int[]> counts = new HashMap<ObjectPart,int[]>();
+		for (Clause c : clauses)
 		{
-			List<Pin<? extends Node>> pins = root.getOutputLinks(i);
-			for (Pin<? extends Node> pin : pins)
+			for (ObjectPart op : c)
 			{
-				Node child = pin.getNode();
-				list_clauses.add(asDnf(child));
+				counts.computeIfAbsent(op, k -> new int[1])[0]++;
 			}
 		}
-		if (root instanceof AndNode)
+		List<Map.Entry<ObjectPart,int[]>> entries = new ArrayList<Map.Entry<ObjectPart,int[]>>(counts.entrySet());
+		entries.sort((e1, e2) -> Integer.compare(e1.getValue()[0], e2.getValue()[0]));
+		Map<ObjectPart,Integer> numbers = new HashMap<ObjectPart,Integer>();
+		for (int i = 0; i < entries.size(); i++)
 		{
-			// And node: "distribute" clause lists
-			return Clause.distribute(list_clauses);
+			numbers.put(entries.get(i).getKey(), i);
 		}
-		// Or node: merge all clause lists into one and return
-		for (Set<Clause> l_clauses : list_clauses)
+		Clause[] sorted = clauses.toArray(new Clause[clauses.size()]);
+		Arrays.sort(sorted, (c1, c2) -> Integer.compare(c1.size(), c2.size()));
+		ClauseTrie trie = new ClauseTrie();
+		List<Clause> minimal = new ArrayList<Clause>();
+		for (Clause c : sorted)
 		{
-			clauses.addAll(l_clauses);
+			int[] code = new int[c.size()];
+			int i = 0;
+			for (ObjectPart op : c)
+			{
+				code[i++] = numbers.get(op);
+			}
+			Arrays.sort(code);
+			if (!trie.containsSubsetOf(code))
+			{
+				trie.add(code);
+				minimal.add(c);
+			}
+		}
+		return Clause.copyOf(minimal);
+	}
+
+	/**
+	 * Enumerates the clauses of a lineage graph lazily, in the same way as
+	 * {@link #asDnf(Node)}. The clauses are computed only as they are
+	 * requested from the returned iterator, which can also be given a maximum
+	 * number of clauses and a maximum duration.
+	 * @param root The root of the lineage graph
+	 * @return An iterator over the clauses
+	 */
+	/*@ non_null @*/ public static DnfEnumerator enumerateDnf(/*@ non_null @*/ Node root)
+	{
+		return new DnfEnumerator(root);
+	}
+
+	/**
+	 * Finds the smallest clauses of a lineage graph, such as the explanation
+	 * returned for an output by a function. The clauses are those of
+	 * {@link #asDnf(Node)}, but only the ones that are returned are built.
+	 * @param root The root of the lineage graph
+	 * @param k The maximum number of clauses to return
+	 * @return The <i>k</i> clauses with the fewest parts, by increasing size
+	 * @see ClauseSearch
+	 */
+	/*@ non_null @*/ public static List<Clause> smallestClauses(/*@ non_null @*/ Node root, int k)
+	{
+		return smallestClauses(new ClauseSearch(root), k);
+	}
+
+	/**
+	 * Finds the lightest clauses of a lineage graph, where the weight of a
+	 * clause is the sum of the weights of its parts.
+	 * @param root The root of the lineage graph
+	 * @param k The maximum number of clauses to return
+	 * @param weight A function giving the weight of each part, which must be
+	 * non-negative
+	 * @return The <i>k</i> lightest clauses, by increasing weight
+	 * @see ClauseSearch
+	 */
+	/*@ non_null @*/ public static List<Clause> smallestClauses(/*@ non_null @*/ Node root, int k, /*@ non_null @*/ ToDoubleFunction<ObjectPart> weight)
+	{
+		return smallestClauses(new ClauseSearch(root, weight), k);
+	}
+
+	/**
+	 * Gets the first clauses found by a search.
+	 * @param search The search
+	 * @param k The maximum number of clauses to return
+	 * @return The clauses
+	 */
+	/*@ non_null @*/ protected static List<Clause> smallestClauses(/*@ non_null @*/ ClauseSearch search, int k)
+	{
+		List<Clause> clauses = new ArrayList<Clause>(Math.min(k, 64));
+		while (clauses.size() < k && search.hasNext())
+		{
+			clauses.add(search.next());
 		}
 		return clauses;
 	}
+
+	/**
+	 * Out of an indexed lineage graph, creates a frozen graph where only
+	 * Boolean nodes and leaves are kept. The operation is the same as
+	 * {@link #squash(List)}, applied to each root of the graph. Since an
+	 * indexed graph cannot be modified, a new one is created; its nodes are
+	 * numbered in the order in which they are added to the result.
+	 * @param dag The original graph
+	 * @return The squashed graph
+	 */
+	/*@ non_null @*/ public static FrozenDag squash(/*@ non_null @*/ IndexedDag dag)
+	{
+		FrozenDag.Builder b = new FrozenDag.Builder(true);
+		int[] duplicates = new int[dag.size()];
+		Arrays.fill(duplicates, -1);
+		// Pairs (parent in the new graph, target in the original graph) that
+		// have already been processed; processing them again has no effect
+		Set<Long> processed = new HashSet<>();
+		int[] new_roots = new int[dag.getRootCount()];
+		// Stack of pairs (parent in the new graph, target in the original graph)
+		IndexedDag.IntStack stack = new IndexedDag.IntStack();
+		for (int r = 0; r < new_roots.length; r++)
+		{
+			int root = dag.getRoot(r);
+			int new_root = b.addNode(dag, root);
+			new_roots[r] = new_root;
+			pushChildren(dag, root, new_root, stack);
+			while (!stack.isEmpty())
+			{
+				int target = stack.pop();
+				int parent = stack.pop();
+				if (!processed.add(((long) parent << 32) | (target & 0xFFFFFFFFL)))
+				{
+					continue;
+				}
+				IndexedDag.Kind kind = dag.getKind(target);
+				boolean is_boolean = kind == IndexedDag.Kind.AND || kind == IndexedDag.Kind.OR;
+				if (!is_boolean && dag.isLeaf(target))
+				{
+					// Don't skip over a leaf node
+					b.addChild(parent, getDuplicate(b, dag, target, duplicates));
+					continue;
+				}
+				int out_parent = parent;
+				if (is_boolean && dag.getDegree(target) > 1 && b.getKind(parent) != kind)
+				{
+					// Don't skip over a Boolean node of arity > 1 if parent is something else
+					int target_dup = getDuplicate(b, dag, target, duplicates);
+					b.addChild(parent, target_dup);
+					out_parent = target_dup;
+				}
+				// Otherwise, children of target are connected to parent
+				pushChildren(dag, target, out_parent, stack);
+			}
+		}
+		return b.build(new_roots);
+	}
+
+	/**
+	 * Pushes on a stack the pairs made of a parent and each child of a node,
+	 * in reverse order, so that they are popped in the order of the children.
+	 * @param dag The graph
+	 * @param id The identifier of the node whose children are pushed
+	 * @param parent The parent to pair with each child
+	 * @param stack The stack
+	 */
+	protected static void pushChildren(IndexedDag dag, int id, int parent, IndexedDag.IntStack stack)
+	{
+		for (int k = dag.getDegree(id) - 1; k >= 0; k--)
+		{
+			stack.push(parent);
+			stack.push(dag.getChild(id, k));
+		}
+	}
+	
+	/**
+	 * Gets the copy of a node of a frozen graph in a graph being built,
+	 * creating it if it does not exist yet.
+	 * @param b The builder of the new graph
+	 * @param dag The original graph
+	 * @param id The identifier of the node in the original graph
+	 * @param duplicates An array giving the identifier of the copy of each
+	 * node of the original graph, or -1 if no copy exists yet
+	 * @return The identifier of the copy
+	 */
+	protected static int getDuplicate(FrozenDag.Builder b, IndexedDag dag, int id, int[] duplicates)
+	{
+		if (duplicates[id] < 0)
+		{
+			duplicates[id] = b.addNode(dag, id);
+		}
+		return duplicates[id];
+	}
+
+	/**
+	 * Converts the graph below the first root of an indexed lineage graph into a
+	 * set of clauses, in the same way as {@link #asDnf(Node)}.
+	 * @param dag The lineage graph
+	 * @return The set of clauses
+	 */
+	/*@ non_null @*/ public static Set<Clause> asDnf(/*@ non_null @*/ IndexedDag dag)
+	{
+		return asDnf(dag, dag.getRoot(0));
+	}
+
+	/**
+	 * Converts the graph below a node of an indexed lineage graph into a set of
+	 * clauses, in the same way as {@link #asDnf(Node)}. The set of clauses of
+	 * each node is computed only once, however many parents the node has, and
+	 * the graph is traversed without recursion.
+	 * @param dag The lineage graph
+	 * @param id The identifier of the node to start from
+	 * @return A new mutable set of clauses
+	 */
+	/*@ non_null @*/ public static Set<Clause> asDnf(/*@ non_null @*/ IndexedDag dag, int id)
+	{
+		@SuppressWarnings("unchecked")
+		ImmutableMathSet<Clause>[] results = (ImmutableMathSet<Clause>[]) new ImmutableMathSet<?>[dag.size()];
+		PartIndex index = new PartIndex();
+		IndexedDag.IntStack stack = new IndexedDag.IntStack();
+		stack.push(id);
+		while (!stack.isEmpty())
+		{
+			int current = stack.peek();
+			if (results[current] != null)
+			{
+				stack.pop();
+				continue;
+			}
+			// Compute the children first
+			boolean ready = true;
+			for (int k = dag.getDegree(current) - 1; k >= 0; k--)
+			{
+				int child = dag.getChild(current, k);
+				if (results[child] == null)
+				{
+					stack.push(child);
+					ready = false;
+				}
+			}
+			if (!ready)
+			{
+				continue;
+			}
+			stack.pop();
+			IndexedDag.Kind kind = dag.getKind(current);
+			if (kind == IndexedDag.Kind.PART && dag.isLeaf(current))
+			{
+				// Leaf: create a singleton clause with it
+				ObjectPart op = new ObjectPart(dag.getPart(current), dag.getSubject(current));
+				Clause clause = new Clause(index, index.getId(op));
+				results[current] = new ImmutableMathSet<Clause>().with(clause);
+				continue;
+			}
+			List<ImmutableMathSet<Clause>> list_clauses = new ArrayList<ImmutableMathSet<Clause>>(dag.getDegree(current));
+			for (int k = 0; k < dag.getDegree(current); k++)
+			{
+				list_clauses.add(results[dag.getChild(current, k)]);
+			}
+			if (kind == IndexedDag.Kind.AND)
+			{
+				// And node: "distribute" clause lists
+				results[current] = Clause.distributeShared(list_clauses);
+				continue;
+			}
+			// Or node: merge all clause lists into one, sorted only once
+			results[current] = ImmutableMathSet.union(list_clauses);
+		}
+		return Clause.copyOf(results[id]);
+	}
 }
@@ -0,0 +1,523 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.dag.LabelledNode;
+import ca.uqac.lif.dag.NestedNode;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.Pin;
+
+/**
+ * Writes a graph of nodes in a compact binary format, which can be read back
+ * by a {@link GraphReader}. The file contains, in this order:
+ * <ol>
+ * <li>a magic number and the version of the format;</li>
+ * <li>the names of the {@link ObjectEncoder}s used in the file;</li>
+ * <li>a dictionary of the distinct parts of the graph, and a dictionary of
+ * its distinct subjects, each written once by an encoder;</li>
+ * <li>the type of each node, with the position of its part and subject in
+ * the dictionaries, or its arity;</li>
+ * <li>the output links of each node and, for nested nodes, their internal
+ * nodes and pin associations;</li>
+ * <li>the identifiers of the roots.</li>
+ * </ol>
+ * All integers are written as variable-length quantities, and the child of
+ * a link is written as its distance from the parent, which is small since
+ * nodes are numbered in breadth-first order. Parts are compared with
+ * <tt>equals</tt>, and subjects by identity.
+ * <p>
+ * {@link PartNode}, {@link AndNode}, {@link OrNode}, {@link UnknownNode},
+ * {@link NestedNode} and {@link LabelledNode} are read back as instances of
+ * these classes; a node of any other type is read back as a plain
+ * {@link Node} with the same arity. The graph written is made of the roots,
+ * all the nodes reachable from them through output links, and the internal
+ * nodes of the nested nodes. Input links are restored from the output links,
+ * so a node lists its input links in the order in which its parents are
+ * numbered.
+ */
+public class GraphWriter
+{
+	/**
+	 * The number written at the start of a file, which spells "PPGF".
+	 */
+	public static final int MAGIC = 0x50504746;
+	
+	/**
+	 * The version of the format.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * The code of a {@link PartNode}.
+	 */
+	protected static final int PART = 0;
+	
+	/**
+	 * The code of an {@link AndNode}.
+	 */
+	protected static final int AND = 1;
+	
+	/**
+	 * The code of an {@link OrNode}.
+	 */
+	protected static final int OR = 2;
+	
+	/**
+	 * The code of an {@link UnknownNode}.
+	 */
+	protected static final int UNKNOWN = 3;
+	
+	/**
+	 * The code of a {@link NestedNode}.
+	 */
+	protected static final int NESTED = 4;
+	
+	/**
+	 * The code of a {@link LabelledNode}.
+	 */
+	protected static final int LABELLED = 5;
+	
+	/**
+	 * The code of any other node.
+	 */
+	protected static final int OTHER = 6;
+	
+	/**
+	 * The encoders used to write parts and subjects, in decreasing order of
+	 * priority.
+	 */
+	/*@ non_null @*/ protected final List<ObjectEncoder> m_encoders;
+	
+	/**
+	 * The number of encoders added with {@link #addEncoder(ObjectEncoder)}.
+	 */
+	protected int m_addedEncoders;
+	
+	/**
+	 * Creates a new graph writer with the default encoders.
+	 */
+	public GraphWriter()
+	{
+		super();
+		m_encoders = new ArrayList<>(Arrays.asList(ObjectEncoder.partConstants, ObjectEncoder.primitives, ObjectEncoder.strings, ObjectEncoder.descriptions));
+		m_addedEncoders = 0;
+	}
+	
+	/**
+	 * Adds an encoder to this writer. Encoders are tried in the order in which
+	 * they are added, and before the default encoders.
+	 * @param e The encoder
+	 * @return This writer
+	 */
+	/*@ non_null @*/ public GraphWriter addEncoder(/*@ non_null @*/ ObjectEncoder e)
+	{
+		m_encoders.add(m_addedEncoders++, e);
+		return this;
+	}
+	
+	/**
+	 * Writes a single-rooted graph.
+	 * @param root The root of the graph
+	 * @param os The stream to write to; it is flushed but not closed
+	 * @throws IOException If the graph cannot be written
+	 */
+	public void write(/*@ non_null @*/ Node root, /*@ non_null @*/ OutputStream os) throws IOException
+	{
+		write(Arrays.asList(root), os);
+	}
+	
+	/**
+	 * Writes a graph with one or more roots.
+	 * @param roots The roots of the graph
+	 * @param os The stream to write to; it is flushed but not closed
+	 * @throws IOException If the graph cannot be written
+	 */
+	public void write(/*@ non_null @*/ List<? extends Node> roots, /*@ non_null @*/ OutputStream os) throws IOException
+	{
+		Map<Node,Integer> ids = new IdentityHashMap<>();
+		List<Node> nodes = new ArrayList<>();
+		for (Node root : roots)
+		{
+			getId(root, ids, nodes);
+		}
+		// Number the nodes in breadth-first order; the list doubles as the queue
+		Dictionary<Part> parts = new Dictionary<>(new HashMap<Part,Integer>());
+		Dictionary<Object> subjects = new Dictionary<>(new IdentityHashMap<Object,Integer>());
+		for (int k = 0; k < nodes.size(); k++)
+		{
+			Node current = nodes.get(k);
+			if (current instanceof PartNode)
+			{
+				addPart(((PartNode) current).getPart(), parts);
+				subjects.add(((PartNode) current).getSubject());
+			}
+			else if (current instanceof LabelledNode && getType(current) == LABELLED)
+			{
+				subjects.add(((LabelledNode) current).getLabel());
+			}
+			for (int i = 0; i < current.getOutputArity(); i++)
+			{
+				for (Pin<? extends Node> pin : current.getOutputLinks(i))
+				{
+					getId(pin.getNode(), ids, nodes);
+				}
+			}
+			if (current instanceof NestedNode)
+			{
+				NestedNode nn = (NestedNode) current;
+				for (Node n : nn.getInternalNodes())
+				{
+					getId(n, ids, nodes);
+				}
+			}
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+		out.writeInt(MAGIC);
+		writeVarint(out, VERSION);
+		writeVarint(out, m_encoders.size());
+		for (ObjectEncoder e : m_encoders)
+		{
+			writeString(out, e.getName());
+		}
+		// Dictionaries
+		writeVarint(out, parts.size());
+		for (Part p : parts.m_objects)
+		{
+			if (p instanceof ComposedPart)
+			{
+				// Components come before the composed part in the dictionary
+				ComposedPart cp = (ComposedPart) p;
+				writeVarint(out, 0);
+				writeVarint(out, cp.size());
+				for (int i = 0; i < cp.size(); i++)
+				{
+					writeVarint(out, parts.getId(cp.get(i)));
+				}
+			}
+			else
+			{
+				writeObject(out, p);
+			}
+		}
+		writeVarint(out, subjects.size());
+		for (Object o : subjects.m_objects)
+		{
+			writeObject(out, o);
+		}
+		// Nodes
+		writeVarint(out, nodes.size());
+		for (Node n : nodes)
+		{
+			int type = getType(n);
+			out.writeByte(type);
+			switch (type)
+			{
+			case PART:
+				writeVarint(out, parts.getId(((PartNode) n).getPart()));
+				writeVarint(out, subjects.getId(((PartNode) n).getSubject()));
+				break;
+			case LABELLED:
+				writeVarint(out, subjects.getId(((LabelledNode) n).getLabel()));
+				break;
+			case NESTED:
+			case OTHER:
+				writeVarint(out, n.getInputArity());
+				writeVarint(out, n.getOutputArity());
+				break;
+			default:
+				// Nothing else to write
+			}
+		}
+		// Links
+		for (int k = 0; k < nodes.size(); k++)
+		{
+			Node n = nodes.get(k);
+			for (int i = 0; i < n.getOutputArity(); i++)
+			{
+				List<Pin<? extends Node>> links = n.getOutputLinks(i);
+				writeVarint(out, links.size());
+				for (Pin<? extends Node> pin : links)
+				{
+					writeVarint(out, zigzag(ids.get(pin.getNode()) - k));
+					writeVarint(out, pin.getIndex());
+				}
+			}
+			if (n instanceof NestedNode)
+			{
+				NestedNode nn = (NestedNode) n;
+				List<Node> internal = nn.getInternalNodes();
+				writeVarint(out, internal.size());
+				for (Node in : internal)
+				{
+					writeVarint(out, zigzag(ids.get(in) - k));
+				}
+				for (int i = 0; i < nn.getInputArity(); i++)
+				{
+					writeAssociation(out, nn.getAssociatedInput(i), ids);
+				}
+				for (int i = 0; i < nn.getOutputArity(); i++)
+				{
+					writeAssociation(out, nn.getAssociatedOutput(i), ids);
+				}
+			}
+		}
+		writeVarint(out, roots.size());
+		for (Node root : roots)
+		{
+			writeVarint(out, ids.get(root));
+		}
+		out.flush();
+	}
+	
+	/**
+	 * Writes an object with the first encoder that accepts it, preceded by
+	 * the position of this encoder plus one.
+	 * @param out The output to write to
+	 * @param o The object
+	 * @throws IOException If the object cannot be written
+	 */
+	protected void writeObject(DataOutput out, Object o) throws IOException
+	{
+		for (int i = 0; i < m_encoders.size(); i++)
+		{
+			ObjectEncoder e = m_encoders.get(i);
+			if (e.canEncode(o))
+			{
+				writeVarint(out, i + 1);
+				e.encode(out, o);
+				return;
+			}
+		}
+		throw new IOException("No encoder for " + o.getClass().getName());
+	}
+	
+	/**
+	 * Writes the pin of an internal node associated to a pin of a nested node,
+	 * as the identifier of the node plus one (0 if there is no association)
+	 * followed by the index of the pin, doubled and incremented if it is an
+	 * output pin.
+	 * @param out The output to write to
+	 * @param pin The pin, or <tt>null</tt>
+	 * @param ids The identifiers of the nodes
+	 * @throws IOException If the pin cannot be written
+	 */
+	protected static void writeAssociation(DataOutput out, Pin<? extends Node> pin, Map<Node,Integer> ids) throws IOException
+	{
+		Integer id = pin == null ? null : ids.get(pin.getNode());
+		if (id == null)
+		{
+			writeVarint(out, 0);
+			return;
+		}
+		Node n = pin.getNode();
+		boolean output = pin.getIndex() < n.getOutputArity() && n.getOutputPin(pin.getIndex()) == pin;
+		writeVarint(out, id + 1);
+		writeVarint(out, (pin.getIndex() << 1) | (output ? 1 : 0));
+	}
+	
+	/**
+	 * Adds a part to a dictionary, after the components of the part if it is
+	 * a composed part.
+	 * @param p The part
+	 * @param parts The dictionary
+	 */
+	protected static void addPart(Part p, Dictionary<Part> parts)
+	{
+		if (parts.m_ids.containsKey(p))
+		{
+			return;
+		}
+		if (p instanceof ComposedPart)
+		{
+			ComposedPart cp = (ComposedPart) p;
+			for (int i = 0; i < cp.size(); i++)
+			{
+				addPart(cp.get(i), parts);
+			}
+		}
+		parts.add(p);
+	}
+	
+	/**
+	 * Gets the identifier of a node, giving it the next identifier if it does
+	 * not have one yet.
+	 * @param n The node
+	 * @param ids The identifiers given so far
+	 * @param nodes The nodes, in the order of their identifiers
+	 */
+	protected static void getId(Node n, Map<Node,Integer> ids, List<Node> nodes)
+	{
+		if (!ids.containsKey(n))
+		{
+			ids.put(n, nodes.size());
+			nodes.add(n);
+		}
+	}
+	
+	/**
+	 * Gets the code of the type of a node.
+	 * @param n The node
+	 * @return The code
+	 */
+	protected static int getType(Node n)
+	{
+		if (n instanceof PartNode)
+		{
+			return PART;
+		}
+		if (n instanceof AndNode)
+		{
+			return AND;
+		}
+		if (n instanceof OrNode)
+		{
+			return OR;
+		}
+		if (n instanceof UnknownNode)
+		{
+			return UNKNOWN;
+		}
+		if (n instanceof NestedNode)
+		{
+			return NESTED;
+		}
+		if (n.getClass() == LabelledNode.class)
+		{
+			return LABELLED;
+		}
+		return OTHER;
+	}
+	
+	/**
+	 * Maps a signed integer to an unsigned one, so that integers of small
+	 * absolute value are written on few bytes.
+	 * @param x The integer
+	 * @return The mapped integer
+	 */
+	protected static int zigzag(int x)
+	{
+		return (x << 1) ^ (x >> 31);
+	}
+	
+	/**
+	 * Writes a non-negative integer on one to five bytes, seven bits at a
+	 * time, starting with the least significant ones. The high bit of each
+	 * byte indicates whether another byte follows.
+	 * @param out The output to write to
+	 * @param x The integer
+	 * @throws IOException If the integer cannot be written
+	 */
+	public static void writeVarint(/*@ non_null @*/ DataOutput out, int x) throws IOException
+	{
+		while ((x & ~0x7F) != 0)
+		{
+			out.writeByte((x & 0x7F) | 0x80);
+			x >>>= 7;
+		}
+		out.writeByte(x);
+	}
+	
+	/**
+	 * Writes a string as its length in bytes followed by its UTF-8 encoding.
+	 * @param out The output to write to
+	 * @param s The string
+	 * @throws IOException If the string cannot be written
+	 */
+	public static void writeString(/*@ non_null @*/ DataOutput out, /*@ non_null @*/ String s) throws IOException
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * A list of distinct objects, each associated to its position in the list.
+	 * The position 0 is reserved for <tt>null</tt>, so that objects are
+	 * numbered from 1.
+	 * @param <T> The type of the objects
+	 */
+	protected static class Dictionary<T>
+	{
+		/**
+		 * The map associating objects to their position.
+		 */
+		/*@ non_null @*/ protected final Map<T,Integer> m_ids;
+		
+		/**
+		 * The objects, in the order in which they were added.
+		 */
+		/*@ non_null @*/ protected final List<T> m_objects;
+		
+		/**
+		 * Creates a new empty dictionary.
+		 * @param ids The map used to associate objects to their position,
+		 * which determines how objects are compared
+		 */
+		public Dictionary(/*@ non_null @*/ Map<T,Integer> ids)
+		{
+			super();
+			m_ids = ids;
+			m_objects = new ArrayList<>();
+		}
+		
+		/**
+		 * Adds an object to the dictionary, if it is not already present.
+		 * @param o The object
+		 */
+		public void add(/*@ null @*/ T o)
+		{
+			if (o != null && !m_ids.containsKey(o))
+			{
+				m_objects.add(o);
+				m_ids.put(o, m_objects.size());
+			}
+		}
+		
+		/**
+		 * Gets the position of an object in the dictionary.
+		 * @param o The object
+		 * @return The position, or 0 if the object is <tt>null</tt>
+		 */
+		/*@ pure @*/ public int getId(/*@ null @*/ T o)
+		{
+			return o == null ? 0 : m_ids.get(o);
+		}
+		
+		/**
+		 * Gets the number of objects in the dictionary.
+		 * @return The number of objects
+		 */
+		/*@ pure @*/ public int size()
+		{
+			return m_objects.size();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+/**
+ * Functions to compute the hash codes of parts and other value objects. A
+ * hash code is computed by starting from a seed specific to a class,
+ * {@link #combine(int, int) combining} it with each of the values that make
+ * up the object, in order, and {@link #mix(int) mixing} the result. This is
+ * the scheme of MurmurHash3; contrary to sums and products of the values, it
+ * gives different hash codes to objects of different classes having the
+ * same values, and to objects whose values are permuted.
+ * <p>
+ * Parts made of small indices can instead {@link #spread(int, int) spread}
+ * their seed over the high bits of an index. Consecutive indices then keep
+ * consecutive hash codes, which hash tables access in a cache-friendly way
+ * when chains are short.
+ */
+public class HashUtilities
+{
+	/**
+	 * Private constructor.
+	 */
+	private HashUtilities()
+	{
+		super();
+	}
+	
+	/**
+	 * Gets a seed for the hash codes of the instances of a class.
+	 * @param c The class
+	 * @return The seed
+	 */
+	public static int seed(/*@ non_null @*/ Class<?> c)
+	{
+		return mix(c.getName().hashCode());
+	}
+	
+	/**
+	 * Combines a hash code with a value.
+	 * @param h The hash code
+	 * @param value The value
+	 * @return The new hash code
+	 */
+	public static int combine(int h, int value)
+	{
+		value *= 0xcc9e2d51;
+		value = Integer.rotateLeft(value, 15);
+		value *= 0x1b873593;
+		h ^= value;
+		h = Integer.rotateLeft(h, 13);
+		return h * 5 + 0xe6546b64;
+	}
+	
+	/**
+	 * Mixes the bits of a hash code, so that every bit of the input affects
+	 * every bit of the output.
+	 * @param h The hash code
+	 * @return The mixed hash code
+	 */
+	public static int mix(int h)
+	{
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	/**
+	 * Computes a cheap hash code for an object made of one small value. The
+	 * seed of the class only changes the high bits of the value, so that
+	 * objects of different classes differ, while consecutive values still
+	 * have consecutive hash codes.
+	 * @param seed The seed of the object's class
+	 * @param value The value
+	 * @return The hash code
+	 */
+	public static int spread(int seed, int value)
+	{
+		return (seed & 0xffff0000) ^ value;
+	}
+	
+	/**
+	 * Computes the hash code of an object made of one value.
+	 * @param seed The seed of the object's class
+	 * @param value The value
+	 * @return The hash code
+	 */
+	public static int hash(int seed, int value)
+	{
+		return mix(combine(seed, value));
+	}
+	
+	/**
+	 * Computes the hash code of an object made of two values.
+	 * @param seed The seed of the object's class
+	 * @param v1 The first value
+	 * @param v2 The second value
+	 * @return The hash code
+	 */
+	public static int hash(int seed, int v1, int v2)
+	{
+		return mix(combine(combine(seed, v1), v2));
+	}
+}
@@ -0,0 +1,162 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import ca.uqac.lif.dag.Crawler;
+import ca.uqac.lif.dag.Crawler.Order;
+
+/**
+ * Visits every node reachable from a starting point in an
+ * {@link IndexedDag}. This is the counterpart of a {@link Crawler} for
+ * graphs whose nodes are designated by integers: the crawl follows the
+ * edges from a node to its children, and the set of nodes already
+ * encountered is a bit set, so that the memory it uses on the heap is one
+ * bit per node of the graph.
+ */
+public abstract class IndexedCrawler
+{
+	/**
+	 * The graph to crawl.
+	 */
+	/*@ non_null @*/ protected final IndexedDag m_dag;
+	
+	/**
+	 * The identifier of the starting point of the crawl.
+	 */
+	protected final int m_start;
+	
+	/**
+	 * The order in which nodes are visited.
+	 */
+	/*@ non_null @*/ protected Order m_order;
+	
+	/**
+	 * Creates a new crawler.
+	 * @param dag The graph to crawl
+	 * @param start The identifier of the starting point of the crawl
+	 */
+	public IndexedCrawler(/*@ non_null @*/ IndexedDag dag, int start)
+	{
+		super();
+		m_dag = dag;
+		m_start = start;
+		m_order = Order.BREADTH_FIRST;
+	}
+	
+	/**
+	 * Sets the order in which the crawler visits the nodes of the graph.
+	 * @param order The order
+	 * @return This crawler
+	 */
+	/*@ non_null @*/ public IndexedCrawler setOrder(/*@ non_null @*/ Order order)
+	{
+		m_order = order;
+		return this;
+	}
+	
+	/**
+	 * Visits every node in the graph from the specified starting point.
+	 */
+	public void crawl()
+	{
+		if (m_order == Order.DEPTH_FIRST)
+		{
+			crawlDepthFirst();
+		}
+		else
+		{
+			crawlBreadthFirst();
+		}
+	}
+	
+	/**
+	 * Visits every node in breadth-first order. A node is marked as seen as
+	 * soon as it is put in the queue, so that it is enqueued at most once.
+	 */
+	protected void crawlBreadthFirst()
+	{
+		BitSet seen = new BitSet();
+		int[] queue = new int[16];
+		int head = 0, tail = 0;
+		queue[tail++] = m_start;
+		seen.set(m_start);
+		while (head < tail)
+		{
+			int current = queue[head++];
+			visit(current);
+			int degree = m_dag.getDegree(current);
+			for (int k = 0; k < degree; k++)
+			{
+				int child = m_dag.getChild(current, k);
+				if (!seen.get(child))
+				{
+					seen.set(child);
+					if (tail == queue.length)
+					{
+						// Reclaim the consumed part of the queue before growing it
+						int length = tail - head;
+						queue = length * 2 <= queue.length ? queue : Arrays.copyOf(queue, queue.length * 2);
+						System.arraycopy(queue, head, queue, 0, length);
+						head = 0;
+						tail = length;
+					}
+					queue[tail++] = child;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Visits every node in depth-first order. A node is marked as visited when
+	 * it is popped from the stack; its unvisited children are pushed in
+	 * reverse order, so that they are visited in the order of the edges.
+	 */
+	protected void crawlDepthFirst()
+	{
+		BitSet visited = new BitSet();
+		IndexedDag.IntStack stack = new IndexedDag.IntStack();
+		stack.push(m_start);
+		while (!stack.isEmpty())
+		{
+			int current = stack.pop();
+			if (visited.get(current))
+			{
+				continue;
+			}
+			visited.set(current);
+			visit(current);
+			for (int k = m_dag.getDegree(current) - 1; k >= 0; k--)
+			{
+				int child = m_dag.getChild(current, k);
+				if (!visited.get(child))
+				{
+					stack.push(child);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Visits a node of the graph.
+	 * @param id The identifier of the node
+	 */
+	public abstract void visit(int id);
+}
@@ -0,0 +1,407 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.Pin;
+
+/**
+ * A read-only lineage graph whose nodes are designated by integer
+ * identifiers from 0 to {@link #size()} &minus; 1. Each node has a
+ * {@linkplain Kind kind}, an ordered list of children and, for part nodes, a
+ * part and a subject. Descendants of this class differ in where these
+ * elements are stored: {@link FrozenDag} keeps them in arrays on the heap,
+ * while {@link MappedDag} keeps them in a memory-mapped file.
+ * <p>
+ * Operations that only read a graph, such as
+ * {@link GraphUtilities#asDnf(IndexedDag)} or an {@link IndexedCrawler},
+ * work on any descendant of this class.
+ */
+public abstract class IndexedDag
+{
+	/**
+	 * The kinds of node that can appear in an indexed graph.
+	 */
+	public enum Kind
+	{
+		/**
+		 * A {@link PartNode}.
+		 */
+		PART,
+		
+		/**
+		 * An {@link AndNode}.
+		 */
+		AND,
+		
+		/**
+		 * An {@link OrNode}.
+		 */
+		OR,
+		
+		/**
+		 * An {@link UnknownNode}.
+		 */
+		UNKNOWN,
+		
+		/**
+		 * Any other type of node.
+		 */
+		OTHER
+	}
+	
+	/**
+	 * The values of {@link Kind}, indexed by their ordinal.
+	 */
+	protected static final Kind[] KINDS = Kind.values();
+	
+	/**
+	 * Gets the number of nodes in the graph.
+	 * @return The number of nodes
+	 */
+	/*@ pure @*/ public abstract int size();
+	
+	/**
+	 * Gets the number of edges in the graph.
+	 * @return The number of edges
+	 */
+	/*@ pure @*/ public abstract int getEdgeCount();
+	
+	/**
+	 * Gets the number of roots of the graph.
+	 * @return The number of roots
+	 */
+	/*@ pure @*/ public abstract int getRootCount();
+	
+	/**
+	 * Gets the identifier of a root of the graph.
+	 * @param index The position of the root in the list of roots
+	 * @return The identifier of the root
+	 */
+	/*@ pure @*/ public abstract int getRoot(int index);
+	
+	/**
+	 * Gets the kind of a node.
+	 * @param id The identifier of the node
+	 * @return The kind
+	 */
+	/*@ pure non_null @*/ public abstract Kind getKind(int id);
+	
+	/**
+	 * Gets the part of a part node.
+	 * @param id The identifier of the node
+	 * @return The part, or <tt>null</tt> if the node is not a part node
+	 */
+	/*@ pure null @*/ public abstract Part getPart(int id);
+	
+	/**
+	 * Gets the subject of a part node.
+	 * @param id The identifier of the node
+	 * @return The subject, or <tt>null</tt> if the node is not a part node
+	 */
+	/*@ pure null @*/ public abstract Object getSubject(int id);
+	
+	/**
+	 * Gets the number of children of a node.
+	 * @param id The identifier of the node
+	 * @return The number of children
+	 */
+	/*@ pure @*/ public abstract int getDegree(int id);
+	
+	/**
+	 * Gets a child of a node.
+	 * @param id The identifier of the node
+	 * @param index The position of the child among the node's children
+	 * @return The identifier of the child
+	 */
+	/*@ pure @*/ public abstract int getChild(int id, int index);
+	
+	/**
+	 * Determines if a node is a leaf, i.e. it has no children.
+	 * @param id The identifier of the node
+	 * @return {@code true} if the node is a leaf, {@code false} otherwise
+	 */
+	/*@ pure @*/ public boolean isLeaf(int id)
+	{
+		return getDegree(id) == 0;
+	}
+	
+	/**
+	 * Determines if a node is one of the roots of the graph.
+	 * @param id The identifier of the node
+	 * @return {@code true} if the node is a root, {@code false} otherwise
+	 */
+	/*@ pure @*/ public boolean isRoot(int id)
+	{
+		for (int i = 0; i < getRootCount(); i++)
+		{
+			if (getRoot(i) == id)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the number of leaves in the graph.
+	 * @return The number of leaves
+	 */
+	/*@ pure @*/ public int getLeafCount()
+	{
+		int count = 0;
+		for (int i = 0; i < size(); i++)
+		{
+			if (isLeaf(i))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Gets the identifiers of the leaves of the graph, in increasing order.
+	 * Since every node of an indexed graph is reachable from one of its roots,
+	 * these are the leaves below all the roots.
+	 * @return The identifiers of the leaves
+	 */
+	/*@ pure non_null @*/ public int[] getLeaves()
+	{
+		int[] leaves = new int[getLeafCount()];
+		int k = 0;
+		for (int i = 0; i < size(); i++)
+		{
+			if (isLeaf(i))
+			{
+				leaves[k++] = i;
+			}
+		}
+		return leaves;
+	}
+	
+	/**
+	 * Makes sure an array can hold an element at a given position, and grows
+	 * it otherwise.
+	 * @param array The array
+	 * @param index The position
+	 * @return The array, or a larger copy of it
+	 */
+	protected static <T> T[] ensureCapacity(T[] array, int index)
+	{
+		if (index < array.length)
+		{
+			return array;
+		}
+		return Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+	}
+	
+	/**
+	 * An object that accumulates nodes and edges one at a time, and then
+	 * packs them into an indexed graph. Nodes receive consecutive identifiers
+	 * starting at 0, in the order in which they are added.
+	 */
+	protected abstract static class Builder
+	{
+		/**
+		 * Gets the number of nodes added so far.
+		 * @return The number of nodes
+		 */
+		/*@ pure @*/ public abstract int size();
+		
+		/**
+		 * Adds a node.
+		 * @param k The kind of the node
+		 * @param part The part of the node, if any
+		 * @param subject The subject of the node, if any
+		 * @return The identifier given to the new node
+		 */
+		public abstract int addNode(/*@ non_null @*/ Kind k, /*@ null @*/ Part part, /*@ null @*/ Object subject);
+		
+		/**
+		 * Adds an edge between two nodes. For a given parent, children keep the
+		 * order in which the edges are added.
+		 * @param parent The identifier of the parent
+		 * @param child The identifier of the child
+		 */
+		public abstract void addChild(int parent, int child);
+		
+		/**
+		 * Adds a node corresponding to a node of a graph.
+		 * @param n The node
+		 * @return The identifier given to the new node
+		 */
+		public int addNode(/*@ non_null @*/ Node n)
+		{
+			if (n instanceof PartNode)
+			{
+				PartNode pn = (PartNode) n;
+				return addNode(Kind.PART, pn.getPart(), pn.getSubject());
+			}
+			if (n instanceof AndNode)
+			{
+				return addNode(Kind.AND, null, null);
+			}
+			if (n instanceof OrNode)
+			{
+				return addNode(Kind.OR, null, null);
+			}
+			if (n instanceof UnknownNode)
+			{
+				return addNode(Kind.UNKNOWN, null, null);
+			}
+			return addNode(Kind.OTHER, null, null);
+		}
+		
+		/**
+		 * Adds a node that is a copy of a node of another indexed graph.
+		 * @param dag The other graph
+		 * @param id The identifier of the node in the other graph
+		 * @return The identifier given to the new node
+		 */
+		public int addNode(/*@ non_null @*/ IndexedDag dag, int id)
+		{
+			return addNode(dag.getKind(id), dag.getPart(id), dag.getSubject(id));
+		}
+		
+		/**
+		 * Adds all the nodes and edges of a graph with one or more roots. Nodes
+		 * are numbered in breadth-first order from the roots, and nodes
+		 * reachable from more than one root are added only once. The children
+		 * of a node are added in the order of its output links.
+		 * @param roots The roots of the graph
+		 * @return The identifiers given to the roots
+		 */
+		/*@ non_null @*/ public int[] addGraph(/*@ non_null @*/ List<? extends Node> roots)
+		{
+			Map<Node,Integer> ids = new IdentityHashMap<>();
+			Node[] nodes = new Node[Math.max(16, roots.size())];
+			int first = size();
+			int[] root_ids = new int[roots.size()];
+			for (int i = 0; i < root_ids.length; i++)
+			{
+				Node root = roots.get(i);
+				Integer id = ids.get(root);
+				if (id == null)
+				{
+					id = addNode(root);
+					ids.put(root, id);
+					nodes = ensureCapacity(nodes, id - first);
+					nodes[id - first] = root;
+				}
+				root_ids[i] = id;
+			}
+			// Nodes are numbered in the order they are discovered, so that the
+			// array of nodes doubles as the queue of the breadth-first traversal
+			for (int k = first; k < size(); k++)
+			{
+				Node current = nodes[k - first];
+				nodes[k - first] = null;
+				for (int i = 0; i < current.getOutputArity(); i++)
+				{
+					for (Pin<? extends Node> pin : current.getOutputLinks(i))
+					{
+						Node child = pin.getNode();
+						Integer id = ids.get(child);
+						if (id == null)
+						{
+							id = addNode(child);
+							ids.put(child, id);
+							nodes = ensureCapacity(nodes, id - first);
+							nodes[id - first] = child;
+						}
+						addChild(k, id);
+					}
+				}
+			}
+			return root_ids;
+		}
+	}
+	
+	/**
+	 * A growable stack of integers, used to traverse indexed graphs without
+	 * recursion and without boxing node identifiers.
+	 */
+	protected static class IntStack
+	{
+		/**
+		 * The elements of the stack.
+		 */
+		/*@ non_null @*/ protected int[] m_elements;
+		
+		/**
+		 * The number of elements in the stack.
+		 */
+		protected int m_size;
+		
+		/**
+		 * Creates a new empty stack.
+		 */
+		public IntStack()
+		{
+			super();
+			m_elements = new int[16];
+			m_size = 0;
+		}
+		
+		/**
+		 * Pushes an element on the stack.
+		 * @param x The element
+		 */
+		public void push(int x)
+		{
+			if (m_size == m_elements.length)
+			{
+				m_elements = Arrays.copyOf(m_elements, m_size * 2);
+			}
+			m_elements[m_size++] = x;
+		}
+		
+		/**
+		 * Removes the element on top of the stack.
+		 * @return The element
+		 */
+		public int pop()
+		{
+			return m_elements[--m_size];
+		}
+		
+		/**
+		 * Gets the element on top of the stack without removing it.
+		 * @return The element
+		 */
+		/*@ pure @*/ public int peek()
+		{
+			return m_elements[m_size - 1];
+		}
+		
+		/**
+		 * Determines if the stack is empty.
+		 * @return {@code true} if the stack is empty, {@code false} otherwise
+		 */
+		/*@ pure @*/ public boolean isEmpty()
+		{
+			return m_size == 0;
+		}
+	}
+}
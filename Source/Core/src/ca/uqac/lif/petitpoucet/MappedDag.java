@@ -0,0 +1,1020 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.Pin;
+
+/**
+ * A lineage graph stored in a memory-mapped file, for graphs too large to be
+ * kept on the heap. The graph has the same compressed sparse row layout as a
+ * {@link FrozenDag}: an array of offsets and an array of children, followed
+ * by the kind, part and subject of each node. These arrays are regions of a
+ * file mapped in memory, so that the operating system pages them in and out
+ * as needed.
+ * <p>
+ * Parts and subjects are Java objects and therefore remain on the heap, but
+ * each distinct part and each distinct subject is stored only once, in a
+ * dictionary; nodes refer to them by their position in that dictionary.
+ * Subjects are compared by identity, so that a large subject (such as a
+ * vector with millions of elements) is never hashed.
+ * <p>
+ * A mapped graph is produced by a {@link Builder}, either node by node or
+ * with {@link #freeze(Node, File)}. The builder keeps nodes and edges in
+ * buffers of bounded size, which are written to temporary files whenever
+ * they become full; the graph itself is laid out in its file only when it is
+ * built. The file is deleted when the graph is {@linkplain #close() closed}.
+ * <p>
+ * {@link #freeze(List, File)} copies a graph that is already on the heap
+ * as {@link Node} objects, and therefore does not reduce the peak memory
+ * taken to build it. An explanation made of many smaller graphs, such as
+ * the explanations of the elements of an output taken one at a time, can
+ * instead be given to {@link Builder#add(Node)} graph by graph, each graph
+ * being discarded once it is added; only the largest of these graphs then
+ * has to fit on the heap. The nodes of a single graph produced by a query
+ * are not spilled while the query builds them.
+ */
+public class MappedDag extends IndexedDag implements Closeable
+{
+	/**
+	 * A number written at the start of the file to identify its format.
+	 */
+	protected static final int MAGIC = 0x50504447;
+	
+	/**
+	 * The version of the file format.
+	 */
+	protected static final int VERSION = 1;
+	
+	/**
+	 * The size in bytes of the file header: magic number, version, number of
+	 * nodes, number of edges and number of roots.
+	 */
+	protected static final int HEADER_SIZE = 20;
+	
+	/**
+	 * The base-2 logarithm of the size of the segments in which a region of
+	 * the file is mapped. A single buffer cannot map more than 2 GB.
+	 */
+	protected static final int SEGMENT_BITS = 30;
+	
+	/**
+	 * The default number of nodes and edges a builder keeps on the heap
+	 * before writing them to a temporary file.
+	 */
+	public static final int DEFAULT_THRESHOLD = 1 << 16;
+	
+	/**
+	 * The file where the graph is stored.
+	 */
+	/*@ non_null @*/ protected final File m_file;
+	
+	/**
+	 * The number of nodes in the graph.
+	 */
+	protected final int m_size;
+	
+	/**
+	 * The number of edges in the graph.
+	 */
+	protected final int m_edgeCount;
+	
+	/**
+	 * The identifiers of the roots of the graph.
+	 */
+	/*@ non_null @*/ protected final int[] m_roots;
+	
+	/**
+	 * The position, in {@link #m_children}, of the first child of each node.
+	 */
+	protected MappedRegion m_offsets;
+	
+	/**
+	 * The identifiers of the children of all nodes, grouped by parent.
+	 */
+	protected MappedRegion m_children;
+	
+	/**
+	 * The ordinal of the {@link Kind} of each node.
+	 */
+	protected MappedRegion m_kinds;
+	
+	/**
+	 * The position in {@link #m_partTable} of the part of each node, or -1 if
+	 * the node has no part.
+	 */
+	protected MappedRegion m_parts;
+	
+	/**
+	 * The position in {@link #m_subjectTable} of the subject of each node, or
+	 * -1 if the node has no subject.
+	 */
+	protected MappedRegion m_subjects;
+	
+	/**
+	 * The distinct parts referred to by the nodes.
+	 */
+	/*@ non_null @*/ protected final List<Part> m_partTable;
+	
+	/**
+	 * The distinct subjects referred to by the nodes.
+	 */
+	/*@ non_null @*/ protected final List<Object> m_subjectTable;
+	
+	/**
+	 * Creates a mapped snapshot of a single-rooted graph.
+	 * @param root The root of the graph
+	 * @param file The file where the graph is to be stored
+	 * @return The snapshot
+	 * @throws IOException If the file cannot be written
+	 */
+	/*@ non_null @*/ public static MappedDag freeze(/*@ non_null @*/ Node root, /*@ non_null @*/ File file) throws IOException
+	{
+		return freeze(Arrays.asList(root), file);
+	}
+	
+	/**
+	 * Creates a mapped snapshot of a graph with one or more roots. Nodes are
+	 * numbered in the same way as by {@link FrozenDag#freeze(List)}.
+	 * @param roots The roots of the graph
+	 * @param file The file where the graph is to be stored
+	 * @return The snapshot
+	 * @throws IOException If the file cannot be written
+	 */
+	/*@ non_null @*/ public static MappedDag freeze(/*@ non_null @*/ List<? extends Node> roots, /*@ non_null @*/ File file) throws IOException
+	{
+		Builder b = new Builder(file);
+		try
+		{
+			return b.build(b.addGraph(roots));
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Creates a new mapped graph from its regions.
+	 * @param file The file where the graph is stored
+	 * @param roots The identifiers of the roots
+	 * @param size The number of nodes
+	 * @param edge_count The number of edges
+	 * @param offsets The position of the first child of each node
+	 * @param children The identifiers of the children of all nodes
+	 * @param kinds The ordinal of the kind of each node
+	 * @param parts The position of the part of each node in the dictionary
+	 * @param subjects The position of the subject of each node in the
+	 * dictionary
+	 * @param part_table The dictionary of parts
+	 * @param subject_table The dictionary of subjects
+	 */
+	protected MappedDag(File file, int[] roots, int size, int edge_count, MappedRegion offsets, MappedRegion children, MappedRegion kinds, MappedRegion parts, MappedRegion subjects, List<Part> part_table, List<Object> subject_table)
+	{
+		super();
+		m_file = file;
+		m_roots = roots;
+		m_size = size;
+		m_edgeCount = edge_count;
+		m_offsets = offsets;
+		m_children = children;
+		m_kinds = kinds;
+		m_parts = parts;
+		m_subjects = subjects;
+		m_partTable = part_table;
+		m_subjectTable = subject_table;
+	}
+	
+	/**
+	 * Gets the file where the graph is stored.
+	 * @return The file
+	 */
+	/*@ pure non_null @*/ public File getFile()
+	{
+		return m_file;
+	}
+	
+	@Override
+	/*@ pure @*/ public int size()
+	{
+		return m_size;
+	}
+	
+	@Override
+	/*@ pure @*/ public int getEdgeCount()
+	{
+		return m_edgeCount;
+	}
+	
+	@Override
+	/*@ pure @*/ public int getRootCount()
+	{
+		return m_roots.length;
+	}
+	
+	@Override
+	/*@ pure @*/ public int getRoot(int index)
+	{
+		return m_roots[index];
+	}
+	
+	@Override
+	/*@ pure non_null @*/ public Kind getKind(int id)
+	{
+		return KINDS[m_kinds.getByte(id)];
+	}
+	
+	@Override
+	/*@ pure null @*/ public Part getPart(int id)
+	{
+		int index = m_parts.getInt(id);
+		return index < 0 ? null : m_partTable.get(index);
+	}
+	
+	@Override
+	/*@ pure null @*/ public Object getSubject(int id)
+	{
+		int index = m_subjects.getInt(id);
+		return index < 0 ? null : m_subjectTable.get(index);
+	}
+	
+	@Override
+	/*@ pure @*/ public int getDegree(int id)
+	{
+		return m_offsets.getInt(id + 1) - m_offsets.getInt(id);
+	}
+	
+	@Override
+	/*@ pure @*/ public int getChild(int id, int index)
+	{
+		return m_children.getInt(m_offsets.getInt(id) + index);
+	}
+	
+	/**
+	 * Releases the mapped regions and deletes the file of the graph. The graph
+	 * must not be used after this method is called. Some platforms only allow
+	 * a mapped file to be deleted once its buffers have been garbage
+	 * collected; in such a case, the file is deleted when the virtual machine
+	 * exits.
+	 */
+	@Override
+	public void close()
+	{
+		m_offsets = null;
+		m_children = null;
+		m_kinds = null;
+		m_parts = null;
+		m_subjects = null;
+		if (!m_file.delete())
+		{
+			m_file.deleteOnExit();
+		}
+	}
+	
+	/**
+	 * A region of a file mapped in memory, viewed as an array of bytes or of
+	 * integers. The region is mapped as a sequence of segments, so that it can
+	 * be larger than the 2 GB a single buffer can address.
+	 */
+	protected static class MappedRegion
+	{
+		/**
+		 * The base-2 logarithm of the size of each segment.
+		 */
+		protected final int m_segmentBits;
+		
+		/**
+		 * A mask giving the position of a byte within its segment.
+		 */
+		protected final long m_segmentMask;
+		
+		/**
+		 * The segments of the region.
+		 */
+		/*@ non_null @*/ protected final MappedByteBuffer[] m_segments;
+		
+		/**
+		 * Maps a region of a file in memory.
+		 * @param channel The channel of the file
+		 * @param position The position of the region in the file, in bytes
+		 * @param length The length of the region, in bytes
+		 * @param segment_bits The base-2 logarithm of the size of each segment;
+		 * must be at least 2, so that an integer never spans two segments
+		 * @throws IOException If the file cannot be mapped
+		 */
+		public MappedRegion(/*@ non_null @*/ FileChannel channel, long position, long length, int segment_bits) throws IOException
+		{
+			super();
+			m_segmentBits = segment_bits;
+			m_segmentMask = (1L << segment_bits) - 1;
+			int num_segments = (int) ((length + m_segmentMask) >>> segment_bits);
+			m_segments = new MappedByteBuffer[num_segments];
+			for (int i = 0; i < num_segments; i++)
+			{
+				long start = (long) i << segment_bits;
+				m_segments[i] = channel.map(MapMode.READ_WRITE, position + start, Math.min(m_segmentMask + 1, length - start));
+			}
+		}
+		
+		/**
+		 * Gets a byte of the region.
+		 * @param index The position of the byte
+		 * @return The byte
+		 */
+		/*@ pure @*/ public byte getByte(long index)
+		{
+			return m_segments[(int) (index >>> m_segmentBits)].get((int) (index & m_segmentMask));
+		}
+		
+		/**
+		 * Sets a byte of the region.
+		 * @param index The position of the byte
+		 * @param b The byte
+		 */
+		public void putByte(long index, byte b)
+		{
+			m_segments[(int) (index >>> m_segmentBits)].put((int) (index & m_segmentMask), b);
+		}
+		
+		/**
+		 * Gets an integer of the region.
+		 * @param index The position of the integer, counted in integers
+		 * @return The integer
+		 */
+		/*@ pure @*/ public int getInt(long index)
+		{
+			long b = index << 2;
+			return m_segments[(int) (b >>> m_segmentBits)].getInt((int) (b & m_segmentMask));
+		}
+		
+		/**
+		 * Sets an integer of the region.
+		 * @param index The position of the integer, counted in integers
+		 * @param x The integer
+		 */
+		public void putInt(long index, int x)
+		{
+			long b = index << 2;
+			m_segments[(int) (b >>> m_segmentBits)].putInt((int) (b & m_segmentMask), x);
+		}
+	}
+	
+	/**
+	 * An object that accumulates nodes and edges one at a time, and then lays
+	 * them out in the file of a {@link MappedDag}. At most a fixed number of
+	 * nodes and of edges, called the threshold, are kept on the heap; when
+	 * either buffer is full, its contents are appended to a temporary file
+	 * next to the file of the graph. The temporary files are deleted when the
+	 * graph is built.
+	 * <p>
+	 * Since the methods that add nodes and edges may write to a file, they
+	 * throw an {@link UncheckedIOException} if this operation fails. A builder
+	 * must not be used after {@link #build(int[])} is called.
+	 */
+	public static class Builder extends IndexedDag.Builder
+	{
+		/**
+		 * The number of bytes used to store a node in a temporary file: its
+		 * kind, part and subject.
+		 */
+		protected static final int NODE_BYTES = 9;
+		
+		/**
+		 * The number of bytes used to store an edge in a temporary file: its
+		 * parent and its child.
+		 */
+		protected static final int EDGE_BYTES = 8;
+		
+		/**
+		 * The file where the graph is to be stored.
+		 */
+		/*@ non_null @*/ protected final File m_file;
+		
+		/**
+		 * The maximum number of nodes, and of edges, kept on the heap.
+		 */
+		protected final int m_threshold;
+		
+		/**
+		 * The number of nodes added so far.
+		 */
+		protected int m_size;
+		
+		/**
+		 * The number of edges added so far.
+		 */
+		protected int m_edgeCount;
+		
+		/**
+		 * The number of nodes written to the temporary file of nodes.
+		 */
+		protected int m_spilledNodes;
+		
+		/**
+		 * The number of edges written to the temporary file of edges.
+		 */
+		protected int m_spilledEdges;
+		
+		/**
+		 * The ordinal of the kind of each buffered node.
+		 */
+		/*@ non_null @*/ protected final byte[] m_kinds;
+		
+		/**
+		 * The position of the part of each buffered node in the dictionary.
+		 */
+		/*@ non_null @*/ protected final int[] m_parts;
+		
+		/**
+		 * The position of the subject of each buffered node in the dictionary.
+		 */
+		/*@ non_null @*/ protected final int[] m_subjects;
+		
+		/**
+		 * The parent of each buffered edge.
+		 */
+		/*@ non_null @*/ protected final int[] m_edgeSources;
+		
+		/**
+		 * The child of each buffered edge.
+		 */
+		/*@ non_null @*/ protected final int[] m_edgeTargets;
+		
+		/**
+		 * A buffer used to read and write the temporary files.
+		 */
+		/*@ null @*/ protected ByteBuffer m_io;
+		
+		/**
+		 * The temporary file of nodes, or <tt>null</tt> if no node has been
+		 * written yet.
+		 */
+		/*@ null @*/ protected File m_nodeFile;
+		
+		/**
+		 * The temporary file of edges, or <tt>null</tt> if no edge has been
+		 * written yet.
+		 */
+		/*@ null @*/ protected File m_edgeFile;
+		
+		/**
+		 * The channel of the temporary file of nodes.
+		 */
+		/*@ null @*/ protected FileChannel m_nodeChannel;
+		
+		/**
+		 * The channel of the temporary file of edges.
+		 */
+		/*@ null @*/ protected FileChannel m_edgeChannel;
+		
+		/**
+		 * A map associating each distinct part to its position in
+		 * {@link #m_partTable}.
+		 */
+		/*@ non_null @*/ protected final Map<Part,Integer> m_partIds;
+		
+		/**
+		 * A map associating each distinct subject to its position in
+		 * {@link #m_subjectTable}. Subjects are compared by identity.
+		 */
+		/*@ non_null @*/ protected final Map<Object,Integer> m_subjectIds;
+		
+		/**
+		 * The distinct parts referred to by the nodes.
+		 */
+		/*@ non_null @*/ protected final List<Part> m_partTable;
+		
+		/**
+		 * The distinct subjects referred to by the nodes.
+		 */
+		/*@ non_null @*/ protected final List<Object> m_subjectTable;
+		
+		/**
+		 * The identifier given by {@link #add(Node)} to each node, plus one, in
+		 * pages of {@link #PAGE_SIZE} entries indexed by the
+		 * {@linkplain Node#getId() identifier} of the node. Nodes are not
+		 * referenced, so that the graphs already added can be reclaimed.
+		 */
+		/*@ non_null @*/ protected int[][] m_addedIds;
+		
+		/**
+		 * The identifier given by {@link #add(Node)} to each node that has no
+		 * identifier of its own.
+		 */
+		/*@ non_null @*/ protected final Map<Node,Integer> m_addedUnnumbered;
+		
+		/**
+		 * The number of entries in a page of {@link #m_addedIds}.
+		 */
+		protected static final int PAGE_SIZE = 1 << 12;
+		
+		/**
+		 * Creates a new builder with the default threshold.
+		 * @param file The file where the graph is to be stored
+		 */
+		public Builder(/*@ non_null @*/ File file)
+		{
+			this(file, DEFAULT_THRESHOLD);
+		}
+		
+		/**
+		 * Creates a new builder.
+		 * @param file The file where the graph is to be stored
+		 * @param threshold The maximum number of nodes, and of edges, kept on
+		 * the heap before they are written to a temporary file
+		 */
+		public Builder(/*@ non_null @*/ File file, int threshold)
+		{
+			super();
+			m_file = file;
+			m_threshold = Math.max(1, threshold);
+			m_size = 0;
+			m_edgeCount = 0;
+			m_spilledNodes = 0;
+			m_spilledEdges = 0;
+			m_kinds = new byte[m_threshold];
+			m_parts = new int[m_threshold];
+			m_subjects = new int[m_threshold];
+			m_edgeSources = new int[m_threshold];
+			m_edgeTargets = new int[m_threshold];
+			m_partIds = new HashMap<>();
+			m_subjectIds = new IdentityHashMap<>();
+			m_partTable = new ArrayList<>();
+			m_subjectTable = new ArrayList<>();
+			m_addedIds = new int[0][];
+			m_addedUnnumbered = new IdentityHashMap<>();
+		}
+		
+		@Override
+		/*@ pure @*/ public int size()
+		{
+			return m_size;
+		}
+		
+		@Override
+		public int addNode(/*@ non_null @*/ Kind k, /*@ null @*/ Part part, /*@ null @*/ Object subject)
+		{
+			int buffered = m_size - m_spilledNodes;
+			if (buffered == m_threshold)
+			{
+				try
+				{
+					spillNodes();
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+				buffered = 0;
+			}
+			m_kinds[buffered] = (byte) k.ordinal();
+			m_parts[buffered] = part == null ? -1 : lookup(part, m_partIds, m_partTable);
+			m_subjects[buffered] = subject == null ? -1 : lookup(subject, m_subjectIds, m_subjectTable);
+			return m_size++;
+		}
+		
+		@Override
+		public void addChild(int parent, int child)
+		{
+			int buffered = m_edgeCount - m_spilledEdges;
+			if (buffered == m_threshold)
+			{
+				try
+				{
+					spillEdges();
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+				buffered = 0;
+			}
+			m_edgeSources[buffered] = parent;
+			m_edgeTargets[buffered] = child;
+			m_edgeCount++;
+		}
+		
+		/**
+		 * Adds all the nodes and edges of a graph that are not already part of a
+		 * graph given to this method before. Nodes are numbered in breadth-first
+		 * order from the root, as by {@link #addGraph(List)}. The builder
+		 * remembers the nodes it has added by their identifier, and not by
+		 * reference: the graph can therefore be discarded as soon as this
+		 * method returns, while the nodes it shares with the graphs added later
+		 * are still added only once.
+		 * @param root The root of the graph
+		 * @return The identifier given to the root
+		 */
+		public int add(/*@ non_null @*/ Node root)
+		{
+			int root_id = getAdded(root);
+			if (root_id >= 0)
+			{
+				return root_id;
+			}
+			root_id = addNode(root);
+			setAdded(root, root_id);
+			Deque<Node> queue = new ArrayDeque<>();
+			queue.add(root);
+			while (!queue.isEmpty())
+			{
+				Node current = queue.poll();
+				int parent = getAdded(current);
+				for (int i = 0; i < current.getOutputArity(); i++)
+				{
+					for (Pin<? extends Node> pin : current.getOutputLinks(i))
+					{
+						Node child = pin.getNode();
+						int id = getAdded(child);
+						if (id < 0)
+						{
+							id = addNode(child);
+							setAdded(child, id);
+							queue.add(child);
+						}
+						addChild(parent, id);
+					}
+				}
+			}
+			return root_id;
+		}
+		
+		/**
+		 * Gets the identifier given to a node by {@link #add(Node)}.
+		 * @param n The node
+		 * @return The identifier, or -1 if the node has not been added
+		 */
+		protected int getAdded(/*@ non_null @*/ Node n)
+		{
+			int id = n.getId();
+			if (id < 0)
+			{
+				Integer added = m_addedUnnumbered.get(n);
+				return added == null ? -1 : added;
+			}
+			int page = id / PAGE_SIZE;
+			if (page >= m_addedIds.length || m_addedIds[page] == null)
+			{
+				return -1;
+			}
+			return m_addedIds[page][id % PAGE_SIZE] - 1;
+		}
+		
+		/**
+		 * Records the identifier given to a node by {@link #add(Node)}.
+		 * @param n The node
+		 * @param added The identifier
+		 */
+		protected void setAdded(/*@ non_null @*/ Node n, int added)
+		{
+			int id = n.getId();
+			if (id < 0)
+			{
+				m_addedUnnumbered.put(n, added);
+				return;
+			}
+			int page = id / PAGE_SIZE;
+			if (page >= m_addedIds.length)
+			{
+				m_addedIds = Arrays.copyOf(m_addedIds, Math.max(page + 1, m_addedIds.length * 2));
+			}
+			if (m_addedIds[page] == null)
+			{
+				m_addedIds[page] = new int[PAGE_SIZE];
+			}
+			m_addedIds[page][id % PAGE_SIZE] = added + 1;
+		}
+		
+		/**
+		 * Lays out the nodes and edges added so far in the file of the graph,
+		 * and maps this file in memory. Edges are grouped by parent with a
+		 * counting sort performed directly in the mapped file, which preserves
+		 * the order of the children of each parent.
+		 * @param roots The identifiers of the roots of the graph
+		 * @return The mapped graph
+		 * @throws IOException If the file cannot be written
+		 */
+		/*@ non_null @*/ public MappedDag build(/*@ non_null @*/ int[] roots) throws IOException
+		{
+			long n = m_size, m = m_edgeCount;
+			long roots_pos = HEADER_SIZE;
+			long offsets_pos = roots_pos + 4L * roots.length;
+			long children_pos = offsets_pos + 4L * (n + 1);
+			long parts_pos = children_pos + 4L * m;
+			long subjects_pos = parts_pos + 4L * n;
+			long kinds_pos = subjects_pos + 4L * n;
+			long length = kinds_pos + n;
+			try (RandomAccessFile raf = new RandomAccessFile(m_file, "rw"))
+			{
+				raf.setLength(0);
+				raf.setLength(length);
+				FileChannel channel = raf.getChannel();
+				ByteBuffer header = ByteBuffer.allocate((int) offsets_pos);
+				header.putInt(MAGIC).putInt(VERSION).putInt(m_size).putInt(m_edgeCount).putInt(roots.length);
+				for (int r : roots)
+				{
+					header.putInt(r);
+				}
+				header.flip();
+				while (header.hasRemaining())
+				{
+					channel.write(header, header.position());
+				}
+				MappedRegion offsets = new MappedRegion(channel, offsets_pos, children_pos - offsets_pos, SEGMENT_BITS);
+				MappedRegion children = new MappedRegion(channel, children_pos, parts_pos - children_pos, SEGMENT_BITS);
+				MappedRegion parts = new MappedRegion(channel, parts_pos, subjects_pos - parts_pos, SEGMENT_BITS);
+				MappedRegion subjects = new MappedRegion(channel, subjects_pos, kinds_pos - subjects_pos, SEGMENT_BITS);
+				MappedRegion kinds = new MappedRegion(channel, kinds_pos, length - kinds_pos, SEGMENT_BITS);
+				int[] sources = new int[m_threshold];
+				int[] targets = new int[m_threshold];
+				// Count the children of each node
+				for (int c = 0; c <= m_spilledEdges / m_threshold; c++)
+				{
+					int count = getEdges(c, sources, targets);
+					for (int e = 0; e < count; e++)
+					{
+						offsets.putInt(sources[e] + 1, offsets.getInt(sources[e] + 1) + 1);
+					}
+				}
+				for (int i = 1; i <= m_size; i++)
+				{
+					offsets.putInt(i, offsets.getInt(i) + offsets.getInt(i - 1));
+				}
+				// Place each child; the offset of each parent is used as its cursor
+				for (int c = 0; c <= m_spilledEdges / m_threshold; c++)
+				{
+					int count = getEdges(c, sources, targets);
+					for (int e = 0; e < count; e++)
+					{
+						int position = offsets.getInt(sources[e]);
+						children.putInt(position, targets[e]);
+						offsets.putInt(sources[e], position + 1);
+					}
+				}
+				// Each cursor now points to the start of the next node: shift back
+				for (int i = m_size; i > 0; i--)
+				{
+					offsets.putInt(i, offsets.getInt(i - 1));
+				}
+				offsets.putInt(0, 0);
+				byte[] node_kinds = new byte[m_threshold];
+				int[] node_parts = new int[m_threshold];
+				int[] node_subjects = new int[m_threshold];
+				for (int c = 0; c <= m_spilledNodes / m_threshold; c++)
+				{
+					int count = getNodes(c, node_kinds, node_parts, node_subjects);
+					long first = (long) c * m_threshold;
+					for (int i = 0; i < count; i++)
+					{
+						kinds.putByte(first + i, node_kinds[i]);
+						parts.putInt(first + i, node_parts[i]);
+						subjects.putInt(first + i, node_subjects[i]);
+					}
+				}
+				return new MappedDag(m_file, roots.clone(), m_size, m_edgeCount, offsets, children, kinds, parts, subjects, m_partTable, m_subjectTable);
+			}
+			finally
+			{
+				deleteTemporaryFiles();
+			}
+		}
+		
+		/**
+		 * Gets the position of an object in a dictionary, adding it if it is
+		 * not already there.
+		 * @param o The object
+		 * @param ids The map giving the position of each object
+		 * @param table The list of objects in the dictionary
+		 * @return The position
+		 */
+		protected static <T> int lookup(T o, Map<T,Integer> ids, List<T> table)
+		{
+			Integer id = ids.get(o);
+			if (id == null)
+			{
+				id = table.size();
+				ids.put(o, id);
+				table.add(o);
+			}
+			return id;
+		}
+		
+		/**
+		 * Writes the buffered nodes to the end of the temporary file of nodes.
+		 * @throws IOException If the file cannot be written
+		 */
+		protected void spillNodes() throws IOException
+		{
+			if (m_nodeChannel == null)
+			{
+				m_nodeFile = createTemporaryFile(".nodes");
+				m_nodeChannel = new RandomAccessFile(m_nodeFile, "rw").getChannel();
+			}
+			ByteBuffer io = getBuffer();
+			for (int i = 0; i < m_threshold; i++)
+			{
+				io.put(m_kinds[i]).putInt(m_parts[i]).putInt(m_subjects[i]);
+			}
+			write(m_nodeChannel, (long) m_spilledNodes * NODE_BYTES);
+			m_spilledNodes += m_threshold;
+		}
+		
+		/**
+		 * Writes the buffered edges to the end of the temporary file of edges.
+		 * @throws IOException If the file cannot be written
+		 */
+		protected void spillEdges() throws IOException
+		{
+			if (m_edgeChannel == null)
+			{
+				m_edgeFile = createTemporaryFile(".edges");
+				m_edgeChannel = new RandomAccessFile(m_edgeFile, "rw").getChannel();
+			}
+			ByteBuffer io = getBuffer();
+			for (int i = 0; i < m_threshold; i++)
+			{
+				io.putInt(m_edgeSources[i]).putInt(m_edgeTargets[i]);
+			}
+			write(m_edgeChannel, (long) m_spilledEdges * EDGE_BYTES);
+			m_spilledEdges += m_threshold;
+		}
+		
+		/**
+		 * Gets a chunk of nodes. Chunks have the size of the buffer; all of them
+		 * are in the temporary file, except the last one, which is the buffer
+		 * itself.
+		 * @param chunk The index of the chunk
+		 * @param kinds An array where the kind of each node is copied
+		 * @param parts An array where the part of each node is copied
+		 * @param subjects An array where the subject of each node is copied
+		 * @return The number of nodes in the chunk
+		 * @throws IOException If the temporary file cannot be read
+		 */
+		protected int getNodes(int chunk, byte[] kinds, int[] parts, int[] subjects) throws IOException
+		{
+			long first = (long) chunk * m_threshold;
+			if (first == m_spilledNodes)
+			{
+				int count = m_size - m_spilledNodes;
+				System.arraycopy(m_kinds, 0, kinds, 0, count);
+				System.arraycopy(m_parts, 0, parts, 0, count);
+				System.arraycopy(m_subjects, 0, subjects, 0, count);
+				return count;
+			}
+			ByteBuffer io = getBuffer();
+			io.limit(m_threshold * NODE_BYTES);
+			read(m_nodeChannel, first * NODE_BYTES);
+			for (int i = 0; i < m_threshold; i++)
+			{
+				kinds[i] = io.get();
+				parts[i] = io.getInt();
+				subjects[i] = io.getInt();
+			}
+			return m_threshold;
+		}
+		
+		/**
+		 * Gets a chunk of edges. Chunks have the size of the buffer; all of them
+		 * are in the temporary file, except the last one, which is the buffer
+		 * itself.
+		 * @param chunk The index of the chunk
+		 * @param sources An array where the parent of each edge is copied
+		 * @param targets An array where the child of each edge is copied
+		 * @return The number of edges in the chunk
+		 * @throws IOException If the temporary file cannot be read
+		 */
+		protected int getEdges(int chunk, int[] sources, int[] targets) throws IOException
+		{
+			long first = (long) chunk * m_threshold;
+			if (first == m_spilledEdges)
+			{
+				int count = m_edgeCount - m_spilledEdges;
+				System.arraycopy(m_edgeSources, 0, sources, 0, count);
+				System.arraycopy(m_edgeTargets, 0, targets, 0, count);
+				return count;
+			}
+			ByteBuffer io = getBuffer();
+			io.limit(m_threshold * EDGE_BYTES);
+			read(m_edgeChannel, first * EDGE_BYTES);
+			for (int i = 0; i < m_threshold; i++)
+			{
+				sources[i] = io.getInt();
+				targets[i] = io.getInt();
+			}
+			return m_threshold;
+		}
+		
+		/**
+		 * Gets the buffer used to read and write the temporary files, cleared
+		 * and ready to be filled.
+		 * @return The buffer
+		 */
+		/*@ non_null @*/ protected ByteBuffer getBuffer()
+		{
+			if (m_io == null)
+			{
+				m_io = ByteBuffer.allocate(m_threshold * NODE_BYTES);
+			}
+			m_io.clear();
+			return m_io;
+		}
+		
+		/**
+		 * Writes the contents of the buffer to a temporary file.
+		 * @param channel The channel of the file
+		 * @param position The position where the contents are written
+		 * @throws IOException If the file cannot be written
+		 */
+		protected void write(FileChannel channel, long position) throws IOException
+		{
+			m_io.flip();
+			while (m_io.hasRemaining())
+			{
+				channel.write(m_io, position + m_io.position());
+			}
+		}
+		
+		/**
+		 * Fills the buffer, up to its limit, with the contents of a temporary
+		 * file, and prepares it to be read.
+		 * @param channel The channel of the file
+		 * @param position The position where the contents are read
+		 * @throws IOException If the file cannot be read
+		 */
+		protected void read(FileChannel channel, long position) throws IOException
+		{
+			while (m_io.hasRemaining())
+			{
+				if (channel.read(m_io, position + m_io.position()) < 0)
+				{
+					throw new IOException("Unexpected end of file " + channel);
+				}
+			}
+			m_io.flip();
+		}
+		
+		/**
+		 * Creates a temporary file in the same folder as the file of the graph.
+		 * @param suffix The suffix of the file name
+		 * @return The file
+		 * @throws IOException If the file cannot be created
+		 */
+		/*@ non_null @*/ protected File createTemporaryFile(String suffix) throws IOException
+		{
+			File f = File.createTempFile(m_file.getName(), suffix, m_file.getAbsoluteFile().getParentFile());
+			f.deleteOnExit();
+			return f;
+		}
+		
+		/**
+		 * Closes and deletes the temporary files.
+		 * @throws IOException If a file cannot be closed
+		 */
+		protected void deleteTemporaryFiles() throws IOException
+		{
+			if (m_nodeChannel != null)
+			{
+				m_nodeChannel.close();
+				m_nodeFile.delete();
+			}
+			if (m_edgeChannel != null)
+			{
+				m_edgeChannel.close();
+				m_edgeFile.delete();
+			}
+		}
+	}
+}
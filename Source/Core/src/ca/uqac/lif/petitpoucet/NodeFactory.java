@@ -17,28 +17,83 @@
  */
 package ca.uqac.lif.petitpoucet;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.ref.WeakReference;
 
 /**
  * Provides lineage nodes in a local context. Objects that implement a
  * descendant of the {@link Queryable} interface should use a node factory to
  * create nodes, and not call their constructors directly.
+ * <p>
+ * A factory and the factories derived from it share a {@link PartInterner}:
+ * the part of every node they create is the canonical instance of that part,
+ * and their nodes are looked up in tables keyed by the identity of the
+ * canonical part. Equal parts produced by different queries are hence
+ * represented by a single object.
+ * <p>
+ * A factory remembers every node it creates, so that a graph built by many
+ * queries made with the same factory shares its nodes. A factory should
+ * therefore be used for the scope of a query, or of a group of queries whose
+ * graphs are to be merged, and then {@linkplain #close() closed}, for
+ * example in a try-with-resources block. For factories kept for a long
+ * time, the number of nodes remembered can be {@linkplain #setCapacity(int)
+ * bounded}, in which case the least recently used ones are forgotten first,
+ * and the child factories can be {@linkplain #setWeakChildren(boolean)
+ * weakly referenced}; in both cases, a node or a child factory that is
+ * forgotten is created anew when it is requested again, so that the graphs
+ * of different queries may no longer share it.
+ * <p>
+ * A factory obtained from {@link #getConcurrentFactory()}, and the factories
+ * derived from it, can be used by many threads at once. Each part node and
+ * each child factory is created atomically on the first request for it, so
+ * that threads explaining queries in parallel build the same graph as a
+ * single thread would. Such a factory keeps its nodes in
+ * {@link ConcurrentPartTable}s, which take more memory than the tables of a
+ * sequential factory, and cannot be bounded.
  * @author Sylvain Hallé
  */
-public class NodeFactory
+public class NodeFactory implements AutoCloseable
 {
 	/**
-	 * A map associating object/part pairs to instances of {@link PartNode}. This
-	 * map is used to return the same node if the same object/part is requested
-	 * multiple times.
+	 * A table associating object/part pairs to instances of {@link PartNode}.
+	 * This table is used to return the same node if the same object/part is
+	 * requested multiple times.
 	 */
-	/*@ non_null @*/ protected Map<ObjectPart,PartNode> m_partNodes;
+	/*@ non_null @*/ protected PartTable<PartNode> m_partNodes;
 	
 	/**
-	 * A map associating part nodes to child factory instances.
+	 * A table associating object/part pairs to child factory instances.
 	 */
-	/*@ null @*/ protected Map<ObjectPart,NodeFactory> m_factories;
+	/*@ non_null @*/ protected PartTable<NodeFactory> m_factories;
+	
+	/**
+	 * A table associating object/part pairs to weak references to child
+	 * factory instances, used instead of {@link #m_factories} when
+	 * {@link #m_weakChildren} is set.
+	 */
+	/*@ non_null @*/ protected PartTable<WeakReference<NodeFactory>> m_weakFactories;
+	
+	/**
+	 * The maximum number of entries in each table of the factory, or -1 for
+	 * no limit.
+	 */
+	protected int m_capacity;
+	
+	/**
+	 * A flag indicating that the child factories are weakly referenced.
+	 */
+	protected boolean m_weakChildren;
+	
+	/**
+	 * The interner giving the canonical instance of each part, which is shared
+	 * with the child factories.
+	 */
+	/*@ non_null @*/ protected final PartInterner m_interner;
+	
+	/**
+	 * A flag indicating that the interner was created by this factory, rather
+	 * than shared by a parent factory.
+	 */
+	protected final boolean m_ownsInterner;
 	
 	/**
 	 * Gets a new empty instance of a node factory.
@@ -49,14 +104,185 @@ public class NodeFactory
 		return new NodeFactory();
 	}
 	
+	/**
+	 * Gets a new empty instance of a node factory that can be used by many
+	 * threads at once.
+	 * @return The factory instance
+	 */
+	public static NodeFactory getConcurrentFactory()
+	{
+		return new NodeFactory(true);
+	}
+	
 	/**
 	 * Creates a new node factory.
 	 */
 	protected NodeFactory()
+	{
+		this(false);
+	}
+	
+	/**
+	 * Creates a new node factory.
+	 * @param concurrent Set to <tt>true</tt> to create a factory that can be
+	 * used by many threads at once
+	 */
+	protected NodeFactory(boolean concurrent)
+	{
+		this(new PartInterner(concurrent), true);
+	}
+	
+	/**
+	 * Creates a new node factory that shares the canonical parts of another
+	 * factory. The factory is concurrent if the interner is.
+	 * @param interner The interner giving the canonical instance of each part
+	 */
+	protected NodeFactory(/*@ non_null @*/ PartInterner interner)
+	{
+		this(interner, false);
+	}
+	
+	/**
+	 * Creates a new node factory.
+	 * @param interner The interner giving the canonical instance of each part
+	 * @param owns_interner Set to <tt>true</tt> if the interner belongs to
+	 * this factory, and is not shared by a parent factory
+	 */
+	private NodeFactory(/*@ non_null @*/ PartInterner interner, boolean owns_interner)
 	{
 		super();
-		m_partNodes = new HashMap<>();
-		m_factories = new HashMap<>();
+		m_ownsInterner = owns_interner;
+		m_partNodes = newTable(interner, -1);
+		m_factories = newTable(interner, -1);
+		m_weakFactories = newTable(interner, -1);
+		m_interner = interner;
+		m_capacity = -1;
+		m_weakChildren = false;
+	}
+	
+	/**
+	 * Creates an empty table for the nodes or the child factories of the
+	 * factory.
+	 * @param interner The interner of the factory
+	 * @param capacity The maximum number of entries in the table, or -1 for
+	 * no limit
+	 * @return A concurrent table if the interner is concurrent, a bounded
+	 * table if a capacity is given, a plain table otherwise
+	 */
+	/*@ non_null @*/ private static <V> PartTable<V> newTable(/*@ non_null @*/ PartInterner interner, int capacity)
+	{
+		if (interner.isConcurrent())
+		{
+			// Concurrent factories are never bounded
+			return new ConcurrentPartTable<V>();
+		}
+		return capacity < 0 ? new PartTable<V>() : new BoundedPartTable<V>(capacity);
+	}
+	
+	/**
+	 * Moves the entries of a table into a new table of the capacity of the
+	 * factory. When the table holds more entries than the capacity, only some
+	 * of them are kept.
+	 * @param table The table
+	 * @return The new table
+	 */
+	/*@ non_null @*/ private <V> PartTable<V> resize(/*@ non_null @*/ PartTable<V> table)
+	{
+		PartTable<V> new_table = newTable(m_interner, m_capacity);
+		table.copyTo(new_table);
+		return new_table;
+	}
+	
+	/**
+	 * Determines if the factory can be used by many threads at once.
+	 * @return <tt>true</tt> if the factory is concurrent, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isConcurrent()
+	{
+		return m_interner.isConcurrent();
+	}
+	
+	/**
+	 * Sets the maximum number of part nodes and of child factories that the
+	 * factory remembers. When a table of the factory is full, the entry that
+	 * was least recently used is forgotten to make room for a new one. The
+	 * capacity applies to each factory separately, and to the child
+	 * factories created afterwards.
+	 * <p>
+	 * Bounding a factory makes its {@linkplain #getInterner() interner} weak,
+	 * so that the canonical parts of forgotten nodes can be reclaimed. A part
+	 * keeps its canonical instance as long as a table of any factory sharing
+	 * the interner refers to it.
+	 * @param capacity The maximum number of entries, or -1 for no limit
+	 * @return This factory
+	 * @throws UnsupportedOperationException If the factory is concurrent
+	 * and a capacity is given, since eviction could otherwise give different
+	 * nodes for the same part and subject to different threads
+	 */
+	/*@ non_null @*/ public NodeFactory setCapacity(int capacity)
+	{
+		if (capacity == m_capacity)
+		{
+			return this;
+		}
+		if (capacity >= 0 && isConcurrent())
+		{
+			throw new UnsupportedOperationException("A concurrent factory cannot be bounded");
+		}
+		m_capacity = capacity;
+		m_partNodes = resize(m_partNodes);
+		m_factories = resize(m_factories);
+		m_weakFactories = resize(m_weakFactories);
+		if (capacity >= 0)
+		{
+			m_interner.setWeak(true);
+		}
+		return this;
+	}
+	
+	/**
+	 * Sets whether the child factories are weakly referenced, so that they
+	 * can be reclaimed by the garbage collector when they are no longer in
+	 * use. The setting applies to the child factories created afterwards.
+	 * @param b Set to <tt>true</tt> to reference child factories weakly
+	 * @return This factory
+	 */
+	/*@ non_null @*/ public NodeFactory setWeakChildren(boolean b)
+	{
+		m_weakChildren = b;
+		return this;
+	}
+	
+	/**
+	 * Forgets all the nodes and child factories of this factory, and closes
+	 * the child factories. If the factory is not a child factory, it also
+	 * forgets the canonical parts. The nodes already returned are not
+	 * modified. The factory can still be used afterwards, in which case it
+	 * creates new nodes.
+	 */
+	@Override
+	public void close()
+	{
+		for (NodeFactory f : m_factories.values())
+		{
+			f.close();
+		}
+		for (WeakReference<NodeFactory> ref : m_weakFactories.values())
+		{
+			NodeFactory f = ref.get();
+			if (f != null)
+			{
+				f.close();
+			}
+		}
+		m_partNodes.clear();
+		m_factories.clear();
+		m_weakFactories.clear();
+		if (m_ownsInterner)
+		{
+			m_interner.clear();
+		}
 	}
 	
 	/**
@@ -68,14 +294,52 @@ public class NodeFactory
 	 */
 	/*@ non_null @*/ public NodeFactory getFactory(Part p, Object subject)
 	{
-		ObjectPart op = new ObjectPart(p, subject);
-		if (m_factories.containsKey(op))
+		Part canonical = intern(p);
+		if (m_weakChildren)
 		{
-			return m_factories.get(op);
+			// A cleared reference is replaced under a lock, so that concurrent
+			// callers do not each create a child
+			synchronized (m_weakFactories)
+			{
+				WeakReference<NodeFactory> ref = m_weakFactories.get(canonical, subject);
+				NodeFactory factory = ref == null ? null : ref.get();
+				if (factory == null)
+				{
+					factory = newChild();
+					m_weakFactories.put(canonical, subject, new WeakReference<NodeFactory>(factory));
+				}
+				return factory;
+			}
+		}
+		NodeFactory factory = m_factories.get(canonical, subject);
+		if (factory == null)
+		{
+			factory = m_factories.computeIfAbsent(canonical, subject, this::newChild);
 		}
-		NodeFactory new_factory = new NodeFactory();
-		m_factories.put(op, new_factory);
-		return new_factory;
+		return factory;
+	}
+	
+	/**
+	 * Creates a new child factory with the same settings as this factory.
+	 * @return The new factory
+	 */
+	/*@ non_null @*/ private NodeFactory newChild()
+	{
+		NodeFactory factory = newFactory();
+		factory.setCapacity(m_capacity);
+		factory.m_weakChildren = m_weakChildren;
+		return factory;
+	}
+	
+	/**
+	 * Creates a new child factory, which shares the interner of this factory.
+	 * Descendants of this class override this method to create child
+	 * factories of their own type.
+	 * @return The new factory
+	 */
+	/*@ non_null @*/ protected NodeFactory newFactory()
+	{
+		return new NodeFactory(m_interner);
 	}
 	
 	/**
@@ -88,16 +352,35 @@ public class NodeFactory
 	 */
 	public PartNode getPartNode(Part p, Object subject)
 	{
-		ObjectPart op = new ObjectPart(p, subject);
-		if (m_partNodes.containsKey(op))
+		Part canonical = intern(p);
+		PartNode pn = m_partNodes.get(canonical, subject);
+		if (pn == null)
 		{
-			return m_partNodes.get(op);
+			pn = m_partNodes.computeIfAbsent(canonical, subject, () -> new PartNode(canonical, subject));
 		}
-		PartNode pn = new PartNode(p, subject);
-		m_partNodes.put(op, pn);
 		return pn;
 	}
 	
+	/**
+	 * Gets the canonical instance of a part.
+	 * @param p The part
+	 * @return The canonical instance
+	 */
+	/*@ non_null @*/ protected Part intern(/*@ non_null @*/ Part p)
+	{
+		return m_interner.intern(p);
+	}
+	
+	/**
+	 * Gets the interner giving the canonical instance of the parts of the
+	 * nodes created by this factory.
+	 * @return The interner
+	 */
+	/*@ pure non_null @*/ public PartInterner getInterner()
+	{
+		return m_interner;
+	}
+	
 	/**
 	 * Gets an instance of {@link AndNode}. A new instance is created on every
 	 * call to this method. The factory keeps no track of this object after it
@@ -140,7 +423,8 @@ public class NodeFactory
 	 */
 	public boolean hasNodeFor(Part p, Object o)
 	{
-		return m_partNodes.containsKey(new ObjectPart(p, o));
+		Part canonical = m_interner.find(p);
+		return canonical != null && m_partNodes.get(canonical, o) != null;
 	}
 	
 	/**
@@ -148,8 +432,13 @@ public class NodeFactory
 	 * this class are used as keys by the node factory to uniquely identify
 	 * {@link PartNode}s.
 	 */
-	protected static class ObjectPart
+	public static class ObjectPart
 	{
+		/**
+		 * The seed of the hash codes of object parts.
+		 */
+		protected static final int s_seed = HashUtilities.seed(ObjectPart.class);
+		
 		/**
 		 * The object part.
 		 */
@@ -172,10 +461,29 @@ public class NodeFactory
 			m_subject = subject;
 		}
 		
+		/**
+		 * Gets the object part.
+		 * @return The part
+		 */
+		/*@ pure non_null @*/ public Part getPart()
+		{
+			return m_part;
+		}
+		
+		/**
+		 * Gets the object.
+		 * @return The object
+		 */
+		/*@ pure non_null @*/ public Object getSubject()
+		{
+			return m_subject;
+		}
+		
 		@Override
 		public int hashCode()
 		{
-			return m_part.hashCode() + m_subject.hashCode();
+			// Not cached, since the subject may be a mutable object
+			return HashUtilities.hash(s_seed, m_part.hashCode(), m_subject.hashCode());
 		}
 		
 		@Override
@@ -186,7 +494,7 @@ public class NodeFactory
 				return false;
 			}
 			ObjectPart op = (ObjectPart) o;
-			return m_part.equals(op.m_part) && m_subject.equals(op.m_subject);
+			return (m_part == op.m_part || m_part.equals(op.m_part)) && m_subject.equals(op.m_subject);
 		}
 		
 		@Override
@@ -0,0 +1,449 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Converts objects of some types to and from a sequence of bytes. A
+ * {@link GraphWriter} uses a list of encoders to write the parts and the
+ * subjects of the nodes of a graph; a {@link GraphReader} must be given
+ * encoders with the same names to read them back. Libraries that define
+ * their own parts or subjects can provide encoders for them.
+ * <p>
+ * A few encoders are predefined as static members of this interface.
+ */
+public interface ObjectEncoder
+{
+	/**
+	 * Gets the name of this encoder. This name is written in the files where
+	 * the encoder is used, so that a reader can find the matching encoder; it
+	 * must therefore not change from one version of the encoder to the next.
+	 * @return The name
+	 */
+	/*@ pure non_null @*/ public String getName();
+	
+	/**
+	 * Determines if this encoder can encode an object.
+	 * @param o The object
+	 * @return {@code true} if the object can be encoded, {@code false}
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean canEncode(/*@ non_null @*/ Object o);
+	
+	/**
+	 * Writes an object.
+	 * @param out The output to write to
+	 * @param o The object, which must be accepted by
+	 * {@link #canEncode(Object)}
+	 * @throws IOException If the object cannot be written
+	 */
+	public void encode(/*@ non_null @*/ DataOutput out, /*@ non_null @*/ Object o) throws IOException;
+	
+	/**
+	 * Reads an object written by {@link #encode(DataOutput, Object)}.
+	 * @param in The input to read from
+	 * @return The object
+	 * @throws IOException If the object cannot be read
+	 */
+	/*@ non_null @*/ public Object decode(/*@ non_null @*/ DataInput in) throws IOException;
+	
+	/**
+	 * An encoder for the constant parts {@link Part#all}, {@link Part#nothing},
+	 * {@link Part#unknown} and {@link Part#self}.
+	 */
+	public static final PartConstants partConstants = new PartConstants();
+	
+	/**
+	 * An encoder for strings.
+	 */
+	public static final Strings strings = new Strings();
+	
+	/**
+	 * An encoder for the wrappers of primitive types.
+	 */
+	public static final Primitives primitives = new Primitives();
+	
+	/**
+	 * An encoder for serializable objects. It is known by neither a
+	 * {@link GraphWriter} nor a {@link GraphReader} unless it is added to
+	 * them; see {@link Serializables}.
+	 */
+	public static final Serializables serializables = new Serializables();
+	
+	/**
+	 * An encoder that writes any object as its string representation.
+	 */
+	public static final Descriptions descriptions = new Descriptions();
+	
+	/**
+	 * Encoder for the constant parts defined in {@link Part}.
+	 */
+	public static final class PartConstants implements ObjectEncoder
+	{
+		/**
+		 * The constants, indexed by the byte that encodes them.
+		 */
+		private static final Part[] s_constants = {Part.all, Part.nothing, Part.unknown, Part.self};
+		
+		private PartConstants()
+		{
+			super();
+		}
+		
+		@Override
+		public String getName()
+		{
+			return "part-constants";
+		}
+		
+		@Override
+		public boolean canEncode(Object o)
+		{
+			return o instanceof Part.All || o instanceof Part.Nothing || o instanceof Part.Unknown || o instanceof Part.Self;
+		}
+		
+		@Override
+		public void encode(DataOutput out, Object o) throws IOException
+		{
+			for (int i = 0; i < s_constants.length; i++)
+			{
+				if (s_constants[i].equals(o))
+				{
+					out.writeByte(i);
+					return;
+				}
+			}
+		}
+		
+		@Override
+		public Part decode(DataInput in) throws IOException
+		{
+			int i = in.readUnsignedByte();
+			if (i >= s_constants.length)
+			{
+				throw new IOException("Invalid part constant " + i);
+			}
+			return s_constants[i];
+		}
+	}
+	
+	/**
+	 * Encoder for strings, written in UTF-8 after their length.
+	 */
+	public static final class Strings implements ObjectEncoder
+	{
+		private Strings()
+		{
+			super();
+		}
+		
+		@Override
+		public String getName()
+		{
+			return "strings";
+		}
+		
+		@Override
+		public boolean canEncode(Object o)
+		{
+			return o instanceof String;
+		}
+		
+		@Override
+		public void encode(DataOutput out, Object o) throws IOException
+		{
+			GraphWriter.writeString(out, (String) o);
+		}
+		
+		@Override
+		public String decode(DataInput in) throws IOException
+		{
+			return GraphReader.readString(in);
+		}
+	}
+	
+	/**
+	 * Encoder for instances of {@link Boolean}, {@link Character} and of the
+	 * wrappers of numeric primitive types. Each value is preceded by a byte
+	 * giving its type.
+	 */
+	public static final class Primitives implements ObjectEncoder
+	{
+		/**
+		 * The classes handled by this encoder, indexed by the byte that
+		 * designates them.
+		 */
+		private static final Class<?>[] s_classes = {Integer.class, Long.class, Double.class, Float.class, Short.class, Byte.class, Boolean.class, Character.class};
+		
+		private Primitives()
+		{
+			super();
+		}
+		
+		@Override
+		public String getName()
+		{
+			return "primitives";
+		}
+		
+		@Override
+		public boolean canEncode(Object o)
+		{
+			return getType(o) >= 0;
+		}
+		
+		@Override
+		public void encode(DataOutput out, Object o) throws IOException
+		{
+			int type = getType(o);
+			out.writeByte(type);
+			switch (type)
+			{
+			case 0:
+				out.writeInt((Integer) o);
+				break;
+			case 1:
+				out.writeLong((Long) o);
+				break;
+			case 2:
+				out.writeDouble((Double) o);
+				break;
+			case 3:
+				out.writeFloat((Float) o);
+				break;
+			case 4:
+				out.writeShort((Short) o);
+				break;
+			case 5:
+				out.writeByte((Byte) o);
+				break;
+			case 6:
+				out.writeBoolean((Boolean) o);
+				break;
+			default:
+				out.writeChar((Character) o);
+			}
+		}
+		
+		@Override
+		public Object decode(DataInput in) throws IOException
+		{
+			int type = in.readUnsignedByte();
+			switch (type)
+			{
+			case 0:
+				return in.readInt();
+			case 1:
+				return in.readLong();
+			case 2:
+				return in.readDouble();
+			case 3:
+				return in.readFloat();
+			case 4:
+				return in.readShort();
+			case 5:
+				return in.readByte();
+			case 6:
+				return in.readBoolean();
+			case 7:
+				return in.readChar();
+			default:
+				throw new IOException("Invalid primitive type " + type);
+			}
+		}
+		
+		/**
+		 * Gets the byte that designates the class of an object.
+		 * @param o The object
+		 * @return The byte, or -1 if the class is not handled by this encoder
+		 */
+		private static int getType(Object o)
+		{
+			for (int i = 0; i < s_classes.length; i++)
+			{
+				if (s_classes[i] == o.getClass())
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+	
+	/**
+	 * Encoder for objects that implement {@link Serializable}, written with
+	 * Java's built-in serialization. This is much slower and more verbose
+	 * than a dedicated encoder, and is not one of the default encoders of a
+	 * {@link GraphWriter} or of a {@link GraphReader}. Reading an object with
+	 * this encoder deserializes bytes taken from the file, which can
+	 * instantiate any serializable class on the class path; it must only be
+	 * added to a reader for files that come from a trusted source.
+	 */
+	public static final class Serializables implements ObjectEncoder
+	{
+		private Serializables()
+		{
+			super();
+		}
+		
+		@Override
+		public String getName()
+		{
+			return "serializables";
+		}
+		
+		@Override
+		public boolean canEncode(Object o)
+		{
+			return o instanceof Serializable;
+		}
+		
+		@Override
+		public void encode(DataOutput out, Object o) throws IOException
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try (ObjectOutputStream oos = new ObjectOutputStream(baos))
+			{
+				oos.writeObject(o);
+			}
+			GraphWriter.writeVarint(out, baos.size());
+			out.write(baos.toByteArray());
+		}
+		
+		@Override
+		public Object decode(DataInput in) throws IOException
+		{
+			byte[] bytes = new byte[GraphReader.readLength(in)];
+			in.readFully(bytes);
+			try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+			{
+				return ois.readObject();
+			}
+			catch (ClassNotFoundException e)
+			{
+				throw new IOException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Encoder that accepts any object and writes its string representation.
+	 * The object read back is a {@link Description} carrying this string,
+	 * which is enough to display a graph but not to query it. This encoder is
+	 * the last resort of a {@link GraphWriter}.
+	 */
+	public static final class Descriptions implements ObjectEncoder
+	{
+		private Descriptions()
+		{
+			super();
+		}
+		
+		@Override
+		public String getName()
+		{
+			return "descriptions";
+		}
+		
+		@Override
+		public boolean canEncode(Object o)
+		{
+			return true;
+		}
+		
+		@Override
+		public void encode(DataOutput out, Object o) throws IOException
+		{
+			GraphWriter.writeString(out, o.toString());
+		}
+		
+		@Override
+		public Description decode(DataInput in) throws IOException
+		{
+			return new Description(GraphReader.readString(in));
+		}
+	}
+	
+	/**
+	 * An object standing for another one that could not be encoded, and of
+	 * which only the string representation is known. Since it can replace a
+	 * part as well as a subject, it implements {@link Part}; it applies to no
+	 * object.
+	 */
+	public static final class Description implements Part
+	{
+		/**
+		 * The string representation of the original object.
+		 */
+		/*@ non_null @*/ private final String m_text;
+		
+		/**
+		 * Creates a new description.
+		 * @param text The string representation of the original object
+		 */
+		public Description(/*@ non_null @*/ String text)
+		{
+			super();
+			m_text = text;
+		}
+		
+		@Override
+		public boolean appliesTo(Object o)
+		{
+			return false;
+		}
+		
+		@Override
+		public Description head()
+		{
+			return this;
+		}
+		
+		@Override
+		public Part tail()
+		{
+			return null;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return m_text;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return m_text.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Description && ((Description) o).m_text.equals(m_text);
+		}
+	}
+}
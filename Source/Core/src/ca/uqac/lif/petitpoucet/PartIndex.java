@@ -0,0 +1,127 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.petitpoucet.NodeFactory.ObjectPart;
+
+/**
+ * Assigns consecutive numbers to object parts, starting from 0. Clauses
+ * whose parts are numbered by the same index can be represented as sorted
+ * arrays of numbers, which makes their comparison and their merging much
+ * cheaper than with sets of parts; see {@link Clause}. An index is created for each
+ * conversion of a graph into clauses, and the hash code of each part is
+ * computed only once, when it is given a number.
+ */
+public class PartIndex
+{
+	/**
+	 * The parts, in the order of their numbers.
+	 */
+	/*@ non_null @*/ protected final List<ObjectPart> m_parts;
+	
+	/**
+	 * The hash code of each part, in the order of their numbers.
+	 */
+	/*@ non_null @*/ protected int[] m_hashes;
+	
+	/**
+	 * The number given to each part.
+	 */
+	/*@ non_null @*/ protected final Map<ObjectPart,Integer> m_numbers;
+	
+	/**
+	 * Creates a new empty index.
+	 */
+	public PartIndex()
+	{
+		super();
+		m_parts = new ArrayList<ObjectPart>();
+		m_hashes = new int[16];
+		m_numbers = new HashMap<ObjectPart,Integer>();
+	}
+	
+	/**
+	 * Gets the number of a part, giving it the next number if it does not
+	 * have one yet.
+	 * @param p The part
+	 * @return The number
+	 */
+	public int getId(/*@ non_null @*/ ObjectPart p)
+	{
+		Integer id = m_numbers.get(p);
+		if (id != null)
+		{
+			return id;
+		}
+		int new_id = m_parts.size();
+		if (new_id == m_hashes.length)
+		{
+			m_hashes = Arrays.copyOf(m_hashes, new_id * 2);
+		}
+		m_parts.add(p);
+		m_hashes[new_id] = p.hashCode();
+		m_numbers.put(p, new_id);
+		return new_id;
+	}
+	
+	/**
+	 * Gets the number of an object, without giving it a number.
+	 * @param o The object
+	 * @return The number, or -1 if the object is not a part of the index
+	 */
+	/*@ pure @*/ public int find(Object o)
+	{
+		Integer id = m_numbers.get(o);
+		return id == null ? -1 : id;
+	}
+	
+	/**
+	 * Gets the part with a given number.
+	 * @param id The number
+	 * @return The part
+	 */
+	/*@ pure non_null @*/ public ObjectPart get(int id)
+	{
+		return m_parts.get(id);
+	}
+	
+	/**
+	 * Gets the hash code of the part with a given number.
+	 * @param id The number
+	 * @return The hash code
+	 */
+	/*@ pure @*/ public int hashOf(int id)
+	{
+		return m_hashes[id];
+	}
+	
+	/**
+	 * Gets the number of parts in the index.
+	 * @return The number of parts
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_parts.size();
+	}
+}
@@ -0,0 +1,205 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a canonical instance of each distinct {@link Part}. The first part
+ * given to {@link #intern(Part)} becomes the canonical instance of all the
+ * parts that are equal to it, so that canonical parts can be compared with
+ * <tt>==</tt> and used as keys of identity-based tables, such as those of
+ * {@link NodeFactory}. Parts that are interned must not be modified
+ * afterwards.
+ * <p>
+ * A concurrent interner can be used by many threads at once; the node
+ * factories that share it then use {@link ConcurrentPartTable}s. A
+ * sequential interner can instead be made {@linkplain #setWeak(boolean)
+ * weak}, so that it forgets the canonical parts that are no longer
+ * referenced elsewhere, for example by the tables of a bounded node
+ * factory.
+ */
+public class PartInterner
+{
+	/**
+	 * The canonical instance of each part.
+	 */
+	/*@ non_null @*/ protected final Map<Part,Part> m_parts;
+	
+	/**
+	 * The canonical instance of each part, weakly referenced, or
+	 * <tt>null</tt> if the interner is not weak.
+	 */
+	/*@ null @*/ protected WeakHashMap<Part,WeakReference<Part>> m_weakParts;
+	
+	/**
+	 * A flag indicating that the interner can be used by many threads at
+	 * once.
+	 */
+	protected final boolean m_concurrent;
+	
+	/**
+	 * Creates a new empty interner.
+	 */
+	public PartInterner()
+	{
+		this(false);
+	}
+	
+	/**
+	 * Creates a new empty interner.
+	 * @param concurrent Set to <tt>true</tt> to create an interner that can be
+	 * used by many threads at once
+	 */
+	public PartInterner(boolean concurrent)
+	{
+		super();
+		m_concurrent = concurrent;
+		m_parts = concurrent ? new ConcurrentHashMap<Part,Part>() : new HashMap<Part,Part>();
+		m_weakParts = null;
+	}
+	
+	/**
+	 * Determines if the interner can be used by many threads at once.
+	 * @return <tt>true</tt> if the interner is concurrent, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isConcurrent()
+	{
+		return m_concurrent;
+	}
+	
+	/**
+	 * Sets whether the interner references its canonical parts weakly. A
+	 * weak interner forgets a canonical part once it is no longer referenced
+	 * outside of the interner; since the tables of node factories reference
+	 * their parts, a part is never forgotten while a table still uses it.
+	 * @param b Set to <tt>true</tt> to reference canonical parts weakly
+	 * @return This interner
+	 * @throws UnsupportedOperationException If the interner is concurrent
+	 */
+	/*@ non_null @*/ public PartInterner setWeak(boolean b)
+	{
+		if (b == (m_weakParts != null))
+		{
+			return this;
+		}
+		if (m_concurrent)
+		{
+			throw new UnsupportedOperationException("A concurrent interner cannot be weak");
+		}
+		if (b)
+		{
+			m_weakParts = new WeakHashMap<Part,WeakReference<Part>>();
+			for (Part p : m_parts.keySet())
+			{
+				m_weakParts.put(p, new WeakReference<Part>(p));
+			}
+			m_parts.clear();
+		}
+		else
+		{
+			for (WeakReference<Part> ref : m_weakParts.values())
+			{
+				Part p = ref.get();
+				if (p != null)
+				{
+					m_parts.put(p, p);
+				}
+			}
+			m_weakParts = null;
+		}
+		return this;
+	}
+	
+	/**
+	 * Determines if the interner references its canonical parts weakly.
+	 * @return <tt>true</tt> if the interner is weak, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isWeak()
+	{
+		return m_weakParts != null;
+	}
+	
+	/**
+	 * Gets the canonical instance of a part, making the part itself canonical
+	 * if no equal part has been interned before.
+	 * @param p The part
+	 * @return The canonical instance
+	 */
+	/*@ non_null @*/ public Part intern(/*@ non_null @*/ Part p)
+	{
+		if (m_weakParts != null)
+		{
+			Part canonical = find(p);
+			if (canonical == null)
+			{
+				m_weakParts.put(p, new WeakReference<Part>(p));
+				return p;
+			}
+			return canonical;
+		}
+		Part canonical = m_parts.putIfAbsent(p, p);
+		return canonical == null ? p : canonical;
+	}
+	
+	/**
+	 * Gets the canonical instance of a part, without making it canonical.
+	 * @param p The part
+	 * @return The canonical instance, or <tt>null</tt> if no part equal to
+	 * it has been interned
+	 */
+	/*@ pure null @*/ public Part find(/*@ non_null @*/ Part p)
+	{
+		if (m_weakParts != null)
+		{
+			WeakReference<Part> ref = m_weakParts.get(p);
+			return ref == null ? null : ref.get();
+		}
+		return m_parts.get(p);
+	}
+	
+	/**
+	 * Gets the number of distinct parts interned so far. For a weak
+	 * interner, this number may include parts that are no longer referenced
+	 * but have not been reclaimed yet.
+	 * @return The number of parts
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_weakParts != null ? m_weakParts.size() : m_parts.size();
+	}
+	
+	/**
+	 * Forgets all the canonical parts. Parts interned afterwards are no longer
+	 * identical to the canonical parts returned before.
+	 */
+	public void clear()
+	{
+		m_parts.clear();
+		if (m_weakParts != null)
+		{
+			m_weakParts.clear();
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A table associating values to pairs made of a canonical part, as returned
+ * by a {@link PartInterner}, and of a subject. Parts are compared by
+ * identity and subjects with their <tt>equals</tt> method, so that a lookup
+ * neither hashes the part again nor creates a key object.
+ * <p>
+ * Most parts are associated to a single subject. The values of a part are
+ * therefore kept in a short chain of entries, which is replaced by a map
+ * once the part has more than {@link #CHAIN_LENGTH} subjects.
+ * @param <V> The type of the values
+ */
+public class PartTable<V>
+{
+	/**
+	 * The maximum number of entries in the chain of a part.
+	 */
+	protected static final int CHAIN_LENGTH = 8;
+	
+	/**
+	 * The values of each canonical part, as an {@link Entry} at the head of a
+	 * chain or as a map from subjects to values.
+	 */
+	/*@ non_null @*/ protected final Map<Part,Object> m_entries;
+	
+	/**
+	 * The number of values in the table.
+	 */
+	protected int m_size;
+	
+	/**
+	 * Creates a new empty table.
+	 */
+	public PartTable()
+	{
+		this(new IdentityHashMap<Part,Object>());
+	}
+	
+	/**
+	 * Creates a new empty table.
+	 * @param entries The empty map in which the values of each part are kept
+	 */
+	protected PartTable(/*@ non_null @*/ Map<Part,Object> entries)
+	{
+		super();
+		m_entries = entries;
+		m_size = 0;
+	}
+	
+	/**
+	 * Gets the value associated to a part and a subject.
+	 * @param p The canonical part
+	 * @param subject The subject
+	 * @return The value, or <tt>null</tt> if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	/*@ pure null @*/ public V get(/*@ non_null @*/ Part p, Object subject)
+	{
+		Object values = m_entries.get(p);
+		if (values instanceof Entry)
+		{
+			for (Entry<V> e = (Entry<V>) values; e != null; e = e.m_next)
+			{
+				if (e.m_subject == subject || (subject != null && subject.equals(e.m_subject)))
+				{
+					return e.m_value;
+				}
+			}
+			return null;
+		}
+		return values == null ? null : ((Map<Object,V>) values).get(subject);
+	}
+	
+	/**
+	 * Associates a value to a part and a subject.
+	 * @param p The canonical part
+	 * @param subject The subject
+	 * @param value The value
+	 */
+	@SuppressWarnings("unchecked")
+	public void put(/*@ non_null @*/ Part p, Object subject, /*@ non_null @*/ V value)
+	{
+		Object values = m_entries.get(p);
+		if (values == null || values instanceof Entry)
+		{
+			int length = 0;
+			for (Entry<V> e = (Entry<V>) values; e != null; e = e.m_next)
+			{
+				if (e.m_subject == subject || (subject != null && subject.equals(e.m_subject)))
+				{
+					e.m_value = value;
+					return;
+				}
+				length++;
+			}
+			m_size++;
+			if (length < CHAIN_LENGTH)
+			{
+				m_entries.put(p, new Entry<V>(subject, value, (Entry<V>) values));
+				return;
+			}
+			// The chain is too long: replace it by a map
+			Map<Object,V> map = new HashMap<Object,V>();
+			for (Entry<V> e = (Entry<V>) values; e != null; e = e.m_next)
+			{
+				map.put(e.m_subject, e.m_value);
+			}
+			map.put(subject, value);
+			m_entries.put(p, map);
+			return;
+		}
+		if (((Map<Object,V>) values).put(subject, value) == null)
+		{
+			m_size++;
+		}
+	}
+	
+	/**
+	 * Gets the value associated to a part and a subject, associating to them
+	 * a new value if there is none.
+	 * @param p The canonical part
+	 * @param subject The subject
+	 * @param supplier The supplier of the new value, called only if the
+	 * part and the subject have no value
+	 * @return The value
+	 */
+	/*@ non_null @*/ public V computeIfAbsent(/*@ non_null @*/ Part p, Object subject, /*@ non_null @*/ Supplier<? extends V> supplier)
+	{
+		V value = get(p, subject);
+		if (value == null)
+		{
+			value = supplier.get();
+			put(p, subject, value);
+		}
+		return value;
+	}
+	
+	/**
+	 * Gets the number of values in the table.
+	 * @return The number of values
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Gets the values of the table.
+	 * @return A new list containing the values
+	 */
+	@SuppressWarnings("unchecked")
+	/*@ non_null @*/ public List<V> values()
+	{
+		List<V> list = new ArrayList<V>(m_size);
+		for (Object values : m_entries.values())
+		{
+			if (values instanceof Entry)
+			{
+				for (Entry<V> e = (Entry<V>) values; e != null; e = e.m_next)
+				{
+					list.add(e.m_value);
+				}
+			}
+			else
+			{
+				list.addAll(((Map<Object,V>) values).values());
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Puts all the values of this table into another table.
+	 * @param table The other table
+	 */
+	@SuppressWarnings("unchecked")
+	protected void copyTo(/*@ non_null @*/ PartTable<V> table)
+	{
+		for (Map.Entry<Part,Object> values : m_entries.entrySet())
+		{
+			Part p = values.getKey();
+			if (values.getValue() instanceof Entry)
+			{
+				for (Entry<V> e = (Entry<V>) values.getValue(); e != null; e = e.m_next)
+				{
+					table.put(p, e.m_subject, e.m_value);
+				}
+			}
+			else
+			{
+				for (Map.Entry<Object,V> e : ((Map<Object,V>) values.getValue()).entrySet())
+				{
+					table.put(p, e.getKey(), e.getValue());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Removes all the values of the table.
+	 */
+	public void clear()
+	{
+		m_entries.clear();
+		m_size = 0;
+	}
+	
+	/**
+	 * An entry in the chain of values of a part.
+	 * @param <V> The type of the values
+	 */
+	protected static class Entry<V>
+	{
+		/**
+		 * The subject.
+		 */
+		protected final Object m_subject;
+		
+		/**
+		 * The value associated to the subject.
+		 */
+		protected V m_value;
+		
+		/**
+		 * The next entry of the chain, or <tt>null</tt> if this entry is the
+		 * last one.
+		 */
+		/*@ null @*/ protected final Entry<V> m_next;
+		
+		/**
+		 * Creates a new entry.
+		 * @param subject The subject
+		 * @param value The value associated to the subject
+		 * @param next The next entry of the chain
+		 */
+		public Entry(Object subject, V value, Entry<V> next)
+		{
+			super();
+			m_subject = subject;
+			m_value = value;
+			m_next = next;
+		}
+	}
+}
@@ -0,0 +1,382 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.NodeConnector;
+import ca.uqac.lif.dag.NodeSet;
+import ca.uqac.lif.dag.Pin;
+
+/**
+ * Creates copies of lineage graphs where only Boolean nodes and leaves are
+ * kept, as described in {@link GraphUtilities#squash(Node)}. Optionally, the
+ * squasher also leaves out the leaves that do not satisfy a condition, and
+ * replaces the "and" and "or" nodes that end up with a single child by that
+ * child.
+ * <p>
+ * All these rewrites are made in a single traversal of the original graph,
+ * which uses an explicit stack instead of recursion and can therefore
+ * process graphs of any depth. Each link from an output pin of a node of the
+ * new graph to an input pin of a node of the original graph is processed
+ * once, and each node of the
+ * original graph is copied at most once, so that the time taken is linear
+ * in the size of the original graph and of the new one. The nodes of the
+ * original graph are not modified.
+ * <p>
+ * The copies of the nodes are shared by all the graphs squashed by the same
+ * instance, which should therefore be used for graphs whose results are to
+ * share their nodes, such as the roots of a multi-rooted graph.
+ */
+public class Squasher
+{
+	/**
+	 * The condition that a leaf must satisfy to be kept, or <tt>null</tt> to
+	 * keep all leaves.
+	 */
+	/*@ null @*/ protected final Predicate<? super Node> m_keepLeaf;
+	
+	/**
+	 * A flag indicating that Boolean nodes with a single child are replaced
+	 * by that child.
+	 */
+	protected final boolean m_removeUnary;
+	
+	/**
+	 * The copy of each node of the original graph.
+	 */
+	/*@ non_null @*/ protected final Map<Node,Node> m_duplicates;
+	
+	/**
+	 * The links from the first output pin of a node of the new graph to the
+	 * first input pin of a node of the original graph already processed,
+	 * encoded by the identifiers of the two nodes. Processing such a link
+	 * again would have no effect.
+	 */
+	/*@ non_null @*/ protected final Set<Long> m_processed;
+	
+	/**
+	 * The other links already processed, which involve another pin or a node
+	 * without an {@linkplain Node#getId() identifier}.
+	 */
+	/*@ non_null @*/ protected final Set<Link> m_processedLinks;
+	
+	/**
+	 * The copies of Boolean nodes whose children have already been added.
+	 */
+	/*@ non_null @*/ protected final NodeSet m_expanded;
+	
+	/**
+	 * The node that replaces each Boolean node removed because it had a single
+	 * child.
+	 */
+	/*@ non_null @*/ protected final Map<Node,Node> m_replacements;
+	
+	/**
+	 * Creates a new squasher that keeps all leaves and all Boolean nodes.
+	 */
+	public Squasher()
+	{
+		this(null, false);
+	}
+	
+	/**
+	 * Creates a new squasher.
+	 * @param keep_leaf The condition that a leaf of the original graph must
+	 * satisfy to be kept, or <tt>null</tt> to keep all leaves
+	 * @param remove_unary Set to <tt>true</tt> to replace the "and" and "or"
+	 * nodes that have a single child by that child
+	 */
+	public Squasher(/*@ null @*/ Predicate<? super Node> keep_leaf, boolean remove_unary)
+	{
+		super();
+		m_keepLeaf = keep_leaf;
+		m_removeUnary = remove_unary;
+		m_duplicates = new HashMap<Node,Node>();
+		m_processed = new HashSet<Long>();
+		m_processedLinks = new HashSet<Link>();
+		m_expanded = new NodeSet();
+		m_replacements = new IdentityHashMap<Node,Node>();
+	}
+	
+	/**
+	 * Creates a squashed copy of a lineage graph. The root is always copied,
+	 * even if it is a Boolean node with a single child.
+	 * @param root The root of the original graph
+	 * @return The root of the squashed graph
+	 */
+	/*@ non_null @*/ public Node squash(/*@ non_null @*/ Node root)
+	{
+		Node new_root = root.duplicate();
+		Deque<Task> stack = new ArrayDeque<Task>();
+		pushChildren(root, new_root, stack);
+		while (!stack.isEmpty())
+		{
+			Task t = stack.pop();
+			if (t.m_pin == null)
+			{
+				// All the descendants of the copy have been processed
+				removeIfUnary(t.m_parent, t.m_index, t.m_node);
+				continue;
+			}
+			Node parent = t.m_parent;
+			Node target = t.m_pin.getNode();
+			int target_index = t.m_pin.getIndex();
+			if (!markProcessed(parent, t.m_index, target, target_index))
+			{
+				continue;
+			}
+			boolean is_boolean = target instanceof AndNode || target instanceof OrNode;
+			if (!is_boolean && GraphUtilities.isLeaf(target))
+			{
+				// Don't skip over a leaf node, unless it is left out
+				if (m_keepLeaf == null || m_keepLeaf.test(target))
+				{
+					NodeConnector.connect(parent, t.m_index, getDuplicate(target), target_index);
+				}
+				continue;
+			}
+			Node out_parent = parent;
+			if (is_boolean && target.getOutputNodeCount() > 1 && !sameKind(parent, target))
+			{
+				// Don't skip over a Boolean node of arity > 1 if parent is something else
+				Node target_dup = getDuplicate(target);
+				Node replacement = m_replacements.get(target_dup);
+				NodeConnector.connect(parent, t.m_index, replacement == null ? target_dup : replacement, target_index);
+				if (!m_expanded.add(target_dup))
+				{
+					// The children of the copy are already known
+					continue;
+				}
+				if (m_removeUnary)
+				{
+					stack.push(new Task(parent, t.m_index, null, target_dup));
+				}
+				out_parent = target_dup;
+			}
+			// Otherwise, children of target are connected to parent
+			pushChildren(target, out_parent, stack);
+		}
+		return new_root;
+	}
+	
+	/**
+	 * Records that a link from a node of the new graph to a node of the
+	 * original graph is processed.
+	 * @param parent The node of the new graph
+	 * @param index The index of the output pin of the parent
+	 * @param target The node of the original graph
+	 * @param target_index The index of the input pin of the target
+	 * @return <tt>true</tt> if the link was not already processed,
+	 * <tt>false</tt> otherwise
+	 */
+	protected boolean markProcessed(Node parent, int index, Node target, int target_index)
+	{
+		if (index == 0 && target_index == 0 && parent.getId() >= 0 && target.getId() >= 0)
+		{
+			// Most links join the first pins of numbered nodes
+			return m_processed.add(((long) parent.getId() << 32) | target.getId());
+		}
+		return m_processedLinks.add(new Link(parent, index, target, target_index));
+	}
+	
+	/**
+	 * Replaces a copy of a Boolean node by its child if it has only one.
+	 * @param parent The parent of the copy
+	 * @param index The index of the output pin of the parent
+	 * @param dup The copy
+	 */
+	protected void removeIfUnary(Node parent, int index, Node dup)
+	{
+		List<Pin<? extends Node>> links = dup.getOutputLinks(0);
+		if (dup.getOutputArity() != 1 || links.size() != 1)
+		{
+			return;
+		}
+		Pin<? extends Node> only = links.get(0);
+		Node only_child = only.getNode();
+		NodeConnector.disconnect(dup, 0, only_child, only.getIndex());
+		NodeConnector.disconnect(parent, index, dup, 0);
+		NodeConnector.connect(parent, index, only_child, only.getIndex());
+		m_replacements.put(dup, only_child);
+	}
+	
+	/**
+	 * Gets the copy of a node of the original graph, creating it if it does
+	 * not exist yet.
+	 * @param n The node
+	 * @return The copy
+	 */
+	/*@ non_null @*/ protected Node getDuplicate(/*@ non_null @*/ Node n)
+	{
+		Node dup = m_duplicates.get(n);
+		if (dup == null)
+		{
+			dup = n.duplicate();
+			m_duplicates.put(n, dup);
+		}
+		return dup;
+	}
+	
+	/**
+	 * Determines if two nodes are both "and" nodes or both "or" nodes.
+	 * @param n1 The first node
+	 * @param n2 The second node
+	 * @return <tt>true</tt> if the nodes are of the same Boolean kind,
+	 * <tt>false</tt> otherwise
+	 */
+	protected static boolean sameKind(Node n1, Node n2)
+	{
+		return (n1 instanceof AndNode && n2 instanceof AndNode) || (n1 instanceof OrNode && n2 instanceof OrNode);
+	}
+	
+	/**
+	 * Pushes on a stack the tasks connecting a parent to each child of a node,
+	 * in reverse order, so that they are popped in the order of the children.
+	 * @param n The node whose children are pushed
+	 * @param parent The parent to pair with each child
+	 * @param stack The stack
+	 */
+	protected static void pushChildren(Node n, Node parent, Deque<Task> stack)
+	{
+		for (int i = n.getOutputArity() - 1; i >= 0; i--)
+		{
+			List<Pin<? extends Node>> links = n.getOutputLinks(i);
+			for (int j = links.size() - 1; j >= 0; j--)
+			{
+				stack.push(new Task(parent, i, links.get(j), null));
+			}
+		}
+	}
+	
+	/**
+	 * A link from an output pin of a node of the new graph to an input pin of
+	 * a node of the original graph. Nodes are compared by identity.
+	 */
+	protected static class Link
+	{
+		/**
+		 * The node of the new graph.
+		 */
+		/*@ non_null @*/ protected final Node m_parent;
+		
+		/**
+		 * The index of the output pin of the parent.
+		 */
+		protected final int m_index;
+		
+		/**
+		 * The node of the original graph.
+		 */
+		/*@ non_null @*/ protected final Node m_target;
+		
+		/**
+		 * The index of the input pin of the target.
+		 */
+		protected final int m_targetIndex;
+		
+		/**
+		 * Creates a new link.
+		 * @param parent The node of the new graph
+		 * @param index The index of the output pin of the parent
+		 * @param target The node of the original graph
+		 * @param target_index The index of the input pin of the target
+		 */
+		public Link(Node parent, int index, Node target, int target_index)
+		{
+			super();
+			m_parent = parent;
+			m_index = index;
+			m_target = target;
+			m_targetIndex = target_index;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return ((System.identityHashCode(m_parent) * 31 + m_index) * 31 + System.identityHashCode(m_target)) * 31 + m_targetIndex;
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Link))
+			{
+				return false;
+			}
+			Link l = (Link) o;
+			return m_parent == l.m_parent && m_index == l.m_index && m_target == l.m_target && m_targetIndex == l.m_targetIndex;
+		}
+	}
+	
+	/**
+	 * An element of the stack of the traversal. A task either connects a node
+	 * of the new graph to what remains of a node of the original graph, or,
+	 * when it has no pin, removes a copy of a Boolean node once all its
+	 * children are known.
+	 */
+	protected static class Task
+	{
+		/**
+		 * The node of the new graph.
+		 */
+		/*@ non_null @*/ protected final Node m_parent;
+		
+		/**
+		 * The index of the output pin of the parent.
+		 */
+		protected final int m_index;
+		
+		/**
+		 * The pin of the original graph leading to the node to process, or
+		 * <tt>null</tt> for a task that removes a copy.
+		 */
+		/*@ null @*/ protected final Pin<? extends Node> m_pin;
+		
+		/**
+		 * The copy to remove if it has a single child, or <tt>null</tt>.
+		 */
+		/*@ null @*/ protected final Node m_node;
+		
+		/**
+		 * Creates a new task.
+		 * @param parent The node of the new graph
+		 * @param index The index of the output pin of the parent
+		 * @param pin The pin of the original graph leading to the node to
+		 * process
+		 * @param node The copy to remove if it has a single child
+		 */
+		public Task(Node parent, int index, Pin<? extends Node> pin, Node node)
+		{
+			super();
+			m_parent = parent;
+			m_index = index;
+			m_pin = pin;
+			m_node = node;
+		}
+	}
+}
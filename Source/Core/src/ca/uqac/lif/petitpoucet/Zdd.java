@@ -0,0 +1,818 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.dag.MathSet;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.Pin;
+import ca.uqac.lif.petitpoucet.NodeFactory.ObjectPart;
+
+/**
+ * A zero-suppressed decision diagram (ZDD) representing sets of clauses. A
+ * ZDD is a directed acyclic graph in which each path from the root to the
+ * terminal {@link #BASE} designates one clause; since identical subgraphs are
+ * stored only once, a diagram of a few nodes can stand for a number of
+ * clauses that grows exponentially with its size. For example, the
+ * conjunction of <i>n</i> disjunctions of <i>k</i> parts each has
+ * <i>k</i><sup><i>n</i></sup> clauses, which
+ * {@link GraphUtilities#asDnf(Node) asDnf} must all create, but its diagram
+ * only has <i>n</i>&times;<i>k</i> nodes.
+ * <p>
+ * An instance of this class manages the nodes of many diagrams, each of which
+ * is designated by the integer identifier of its root. Each
+ * {@link ObjectPart} is given a variable number the first time it is seen,
+ * and the variables appear in increasing order along the paths of a diagram.
+ * Nodes are created through a unique table, so that two equal diagrams
+ * always have the same identifier, and the results of operations are kept in
+ * a cache of fixed size, which bounds the memory used beyond the nodes
+ * themselves. The operations follow the "absent" children of the nodes in a
+ * loop, and only recurse on their "present" children; their depth is hence
+ * bounded by the number of parts in a clause, and not by the number of
+ * clauses, so that an "or" node with many children is handled without deep
+ * recursion. Counting the clauses and converting a diagram back into
+ * clauses use an explicit stack.
+ * <p>
+ * A diagram is obtained from a lineage graph with {@link #build(Node)}; it
+ * can then be combined with {@link #union(int, int) union} and
+ * {@link #join(int, int) join}, reduced to its {@link #minimal(int) minimal}
+ * clauses, queried with {@link #count(int) count} and
+ * {@link #contains(int, Clause) contains}, and converted back to a set of
+ * clauses with {@link #toDnf(int) toDnf}.
+ */
+public class Zdd
+{
+	/**
+	 * The identifier of the diagram representing no clause at all.
+	 */
+	public static final int EMPTY = 0;
+	
+	/**
+	 * The identifier of the diagram representing a single empty clause.
+	 */
+	public static final int BASE = 1;
+	
+	/**
+	 * The variable given to the two terminal nodes, which is greater than
+	 * that of any other node.
+	 */
+	protected static final int TERMINAL = Integer.MAX_VALUE;
+	
+	/**
+	 * The codes of the operations whose results are cached.
+	 */
+	protected static final int OP_UNION = 1, OP_JOIN = 2, OP_INTERSECT = 3, OP_NON_SUPERSETS = 4, OP_MINIMAL = 5;
+	
+	/**
+	 * The default base-2 logarithm of the number of entries of the
+	 * operation cache.
+	 */
+	protected static final int DEFAULT_CACHE_BITS = 18;
+	
+	/**
+	 * The variable of each node.
+	 */
+	/*@ non_null @*/ protected int[] m_var;
+	
+	/**
+	 * The node reached from each node when its variable is absent.
+	 */
+	/*@ non_null @*/ protected int[] m_lo;
+	
+	/**
+	 * The node reached from each node when its variable is present.
+	 */
+	/*@ non_null @*/ protected int[] m_hi;
+	
+	/**
+	 * The number of nodes, including the two terminals.
+	 */
+	protected int m_size;
+	
+	/**
+	 * The unique table, an open-addressing hash table of node identifiers
+	 * indexed by variable and children. Free slots contain 0.
+	 */
+	/*@ non_null @*/ protected int[] m_table;
+	
+	/**
+	 * The operation, the operands and the result of each entry of the
+	 * operation cache. An entry whose operation is 0 is free.
+	 */
+	/*@ non_null @*/ protected final int[] m_cacheOp, m_cacheF, m_cacheG, m_cacheResult;
+	
+	/**
+	 * The object part given to each variable.
+	 */
+	/*@ non_null @*/ protected final List<ObjectPart> m_parts;
+	
+	/**
+	 * The variable given to each object part.
+	 */
+	/*@ non_null @*/ protected final Map<ObjectPart,Integer> m_variables;
+	
+	/**
+	 * Creates a new empty diagram manager with an operation cache of the
+	 * default size.
+	 */
+	public Zdd()
+	{
+		this(DEFAULT_CACHE_BITS);
+	}
+	
+	/**
+	 * Creates a new empty diagram manager.
+	 * @param cache_bits The base-2 logarithm of the number of entries of the
+	 * operation cache
+	 */
+	public Zdd(int cache_bits)
+	{
+		super();
+		m_var = new int[1024];
+		m_lo = new int[1024];
+		m_hi = new int[1024];
+		m_var[EMPTY] = TERMINAL;
+		m_var[BASE] = TERMINAL;
+		m_size = 2;
+		m_table = new int[2048];
+		int cache_size = 1 << cache_bits;
+		m_cacheOp = new int[cache_size];
+		m_cacheF = new int[cache_size];
+		m_cacheG = new int[cache_size];
+		m_cacheResult = new int[cache_size];
+		m_parts = new ArrayList<ObjectPart>();
+		m_variables = new HashMap<ObjectPart,Integer>();
+	}
+	
+	/**
+	 * Builds the diagram of the clauses of a lineage graph. The diagram
+	 * represents the same clauses as {@link GraphUtilities#asDnf(Node)}; each
+	 * node of the graph is converted only once, and the graph is traversed
+	 * without recursion.
+	 * @param root The root of the lineage graph
+	 * @return The identifier of the diagram
+	 */
+	public int build(/*@ non_null @*/ Node root)
+	{
+		Map<Node,Integer> results = new IdentityHashMap<Node,Integer>();
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty())
+		{
+			Node current = stack.peek();
+			if (results.containsKey(current))
+			{
+				stack.pop();
+				continue;
+			}
+			if (current instanceof PartNode && GraphUtilities.isLeaf(current))
+			{
+				stack.pop();
+				PartNode pn = (PartNode) current;
+				results.put(current, getNode(getVariable(new ObjectPart(pn.getPart(), pn.getSubject())), EMPTY, BASE));
+				continue;
+			}
+			List<Integer> children = new ArrayList<Integer>();
+			boolean ready = true;
+			for (int i = 0; i < current.getOutputArity(); i++)
+			{
+				for (Pin<? extends Node> pin : current.getOutputLinks(i))
+				{
+					Integer child = results.get(pin.getNode());
+					if (child == null)
+					{
+						stack.push(pin.getNode());
+						ready = false;
+					}
+					else
+					{
+						children.add(child);
+					}
+				}
+			}
+			if (!ready)
+			{
+				continue;
+			}
+			stack.pop();
+			// Combining the children by decreasing variable puts each new one at
+			// the head of the diagram, instead of walking the whole diagram
+			children.sort((a, b) -> Integer.compare(m_var[b], m_var[a]));
+			int result;
+			if (current instanceof AndNode)
+			{
+				// As in asDnf, an "and" node without children has no clause
+				result = children.isEmpty() ? EMPTY : BASE;
+				for (int child : children)
+				{
+					result = join(result, child);
+				}
+			}
+			else
+			{
+				result = EMPTY;
+				for (int child : children)
+				{
+					result = union(result, child);
+				}
+			}
+			results.put(current, result);
+		}
+		return results.get(root);
+	}
+	
+	/**
+	 * Gets the union of two diagrams, i.e. the clauses that are in either of
+	 * them.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @return The union
+	 */
+	public int union(int f, int g)
+	{
+		return apply(OP_UNION, f, g);
+	}
+	
+	/**
+	 * Gets the join of two diagrams, i.e. the merge of each clause of the
+	 * first with each clause of the second. This is the operation that
+	 * {@link Clause#distribute(Set...)} performs on sets of clauses.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @return The join
+	 */
+	public int join(int f, int g)
+	{
+		return apply(OP_JOIN, f, g);
+	}
+	
+	/**
+	 * Gets the intersection of two diagrams, i.e. the clauses that are in
+	 * both of them.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @return The intersection
+	 */
+	public int intersect(int f, int g)
+	{
+		return apply(OP_INTERSECT, f, g);
+	}
+	
+	/**
+	 * Gets the minimal clauses of a diagram, i.e. those that do not contain
+	 * another clause of the diagram. Removing the other clauses leaves a
+	 * formula that is equivalent to the original.
+	 * @param f The diagram
+	 * @return The diagram of the minimal clauses
+	 */
+	public int minimal(int f)
+	{
+		return apply(OP_MINIMAL, f, 0);
+	}
+	
+	/**
+	 * Gets the clauses of a diagram that do not contain any clause of
+	 * another diagram.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @return The diagram of the clauses of <tt>f</tt> that are not supersets
+	 * of a clause of <tt>g</tt>
+	 */
+	protected int nonSupersets(int f, int g)
+	{
+		return apply(OP_NON_SUPERSETS, f, g);
+	}
+	
+	/**
+	 * Applies an operation to two diagrams. The operation goes down the
+	 * "absent" children of the operands in a loop, pushing on a stack the
+	 * variable and the "present" child of each node to create, which is
+	 * computed by a recursive call; the nodes are then created from the
+	 * bottom of the chain up.
+	 * @param op The operation
+	 * @param f The first operand
+	 * @param g The second operand, or 0 for {@link #OP_MINIMAL}
+	 * @return The result
+	 */
+	protected int apply(int op, int f, int g)
+	{
+		// Each frame holds the operands, and the variable and "present" child
+		// of the node to create; a variable of -1 designates a frame whose
+		// result is that of the next one, and a child of -2 one whose
+		// "present" child depends on its "absent" child
+		int[] frames = new int[32];
+		int top = 0;
+		int r;
+		// The empty clause is in a diagram if and only if it is in its "absent"
+		// child, so that this only needs to be checked once
+		boolean check_empty = true;
+		while (true)
+		{
+			r = terminal(op, f, g, check_empty);
+			if (r >= 0)
+			{
+				break;
+			}
+			check_empty = false;
+			if (f > g && (op == OP_UNION || op == OP_JOIN || op == OP_INTERSECT))
+			{
+				// The other operations are commutative
+				int t = f;
+				f = g;
+				g = t;
+			}
+			r = cacheGet(op, f, g);
+			if (r >= 0)
+			{
+				break;
+			}
+			if (top + 4 > frames.length)
+			{
+				frames = Arrays.copyOf(frames, frames.length * 2);
+			}
+			frames[top++] = f;
+			frames[top++] = g;
+			if (op == OP_MINIMAL)
+			{
+				frames[top++] = m_var[f];
+				frames[top++] = -2;
+				f = m_lo[f];
+				continue;
+			}
+			int vf = m_var[f], vg = m_var[g];
+			if (vf < vg)
+			{
+				frames[top++] = op == OP_INTERSECT ? -1 : vf;
+				frames[top++] = op == OP_UNION ? m_hi[f] : (op == OP_INTERSECT ? 0 : apply(op, m_hi[f], g));
+				f = m_lo[f];
+			}
+			else if (vf > vg)
+			{
+				// The clauses of g with variable vg are in no clause of f
+				boolean keep = op == OP_UNION || op == OP_JOIN;
+				frames[top++] = keep ? vg : -1;
+				frames[top++] = op == OP_UNION ? m_hi[g] : (op == OP_JOIN ? apply(op, f, m_hi[g]) : 0);
+				g = m_lo[g];
+			}
+			else
+			{
+				int hi;
+				switch (op)
+				{
+				case OP_UNION:
+				case OP_INTERSECT:
+					hi = apply(op, m_hi[f], m_hi[g]);
+					break;
+				case OP_JOIN:
+					hi = union(join(m_hi[f], m_hi[g]), union(join(m_hi[f], m_lo[g]), join(m_lo[f], m_hi[g])));
+					break;
+				default:
+					hi = intersect(nonSupersets(m_hi[f], m_lo[g]), nonSupersets(m_hi[f], m_hi[g]));
+				}
+				frames[top++] = vf;
+				frames[top++] = hi;
+				f = m_lo[f];
+				g = m_lo[g];
+			}
+		}
+		while (top > 0)
+		{
+			int hi = frames[--top], var = frames[--top], fg = frames[--top], ff = frames[--top];
+			if (var >= 0)
+			{
+				if (hi == -2)
+				{
+					hi = nonSupersets(minimal(m_hi[ff]), r);
+				}
+				r = getNode(var, r, hi);
+			}
+			r = cachePut(op, ff, fg, r);
+		}
+		return r;
+	}
+	
+	/**
+	 * Gets the result of an operation when it does not depend on the
+	 * children of its operands.
+	 * @param op The operation
+	 * @param f The first operand
+	 * @param g The second operand
+	 * @param check_empty Set to <tt>true</tt> to check whether the operands
+	 * contain the empty clause, when the operation depends on it
+	 * @return The result, or -1 if it depends on the children of the operands
+	 */
+	protected int terminal(int op, int f, int g, boolean check_empty)
+	{
+		switch (op)
+		{
+		case OP_UNION:
+			if (f == EMPTY || f == g)
+			{
+				return g;
+			}
+			return g == EMPTY ? f : -1;
+		case OP_JOIN:
+			if (f == EMPTY || g == EMPTY)
+			{
+				return EMPTY;
+			}
+			if (f == BASE)
+			{
+				return g;
+			}
+			return g == BASE ? f : -1;
+		case OP_INTERSECT:
+			if (f == EMPTY || g == EMPTY)
+			{
+				return EMPTY;
+			}
+			return f == g ? f : -1;
+		case OP_NON_SUPERSETS:
+			if (g == EMPTY)
+			{
+				return f;
+			}
+			if (f == EMPTY || f == g || (check_empty && hasEmptyClause(g)))
+			{
+				return EMPTY;
+			}
+			if (f == BASE)
+			{
+				// g has no empty clause, so none of its clauses is in the empty clause
+				return BASE;
+			}
+			return -1;
+		default:
+			if (f == EMPTY || f == BASE)
+			{
+				return f;
+			}
+			if (check_empty && hasEmptyClause(f))
+			{
+				// The empty clause is contained in every other
+				return BASE;
+			}
+			return -1;
+		}
+	}
+	
+	/**
+	 * Counts the clauses of a diagram.
+	 * @param f The diagram
+	 * @return The number of clauses
+	 */
+	/*@ non_null @*/ public BigInteger count(int f)
+	{
+		return count(f, new BigInteger[m_size]);
+	}
+	
+	/**
+	 * Counts the clauses of a diagram, reusing the counts of the nodes already
+	 * visited. The diagram is traversed with an explicit stack.
+	 * @param f The diagram
+	 * @param counts The count of each node, or <tt>null</tt> for nodes not
+	 * visited yet
+	 * @return The number of clauses
+	 */
+	protected BigInteger count(int f, BigInteger[] counts)
+	{
+		counts[EMPTY] = BigInteger.ZERO;
+		counts[BASE] = BigInteger.ONE;
+		int[] stack = new int[32];
+		int top = 0;
+		stack[top++] = f;
+		while (top > 0)
+		{
+			int n = stack[top - 1];
+			if (counts[n] != null)
+			{
+				top--;
+				continue;
+			}
+			BigInteger lo = counts[m_lo[n]], hi = counts[m_hi[n]];
+			if (lo != null && hi != null)
+			{
+				counts[n] = lo.add(hi);
+				top--;
+				continue;
+			}
+			if (top + 2 > stack.length)
+			{
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			if (lo == null)
+			{
+				stack[top++] = m_lo[n];
+			}
+			if (hi == null)
+			{
+				stack[top++] = m_hi[n];
+			}
+		}
+		return counts[f];
+	}
+	
+	/**
+	 * Determines if a diagram contains a clause.
+	 * @param f The diagram
+	 * @param c The clause
+	 * @return <tt>true</tt> if the clause is in the diagram, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean contains(int f, /*@ non_null @*/ Clause c)
+	{
+		int[] vars = new int[c.size()];
+		int i = 0;
+		for (ObjectPart op : c)
+		{
+			Integer v = m_variables.get(op);
+			if (v == null)
+			{
+				return false;
+			}
+			vars[i++] = v;
+		}
+		Arrays.sort(vars);
+		i = 0;
+		while (f != EMPTY && f != BASE)
+		{
+			if (i < vars.length && vars[i] < m_var[f])
+			{
+				// No clause of f contains this variable
+				return false;
+			}
+			if (i < vars.length && vars[i] == m_var[f])
+			{
+				f = m_hi[f];
+				i++;
+			}
+			else
+			{
+				f = m_lo[f];
+			}
+		}
+		return f == BASE && i == vars.length;
+	}
+	
+	/**
+	 * Converts a diagram into a set of clauses. The number of clauses may be
+	 * exponential in the size of the diagram; use {@link #count(int)} to know
+	 * it in advance.
+	 * @param f The diagram
+	 * @return A new mutable set of clauses
+	 */
+	/*@ non_null @*/ public Set<Clause> toDnf(int f)
+	{
+		List<Clause> clauses = new ArrayList<Clause>();
+		addClauses(f, new ArrayList<ObjectPart>(), clauses);
+		Set<Clause> set = new MathSet<Clause>();
+		set.addAll(clauses);
+		return set;
+	}
+	
+	/**
+	 * Adds the clauses of a diagram to a list. The paths of the diagram are
+	 * followed with an explicit stack, the clauses of the "absent" child of
+	 * a node coming before those of its "present" child.
+	 * @param f The diagram
+	 * @param prefix The parts on the path leading to the diagram
+	 * @param clauses The list of clauses
+	 */
+	protected void addClauses(int f, List<ObjectPart> prefix, List<Clause> clauses)
+	{
+		// Each frame holds a node, the length of the prefix leading to it, and
+		// the variable to append to the prefix first, or -1
+		int start = prefix.size();
+		int[] stack = new int[48];
+		int top = 0;
+		stack[top++] = f;
+		stack[top++] = start;
+		stack[top++] = -1;
+		while (top > 0)
+		{
+			int var = stack[--top], length = stack[--top], n = stack[--top];
+			while (prefix.size() > length)
+			{
+				prefix.remove(prefix.size() - 1);
+			}
+			if (var >= 0)
+			{
+				prefix.add(m_parts.get(var));
+			}
+			if (n == EMPTY)
+			{
+				continue;
+			}
+			if (n == BASE)
+			{
+				clauses.add(new Clause(prefix.toArray(new ObjectPart[prefix.size()])));
+				continue;
+			}
+			if (top + 6 > stack.length)
+			{
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			stack[top++] = m_hi[n];
+			stack[top++] = prefix.size();
+			stack[top++] = m_var[n];
+			stack[top++] = m_lo[n];
+			stack[top++] = prefix.size();
+			stack[top++] = -1;
+		}
+		while (prefix.size() > start)
+		{
+			prefix.remove(prefix.size() - 1);
+		}
+	}
+	
+	/**
+	 * Gets the number of nodes managed by this object, including the two
+	 * terminals.
+	 * @return The number of nodes
+	 */
+	/*@ pure @*/ public int getNodeCount()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Gets the number of variables, i.e. of distinct object parts, seen so
+	 * far.
+	 * @return The number of variables
+	 */
+	/*@ pure @*/ public int getVariableCount()
+	{
+		return m_parts.size();
+	}
+	
+	/**
+	 * Empties the operation cache. The diagrams built so far are not
+	 * affected.
+	 */
+	public void clearCache()
+	{
+		Arrays.fill(m_cacheOp, 0);
+	}
+	
+	/**
+	 * Gets the variable of an object part, giving it a new one if it has none.
+	 * @param op The object part
+	 * @return The variable
+	 */
+	protected int getVariable(/*@ non_null @*/ ObjectPart op)
+	{
+		Integer v = m_variables.get(op);
+		if (v == null)
+		{
+			v = m_parts.size();
+			m_parts.add(op);
+			m_variables.put(op, v);
+		}
+		return v;
+	}
+	
+	/**
+	 * Determines if a diagram contains the empty clause.
+	 * @param f The diagram
+	 * @return <tt>true</tt> if the diagram contains the empty clause,
+	 * <tt>false</tt> otherwise
+	 */
+	protected boolean hasEmptyClause(int f)
+	{
+		while (f != EMPTY && f != BASE)
+		{
+			f = m_lo[f];
+		}
+		return f == BASE;
+	}
+	
+	/**
+	 * Gets the node with a given variable and children, creating it if it
+	 * does not exist. A node whose variable is present in no clause is never
+	 * created; its "absent" child is returned instead.
+	 * @param var The variable
+	 * @param lo The child when the variable is absent
+	 * @param hi The child when the variable is present
+	 * @return The identifier of the node
+	 */
+	protected int getNode(int var, int lo, int hi)
+	{
+		if (hi == EMPTY)
+		{
+			return lo;
+		}
+		int mask = m_table.length - 1;
+		int slot = hash(var, lo, hi) & mask;
+		for (int n = m_table[slot]; n != 0; n = m_table[slot])
+		{
+			if (m_var[n] == var && m_lo[n] == lo && m_hi[n] == hi)
+			{
+				return n;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (m_size == m_var.length)
+		{
+			m_var = Arrays.copyOf(m_var, m_size * 2);
+			m_lo = Arrays.copyOf(m_lo, m_size * 2);
+			m_hi = Arrays.copyOf(m_hi, m_size * 2);
+		}
+		int n = m_size++;
+		m_var[n] = var;
+		m_lo[n] = lo;
+		m_hi[n] = hi;
+		m_table[slot] = n;
+		if (m_size * 4 > m_table.length * 3)
+		{
+			rehash();
+		}
+		return n;
+	}
+	
+	/**
+	 * Doubles the size of the unique table.
+	 */
+	protected void rehash()
+	{
+		m_table = new int[m_table.length * 2];
+		int mask = m_table.length - 1;
+		for (int n = 2; n < m_size; n++)
+		{
+			int slot = hash(m_var[n], m_lo[n], m_hi[n]) & mask;
+			while (m_table[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			m_table[slot] = n;
+		}
+	}
+	
+	/**
+	 * Gets the result of an operation from the cache.
+	 * @param op The operation
+	 * @param f The first operand
+	 * @param g The second operand
+	 * @return The result, or -1 if it is not in the cache
+	 */
+	protected int cacheGet(int op, int f, int g)
+	{
+		int slot = hash(op, f, g) & (m_cacheOp.length - 1);
+		if (m_cacheOp[slot] == op && m_cacheF[slot] == f && m_cacheG[slot] == g)
+		{
+			return m_cacheResult[slot];
+		}
+		return -1;
+	}
+	
+	/**
+	 * Puts the result of an operation in the cache, replacing the entry
+	 * previously at the same position.
+	 * @param op The operation
+	 * @param f The first operand
+	 * @param g The second operand
+	 * @param r The result
+	 * @return The result
+	 */
+	protected int cachePut(int op, int f, int g, int r)
+	{
+		int slot = hash(op, f, g) & (m_cacheOp.length - 1);
+		m_cacheOp[slot] = op;
+		m_cacheF[slot] = f;
+		m_cacheG[slot] = g;
+		m_cacheResult[slot] = r;
+		return r;
+	}
+	
+	/**
+	 * Hashes three integers.
+	 */
+	protected static int hash(int a, int b, int c)
+	{
+		return HashUtilities.mix(HashUtilities.combine(HashUtilities.combine(a, b), c));
+	}
+}
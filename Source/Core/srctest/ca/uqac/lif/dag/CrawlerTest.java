@@ -0,0 +1,203 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.dag.Crawler.Order;
+
+/**
+ * Unit tests for {@link Crawler}.
+ */
+public class CrawlerTest
+{
+	/*
+	 * Crawls the graph:
+	 * a
+	 * + b
+	 * | + d
+	 * + c
+	 *   + d
+	 *   + e
+	 */
+	@Test
+	public void testBreadthFirst()
+	{
+		LabelledNode[] n = getDiamond();
+		LabelCollector c = new LabelCollector(n[0]);
+		c.crawl();
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e"), c.m_labels);
+	}
+	
+	@Test
+	public void testDepthFirst()
+	{
+		LabelledNode[] n = getDiamond();
+		LabelCollector c = new LabelCollector(n[0]);
+		c.setOrder(Order.DEPTH_FIRST);
+		c.crawl();
+		assertEquals(Arrays.asList("a", "b", "d", "c", "e"), c.m_labels);
+	}
+	
+	@Test
+	public void testForwardOnly()
+	{
+		LabelledNode[] n = getDiamond();
+		LabelCollector c = new LabelCollector(n[2]);
+		c.allowBackward(false);
+		c.crawl();
+		assertEquals(Arrays.asList("c", "d", "e"), c.m_labels);
+	}
+	
+	@Test
+	public void testLongChain()
+	{
+		int length = 200000;
+		LabelledNode first = new LabelledNode(0);
+		LabelledNode last = first;
+		for (int i = 1; i < length; i++)
+		{
+			LabelledNode n = new LabelledNode(i);
+			last.addChild(n);
+			last = n;
+		}
+		for (Order o : Order.values())
+		{
+			LabelCollector c = new LabelCollector(last);
+			c.setOrder(o);
+			c.crawl();
+			assertEquals(length, c.m_labels.size());
+		}
+	}
+	
+	@Test
+	public void testMaxDepth()
+	{
+		LabelledNode[] n = getDiamond();
+		LabelCollector c = new LabelCollector(n[0]);
+		c.setMaxDepth(1);
+		c.crawl();
+		assertEquals(Arrays.asList("a", "b", "c"), c.m_labels);
+		// d is two edges away from e through c, but only one edge away from b
+		c = new LabelCollector(n[4]);
+		c.setMaxDepth(2);
+		c.crawl();
+		assertEquals(Arrays.asList("e", "c", "d", "a"), c.m_labels);
+	}
+	
+	@Test
+	public void testNodeFilter()
+	{
+		LabelledNode[] n = getDiamond();
+		for (Order o : Order.values())
+		{
+			LabelCollector c = new LabelCollector(n[0]);
+			c.setOrder(o).setNodeFilter(x -> !"c".equals(((LabelledNode) x).getLabel()));
+			c.crawl();
+			assertEquals(Arrays.asList("a", "b", "d"), c.m_labels);
+		}
+	}
+	
+	@Test
+	public void testEdgeFilter()
+	{
+		LabelledNode[] n = getDiamond();
+		// Forward edges only, and not the edge from b to d
+		LabelCollector c = new LabelCollector(n[0]);
+		c.setEdgeFilter((from, to, forward) -> forward && (from.getNode() != n[1] || to.getNode() != n[3]));
+		c.setOrder(Order.DEPTH_FIRST);
+		c.crawl();
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e"), c.m_labels);
+	}
+	
+	@Test
+	public void testStop()
+	{
+		LabelledNode[] n = getDiamond();
+		Crawler c = new LabelCollector(n[0])
+		{
+			@Override
+			public void visit(Node x)
+			{
+				super.visit(x);
+				if (x.getOutputLinks(0).isEmpty())
+				{
+					stop();
+				}
+			}
+		};
+		c.setOrder(Order.DEPTH_FIRST);
+		c.crawl();
+		assertTrue(c.isStopped());
+		assertEquals(Arrays.asList("a", "b", "d"), ((LabelCollector) c).m_labels);
+	}
+	
+	@Test
+	public void testIterator()
+	{
+		LabelledNode[] n = getDiamond();
+		Crawler.Traversal t = new Crawler(n[3]).allowForward(false).iterator();
+		assertSame(n[3], t.next());
+		assertSame(n[1], t.next());
+		// Resume later: the rest of the traversal is unaffected
+		List<Node> rest = new ArrayList<>();
+		t.forEachRemaining(rest::add);
+		assertEquals(Arrays.asList(n[2], n[0]), rest);
+		assertFalse(t.hasNext());
+	}
+	
+	protected static LabelledNode[] getDiamond()
+	{
+		LabelledNode a = new LabelledNode("a");
+		LabelledNode b = new LabelledNode("b");
+		LabelledNode c = new LabelledNode("c");
+		LabelledNode d = new LabelledNode("d");
+		LabelledNode e = new LabelledNode("e");
+		a.addChild(b);
+		a.addChild(c);
+		b.addChild(d);
+		c.addChild(d);
+		c.addChild(e);
+		return new LabelledNode[] {a, b, c, d, e};
+	}
+	
+	/**
+	 * A crawler that records the labels of the nodes it visits.
+	 */
+	protected static class LabelCollector extends Crawler
+	{
+		protected final List<Object> m_labels = new ArrayList<>();
+		
+		public LabelCollector(Node start)
+		{
+			super(start);
+		}
+		
+		@Override
+		public void visit(Node n)
+		{
+			m_labels.add(((LabelledNode) n).getLabel());
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ImmutableMathSet}.
+ */
+public class ImmutableMathSetTest
+{
+	/*
+	 * "Aa" and "BB" have the same hash code, and so do "AaAa" and "BBBB".
+	 */
+	
+	@Test
+	public void testCreate()
+	{
+		ImmutableMathSet<String> set = new ImmutableMathSet<String>(Arrays.asList("c", "Aa", "BB", "c", "Aa"));
+		assertEquals(3, set.size());
+		assertTrue(set.contains("Aa"));
+		assertTrue(set.contains("BB"));
+		assertTrue(set.contains("c"));
+		assertFalse(set.contains("d"));
+		assertFalse(set.contains(null));
+		assertEquals(new MathSet<String>("Aa", "BB", "c"), set);
+		assertEquals(set, new MathSet<String>("Aa", "BB", "c"));
+		assertEquals(new MathSet<String>("Aa", "BB", "c").hashCode(), set.hashCode());
+		assertTrue(new ImmutableMathSet<String>().isEmpty());
+	}
+	
+	@Test
+	public void testWithWithout()
+	{
+		ImmutableMathSet<String> set = new ImmutableMathSet<String>(Arrays.asList("Aa", "c"));
+		assertSame(set, set.with("Aa"));
+		ImmutableMathSet<String> bigger = set.with("BB");
+		assertEquals(2, set.size());
+		assertEquals(new MathSet<String>("Aa", "BB", "c"), bigger);
+		assertSame(bigger, bigger.without("d"));
+		assertSame(bigger, bigger.without("BBBB"));
+		ImmutableMathSet<String> smaller = bigger.without("Aa");
+		assertEquals(new MathSet<String>("BB", "c"), smaller);
+		assertEquals(smaller.hashCode(), new MathSet<String>("BB", "c").hashCode());
+		assertEquals(new MathSet<String>("c"), bigger.filter(s -> s.length() == 1));
+		assertSame(bigger, bigger.filter(s -> true));
+	}
+	
+	@Test
+	public void testUnion()
+	{
+		ImmutableMathSet<String> s1 = new ImmutableMathSet<String>(Arrays.asList("Aa", "c", "AaAa"));
+		ImmutableMathSet<String> s2 = new ImmutableMathSet<String>(Arrays.asList("BB", "c", "BBBB", "d"));
+		ImmutableMathSet<String> u = s1.union(s2);
+		assertEquals(new MathSet<String>("Aa", "BB", "c", "d", "AaAa", "BBBB"), u);
+		assertEquals(u, s2.union(s1));
+		assertEquals(u.hashCode(), s2.union(s1).hashCode());
+		// The union shares the operand that contains the other
+		ImmutableMathSet<String> sub = new ImmutableMathSet<String>(Arrays.asList("BB", "d"));
+		assertSame(s2, s2.union(sub));
+		assertSame(s2, sub.union(s2));
+		assertSame(s2, s2.union(new ImmutableMathSet<String>()));
+	}
+	
+	@Test
+	public void testUnionList()
+	{
+		ImmutableMathSet<String> s1 = new ImmutableMathSet<String>(Arrays.asList("Aa", "c", "AaAa"));
+		ImmutableMathSet<String> s2 = new ImmutableMathSet<String>(Arrays.asList("BB", "c", "BBBB"));
+		ImmutableMathSet<String> s3 = new ImmutableMathSet<String>(Arrays.asList("d", "Aa"));
+		ImmutableMathSet<String> u = ImmutableMathSet.union(Arrays.asList(s1, s2, s3));
+		assertEquals(new MathSet<String>("Aa", "BB", "c", "d", "AaAa", "BBBB"), u);
+		assertEquals(s1.union(s2).union(s3), u);
+		assertEquals(s1.union(s2).union(s3).hashCode(), u.hashCode());
+		// The union shares the set that contains the others
+		ImmutableMathSet<String> empty = new ImmutableMathSet<String>();
+		ImmutableMathSet<String> sub = new ImmutableMathSet<String>(Arrays.asList("BB", "c"));
+		assertSame(s2, ImmutableMathSet.union(Arrays.asList(sub, s2, empty, sub)));
+		assertSame(s1, ImmutableMathSet.union(Arrays.asList(empty, s1, empty)));
+		assertTrue(ImmutableMathSet.union(Arrays.<ImmutableMathSet<String>>asList()).isEmpty());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable()
+	{
+		new ImmutableMathSet<String>(Arrays.asList("a")).add("b");
+	}
+}
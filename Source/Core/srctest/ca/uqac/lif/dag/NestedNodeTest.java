@@ -0,0 +1,194 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link NestedNode}.
+ */
+public class NestedNodeTest
+{
+	@Test
+	public void testNestedPins()
+	{
+		NestedNode nn = getNestedNode();
+		Node a = nn.getAssociatedInput(0).getNode();
+		Node b = nn.getAssociatedOutput(0).getNode();
+		Node c = nn.getAssociatedOutput(1).getNode();
+		assertEquals(0, nn.getNestedInput(a, 0));
+		assertEquals(-1, nn.getNestedInput(a, 1));
+		assertEquals(-1, nn.getNestedInput(b, 0));
+		assertEquals(0, nn.getNestedOutput(b, 0));
+		assertEquals(1, nn.getNestedOutput(c, 0));
+		assertEquals(-1, nn.getNestedOutput(a, 0));
+	}
+	
+	@Test
+	public void testReassociate()
+	{
+		NestedNode nn = getNestedNode();
+		Node b = nn.getAssociatedOutput(0).getNode();
+		Node c = nn.getAssociatedOutput(1).getNode();
+		nn.associateOutput(1, b.getOutputPin(0));
+		assertEquals(0, nn.getNestedOutput(b, 0));
+		assertEquals(-1, nn.getNestedOutput(c, 0));
+		nn.associateOutput(0, c.getOutputPin(0));
+		assertEquals(1, nn.getNestedOutput(b, 0));
+		assertEquals(0, nn.getNestedOutput(c, 0));
+	}
+	
+	@Test
+	public void testDuplicate()
+	{
+		NestedNode nn = getNestedNode();
+		NestedNode dup = nn.duplicate(false);
+		Node a = dup.getAssociatedInput(0).getNode();
+		Node b = dup.getAssociatedOutput(0).getNode();
+		Node c = dup.getAssociatedOutput(1).getNode();
+		assertNotSame(nn.getAssociatedInput(0).getNode(), a);
+		assertEquals(0, dup.getNestedInput(a, 0));
+		assertEquals(0, dup.getNestedOutput(b, 0));
+		assertEquals(1, dup.getNestedOutput(c, 0));
+		assertEquals(-1, dup.getNestedOutput(nn.getAssociatedOutput(0).getNode(), 0));
+	}
+	
+	@Test
+	public void testFreeze()
+	{
+		NestedNode nn = getNestedNode();
+		Node a = nn.getAssociatedInput(0).getNode();
+		Node b = nn.getAssociatedOutput(0).getNode();
+		Node c = nn.getAssociatedOutput(1).getNode();
+		LabelledNode d = new LabelledNode("d");
+		NodeConnector.connect(c, 0, d, 0);
+		NodeConnector.connect(b, 0, d, 0);
+		nn.addNodes(d);
+		nn.freeze();
+		NestedNode dup = nn.duplicate(false);
+		assertTrue(dup.isFrozen());
+		Node a1 = dup.getAssociatedInput(0).getNode();
+		assertEquals("a", ((LabelledNode) a1).getLabel());
+		assertEquals(2, a1.getOutputLinks(0).size());
+		Node b1 = a1.getOutputLinks(0).get(0).getNode();
+		Node c1 = a1.getOutputLinks(0).get(1).getNode();
+		assertSame(b1, dup.getAssociatedOutput(0).getNode());
+		assertSame(c1, dup.getAssociatedOutput(1).getNode());
+		Node d1 = b1.getOutputLinks(0).get(0).getNode();
+		assertEquals("d", ((LabelledNode) d1).getLabel());
+		// Input links keep the order of the original
+		List<Pin<? extends Node>> d1_inputs = new ArrayList<>(d1.getInputLinks(0));
+		assertSame(c1, d1_inputs.get(0).getNode());
+		assertSame(b1, d1_inputs.get(1).getNode());
+		assertNotSame(d, d1);
+		assertNotSame(a, a1);
+	}
+	
+	@Test
+	public void testRewireAfterFreeze()
+	{
+		NestedNode nn = getNestedNode();
+		Node b = nn.getAssociatedOutput(0).getNode();
+		Node c = nn.getAssociatedOutput(1).getNode();
+		nn.freeze();
+		nn.duplicate(false);
+		// Rewiring the internal nodes is detected without freezing again
+		NodeConnector.connect(b, 0, c, 0);
+		NestedNode dup = nn.duplicate(false);
+		Node b1 = dup.getAssociatedOutput(0).getNode();
+		Node c1 = dup.getAssociatedOutput(1).getNode();
+		assertEquals(1, b1.getOutputLinks(0).size());
+		assertSame(c1, b1.getOutputLinks(0).get(0).getNode());
+		assertEquals(2, c1.getInputLinks(0).size());
+		NodeConnector.disconnect(b, 0, c, 0);
+		dup = nn.duplicate(false);
+		assertTrue(dup.getAssociatedOutput(0).getNode().getOutputLinks(0).isEmpty());
+		assertTrue(dup.duplicate(false).getAssociatedOutput(0).getNode().getOutputLinks(0).isEmpty());
+	}
+	
+	@Test
+	public void testFreezeKeepsOrder()
+	{
+		LabelledNode a = new LabelledNode("a");
+		LabelledNode b = new LabelledNode("b");
+		LabelledNode c = new LabelledNode("c");
+		a.addChild(b);
+		a.addChild(c);
+		NestedNode nn = new NestedNode(1, 2);
+		// The nodes are not in the order in which they are crawled
+		nn.addNodes(a, c, b);
+		nn.associateInput(0, a.getInputPin(0));
+		nn.associateOutput(0, b.getOutputPin(0));
+		nn.associateOutput(1, c.getOutputPin(0));
+		List<Node> before = new ArrayList<>(nn.getInternalNodes());
+		nn.freeze();
+		assertEquals(before, nn.getInternalNodes());
+		NestedNode dup = nn.duplicate(false);
+		assertEquals(before, nn.getInternalNodes());
+		Node b1 = dup.getAssociatedOutput(0).getNode();
+		assertEquals("b", ((LabelledNode) b1).getLabel());
+		assertSame(dup.getAssociatedInput(0).getNode(), b1.getInputLinks(0).iterator().next().getNode());
+	}
+	
+	@Test
+	public void testRewireFrozenCopy()
+	{
+		NestedNode nn = getNestedNode();
+		nn.freeze();
+		NestedNode dup1 = nn.duplicate(false);
+		NestedNode dup2 = nn.duplicate(false);
+		Node a1 = dup1.getAssociatedInput(0).getNode();
+		Node b1 = dup1.getAssociatedOutput(0).getNode();
+		Node c1 = dup1.getAssociatedOutput(1).getNode();
+		assertEquals(2, a1.getOutputNodeCount());
+		// Disconnecting a copy does not affect the other copies
+		NodeConnector.disconnect(a1, 0, b1, 0);
+		assertEquals(1, a1.getOutputLinks(0).size());
+		assertSame(c1, a1.getOutputLinks(0).get(0).getNode());
+		assertTrue(b1.getInputLinks(0).isEmpty());
+		assertEquals(2, dup2.getAssociatedInput(0).getNode().getOutputLinks(0).size());
+		// Duplicating the rewired copy reproduces its new wiring
+		NestedNode dup3 = dup1.duplicate(false);
+		Node a3 = dup3.getAssociatedInput(0).getNode();
+		assertEquals(1, a3.getOutputLinks(0).size());
+		assertSame(dup3.getAssociatedOutput(1).getNode(), a3.getOutputLinks(0).get(0).getNode());
+	}
+	
+	/*
+	 * Creates the nested node:
+	 * [
+	 *  a
+	 *  + b
+	 *  + c
+	 * ]
+	 */
+	protected static NestedNode getNestedNode()
+	{
+		LabelledNode a = new LabelledNode("a");
+		LabelledNode b = new LabelledNode("b");
+		LabelledNode c = new LabelledNode("c");
+		a.addChild(b);
+		a.addChild(c);
+		return NestedNode.createFromTree(a);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link NodeSet} and for the identifiers given to nodes.
+ */
+public class NodeSetTest
+{
+	@Test
+	public void testIds()
+	{
+		Node n1 = new Node(1, 1);
+		Node n2 = new LabelledNode("a");
+		Node n3 = n1.duplicate();
+		assertEquals(n1.getId() + 1, n2.getId());
+		assertEquals(n2.getId() + 1, n3.getId());
+	}
+	
+	@Test
+	public void testUnnumbered()
+	{
+		long next_id = Node.s_idCounter.get();
+		Node n1 = new Node(0, 0);
+		try
+		{
+			// Simulate the exhaustion of the identifiers
+			Node.s_idCounter.set(Integer.MAX_VALUE);
+			Node last = new Node(0, 0);
+			Node n2 = new Node(0, 0);
+			Node n3 = new Node(0, 0);
+			assertEquals(Integer.MAX_VALUE, last.getId());
+			assertEquals(-1, n2.getId());
+			assertEquals(-1, n3.getId());
+			NodeSet set = new NodeSet();
+			assertTrue(set.add(n1));
+			assertTrue(set.add(last));
+			assertTrue(set.add(n2));
+			assertFalse(set.contains(n3));
+			assertFalse(set.add(n2));
+			assertTrue(set.add(n3));
+			assertEquals(4, set.size());
+			assertTrue(set.remove(n2));
+			assertFalse(set.contains(n2));
+			assertTrue(set.contains(n3));
+			assertEquals(3, set.size());
+		}
+		finally
+		{
+			Node.s_idCounter.set(next_id + 1);
+		}
+	}
+	
+	@Test
+	public void testAddRemove()
+	{
+		NodeSet set = new NodeSet();
+		Node n1 = new Node(1, 1);
+		Node n2 = new Node(1, 1);
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(n1));
+		assertTrue(set.add(n1));
+		assertFalse(set.add(n1));
+		assertTrue(set.contains(n1));
+		assertFalse(set.contains(n2));
+		assertEquals(1, set.size());
+		assertFalse(set.remove(n2));
+		assertTrue(set.remove(n1));
+		assertFalse(set.contains(n1));
+		assertTrue(set.isEmpty());
+	}
+	
+	@Test
+	public void testPages()
+	{
+		// Nodes spread over several pages, added out of order
+		List<Node> nodes = new ArrayList<>();
+		for (int i = 0; i < 5 * NodeSet.PAGE_SIZE; i++)
+		{
+			nodes.add(new Node(0, 0));
+		}
+		NodeSet set = new NodeSet();
+		for (int i = nodes.size() - 1; i >= 0; i -= 3)
+		{
+			assertTrue(set.add(nodes.get(i)));
+		}
+		for (int i = 0; i < nodes.size(); i += 2)
+		{
+			set.add(nodes.get(i));
+		}
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			boolean expected = i % 2 == 0 || (nodes.size() - 1 - i) % 3 == 0;
+			assertEquals(expected, set.contains(nodes.get(i)));
+		}
+		set.clear();
+		assertEquals(0, set.size());
+		assertFalse(set.contains(nodes.get(0)));
+	}
+}
@@ -0,0 +1,151 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ParallelCrawler}.
+ */
+public class ParallelCrawlerTest
+{
+	@Test
+	public void testDiamond()
+	{
+		LabelledNode[] n = CrawlerTest.getDiamond();
+		LabelSet c = new LabelSet(n[3]);
+		c.crawl();
+		assertEquals(5, c.m_labels.size());
+		for (LabelledNode ln : n)
+		{
+			assertTrue(c.m_labels.contains(ln.getLabel()));
+		}
+	}
+	
+	@Test
+	public void testForwardOnly()
+	{
+		LabelledNode[] n = CrawlerTest.getDiamond();
+		LabelSet c = new LabelSet(n[2]);
+		c.allowBackward(false);
+		c.crawl();
+		assertEquals(3, c.m_labels.size());
+		assertTrue(c.m_labels.contains("c"));
+		assertTrue(c.m_labels.contains("d"));
+		assertTrue(c.m_labels.contains("e"));
+	}
+	
+	@Test
+	public void testLargeTree()
+	{
+		int size = 50000;
+		LabelledNode[] nodes = new LabelledNode[size];
+		for (int i = 0; i < size; i++)
+		{
+			nodes[i] = new LabelledNode(i);
+			if (i > 0)
+			{
+				nodes[(i - 1) / 3].addChild(nodes[i]);
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			ParallelCrawler.NodeCounter c = new ParallelCrawler.NodeCounter(nodes[size - 1], pool);
+			c.setBatchSize(16);
+			c.crawl();
+			assertEquals(size, c.getCount());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testSharedPins() throws Exception
+	{
+		Node[] nodes = new Node[1000];
+		for (int i = 0; i < nodes.length; i++)
+		{
+			nodes[i] = new Node(4, 4);
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			// Threads asking for the pins of the same nodes get the same objects
+			List<Future<Pin<?>[]>> futures = new ArrayList<Future<Pin<?>[]>>();
+			for (int t = 0; t < 4; t++)
+			{
+				futures.add(pool.submit(() -> {
+					Pin<?>[] pins = new Pin<?>[nodes.length * 8];
+					for (int i = 0; i < nodes.length; i++)
+					{
+						for (int j = 0; j < 4; j++)
+						{
+							pins[8 * i + j] = nodes[i].getInputPin(j);
+							pins[8 * i + 4 + j] = nodes[i].getOutputPin(j);
+						}
+					}
+					return pins;
+				}));
+			}
+			Pin<?>[] first = futures.get(0).get();
+			for (Future<Pin<?>[]> f : futures)
+			{
+				Pin<?>[] pins = f.get();
+				for (int i = 0; i < pins.length; i++)
+				{
+					assertSame(first[i], pins[i]);
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * A crawler that records the labels of the nodes it visits.
+	 */
+	protected static class LabelSet extends ParallelCrawler
+	{
+		protected final Set<Object> m_labels = ConcurrentHashMap.newKeySet();
+		
+		public LabelSet(Node start)
+		{
+			super(start);
+		}
+		
+		@Override
+		public void visit(Node n)
+		{
+			assertTrue(m_labels.add(((LabelledNode) n).getLabel()));
+		}
+	}
+}
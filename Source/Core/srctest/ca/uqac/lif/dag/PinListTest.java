@@ -0,0 +1,92 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.dag;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PinList} and for the pins handed out by
+ * {@link Node}.
+ */
+public class PinListTest
+{
+	@Test
+	public void testSamePin()
+	{
+		Node n = new Node(2, 1);
+		assertSame(n.getInputPin(0), n.getInputPin(0));
+		assertSame(n.getOutputPin(0), n.getOutputPin(0));
+		assertNotSame(n.getInputPin(0), n.getInputPin(1));
+		assertNotEquals(n.getInputPin(0), n.getOutputPin(0));
+	}
+	
+	@Test
+	public void testConnectTwice()
+	{
+		Node n1 = new Node(1, 1);
+		Node n2 = new Node(1, 1);
+		NodeConnector.connect(n1, 0, n2, 0);
+		NodeConnector.connect(n1, 0, n2, 0);
+		assertEquals(1, n1.getOutputLinks(0).size());
+		assertEquals(1, n2.getInputLinks(0).size());
+		NodeConnector.disconnect(n1, 0, n2, 0);
+		assertTrue(n1.getOutputLinks(0).isEmpty());
+		assertTrue(n2.getInputLinks(0).isEmpty());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testNoLinksReadOnly()
+	{
+		Node n = new Node(1, 1);
+		n.getOutputLinks(0).add(new Node(1, 1).getInputPin(0));
+	}
+	
+	@Test
+	public void testIndexedRemoval()
+	{
+		int size = 3 * PinList.INDEX_THRESHOLD;
+		Node[] nodes = new Node[size];
+		PinList list = new PinList();
+		for (int i = 0; i < size; i++)
+		{
+			nodes[i] = new Node(1, 1);
+			list.add(nodes[i].getInputPin(0));
+		}
+		// Add a duplicate of the first element at the end
+		list.add(nodes[0].getInputPin(0));
+		assertEquals(0, list.indexOf(nodes[0].getInputPin(0)));
+		assertTrue(list.remove(nodes[0].getInputPin(0)));
+		assertEquals(size - 1, list.indexOf(nodes[0].getInputPin(0)));
+		assertTrue(list.remove(nodes[5].getInputPin(0)));
+		assertFalse(list.contains(nodes[5].getInputPin(0)));
+		assertEquals(size - 1, list.size());
+		for (int i = 0; i < list.size(); i++)
+		{
+			assertEquals(i, list.indexOf(list.get(i)));
+		}
+		list.set(0, nodes[5].getInputPin(0));
+		assertTrue(list.contains(nodes[5].getInputPin(0)));
+		assertFalse(list.contains(nodes[1].getInputPin(0)));
+		assertTrue(list.remove(nodes[5].getInputPin(0)));
+		assertFalse(list.remove(nodes[5].getInputPin(0)));
+		list.clear();
+		assertFalse(list.contains(nodes[1].getInputPin(0)));
+	}
+}
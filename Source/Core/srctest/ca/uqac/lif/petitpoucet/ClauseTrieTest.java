@@ -0,0 +1,63 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ClauseTrie}.
+ */
+public class ClauseTrieTest
+{
+	@Test
+	public void testSubsets()
+	{
+		ClauseTrie trie = new ClauseTrie();
+		assertFalse(trie.containsSubsetOf(new int[] {1, 2}));
+		trie.add(new int[] {1, 3});
+		trie.add(new int[] {2, 4, 7});
+		assertTrue(trie.containsSubsetOf(new int[] {1, 3}));
+		assertTrue(trie.containsSubsetOf(new int[] {0, 1, 2, 3}));
+		assertTrue(trie.containsSubsetOf(new int[] {2, 3, 4, 5, 6, 7}));
+		assertFalse(trie.containsSubsetOf(new int[] {1, 2, 4}));
+		assertFalse(trie.containsSubsetOf(new int[] {3}));
+		assertFalse(trie.containsSubsetOf(new int[0]));
+		trie.add(new int[0]);
+		assertTrue(trie.containsSubsetOf(new int[0]));
+	}
+	
+	@Test
+	public void testMany()
+	{
+		// Every pair of distinct numbers below 200
+		ClauseTrie trie = new ClauseTrie();
+		for (int i = 0; i < 200; i++)
+		{
+			for (int j = i + 1; j < 200; j++)
+			{
+				trie.add(new int[] {i, j});
+			}
+		}
+		// The root, 199 first elements and one node per pair
+		assertEquals(1 + 199 + 200 * 199 / 2, trie.getNodeCount());
+		assertTrue(trie.containsSubsetOf(new int[] {5, 100, 150}));
+		assertFalse(trie.containsSubsetOf(new int[] {150}));
+	}
+}
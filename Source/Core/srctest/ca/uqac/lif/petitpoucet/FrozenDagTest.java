@@ -0,0 +1,194 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import static org.junit.Assert.*;
+import static ca.uqac.lif.petitpoucet.GraphUtilitiesTest.OBJECT;
+import static ca.uqac.lif.petitpoucet.GraphUtilitiesTest.PART_A;
+import static ca.uqac.lif.petitpoucet.GraphUtilitiesTest.PART_B;
+import static ca.uqac.lif.petitpoucet.GraphUtilitiesTest.PART_C;
+import static ca.uqac.lif.petitpoucet.GraphUtilitiesTest.getNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uqac.lif.dag.LabelledNode;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.IndexedDag.Kind;
+
+/**
+ * Unit tests for {@link FrozenDag} and the methods of {@link GraphUtilities}
+ * that operate on it.
+ */
+public class FrozenDagTest
+{
+	/*
+	 * Freezes the graph:
+	 * AND
+	 * + a
+	 * + OR
+	 *   + b
+	 *   + a (same node)
+	 */
+	@Test
+	public void testFreeze()
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		PartNode a = getNode(factory, PART_A);
+		OrNode or = factory.getOrNode();
+		and.addChild(a);
+		and.addChild(or);
+		or.addChild(getNode(factory, PART_B));
+		or.addChild(a);
+		FrozenDag dag = FrozenDag.freeze(and);
+		assertEquals(4, dag.size());
+		assertEquals(4, dag.getEdgeCount());
+		assertEquals(1, dag.getRootCount());
+		assertEquals(0, dag.getRoot(0));
+		assertEquals(Kind.AND, dag.getKind(0));
+		assertEquals(Kind.PART, dag.getKind(1));
+		assertEquals(PART_A, dag.getPart(1));
+		assertEquals(OBJECT, dag.getSubject(1));
+		assertEquals(Kind.OR, dag.getKind(2));
+		assertEquals(PART_B, dag.getPart(3));
+		assertEquals(2, dag.getDegree(2));
+		assertEquals(3, dag.getChild(2, 0));
+		assertEquals(1, dag.getChild(2, 1));
+		assertTrue(dag.isLeaf(1));
+		assertFalse(dag.isLeaf(2));
+		assertEquals(2, dag.getLeafCount());
+		assertTrue(dag.isRoot(0));
+		assertFalse(dag.isRoot(1));
+	}
+	
+	@Test
+	public void testMultipleRoots()
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode a = getNode(factory, PART_A);
+		OrNode or = factory.getOrNode();
+		or.addChild(a);
+		or.addChild(getNode(factory, PART_C));
+		FrozenDag dag = FrozenDag.freeze(Arrays.<Node>asList(or, a));
+		assertEquals(3, dag.size());
+		assertEquals(2, dag.getRootCount());
+		assertEquals(1, dag.getRoot(1));
+		assertEquals(1, dag.getChild(0, 0));
+	}
+	
+	@Test
+	public void testDnf()
+	{
+		Random r = new Random(0);
+		for (int i = 0; i < 50; i++)
+		{
+			Node root = getRandomGraph(r, 4);
+			assertEquals(GraphUtilities.asDnf(root), GraphUtilities.asDnf(FrozenDag.freeze(root)));
+		}
+	}
+	
+	@Test
+	public void testSquash()
+	{
+		Random r = new Random(0);
+		for (int i = 0; i < 50; i++)
+		{
+			Node root = getRandomGraph(r, 5);
+			FrozenDag expected = FrozenDag.freeze(GraphUtilities.squash(root));
+			FrozenDag actual = GraphUtilities.squash(FrozenDag.freeze(root));
+			assertEquals(expected.size(), actual.size());
+			assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+			assertIsomorphic(expected, expected.getRoot(0), actual, actual.getRoot(0), new HashMap<>());
+		}
+	}
+	
+	/**
+	 * Generates a random lineage graph made of Boolean and part nodes. Leaves
+	 * referring to the same part are shared, so that the graph is not a tree.
+	 * @param r A source of randomness
+	 * @param depth The maximum depth of the graph
+	 * @return The root of the graph
+	 */
+	protected static Node getRandomGraph(Random r, int depth)
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode[] leaves = new PartNode[6];
+		for (int i = 0; i < leaves.length; i++)
+		{
+			leaves[i] = getNode(factory, new GraphUtilitiesTest.TestPart("p" + i));
+		}
+		PartNode root = factory.getPartNode(Part.all, OBJECT);
+		addRandomChildren(r, factory, root, leaves, depth);
+		return root;
+	}
+	
+	protected static void addRandomChildren(Random r, NodeFactory factory, LabelledNode parent, PartNode[] leaves, int depth)
+	{
+		int num_children = 1 + r.nextInt(3);
+		for (int i = 0; i < num_children; i++)
+		{
+			int choice = depth == 0 ? 0 : r.nextInt(4);
+			LabelledNode child;
+			switch (choice)
+			{
+			case 0:
+				child = leaves[r.nextInt(leaves.length)];
+				break;
+			case 1:
+				child = factory.getAndNode();
+				break;
+			case 2:
+				child = factory.getOrNode();
+				break;
+			default:
+				child = factory.getPartNode(new GraphUtilitiesTest.TestPart("i" + r.nextInt(1000)), OBJECT);
+			}
+			parent.addChild(child);
+			if (choice != 0)
+			{
+				addRandomChildren(r, factory, child, leaves, depth - 1);
+			}
+		}
+	}
+	
+	/**
+	 * Asserts that two frozen graphs have the same shape and the same labels
+	 * below two given nodes.
+	 */
+	protected static void assertIsomorphic(FrozenDag d1, int n1, FrozenDag d2, int n2, Map<Integer,Integer> mapping)
+	{
+		Integer previous = mapping.put(n1, n2);
+		if (previous != null)
+		{
+			assertEquals(previous.intValue(), n2);
+			return;
+		}
+		assertEquals(d1.getKind(n1), d2.getKind(n2));
+		assertEquals(d1.getPart(n1), d2.getPart(n2));
+		assertEquals(d1.getDegree(n1), d2.getDegree(n2));
+		for (int k = 0; k < d1.getDegree(n1); k++)
+		{
+			assertIsomorphic(d1, d1.getChild(n1, k), d2, d2.getChild(n2, k), mapping);
+		}
+	}
+}
@@ -19,12 +19,17 @@ package ca.uqac.lif.petitpoucet;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import ca.uqac.lif.dag.LabelledNode;
+import ca.uqac.lif.dag.MathSet;
 import ca.uqac.lif.dag.NestedNode;
 import ca.uqac.lif.dag.Node;
 import ca.uqac.lif.dag.NodeConnector;
@@ -338,6 +343,130 @@ public class GraphUtilitiesTest
 		assertNotEquals(d, n4);
 	}
 
+	/*
+	 * Squashes a chain of a million nodes ending with a leaf, which is
+	 * deeper than what a recursive traversal can handle.
+	 */
+	@Test
+	public void testSquashDeep()
+	{
+		LabelledNode n = root;
+		for (int i = 0; i < 1000000; i++)
+		{
+			LabelledNode child = new LabelledNode(i);
+			n.addChild(child);
+			n = child;
+		}
+		Node new_root = GraphUtilities.squash(root);
+		assertEquals(1, new_root.getOutputLinks(0).size());
+		LabelledNode leaf = (LabelledNode) new_root.getOutputLinks(0).get(0).getNode();
+		assertEquals(999999, leaf.getLabel());
+		assertTrue(GraphUtilities.isLeaf(leaf));
+	}
+
+	/*
+	 * Squashes a ladder of 60 levels of two nodes, each linked to both nodes
+	 * of the next level. The graph has 2^60 paths, and each of its nodes must
+	 * be processed only once.
+	 */
+	@Test(timeout = 10000)
+	public void testSquashShared()
+	{
+		LabelledNode[] level = {root};
+		for (int i = 0; i < 60; i++)
+		{
+			LabelledNode[] next = {new LabelledNode(i + "a"), new LabelledNode(i + "b")};
+			for (LabelledNode n : level)
+			{
+				n.addChild(next[0]);
+				n.addChild(next[1]);
+			}
+			level = next;
+		}
+		Node new_root = GraphUtilities.squash(root);
+		// Both leaves, each copied once
+		assertEquals(2, new_root.getOutputLinks(0).size());
+		assertEquals("59a", ((LabelledNode) new_root.getOutputLinks(0).get(0).getNode()).getLabel());
+		assertEquals("59b", ((LabelledNode) new_root.getOutputLinks(0).get(1).getNode()).getLabel());
+	}
+
+	/*
+	 * Squashes the same ladder as testSquashShared, where the nodes are linked
+	 * through their second pins.
+	 */
+	@Test(timeout = 10000)
+	public void testSquashSharedPins()
+	{
+		Node top = new Node(2, 2);
+		Node[] level = {top};
+		for (int i = 0; i < 60; i++)
+		{
+			Node[] next = {new Node(2, 2), new Node(2, 2)};
+			for (Node n : level)
+			{
+				NodeConnector.connect(n, 1, next[0], 1);
+				NodeConnector.connect(n, 1, next[1], 1);
+			}
+			level = next;
+		}
+		Node new_top = GraphUtilities.squash(top);
+		assertEquals(0, new_top.getOutputLinks(0).size());
+		assertEquals(2, new_top.getOutputLinks(1).size());
+		assertEquals(1, new_top.getOutputLinks(1).get(0).getIndex());
+		assertNotSame(new_top.getOutputLinks(1).get(0).getNode(), new_top.getOutputLinks(1).get(1).getNode());
+	}
+
+	/*
+	 * Squashes the tree:
+	 * root
+	 * + AND
+	 * | + a
+	 * | + c
+	 * + OR
+	 *   + AND
+	 *   | + d
+	 *   | + b
+	 *   |   + e
+	 *   + b
+	 * keeping only the leaves other than c, and removing unary connectives.
+	 * We expect:
+	 * root
+	 * + a
+	 * + OR
+	 *   + AND
+	 *   | + d
+	 *   | + e
+	 *   + e
+	 */
+	@Test
+	public void testSquashUnary()
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and1 = factory.getAndNode();
+		OrNode or = factory.getOrNode();
+		AndNode and2 = factory.getAndNode();
+		root.addChild(and1);
+		root.addChild(or);
+		and1.addChild(a);
+		and1.addChild(c);
+		or.addChild(and2);
+		or.addChild(b);
+		and2.addChild(d);
+		and2.addChild(b);
+		b.addChild(e);
+		Node new_root = GraphUtilities.squash(Arrays.asList(root), n -> n != c, true).get(0);
+		assertEquals(2, new_root.getOutputLinks(0).size());
+		assertEquals("a", ((LabelledNode) new_root.getOutputLinks(0).get(0).getNode()).getLabel());
+		Node new_or = new_root.getOutputLinks(0).get(1).getNode();
+		assertTrue(new_or instanceof OrNode);
+		assertEquals(2, new_or.getOutputLinks(0).size());
+		assertTrue(new_or.getOutputLinks(0).get(0).getNode() instanceof AndNode);
+		assertEquals("e", ((LabelledNode) new_or.getOutputLinks(0).get(1).getNode()).getLabel());
+		// Without the options, the squashed graph keeps c and the unary AND
+		Node plain = GraphUtilities.squash(root);
+		assertEquals(2, plain.getOutputLinks(0).get(0).getNode().getOutputLinks(0).size());
+	}
+
 	/*
 	 * Flattens the tree:
 	 * root
@@ -455,6 +584,83 @@ public class GraphUtilitiesTest
 		assertSameLabel(e, e1);
 	}
 
+	/*
+	 * Flattens the graph:
+	 * root
+	 * + d
+	 * | + [
+	 * |    a
+	 * |    + b
+	 * |   ]
+	 * + e
+	 *   + (same nested node)
+	 * We expect the nested node to be expanded only once:
+	 * root
+	 * + d
+	 * | + a
+	 * |   + b
+	 * + e
+	 *   + (same a)
+	 */
+	@Test
+	public void testFlatten4()
+	{
+		NestedNode nn = new NestedNode(1, 1);
+		a.addChild(b);
+		nn.addNodes(a, b);
+		nn.associateInput(0, a.getInputPin(0));
+		nn.associateOutput(0, b.getInputPin(0));
+		root.addChild(d);
+		root.addChild(e);
+		d.addChild(nn);
+		e.addChild(nn);
+		Node new_root = GraphUtilities.flatten(root);
+		assertHasChildren(2, new_root);
+		LabelledNode d1 = (LabelledNode) getChild(new_root, 0);
+		LabelledNode e1 = (LabelledNode) getChild(new_root, 1);
+		assertHasChildren(1, d1);
+		assertHasChildren(1, e1);
+		LabelledNode a1 = (LabelledNode) getChild(d1, 0);
+		assertSameLabel(a, a1);
+		assertSame(a1, getChild(e1, 0));
+		assertHasChildren(1, a1);
+		assertEquals(2, a1.getInputLinks(0).size());
+	}
+	
+	@Test
+	public void testFlattenDeep()
+	{
+		int depth = 100000;
+		LabelledNode last = root;
+		for (int i = 0; i < depth; i++)
+		{
+			LabelledNode n = new LabelledNode(i);
+			last.addChild(n);
+			last = n;
+		}
+		Node n = GraphUtilities.flatten(root);
+		int length = 0;
+		while (!n.getOutputLinks(0).isEmpty())
+		{
+			n = getChild(n, 0);
+			length++;
+		}
+		assertEquals(depth, length);
+	}
+	
+	@Test
+	public void testFlattenList()
+	{
+		root.addChild(c);
+		a.addChild(c);
+		c.addChild(d);
+		List<Node> roots = GraphUtilities.flatten(Arrays.asList(root, a));
+		Node c1 = getChild(roots.get(0), 0);
+		assertSame(c1, getChild(roots.get(1), 0));
+		assertHasChildren(1, c1);
+		assertEquals(2, c1.getInputLinks(0).size());
+	}
+
 	@Test
 	public void testDnf1()
 	{
@@ -521,6 +727,377 @@ public class GraphUtilitiesTest
 		assertTrue(clauses.contains(getClause(PART_C, PART_D, PART_G)));
 	}
 
+	@Test
+	public void testDnfShared()
+	{
+		// A chain too deep for a recursive traversal, where each node is
+		// explained twice by the next
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode first = factory.getPartNode(new TestPart("n0"), OBJECT);
+		PartNode last = first;
+		for (int i = 1; i < 50000; i++)
+		{
+			PartNode next = factory.getPartNode(new TestPart("n" + i), OBJECT);
+			AndNode and = factory.getAndNode();
+			last.addChild(and);
+			and.addChild(next);
+			and.addChild(next);
+			last = next;
+		}
+		Set<Clause> clauses = GraphUtilities.asDnf(first);
+		assertEquals(1, clauses.size());
+		assertTrue(clauses.contains(getClause(last.getPart())));
+	}
+
+	@Test
+	public void testMinimalDnf()
+	{
+		// (a ∨ (b ∧ c)) ∧ (a ∨ b ∨ d)
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		{
+			OrNode or = factory.getOrNode();
+			or.addChild(getNode(factory, PART_A));
+			AndNode child_and = factory.getAndNode();
+			child_and.addChild(getNode(factory, PART_B));
+			child_and.addChild(getNode(factory, PART_C));
+			or.addChild(child_and);
+			and.addChild(or);
+		}
+		{
+			OrNode or = factory.getOrNode();
+			or.addChild(getNode(factory, PART_A));
+			or.addChild(getNode(factory, PART_B));
+			or.addChild(getNode(factory, PART_D));
+			and.addChild(or);
+		}
+		assertEquals(6, GraphUtilities.asDnf(and).size());
+		Set<Clause> clauses = GraphUtilities.minimalDnf(and);
+		assertEquals(2, clauses.size());
+		assertTrue(clauses.contains(getClause(PART_A)));
+		assertTrue(clauses.contains(getClause(PART_B, PART_C)));
+	}
+
+	@Test
+	public void testEncodedClauses()
+	{
+		// Clauses of asDnf are encoded; those of getClause are not
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		and.addChild(getNode(factory, PART_A));
+		OrNode or = factory.getOrNode();
+		or.addChild(getNode(factory, PART_B));
+		or.addChild(getNode(factory, PART_C));
+		and.addChild(or);
+		Set<Clause> clauses = GraphUtilities.asDnf(and);
+		assertEquals(2, clauses.size());
+		Clause ab = getClause(PART_A, PART_B);
+		Clause encoded_ab = null;
+		for (Clause c : clauses)
+		{
+			if (c.equals(ab))
+			{
+				encoded_ab = c;
+			}
+		}
+		assertNotNull(encoded_ab);
+		assertEquals(ab, encoded_ab);
+		assertEquals(ab.hashCode(), encoded_ab.hashCode());
+		assertEquals(2, encoded_ab.size());
+		assertTrue(encoded_ab.contains(new ObjectPart(PART_A, OBJECT)));
+		assertFalse(encoded_ab.contains(new ObjectPart(PART_C, OBJECT)));
+		assertFalse(encoded_ab.contains(new ObjectPart(PART_G, OBJECT)));
+		assertTrue(encoded_ab.containsAll(getClause(PART_A)));
+		assertEquals(new MathSet<ObjectPart>(ab), new MathSet<ObjectPart>(encoded_ab));
+		// Encoded clauses of the same conversion are merged as numbers
+		Clause ac = null;
+		for (Clause c : clauses)
+		{
+			if (!c.equals(ab))
+			{
+				ac = c;
+			}
+		}
+		Clause abc = encoded_ab.mergeWith(ac);
+		assertEquals(getClause(PART_A, PART_B, PART_C), abc);
+		assertTrue(abc.containsAll(ac));
+		assertFalse(ac.containsAll(abc));
+		// Modifying an encoded clause
+		assertTrue(encoded_ab.add(new ObjectPart(PART_C, OBJECT)));
+		assertEquals(abc, encoded_ab);
+		assertEquals(abc.hashCode(), encoded_ab.hashCode());
+		assertTrue(encoded_ab.remove(new ObjectPart(PART_B, OBJECT)));
+		assertEquals(ac, encoded_ab);
+	}
+
+	@Test
+	public void testDnfCopies()
+	{
+		// a ∧ (b ∨ c), where the b and c nodes are shared by both calls
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		and.addChild(getNode(factory, PART_A));
+		OrNode or = factory.getOrNode();
+		or.addChild(getNode(factory, PART_B));
+		or.addChild(getNode(factory, PART_C));
+		and.addChild(or);
+		Set<Clause> clauses = GraphUtilities.asDnf(and);
+		assertTrue(clauses instanceof MathSet);
+		assertTrue(clauses.add(getClause(PART_D)));
+		assertEquals(3, clauses.size());
+		for (Clause c : clauses)
+		{
+			c.add(new ObjectPart(PART_E, OBJECT));
+		}
+		// Modifying the first result does not change a second one
+		Set<Clause> other = GraphUtilities.asDnf(and);
+		assertEquals(2, other.size());
+		assertTrue(other.contains(getClause(PART_A, PART_B)));
+		assertTrue(other.contains(getClause(PART_A, PART_C)));
+		Set<Clause> minimal = GraphUtilities.minimalDnf(and);
+		assertEquals(other, minimal);
+	}
+
+	@Test
+	public void testDnfManyParts()
+	{
+		// (p0 ∨ ... ∨ p9999) ∧ p10000: clauses of the last parts of a large
+		// index are as small as those of the first ones
+		int width = 10000;
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		OrNode or = factory.getOrNode();
+		and.addChild(or);
+		for (int i = 0; i < width; i++)
+		{
+			or.addChild(getNode(factory, new TestPart("p" + i)));
+		}
+		Part last = new TestPart("p" + width);
+		and.addChild(getNode(factory, last));
+		Set<Clause> clauses = GraphUtilities.asDnf(and);
+		assertEquals(width, clauses.size());
+		for (int i = 0; i < width; i += 999)
+		{
+			Clause expected = getClause(new TestPart("p" + i), last);
+			assertTrue(clauses.contains(expected));
+		}
+		Clause single = getClause(last);
+		for (Clause c : clauses)
+		{
+			assertEquals(2, c.size());
+			assertTrue(c.containsAll(single));
+			assertTrue(c.contains(new ObjectPart(last, OBJECT)));
+			assertFalse(c.contains(new ObjectPart(PART_A, OBJECT)));
+		}
+		Clause[] array = clauses.toArray(new Clause[0]);
+		Clause merged = array[0].mergeWith(array[width - 1]);
+		assertEquals(3, merged.size());
+		assertTrue(merged.containsAll(array[0]));
+		assertTrue(merged.containsAll(array[width - 1]));
+		assertFalse(array[0].containsAll(merged));
+		assertFalse(array[0].containsAll(array[1]));
+		assertEquals(array[0], array[0].mergeWith(array[0]));
+		Set<Clause> wide = GraphUtilities.asDnf(or);
+		assertEquals(width, wide.size());
+		assertFalse(clauses.containsAll(wide));
+	}
+
+	@Test
+	public void testSmallestClauses()
+	{
+		// (a ∨ (b ∧ c)) ∧ (a ∨ b ∨ d)
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		{
+			OrNode or = factory.getOrNode();
+			or.addChild(getNode(factory, PART_A));
+			AndNode child_and = factory.getAndNode();
+			child_and.addChild(getNode(factory, PART_B));
+			child_and.addChild(getNode(factory, PART_C));
+			or.addChild(child_and);
+			and.addChild(or);
+		}
+		{
+			OrNode or = factory.getOrNode();
+			or.addChild(getNode(factory, PART_A));
+			or.addChild(getNode(factory, PART_B));
+			or.addChild(getNode(factory, PART_D));
+			and.addChild(or);
+		}
+		List<Clause> clauses = GraphUtilities.smallestClauses(and, 10);
+		assertEquals(6, clauses.size());
+		assertEquals(GraphUtilities.asDnf(and), new HashSet<Clause>(clauses));
+		assertEquals(getClause(PART_A), clauses.get(0));
+		for (int i = 1; i < clauses.size(); i++)
+		{
+			assertTrue(clauses.get(i - 1).size() <= clauses.get(i).size());
+		}
+		clauses = GraphUtilities.smallestClauses(and, 2);
+		assertEquals(2, clauses.size());
+		assertEquals(2, clauses.get(1).size());
+		// Make a costly: {b, c} becomes the lightest clause
+		clauses = GraphUtilities.smallestClauses(and, 1, p -> p.getPart() == PART_A ? 10 : 1);
+		assertEquals(1, clauses.size());
+		assertEquals(getClause(PART_B, PART_C), clauses.get(0));
+	}
+
+	@Test
+	public void testSmallestClausesLarge()
+	{
+		// 100 disjunctions of 4 parts, consecutive ones sharing 2 parts
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		for (int i = 0; i < 100; i++)
+		{
+			OrNode or = factory.getOrNode();
+			for (int j = 0; j < 4; j++)
+			{
+				or.addChild(factory.getPartNode(new TestPart(Integer.toString(2 * i + j)), OBJECT));
+			}
+			and.addChild(or);
+		}
+		ClauseSearch search = new ClauseSearch(and);
+		assertTrue(search.hasNext());
+		Clause c = search.next();
+		// Parts 2, 6, ..., 198 cover every disjunction
+		assertEquals(50, c.size());
+		assertEquals(50, search.getLastWeight(), 0);
+		assertTrue(search.getStateCount() < 100000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSmallestClausesNegative()
+	{
+		GraphUtilities.smallestClauses(getNode(NodeFactory.getFactory(), PART_A), 1, p -> -1);
+	}
+
+	@Test
+	public void testEnumerateDnf()
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		OrNode or = factory.getOrNode();
+		{
+			AndNode and = factory.getAndNode();
+			and.addChild(getNode(factory, PART_A));
+			and.addChild(getNode(factory, PART_B));
+			or.addChild(and);
+		}
+		{
+			AndNode and = factory.getAndNode();
+			and.addChild(getNode(factory, PART_C));
+			{
+				OrNode nested_or = factory.getOrNode();
+				nested_or.addChild(getNode(factory, PART_E));
+				nested_or.addChild(getNode(factory, PART_F));
+				and.addChild(nested_or);
+			}
+			{
+				OrNode nested_or = factory.getOrNode();
+				nested_or.addChild(getNode(factory, PART_D));
+				nested_or.addChild(getNode(factory, PART_C));
+				and.addChild(nested_or);
+			}
+			or.addChild(and);
+		}
+		// The last clause is the same as the first
+		or.addChild(getNode(factory, PART_A));
+		or.addChild(getNode(factory, PART_A));
+		List<Clause> expected = Arrays.asList(getClause(PART_A, PART_B), getClause(PART_C, PART_E, PART_D), getClause(PART_C, PART_E), getClause(PART_C, PART_F, PART_D), getClause(PART_C, PART_F), getClause(PART_A));
+		DnfEnumerator en = GraphUtilities.enumerateDnf(or);
+		for (Clause c : expected)
+		{
+			assertTrue(en.hasNext());
+			assertEquals(c, en.next());
+		}
+		assertFalse(en.hasNext());
+		assertFalse(en.isTruncated());
+		assertEquals(GraphUtilities.asDnf(or), new MathSet<Clause>(expected.toArray()));
+		en = GraphUtilities.enumerateDnf(or).setMaxClauses(2);
+		assertEquals(2, en.stream().count());
+		assertTrue(en.isTruncated());
+	}
+
+	@Test
+	public void testEnumerateDnfLazy()
+	{
+		// 2^40 clauses, of which only the first few are computed
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		for (int i = 0; i < 40; i++)
+		{
+			OrNode or = factory.getOrNode();
+			or.addChild(factory.getPartNode(new TestPart("a" + i), OBJECT));
+			or.addChild(factory.getPartNode(new TestPart("b" + i), OBJECT));
+			and.addChild(or);
+		}
+		DnfEnumerator en = GraphUtilities.enumerateDnf(and).setMaxClauses(5);
+		List<Clause> clauses = new ArrayList<Clause>();
+		en.forEachRemaining(clauses::add);
+		assertEquals(5, clauses.size());
+		assertTrue(en.isTruncated());
+		assertEquals(40, clauses.get(4).size());
+		en = GraphUtilities.enumerateDnf(and).setTimeout(50);
+		while (en.hasNext())
+		{
+			en.next();
+		}
+		assertTrue(en.isTruncated());
+	}
+
+	@Test
+	public void testEnumerateDnfDeep()
+	{
+		// A chain too deep for a recursive enumeration
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode first = factory.getPartNode(new TestPart("n0"), OBJECT);
+		PartNode last = first;
+		for (int i = 1; i < 50000; i++)
+		{
+			PartNode next = factory.getPartNode(new TestPart("n" + i), OBJECT);
+			AndNode and = factory.getAndNode();
+			last.addChild(and);
+			and.addChild(next);
+			and.addChild(next);
+			last = next;
+		}
+		DnfEnumerator en = GraphUtilities.enumerateDnf(first);
+		assertTrue(en.hasNext());
+		assertEquals(getClause(last.getPart()), en.next());
+		assertFalse(en.hasNext());
+		assertFalse(en.isTruncated());
+	}
+
+	@Test
+	public void testEnumerateDnfShared()
+	{
+		// A chain of 40 diamonds: each level is reached through 2^i paths,
+		// but has a single clause
+		NodeFactory factory = NodeFactory.getFactory();
+		Node next = factory.getPartNode(new TestPart("end"), OBJECT);
+		Clause expected = getClause(new TestPart("end"));
+		for (int i = 0; i < 40; i++)
+		{
+			Part p = new TestPart("p" + i);
+			OrNode or = factory.getOrNode();
+			for (int j = 0; j < 2; j++)
+			{
+				AndNode and = factory.getAndNode();
+				and.addChild(getNode(factory, p));
+				and.addChild(next);
+				or.addChild(and);
+			}
+			expected.add(new ObjectPart(p, OBJECT));
+			next = or;
+		}
+		DnfEnumerator en = GraphUtilities.enumerateDnf(next);
+		assertTrue(en.hasNext());
+		Clause c = en.next();
+		assertEquals(expected, c);
+		assertFalse(en.hasNext());
+		assertFalse(en.isTruncated());
+		assertEquals(GraphUtilities.asDnf(next), new MathSet<Clause>(c));
+	}
+
 	/**
 	 * Asserts that two nodes are <em>distinct</em> labelled nodes with the
 	 * same label.
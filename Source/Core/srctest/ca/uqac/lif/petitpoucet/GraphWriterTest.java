@@ -0,0 +1,270 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import static org.junit.Assert.*;
+import static ca.uqac.lif.petitpoucet.FrozenDagTest.getRandomGraph;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uqac.lif.dag.LabelledNode;
+import ca.uqac.lif.dag.NestedNode;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.NodeConnector;
+import ca.uqac.lif.petitpoucet.GraphUtilitiesTest.TestPart;
+
+/**
+ * Unit tests for {@link GraphWriter}, {@link GraphReader} and
+ * {@link ObjectEncoder}.
+ */
+public class GraphWriterTest
+{
+	@Test
+	public void testRandomGraphs() throws IOException
+	{
+		Random r = new Random(0);
+		for (int i = 0; i < 20; i++)
+		{
+			Node root = getRandomGraph(r, 5);
+			Node copy = roundTrip(root, new GraphWriter().addEncoder(TestPartEncoder.instance), new GraphReader().addEncoder(TestPartEncoder.instance)).get(0);
+			FrozenDag expected = FrozenDag.freeze(root);
+			FrozenDag actual = FrozenDag.freeze(copy);
+			assertEquals(expected.size(), actual.size());
+			assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+			for (int j = 0; j < expected.size(); j++)
+			{
+				assertEquals(expected.getKind(j), actual.getKind(j));
+				assertEquals(expected.getPart(j), actual.getPart(j));
+				assertEquals(expected.getDegree(j), actual.getDegree(j));
+				for (int k = 0; k < expected.getDegree(j); k++)
+				{
+					assertEquals(expected.getChild(j, k), actual.getChild(j, k));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testSharedObjects() throws IOException
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		Object subject = new Object();
+		Part p = ComposedPart.compose(Part.self, Part.all);
+		PartNode root = factory.getPartNode(Part.all, "root");
+		OrNode or = factory.getOrNode();
+		UnknownNode u = factory.getUnknownNode();
+		PartNode leaf1 = factory.getPartNode(p, subject);
+		PartNode leaf2 = factory.getPartNode(Part.nothing, subject);
+		root.addChild(or);
+		or.addChild(leaf1);
+		or.addChild(leaf2);
+		or.addChild(u);
+		Node copy = roundTrip(root, new GraphWriter(), new GraphReader()).get(0);
+		assertTrue(copy instanceof PartNode);
+		assertEquals("root", ((PartNode) copy).getSubject());
+		assertEquals(Part.all, ((PartNode) copy).getPart());
+		Node or_copy = copy.getOutputLinks(0).get(0).getNode();
+		assertTrue(or_copy instanceof OrNode);
+		assertEquals(3, or_copy.getOutputLinks(0).size());
+		PartNode leaf1_copy = (PartNode) or_copy.getOutputLinks(0).get(0).getNode();
+		PartNode leaf2_copy = (PartNode) or_copy.getOutputLinks(0).get(1).getNode();
+		assertTrue(or_copy.getOutputLinks(0).get(2).getNode() instanceof UnknownNode);
+		assertEquals(p, leaf1_copy.getPart());
+		assertTrue(leaf1_copy.getPart() instanceof ComposedPart);
+		assertSame(Part.nothing, leaf2_copy.getPart());
+		// The subject is not a known type, but both leaves share it
+		assertTrue(leaf1_copy.getSubject() instanceof ObjectEncoder.Description);
+		assertEquals(subject.toString(), leaf1_copy.getSubject().toString());
+		assertSame(leaf1_copy.getSubject(), leaf2_copy.getSubject());
+		// Input links are restored
+		assertSame(or_copy, leaf1_copy.getInputLinks(0).iterator().next().getNode());
+	}
+	
+	@Test
+	public void testNestedNode() throws IOException
+	{
+		NestedNode nn = new NestedNode(1, 2);
+		LabelledNode a = new LabelledNode(3);
+		Node b = new Node(2, 1);
+		NodeConnector.connect(a, 0, b, 1);
+		nn.addNodes(a, b);
+		nn.associateInput(0, a.getInputPin(0));
+		nn.associateOutput(0, b.getOutputPin(0));
+		LabelledNode root = new LabelledNode("root");
+		root.addChild(nn);
+		List<Node> roots = roundTrip(Arrays.asList(root, b), new GraphWriter(), new GraphReader());
+		assertEquals(2, roots.size());
+		NestedNode nn_copy = (NestedNode) roots.get(0).getOutputLinks(0).get(0).getNode();
+		assertEquals(1, nn_copy.getInputArity());
+		assertEquals(2, nn_copy.getOutputArity());
+		assertEquals(2, nn_copy.getInternalNodes().size());
+		LabelledNode a_copy = (LabelledNode) nn_copy.getInternalNodes().get(0);
+		Node b_copy = nn_copy.getInternalNodes().get(1);
+		assertSame(b_copy, roots.get(1));
+		assertEquals(3, a_copy.getLabel());
+		assertEquals(LabelledNode.class, a_copy.getClass());
+		assertEquals(Node.class, b_copy.getClass());
+		assertSame(a_copy.getInputPin(0), nn_copy.getAssociatedInput(0));
+		assertSame(b_copy.getOutputPin(0), nn_copy.getAssociatedOutput(0));
+		assertNull(nn_copy.getAssociatedOutput(1));
+		assertSame(b_copy.getInputPin(1), a_copy.getOutputLinks(0).get(0));
+		assertEquals(1, b_copy.getInputLinks(1).size());
+	}
+	
+	@Test
+	public void testPrimitives() throws IOException
+	{
+		for (Object o : Arrays.asList(-5, 1L << 40, 2.5, 1.5f, (short) 7, (byte) -1, true, 'x', "été", Part.unknown))
+		{
+			ObjectEncoder e = o instanceof String ? ObjectEncoder.strings : (o instanceof Part ? ObjectEncoder.partConstants : ObjectEncoder.primitives);
+			assertTrue(e.canEncode(o));
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			e.encode(new DataOutputStream(baos), o);
+			assertEquals(o, e.decode(new DataInputStream(new ByteArrayInputStream(baos.toByteArray()))));
+		}
+		assertFalse(ObjectEncoder.primitives.canEncode(new Object()));
+	}
+	
+	@Test
+	public void testVarint() throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1};
+		for (int v : values)
+		{
+			GraphWriter.writeVarint(out, v);
+		}
+		assertEquals(1 + 1 + 1 + 2 + 2 + 3 + 5 + 5, baos.size());
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+		for (int v : values)
+		{
+			assertEquals(v, GraphReader.readVarint(in));
+		}
+		for (int v : new int[] {0, 1, -1, 1000, -1000, Integer.MIN_VALUE, Integer.MAX_VALUE})
+		{
+			assertEquals(v, GraphReader.unzigzag(GraphWriter.zigzag(v)));
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void testUnknownEncoder() throws IOException
+	{
+		Node root = getRandomGraph(new Random(1), 2);
+		roundTrip(root, new GraphWriter().addEncoder(TestPartEncoder.instance), new GraphReader());
+	}
+	
+	@Test(expected = IOException.class)
+	public void testNotAGraph() throws IOException
+	{
+		new GraphReader().read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5}));
+	}
+	
+	@Test
+	public void testSerializables() throws IOException
+	{
+		LabelledNode root = new LabelledNode(new Date(1000));
+		GraphWriter w = new GraphWriter().addEncoder(ObjectEncoder.serializables);
+		try
+		{
+			// A reader does not deserialize objects unless asked to
+			roundTrip(root, w, new GraphReader());
+			fail("Serializable objects read by default");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+		Node n = roundTrip(root, w, new GraphReader().addEncoder(ObjectEncoder.serializables)).get(0);
+		assertEquals(new Date(1000), ((LabelledNode) n).getLabel());
+	}
+	
+	@Test(expected = IOException.class)
+	public void testNegativeLength() throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		out.writeInt(GraphWriter.MAGIC);
+		GraphWriter.writeVarint(out, GraphWriter.VERSION);
+		// A negative number of encoders
+		GraphWriter.writeVarint(out, -2);
+		new GraphReader().read(new ByteArrayInputStream(baos.toByteArray()));
+	}
+	
+	/**
+	 * Writes a graph and reads it back.
+	 */
+	protected static List<Node> roundTrip(Node root, GraphWriter w, GraphReader r) throws IOException
+	{
+		return roundTrip(Arrays.asList(root), w, r);
+	}
+	
+	/**
+	 * Writes a graph with multiple roots and reads it back.
+	 */
+	protected static List<Node> roundTrip(List<Node> roots, GraphWriter w, GraphReader r) throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		w.write(roots, baos);
+		return r.read(new ByteArrayInputStream(baos.toByteArray()));
+	}
+	
+	/**
+	 * Encoder for the parts used in the tests.
+	 */
+	protected static class TestPartEncoder implements ObjectEncoder
+	{
+		public static final TestPartEncoder instance = new TestPartEncoder();
+		
+		@Override
+		public String getName()
+		{
+			return "test-parts";
+		}
+		
+		@Override
+		public boolean canEncode(Object o)
+		{
+			return o instanceof TestPart;
+		}
+		
+		@Override
+		public void encode(DataOutput out, Object o) throws IOException
+		{
+			GraphWriter.writeString(out, ((TestPart) o).m_name);
+		}
+		
+		@Override
+		public Object decode(DataInput in) throws IOException
+		{
+			return new TestPart(GraphReader.readString(in));
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import static org.junit.Assert.*;
+import static ca.uqac.lif.petitpoucet.FrozenDagTest.getRandomGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uqac.lif.dag.Crawler.Order;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.MappedDag.MappedRegion;
+
+/**
+ * Unit tests for {@link MappedDag} and {@link IndexedCrawler}.
+ */
+public class MappedDagTest
+{
+	@Test
+	public void testSameAsFrozen() throws IOException
+	{
+		Random r = new Random(0);
+		for (int i = 0; i < 20; i++)
+		{
+			Node root = getRandomGraph(r, 5);
+			FrozenDag expected = FrozenDag.freeze(root);
+			// A small threshold forces nodes and edges to be spilled
+			MappedDag actual = freeze(root, 1 + r.nextInt(7));
+			assertSameGraph(expected, actual);
+			assertEquals(GraphUtilities.asDnf(expected), GraphUtilities.asDnf(actual));
+			assertTrue(Arrays.equals(expected.getLeaves(), actual.getLeaves()));
+			assertEquals(GraphUtilities.squash(expected).size(), GraphUtilities.squash(actual).size());
+			actual.close();
+			assertFalse(actual.getFile().exists());
+		}
+	}
+	
+	@Test
+	public void testNoSpill() throws IOException
+	{
+		Node root = getRandomGraph(new Random(1), 4);
+		FrozenDag expected = FrozenDag.freeze(root);
+		File f = File.createTempFile("mapped", ".dag");
+		MappedDag actual = MappedDag.freeze(root, f);
+		assertSameGraph(expected, actual);
+		assertEquals(expected.getLeafCount(), actual.getLeafCount());
+		actual.close();
+	}
+	
+	@Test
+	public void testAddIncrementally() throws IOException
+	{
+		Random r = new Random(3);
+		Node root1 = getRandomGraph(r, 4);
+		Node root2 = getRandomGraph(r, 4);
+		// The second graph shares a subgraph with the first
+		AndNode and = new AndNode();
+		and.addChild(root2);
+		and.addChild(root1.getOutputLinks(0).isEmpty() ? root1 : root1.getOutputLinks(0).get(0).getNode());
+		FrozenDag expected = FrozenDag.freeze(Arrays.asList(root1, and));
+		File f = File.createTempFile("mapped", ".dag");
+		MappedDag.Builder b = new MappedDag.Builder(f, 3);
+		int id1 = b.add(root1);
+		int id2 = b.add(and);
+		assertEquals(id1, b.add(root1));
+		MappedDag actual = b.build(new int[] {id1, id2});
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+		assertEquals(GraphUtilities.asDnf(expected, expected.getRoot(0)), GraphUtilities.asDnf(actual, id1));
+		assertEquals(GraphUtilities.asDnf(expected, expected.getRoot(1)), GraphUtilities.asDnf(actual, id2));
+		actual.close();
+	}
+	
+	@Test
+	public void testCrawl() throws IOException
+	{
+		Node root = getRandomGraph(new Random(2), 5);
+		FrozenDag frozen = FrozenDag.freeze(root);
+		MappedDag mapped = freeze(root, 3);
+		for (Order o : Order.values())
+		{
+			List<Integer> expected = crawl(frozen, o);
+			assertEquals(frozen.size(), expected.size());
+			assertEquals(expected, crawl(mapped, o));
+		}
+		// Breadth-first order is the order of the identifiers
+		List<Integer> bfs = crawl(frozen, Order.BREADTH_FIRST);
+		for (int i = 0; i < bfs.size(); i++)
+		{
+			assertEquals(i, bfs.get(i).intValue());
+		}
+		mapped.close();
+	}
+	
+	@Test
+	public void testRegionSegments() throws IOException
+	{
+		File f = File.createTempFile("region", ".bin");
+		try (RandomAccessFile raf = new RandomAccessFile(f, "rw"))
+		{
+			raf.setLength(100);
+			// Segments of 16 bytes, starting at an offset of 3 bytes
+			MappedRegion region = new MappedRegion(raf.getChannel(), 3, 96, 4);
+			assertEquals(6, region.m_segments.length);
+			for (int i = 0; i < 24; i++)
+			{
+				region.putInt(i, i * 1000);
+			}
+			for (int i = 0; i < 24; i++)
+			{
+				assertEquals(i * 1000, region.getInt(i));
+			}
+			region.putByte(95, (byte) 7);
+			assertEquals(7, region.getByte(95));
+		}
+		f.delete();
+	}
+	
+	/**
+	 * Creates a mapped snapshot of a graph in a temporary file.
+	 * @param root The root of the graph
+	 * @param threshold The number of nodes and edges kept on the heap by the
+	 * builder
+	 * @return The snapshot
+	 */
+	protected static MappedDag freeze(Node root, int threshold) throws IOException
+	{
+		MappedDag.Builder b = new MappedDag.Builder(File.createTempFile("mapped", ".dag"), threshold);
+		return b.build(b.addGraph(Arrays.asList(root)));
+	}
+	
+	/**
+	 * Crawls a graph from its first root and collects the visited nodes.
+	 */
+	protected static List<Integer> crawl(IndexedDag dag, Order o)
+	{
+		List<Integer> visited = new ArrayList<>();
+		new IndexedCrawler(dag, dag.getRoot(0))
+		{
+			@Override
+			public void visit(int id)
+			{
+				visited.add(id);
+			}
+		}.setOrder(o).crawl();
+		return visited;
+	}
+	
+	/**
+	 * Asserts that two indexed graphs have the same nodes, numbered in the
+	 * same way, and the same edges.
+	 */
+	protected static void assertSameGraph(IndexedDag expected, IndexedDag actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+		assertEquals(expected.getRootCount(), actual.getRootCount());
+		assertEquals(expected.getRoot(0), actual.getRoot(0));
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.getKind(i), actual.getKind(i));
+			assertEquals(expected.getPart(i), actual.getPart(i));
+			assertSame(expected.getSubject(i), actual.getSubject(i));
+			assertEquals(expected.getDegree(i), actual.getDegree(i));
+			for (int k = 0; k < expected.getDegree(i); k++)
+			{
+				assertEquals(expected.getChild(i, k), actual.getChild(i, k));
+			}
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import static ca.uqac.lif.petitpoucet.GraphUtilitiesTest.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PartTable}, {@link PartInterner} and the scoping
+ * and concurrency of {@link NodeFactory}.
+ */
+public class PartTableTest
+{
+	@Test
+	public void testIntern()
+	{
+		PartInterner interner = new PartInterner();
+		Part a1 = new TestPart("a");
+		Part a2 = new TestPart("a");
+		assertNull(interner.find(a1));
+		assertSame(a1, interner.intern(a1));
+		assertSame(a1, interner.intern(a2));
+		assertSame(a1, interner.find(a2));
+		assertEquals(1, interner.size());
+	}
+	
+	@Test
+	public void testChain()
+	{
+		PartTable<Integer> table = new PartTable<Integer>();
+		assertNull(table.get(PART_A, "x"));
+		table.put(PART_A, "x", 1);
+		table.put(PART_A, "y", 2);
+		table.put(PART_B, "x", 3);
+		assertEquals(1, (int) table.get(PART_A, "x"));
+		assertEquals(2, (int) table.get(PART_A, "y"));
+		assertEquals(3, (int) table.get(PART_B, "x"));
+		assertNull(table.get(PART_B, "y"));
+		assertNull(table.get(PART_C, "x"));
+		table.put(PART_A, "x", 4);
+		assertEquals(4, (int) table.get(PART_A, "x"));
+		assertEquals(3, table.size());
+	}
+	
+	@Test
+	public void testMap()
+	{
+		// More subjects than fit in a chain
+		PartTable<Integer> table = new PartTable<Integer>();
+		for (int i = 0; i < 100; i++)
+		{
+			table.put(PART_A, Integer.toString(i), i);
+		}
+		table.put(PART_A, "5", 500);
+		assertEquals(100, table.size());
+		for (int i = 0; i < 100; i++)
+		{
+			assertEquals(i == 5 ? 500 : i, (int) table.get(PART_A, Integer.toString(i)));
+		}
+		assertNull(table.get(PART_A, "100"));
+	}
+	
+	@Test
+	public void testFactory()
+	{
+		// Equal parts give the same node, whose part is the canonical instance
+		NodeFactory factory = NodeFactory.getFactory();
+		Part a = new TestPart("a");
+		PartNode pn = factory.getPartNode(a, OBJECT);
+		assertSame(pn, factory.getPartNode(new TestPart("a"), OBJECT));
+		assertSame(a, factory.getFactory(PART_B, OBJECT).getPartNode(new TestPart("a"), OBJECT).getPart());
+		assertTrue(factory.hasNodeFor(new TestPart("a"), OBJECT));
+		assertFalse(factory.hasNodeFor(new TestPart("a"), "other"));
+		assertFalse(factory.hasNodeFor(new TestPart("z"), OBJECT));
+	}
+	
+	@Test
+	public void testClose()
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		NodeFactory child = factory.getFactory(PART_B, OBJECT);
+		PartNode pn = factory.getPartNode(PART_A, OBJECT);
+		PartNode child_pn = child.getPartNode(PART_A, OBJECT);
+		// Closing a child leaves its parent untouched
+		child.close();
+		assertSame(pn, factory.getPartNode(PART_A, OBJECT));
+		assertEquals(2, factory.getInterner().size());
+		assertNotSame(child_pn, child.getPartNode(PART_A, OBJECT));
+		factory.close();
+		assertFalse(factory.hasNodeFor(PART_A, OBJECT));
+		assertEquals(0, factory.getInterner().size());
+		assertNotSame(pn, factory.getPartNode(PART_A, OBJECT));
+		assertNotSame(child, factory.getFactory(PART_B, OBJECT));
+	}
+	
+	@Test
+	public void testCapacity()
+	{
+		NodeFactory factory = NodeFactory.getFactory().setCapacity(2);
+		assertTrue(factory.getInterner().isWeak());
+		PartNode pn_a = factory.getPartNode(PART_A, OBJECT);
+		PartNode pn_b = factory.getPartNode(PART_B, OBJECT);
+		assertSame(pn_a, factory.getPartNode(PART_A, OBJECT));
+		// A third part evicts the least recently used node only
+		factory.getPartNode(PART_C, OBJECT);
+		assertTrue(factory.hasNodeFor(PART_C, OBJECT));
+		assertTrue(factory.hasNodeFor(PART_A, OBJECT));
+		assertFalse(factory.hasNodeFor(PART_B, OBJECT));
+		assertSame(pn_a, factory.getPartNode(PART_A, OBJECT));
+		assertNotSame(pn_b, factory.getPartNode(PART_B, OBJECT));
+	}
+	
+	@Test
+	public void testCapacityPerFactory()
+	{
+		NodeFactory factory = NodeFactory.getFactory().setCapacity(2);
+		PartNode pn = factory.getPartNode(PART_A, OBJECT);
+		Part canonical = pn.getPart();
+		NodeFactory child = factory.getFactory(PART_A, OBJECT);
+		// Filling the table of a child does not affect its parent
+		for (int i = 0; i < 10; i++)
+		{
+			child.getPartNode(new TestPart(Integer.toString(i)), OBJECT);
+		}
+		assertEquals(2, child.m_partNodes.size());
+		assertSame(pn, factory.getPartNode(new TestPart("a"), OBJECT));
+		assertSame(canonical, factory.getInterner().find(new TestPart("a")));
+	}
+	
+	@Test
+	public void testBoundedTable()
+	{
+		BoundedPartTable<Integer> table = new BoundedPartTable<Integer>(3);
+		table.put(PART_A, "x", 1);
+		table.put(PART_A, "y", 2);
+		table.put(PART_B, null, 3);
+		assertEquals(1, (int) table.get(PART_A, "x"));
+		table.put(PART_C, "x", 4);
+		assertEquals(3, table.size());
+		assertNull(table.get(PART_A, "y"));
+		assertEquals(3, (int) table.get(PART_B, null));
+		// Parts are compared by identity
+		assertNull(table.get(new TestPart("a"), "x"));
+		PartTable<Integer> copy = new PartTable<Integer>();
+		table.copyTo(copy);
+		assertEquals(4, (int) copy.get(PART_C, "x"));
+		assertEquals(3, copy.size());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testConcurrentCapacity()
+	{
+		NodeFactory.getConcurrentFactory().setCapacity(10);
+	}
+	
+	@Test
+	public void testWeakInterner()
+	{
+		PartInterner interner = new PartInterner();
+		Part a1 = new TestPart("a");
+		interner.intern(a1);
+		interner.setWeak(true);
+		assertSame(a1, interner.intern(new TestPart("a")));
+		assertSame(a1, interner.find(new TestPart("a")));
+		interner.setWeak(false);
+		assertFalse(interner.isWeak());
+		assertSame(a1, interner.find(new TestPart("a")));
+	}
+	
+	@Test
+	public void testWeakChildren()
+	{
+		NodeFactory factory = NodeFactory.getFactory().setWeakChildren(true);
+		NodeFactory child = factory.getFactory(PART_A, OBJECT);
+		PartNode pn = child.getPartNode(PART_B, OBJECT);
+		// The child is kept as long as it is referenced
+		assertSame(child, factory.getFactory(new TestPart("a"), OBJECT));
+		assertSame(pn, factory.getFactory(PART_A, OBJECT).getPartNode(PART_B, OBJECT));
+	}
+	
+	@Test
+	public void testConcurrentTable() throws Exception
+	{
+		ConcurrentPartTable<Integer> table = new ConcurrentPartTable<Integer>();
+		AtomicInteger calls = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try
+		{
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < 4; t++)
+			{
+				futures.add(pool.submit(() -> {
+					for (int i = 0; i < 1000; i++)
+					{
+						int v = table.computeIfAbsent(PART_A, i, () -> calls.incrementAndGet());
+						assertEquals(v, (int) table.get(PART_A, i));
+					}
+				}));
+			}
+			for (Future<?> f : futures)
+			{
+				f.get();
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		// The value of each subject is created exactly once
+		assertEquals(1000, calls.get());
+		assertEquals(1000, table.size());
+		assertEquals(1000, table.values().size());
+		table.clear();
+		assertNull(table.get(PART_A, 0));
+		assertEquals(0, table.size());
+	}
+	
+	@Test
+	public void testConcurrentFactory() throws Exception
+	{
+		NodeFactory factory = NodeFactory.getConcurrentFactory();
+		assertTrue(factory.isConcurrent());
+		assertFalse(NodeFactory.getFactory().isConcurrent());
+		int num_threads = 4, num_parts = 500;
+		ExecutorService pool = Executors.newFixedThreadPool(num_threads);
+		List<PartNode[]> results = new ArrayList<PartNode[]>();
+		try
+		{
+			List<Future<PartNode[]>> futures = new ArrayList<Future<PartNode[]>>();
+			for (int t = 0; t < num_threads; t++)
+			{
+				futures.add(pool.submit(() -> {
+					PartNode[] nodes = new PartNode[2 * num_parts];
+					for (int i = 0; i < num_parts; i++)
+					{
+						// Equal but distinct parts, in a child factory and in the root
+						Part p = new TestPart(Integer.toString(i));
+						NodeFactory child = factory.getFactory(PART_A, OBJECT);
+						assertTrue(child.isConcurrent());
+						nodes[i] = factory.getPartNode(p, OBJECT);
+						nodes[num_parts + i] = child.getPartNode(p, OBJECT);
+					}
+					return nodes;
+				}));
+			}
+			for (Future<PartNode[]> f : futures)
+			{
+				results.add(f.get());
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		// All threads see the same nodes, as a single thread would
+		for (PartNode[] nodes : results)
+		{
+			for (int i = 0; i < nodes.length; i++)
+			{
+				assertSame(results.get(0)[i], nodes[i]);
+			}
+		}
+		assertSame(results.get(0)[0], factory.getPartNode(new TestPart("0"), OBJECT));
+		assertNotSame(results.get(0)[0], results.get(0)[num_parts]);
+		assertEquals(num_parts + 1, factory.getInterner().size());
+	}
+}
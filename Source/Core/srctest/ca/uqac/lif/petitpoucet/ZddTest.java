@@ -0,0 +1,154 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet;
+
+import static ca.uqac.lif.petitpoucet.GraphUtilitiesTest.*;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Zdd}.
+ */
+public class ZddTest
+{
+	@Test
+	public void testBuild()
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		OrNode or = factory.getOrNode();
+		{
+			AndNode and = factory.getAndNode();
+			and.addChild(getNode(factory, PART_A));
+			and.addChild(getNode(factory, PART_B));
+			or.addChild(and);
+		}
+		{
+			AndNode and = factory.getAndNode();
+			and.addChild(getNode(factory, PART_C));
+			and.addChild(getNode(factory, PART_D));
+			{
+				OrNode nested_or = factory.getOrNode();
+				nested_or.addChild(getNode(factory, PART_E));
+				nested_or.addChild(getNode(factory, PART_F));
+				nested_or.addChild(getNode(factory, PART_A));
+				and.addChild(nested_or);
+			}
+			or.addChild(and);
+		}
+		Zdd zdd = new Zdd();
+		int f = zdd.build(or);
+		assertEquals(BigInteger.valueOf(4), zdd.count(f));
+		Set<Clause> dnf = zdd.toDnf(f);
+		assertEquals(GraphUtilities.asDnf(or), dnf);
+		for (Clause c : dnf)
+		{
+			assertTrue(zdd.contains(f, c));
+		}
+		assertFalse(zdd.contains(f, getClause(PART_C, PART_D)));
+		assertFalse(zdd.contains(f, getClause(PART_A, PART_B, PART_C)));
+		assertFalse(zdd.contains(f, getClause(PART_G)));
+		assertEquals(f, zdd.build(or));
+		assertEquals(f, zdd.union(f, f));
+		assertEquals(f, zdd.intersect(f, f));
+		assertEquals(f, zdd.join(f, Zdd.BASE));
+		assertEquals(Zdd.EMPTY, zdd.join(f, Zdd.EMPTY));
+	}
+	
+	@Test
+	public void testMinimal()
+	{
+		// (a ∨ b) ∧ (a ∨ c): {a} subsumes {a,b}, {a,c} and {a}
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		{
+			OrNode or = factory.getOrNode();
+			or.addChild(getNode(factory, PART_A));
+			or.addChild(getNode(factory, PART_B));
+			and.addChild(or);
+		}
+		{
+			OrNode or = factory.getOrNode();
+			or.addChild(getNode(factory, PART_A));
+			or.addChild(getNode(factory, PART_C));
+			and.addChild(or);
+		}
+		Zdd zdd = new Zdd();
+		int f = zdd.build(and);
+		assertEquals(BigInteger.valueOf(4), zdd.count(f));
+		int m = zdd.minimal(f);
+		assertEquals(BigInteger.valueOf(2), zdd.count(m));
+		assertTrue(zdd.contains(m, getClause(PART_A)));
+		assertTrue(zdd.contains(m, getClause(PART_B, PART_C)));
+		assertFalse(zdd.contains(m, getClause(PART_A, PART_B)));
+	}
+	
+	@Test
+	public void testLarge()
+	{
+		// 50 disjunctions of 4 parts: 4^50 clauses in 200 nodes
+		NodeFactory factory = NodeFactory.getFactory();
+		AndNode and = factory.getAndNode();
+		for (int i = 0; i < 50; i++)
+		{
+			OrNode or = factory.getOrNode();
+			for (int j = 0; j < 4; j++)
+			{
+				or.addChild(factory.getPartNode(new TestPart(i + "/" + j), OBJECT));
+			}
+			and.addChild(or);
+		}
+		Zdd zdd = new Zdd();
+		int f = zdd.build(and);
+		assertEquals(BigInteger.valueOf(4).pow(50), zdd.count(f));
+		assertEquals(f, zdd.minimal(f));
+		assertTrue(zdd.getNodeCount() < 1000);
+	}
+	
+	@Test
+	public void testWide()
+	{
+		// An "or" node and an "and" node with many leaves, which used to
+		// overflow the stack
+		NodeFactory factory = NodeFactory.getFactory();
+		OrNode or = factory.getOrNode();
+		AndNode and = factory.getAndNode();
+		for (int i = 0; i < 20000; i++)
+		{
+			PartNode leaf = factory.getPartNode(new TestPart(Integer.toString(i)), OBJECT);
+			or.addChild(leaf);
+			and.addChild(leaf);
+		}
+		Zdd zdd = new Zdd();
+		int f = zdd.build(or);
+		assertEquals(BigInteger.valueOf(20000), zdd.count(f));
+		assertEquals(GraphUtilities.asDnf(or), zdd.toDnf(f));
+		assertEquals(f, zdd.minimal(f));
+		assertEquals(f, zdd.union(f, zdd.build(or)));
+		assertTrue(zdd.contains(f, getClause(new TestPart("19999"))));
+		int g = zdd.build(and);
+		assertEquals(BigInteger.ONE, zdd.count(g));
+		Set<Clause> dnf = zdd.toDnf(g);
+		assertEquals(1, dnf.size());
+		assertEquals(20000, dnf.iterator().next().size());
+		assertEquals(Zdd.EMPTY, zdd.intersect(f, g));
+	}
+}
@@ -0,0 +1,85 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Utility methods shared by the benchmarks of this package.
+ */
+public class BenchmarkUtilities
+{
+	/**
+	 * Private constructor.
+	 */
+	private BenchmarkUtilities()
+	{
+		super();
+	}
+
+	/**
+	 * Gets the amount of heap memory currently in use, after asking the
+	 * garbage collector to run a few times.
+	 * @return The number of bytes in use
+	 */
+	public static long usedMemory()
+	{
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++)
+		{
+			System.gc();
+			try
+			{
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	/**
+	 * Gets the total number of bytes allocated so far by the current thread,
+	 * including objects that have since been garbage collected. This relies on
+	 * an extension of the HotSpot virtual machine; -1 is returned if it is not
+	 * available.
+	 * @return The number of bytes
+	 */
+	public static long allocatedBytes()
+	{
+		Object bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+		{
+			return -1;
+		}
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Gets the number of milliseconds elapsed since a given instant.
+	 * @param start_nanos The starting instant, as returned by
+	 * {@link System#nanoTime()}
+	 * @return The number of milliseconds
+	 */
+	public static double elapsedMs(long start_nanos)
+	{
+		return (System.nanoTime() - start_nanos) / 1000000d;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.allocatedBytes;
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+import static examples.benchmark.BenchmarkUtilities.usedMemory;
+
+import ca.uqac.lif.dag.NodeConnector;
+import ca.uqac.lif.petitpoucet.function.Circuit;
+import ca.uqac.lif.petitpoucet.function.Fork;
+import ca.uqac.lif.petitpoucet.function.number.Addition;
+
+/**
+ * Measures the cost of duplicating a {@link Circuit}, as is done by functions
+ * such as <tt>VectorApply</tt> for every element they process, with and
+ * without {@linkplain Circuit#freeze() freezing} the circuit first. For each
+ * mode, the program reports the time per duplicate, the number of bytes
+ * allocated per duplicate (including temporary objects) and the number of
+ * bytes retained by each duplicate.
+ * <p>
+ * Usage: <tt>CircuitDuplicateBenchmark [nodes] [copies]</tt>
+ */
+public class CircuitDuplicateBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_nodes = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int copies = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		Circuit c = buildCircuit(num_nodes);
+		System.out.println("Nodes in circuit: " + num_nodes);
+		measure("Crawled", c, copies);
+		c.freeze();
+		measure("Frozen", c, copies);
+	}
+	
+	/**
+	 * Duplicates a circuit repeatedly and prints statistics about the process.
+	 * @param title The name of the mode being measured
+	 * @param c The circuit
+	 * @param copies The number of duplicates to create
+	 */
+	protected static void measure(String title, Circuit c, int copies)
+	{
+		// Warm-up
+		for (int i = 0; i < copies; i++)
+		{
+			c.duplicate();
+		}
+		long start = System.nanoTime();
+		long alloc_before = allocatedBytes();
+		for (int i = 0; i < copies; i++)
+		{
+			c.duplicate();
+		}
+		long alloc_after = allocatedBytes();
+		double duration = elapsedMs(start);
+		// Retained memory is measured separately, so that the time measured
+		// above is not dominated by the garbage collector
+		Circuit[] kept = new Circuit[copies];
+		long mem_before = usedMemory();
+		for (int i = 0; i < copies; i++)
+		{
+			kept[i] = c.duplicate();
+		}
+		long mem_after = usedMemory();
+		System.out.printf("%-8s %8.2f us, %8.0f bytes allocated, %8.0f bytes retained per copy%n", title,
+				duration * 1000 / copies, (alloc_after - alloc_before) / (double) copies, (mem_after - mem_before) / (double) copies);
+		if (kept[copies - 1].evaluate(1, 1)[0] == null)
+		{
+			System.out.println("Invalid circuit");
+		}
+	}
+
+	/**
+	 * Builds a circuit made of a fork feeding two chains of additions, whose
+	 * results are added together.
+	 * @param num_nodes The number of functions in the circuit
+	 * @return The circuit
+	 */
+	protected static Circuit buildCircuit(int num_nodes)
+	{
+		Circuit c = new Circuit(2, 1);
+		Fork f = new Fork(2);
+		Addition last = new Addition(2);
+		c.addNodes(f, last);
+		c.associateInput(0, f.getInputPin(0));
+		int chain_length = (num_nodes - 2) / 2;
+		for (int j = 0; j < 2; j++)
+		{
+			Addition previous = new Addition(2);
+			c.addNodes(previous);
+			NodeConnector.connect(f, j, previous, 0);
+			if (j == 0)
+			{
+				c.associateInput(1, previous.getInputPin(1));
+			}
+			else
+			{
+				NodeConnector.connect(f, j, previous, 1);
+			}
+			for (int i = 1; i < chain_length; i++)
+			{
+				Addition a = new Addition(1);
+				c.addNodes(a);
+				NodeConnector.connect(previous, 0, a, 0);
+				previous = a;
+			}
+			NodeConnector.connect(previous, 0, last, j);
+		}
+		c.associateOutput(0, last.getOutputPin(0));
+		return c;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import ca.uqac.lif.dag.LabelledNode;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.NodeConnector;
+
+/**
+ * Measures the time taken to connect and disconnect nodes. The program
+ * connects a single parent node to a large number of children (as an "or"
+ * node with many alternatives would be), tries to connect them a second time
+ * (which must be detected as a no-op), and then disconnects them all.
+ * <p>
+ * Usage: <tt>ConnectBenchmark [children]</tt>
+ */
+public class ConnectBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_children = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		Node parent = new LabelledNode("parent");
+		Node[] children = new Node[num_children];
+		for (int i = 0; i < num_children; i++)
+		{
+			children[i] = new LabelledNode(i);
+		}
+		long start = System.nanoTime();
+		for (Node child : children)
+		{
+			NodeConnector.connect(parent, 0, child, 0);
+		}
+		System.out.printf("Connect:    %.1f ms%n", elapsedMs(start));
+		start = System.nanoTime();
+		for (Node child : children)
+		{
+			NodeConnector.connect(parent, 0, child, 0);
+		}
+		System.out.printf("Reconnect:  %.1f ms%n", elapsedMs(start));
+		start = System.nanoTime();
+		for (int i = num_children - 1; i >= 0; i -= 2)
+		{
+			NodeConnector.disconnect(parent, 0, children[i], 0);
+		}
+		System.out.printf("Disconnect: %.1f ms%n", elapsedMs(start));
+		System.out.println("Links left: " + parent.getOutputLinks(0).size());
+	}
+}
@@ -0,0 +1,89 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.util.Set;
+
+import ca.uqac.lif.petitpoucet.AndNode;
+import ca.uqac.lif.petitpoucet.Clause;
+import ca.uqac.lif.petitpoucet.GraphUtilities;
+import ca.uqac.lif.petitpoucet.NodeFactory;
+import ca.uqac.lif.petitpoucet.OrNode;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.PartNode;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+
+/**
+ * Measures the time taken by {@link GraphUtilities#asDnf(ca.uqac.lif.dag.Node)}
+ * on a conjunction of disjunctions, whose disjunctive normal form has one
+ * clause for every choice of a leaf in each disjunction. Consecutive
+ * disjunctions share half of their leaves, so that many of the merged
+ * clauses are duplicates.
+ * <p>
+ * The benchmark also converts a single disjunction of many distinct leaves,
+ * whose normal form has one clause per leaf. This conversion should take
+ * time close to linear in the number of leaves.
+ * <p>
+ * Usage: <tt>DnfBenchmark [disjunctions] [leaves] [rounds] [width]</tt>
+ */
+public class DnfBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_or = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+		int num_leaves = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		int width = args.length > 3 ? Integer.parseInt(args[3]) : 100000;
+		NodeFactory factory = NodeFactory.getFactory();
+		Object subject = "vector";
+		PartNode root = factory.getPartNode(Part.all, "output");
+		AndNode and = factory.getAndNode();
+		root.addChild(and);
+		for (int i = 0; i < num_or; i++)
+		{
+			OrNode or = factory.getOrNode();
+			and.addChild(or);
+			for (int j = 0; j < num_leaves; j++)
+			{
+				or.addChild(factory.getPartNode(new NthElement(i * num_leaves / 2 + j), subject));
+			}
+		}
+		OrNode wide = factory.getOrNode();
+		for (int j = 0; j < width; j++)
+		{
+			wide.addChild(factory.getPartNode(new NthElement(j), subject));
+		}
+		for (int r = 0; r <= rounds; r++)
+		{
+			long start = System.nanoTime();
+			Set<Clause> clauses = GraphUtilities.asDnf(root);
+			double ms = elapsedMs(start);
+			start = System.nanoTime();
+			Set<Clause> wide_clauses = GraphUtilities.asDnf(wide);
+			double wide_ms = elapsedMs(start);
+			if (r > 0)
+			{
+				// The first round only warms up the virtual machine
+				System.out.printf("DNF of %d clauses in %8.1f ms%n", clauses.size(), ms);
+				System.out.printf("Wide DNF of %d clauses in %8.1f ms%n", wide_clauses.size(), wide_ms);
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static ca.uqac.lif.petitpoucet.ComposedPart.compose;
+import static examples.benchmark.BenchmarkUtilities.allocatedBytes;
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+import static examples.benchmark.BenchmarkUtilities.usedMemory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uqac.lif.petitpoucet.GraphUtilities;
+import ca.uqac.lif.petitpoucet.PartNode;
+import ca.uqac.lif.petitpoucet.function.NthOutput;
+import ca.uqac.lif.petitpoucet.function.RelationNodeFactory;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+import ca.uqac.lif.petitpoucet.function.vector.VectorProduct;
+import ca.uqac.lif.petitpoucet.function.vector.Window;
+
+/**
+ * Measures the time and the memory allocated to explain every element of the
+ * output of a function on a wide vector, using the same node factory for all
+ * the explanations, as in <tt>WindowProductMultiQuery</tt>. The function
+ * computes the product of the elements of a sliding window of width 3. The
+ * program also reports the memory retained by the explanations, and the
+ * time taken to convert each of them into clauses.
+ * <p>
+ * Usage: <tt>ExplanationBenchmark [width] [rounds]</tt>
+ */
+public class ExplanationBenchmark
+{
+	public static void main(String[] args)
+	{
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		List<Integer> input = new ArrayList<Integer>(width);
+		for (int i = 0; i < width; i++)
+		{
+			input.add(i % 7 == 0 ? 0 : i % 10 + 1);
+		}
+		Window win = new Window(new VectorProduct(), 3);
+		int size = ((List<?>) win.evaluate(input)[0]).size();
+		for (int r = 0; r <= rounds; r++)
+		{
+			List<PartNode> roots = new ArrayList<PartNode>(size);
+			long mem_before = usedMemory();
+			RelationNodeFactory factory = new RelationNodeFactory();
+			long start = System.nanoTime();
+			long alloc_before = allocatedBytes();
+			for (int i = 0; i < size; i++)
+			{
+				roots.add(win.getExplanation(compose(new NthElement(i), NthOutput.FIRST), factory));
+			}
+			long alloc_after = allocatedBytes();
+			double duration = elapsedMs(start);
+			long mem_after = usedMemory();
+			start = System.nanoTime();
+			int clauses = 0;
+			for (PartNode root : roots)
+			{
+				clauses += GraphUtilities.asDnf(root).size();
+			}
+			double dnf_duration = elapsedMs(start);
+			// Request the root of each explanation again, with a new part
+			start = System.nanoTime();
+			long lookup_before = allocatedBytes();
+			for (int j = 0; j < 10; j++)
+			{
+				for (int i = 0; i < size; i++)
+				{
+					factory.getPartNode(compose(new NthElement(i), NthOutput.FIRST), win);
+				}
+			}
+			long lookup_after = allocatedBytes();
+			double lookup_duration = elapsedMs(start);
+			if (r > 0)
+			{
+				// The first round only warms up the virtual machine
+				System.out.printf("%d explanations in %6.1f ms, %5.0f bytes allocated, %5.0f bytes retained per explanation; %d clauses in %6.1f ms%n", size, duration,
+						(alloc_after - alloc_before) / (double) size, (mem_after - mem_before) / (double) size, clauses, dnf_duration);
+				System.out.printf("%d lookups in %6.1f ms, %5.1f bytes allocated per lookup%n", size * 10, lookup_duration, (lookup_after - lookup_before) / (size * 10d));
+			}
+		}
+	}
+}
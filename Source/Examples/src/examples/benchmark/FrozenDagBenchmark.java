@@ -0,0 +1,171 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import ca.uqac.lif.dag.LabelledNode;
+import ca.uqac.lif.dag.LeafCrawler;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.FrozenDag;
+import ca.uqac.lif.petitpoucet.GraphUtilities;
+import ca.uqac.lif.petitpoucet.NodeFactory;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.function.LineageDotRenderer;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+
+/**
+ * Compares read-only operations on a lineage graph made of {@link Node}
+ * objects and on its {@link FrozenDag} snapshot. The graph is a random tree
+ * of "and", "or" and part nodes; the program measures the time taken to
+ * freeze it, to count its leaves, to squash it and to render it in the DOT
+ * format (to a stream that discards its output).
+ * <p>
+ * Usage: <tt>FrozenDagBenchmark [depth] [fan-out] [rounds]</tt>
+ */
+public class FrozenDagBenchmark
+{
+	public static void main(String[] args)
+	{
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+		int fan_out = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		Node root = buildGraph(new Random(0), NodeFactory.getFactory(), depth, fan_out);
+		FrozenDag dag = FrozenDag.freeze(root);
+		System.out.println("Nodes:           " + dag.size());
+		PrintStream discard = new PrintStream(new OutputStream()
+		{
+			@Override
+			public void write(int b)
+			{
+				// Discard
+			}
+			
+			@Override
+			public void write(byte[] b, int off, int len)
+			{
+				// Discard
+			}
+		});
+		long checksum = 0;
+		for (int pass = 0; pass < 2; pass++)
+		{
+			// The first pass is a warm-up
+			boolean print = pass == 1;
+			long start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+			{
+				checksum += FrozenDag.freeze(root).size();
+			}
+			report(print, "Freeze", start, rounds);
+			start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+			{
+				LeafCrawler.LeafFetcher lf = new LeafCrawler.LeafFetcher(root);
+				lf.crawl();
+				checksum += lf.getLeaves().size();
+			}
+			report(print, "Leaves (nodes)", start, rounds);
+			start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+			{
+				checksum += dag.getLeafCount();
+			}
+			report(print, "Leaves (frozen)", start, rounds);
+			start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+			{
+				checksum += GraphUtilities.squash(root).getOutputNodeCount();
+			}
+			report(print, "Squash (nodes)", start, rounds);
+			start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+			{
+				checksum += GraphUtilities.squash(dag).size();
+			}
+			report(print, "Squash (frozen)", start, rounds);
+			start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+			{
+				new LineageDotRenderer(root).render(discard);
+			}
+			report(print, "Render (nodes)", start, rounds);
+			start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+			{
+				new LineageDotRenderer(dag).render(discard);
+			}
+			report(print, "Render (frozen)", start, rounds);
+		}
+		System.out.println("Checksum:        " + checksum);
+	}
+	
+	/**
+	 * Prints the average duration of an operation.
+	 * @param print Set to {@code false} to skip printing
+	 * @param title The name of the operation
+	 * @param start The instant the measurement started
+	 * @param rounds The number of times the operation was repeated
+	 */
+	protected static void report(boolean print, String title, long start, int rounds)
+	{
+		if (print)
+		{
+			System.out.printf("%-16s %8.1f ms%n", title + ":", elapsedMs(start) / rounds);
+		}
+	}
+	
+	/**
+	 * Builds a random tree of "and", "or" and part nodes. Each part node is
+	 * given a distinct subject, so that the factory does not return the same
+	 * node twice.
+	 * @param r A source of randomness
+	 * @param factory The factory used to obtain nodes
+	 * @param depth The depth of the tree
+	 * @param fan_out The number of children of each internal node
+	 * @return The root of the tree
+	 */
+	protected static LabelledNode buildGraph(Random r, NodeFactory factory, int depth, int fan_out)
+	{
+		if (depth == 0)
+		{
+			return factory.getPartNode(new NthElement(r.nextInt(1000)), new Object());
+		}
+		LabelledNode n;
+		switch (r.nextInt(3))
+		{
+		case 0:
+			n = factory.getAndNode();
+			break;
+		case 1:
+			n = factory.getOrNode();
+			break;
+		default:
+			n = factory.getPartNode(Part.all, new Object());
+		}
+		for (int i = 0; i < fan_out; i++)
+		{
+			n.addChild(buildGraph(r, factory, depth - 1, fan_out));
+		}
+		return n;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.GraphReader;
+import ca.uqac.lif.petitpoucet.GraphWriter;
+import ca.uqac.lif.petitpoucet.NodeFactory;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.function.FunctionPartEncoder;
+import ca.uqac.lif.petitpoucet.function.LineageDotRenderer;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+
+/**
+ * Compares the size of the explanation of a windowed operation over a long
+ * vector when it is written in the binary format of {@link GraphWriter} and
+ * in the DOT format of {@link LineageDotRenderer}, and measures the time
+ * taken to read the binary file back. The graph is the same as in
+ * {@link MappedDagBenchmark}.
+ * <p>
+ * Usage: <tt>GraphFileBenchmark [length] [width]</tt>
+ */
+public class GraphFileBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		int length = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int width = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		Part[] parts = new Part[length + width];
+		for (int i = 0; i < parts.length; i++)
+		{
+			parts[i] = new NthElement(i);
+		}
+		Node root = MappedDagBenchmark.buildGraph(NodeFactory.getFactory(), "input", "output", parts, length, width);
+		File bin = File.createTempFile("benchmark", ".ppg");
+		File dot = File.createTempFile("benchmark", ".dot");
+		long start = System.nanoTime();
+		try (OutputStream os = new FileOutputStream(bin))
+		{
+			new GraphWriter().addEncoder(FunctionPartEncoder.instance).write(root, os);
+		}
+		System.out.printf("Binary written in %8.1f ms, %8.1f MB%n", elapsedMs(start), bin.length() / 1048576d);
+		start = System.nanoTime();
+		try (PrintStream ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(dot))))
+		{
+			new LineageDotRenderer(root).render(ps);
+		}
+		System.out.printf("DOT    written in %8.1f ms, %8.1f MB%n", elapsedMs(start), dot.length() / 1048576d);
+		root = null;
+		GraphReader reader = new GraphReader().addEncoder(FunctionPartEncoder.instance);
+		for (int i = 0; i < 5; i++)
+		{
+			start = System.nanoTime();
+			List<Node> roots;
+			try (InputStream is = new BufferedInputStream(new FileInputStream(bin)))
+			{
+				roots = reader.read(is);
+			}
+			System.out.printf("Binary read in    %8.1f ms (%d links from the root)%n", elapsedMs(start), roots.get(0).getOutputLinks(0).size());
+		}
+		bin.delete();
+		dot.delete();
+	}
+}
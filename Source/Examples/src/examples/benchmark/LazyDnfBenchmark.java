@@ -0,0 +1,101 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import ca.uqac.lif.petitpoucet.AndNode;
+import ca.uqac.lif.petitpoucet.DnfEnumerator;
+import ca.uqac.lif.petitpoucet.GraphUtilities;
+import ca.uqac.lif.petitpoucet.NodeFactory;
+import ca.uqac.lif.petitpoucet.OrNode;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.PartNode;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+
+/**
+ * Measures the time taken to get the first clauses of a lineage graph with a
+ * {@link DnfEnumerator}, on a conjunction of disjunctions too large for
+ * {@link GraphUtilities#asDnf(ca.uqac.lif.dag.Node)}, and compares both
+ * methods on a graph small enough for the latter.
+ * <p>
+ * Usage: <tt>LazyDnfBenchmark [disjunctions] [leaves] [rounds]</tt>
+ */
+public class LazyDnfBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_or = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		int num_leaves = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		PartNode large = buildGraph(num_or, num_leaves);
+		PartNode small = buildGraph(8, num_leaves);
+		for (int r = 0; r <= rounds; r++)
+		{
+			// The first round only warms up the virtual machine
+			boolean print = r > 0;
+			for (int count : new int[] {1, 10, 1000})
+			{
+				long start = System.nanoTime();
+				long found = GraphUtilities.enumerateDnf(large).setMaxClauses(count).stream().count();
+				report(String.format("First %d of %d^%d", count, num_leaves, num_or), print, elapsedMs(start), found);
+			}
+			long start = System.nanoTime();
+			long found = GraphUtilities.enumerateDnf(small).stream().count();
+			report(String.format("All of %d^8, lazy", num_leaves), print, elapsedMs(start), found);
+			start = System.nanoTime();
+			found = GraphUtilities.asDnf(small).size();
+			report(String.format("All of %d^8, asDnf", num_leaves), print, elapsedMs(start), found);
+		}
+	}
+	
+	/**
+	 * Builds a conjunction of disjunctions of distinct leaves.
+	 * @param num_or The number of disjunctions
+	 * @param num_leaves The number of leaves in each disjunction
+	 * @return The root of the graph
+	 */
+	protected static PartNode buildGraph(int num_or, int num_leaves)
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode root = factory.getPartNode(Part.all, "output");
+		AndNode and = factory.getAndNode();
+		root.addChild(and);
+		for (int i = 0; i < num_or; i++)
+		{
+			OrNode or = factory.getOrNode();
+			and.addChild(or);
+			for (int j = 0; j < num_leaves; j++)
+			{
+				or.addChild(factory.getPartNode(new NthElement(i * num_leaves + j), "vector"));
+			}
+		}
+		return root;
+	}
+	
+	/**
+	 * Prints the results of an enumeration.
+	 */
+	protected static void report(String title, boolean print, double ms, long clauses)
+	{
+		if (print)
+		{
+			System.out.printf("%-20s %9.2f ms, %6d clauses%n", title, ms, clauses);
+		}
+	}
+}
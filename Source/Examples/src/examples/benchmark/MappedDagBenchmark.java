@@ -0,0 +1,184 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+import static examples.benchmark.BenchmarkUtilities.usedMemory;
+
+import java.io.File;
+import java.io.IOException;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.AndNode;
+import ca.uqac.lif.petitpoucet.FrozenDag;
+import ca.uqac.lif.petitpoucet.IndexedCrawler;
+import ca.uqac.lif.petitpoucet.IndexedDag;
+import ca.uqac.lif.petitpoucet.IndexedDag.Kind;
+import ca.uqac.lif.petitpoucet.MappedDag;
+import ca.uqac.lif.petitpoucet.NodeFactory;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.PartNode;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+
+/**
+ * Compares the heap retained by the explanation of a windowed operation over
+ * a long vector, when it is kept as {@link Node} objects, as a
+ * {@link FrozenDag} and as a {@link MappedDag}. Element <i>i</i> of the
+ * output depends on elements <i>i</i> to <i>i</i>+<i>w</i>&minus;1 of the
+ * input, as in the explanation of a windowed product. The mapped graph is
+ * written directly through its builder, without creating nodes first. The
+ * program then counts the leaves and crawls each indexed graph.
+ * <p>
+ * Usage: <tt>MappedDagBenchmark [length] [width]</tt>
+ */
+public class MappedDagBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		int length = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		int width = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		Object input = new Object(), output = new Object();
+		Part[] parts = new Part[length + width];
+		for (int i = 0; i < parts.length; i++)
+		{
+			parts[i] = new NthElement(i);
+		}
+		long base = usedMemory();
+		long start = System.nanoTime();
+		Node root = buildGraph(NodeFactory.getFactory(), input, output, parts, length, width);
+		report("Nodes", elapsedMs(start), usedMemory() - base);
+		start = System.nanoTime();
+		IndexedDag dag = FrozenDag.freeze(root);
+		double ms = elapsedMs(start);
+		root = null;
+		report("Frozen", ms, usedMemory() - base);
+		traverse("Frozen", dag);
+		dag = null;
+		File f = File.createTempFile("benchmark", ".dag");
+		start = System.nanoTime();
+		MappedDag.Builder b = new MappedDag.Builder(f);
+		MappedDag mapped = b.build(buildGraph(b, input, output, parts, length, width));
+		ms = elapsedMs(start);
+		b = null;
+		report("Mapped", ms, usedMemory() - base);
+		traverse("Mapped", mapped);
+		System.out.printf("Graph of %d nodes and %d edges, file of %.1f MB%n", mapped.size(), mapped.getEdgeCount(), f.length() / 1048576d);
+		mapped.close();
+	}
+	
+	/**
+	 * Counts the leaves of a graph and crawls it, and prints the time taken.
+	 * @param title The form of the graph
+	 * @param dag The graph
+	 */
+	protected static void traverse(String title, IndexedDag dag)
+	{
+		long start = System.nanoTime();
+		int count = dag.getLeafCount() + crawl(dag);
+		System.out.printf("%-8s leaves and crawl in %8.1f ms (%d)%n", title, elapsedMs(start), count);
+	}
+	
+	/**
+	 * Crawls a graph from its first root.
+	 * @param dag The graph
+	 * @return The number of nodes visited
+	 */
+	protected static int crawl(IndexedDag dag)
+	{
+		int[] count = new int[1];
+		new IndexedCrawler(dag, dag.getRoot(0))
+		{
+			@Override
+			public void visit(int id)
+			{
+				count[0]++;
+			}
+		}.crawl();
+		return count[0];
+	}
+	
+	/**
+	 * Prints the time taken to produce a graph and the heap it retains.
+	 * @param title The form of the graph
+	 * @param ms The duration, in milliseconds
+	 * @param bytes The heap retained, in bytes
+	 */
+	protected static void report(String title, double ms, long bytes)
+	{
+		System.out.printf("%-8s built in %8.1f ms, heap %8.1f MB%n", title, ms, bytes / 1048576d);
+	}
+	
+	/**
+	 * Builds the explanation of a windowed operation as a graph of nodes.
+	 * @param factory The factory used to obtain nodes
+	 * @param input The input vector
+	 * @param output The output vector
+	 * @param parts The parts designating each element of a vector
+	 * @param length The length of the output vector
+	 * @param width The width of the window
+	 * @return The root of the graph
+	 */
+	protected static Node buildGraph(NodeFactory factory, Object input, Object output, Part[] parts, int length, int width)
+	{
+		PartNode root = factory.getPartNode(Part.all, output);
+		for (int i = 0; i < length; i++)
+		{
+			PartNode out = factory.getPartNode(parts[i], output);
+			AndNode and = factory.getAndNode();
+			root.addChild(out);
+			out.addChild(and);
+			for (int j = 0; j < width; j++)
+			{
+				and.addChild(factory.getPartNode(parts[i + j], input));
+			}
+		}
+		return root;
+	}
+	
+	/**
+	 * Adds the explanation of a windowed operation to a mapped graph builder.
+	 * @param b The builder
+	 * @param input The input vector
+	 * @param output The output vector
+	 * @param parts The parts designating each element of a vector
+	 * @param length The length of the output vector
+	 * @param width The width of the window
+	 * @return The identifiers of the roots of the graph
+	 */
+	protected static int[] buildGraph(MappedDag.Builder b, Object input, Object output, Part[] parts, int length, int width)
+	{
+		int root = b.addNode(Kind.PART, Part.all, output);
+		int first_leaf = b.size();
+		for (int i = 0; i < length + width - 1; i++)
+		{
+			b.addNode(Kind.PART, parts[i], input);
+		}
+		for (int i = 0; i < length; i++)
+		{
+			int out = b.addNode(Kind.PART, parts[i], output);
+			int and = b.addNode(Kind.AND, null, null);
+			b.addChild(root, out);
+			b.addChild(out, and);
+			for (int j = 0; j < width; j++)
+			{
+				b.addChild(and, first_leaf + i + j);
+			}
+		}
+		return new int[] {root};
+	}
+}
@@ -0,0 +1,87 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import ca.uqac.lif.petitpoucet.Clause;
+import ca.uqac.lif.petitpoucet.GraphUtilities;
+
+/**
+ * Compares the time taken by {@link GraphUtilities#minimalDnf(Set)} to
+ * remove the redundant clauses of a DNF with that of comparing every pair of
+ * clauses. The clauses are those of the graph of {@link ZddBenchmark}, a
+ * conjunction of disjunctions sharing half of their leaves.
+ * <p>
+ * Usage: <tt>MinimalDnfBenchmark [disjunctions] [leaves] [rounds]</tt>
+ */
+public class MinimalDnfBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_or = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+		int num_leaves = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		Set<Clause> clauses = GraphUtilities.asDnf(ZddBenchmark.buildGraph(num_or, num_leaves));
+		for (int r = 0; r <= rounds; r++)
+		{
+			long start = System.nanoTime();
+			int pairwise = pairwise(clauses).size();
+			double pairwise_ms = elapsedMs(start);
+			start = System.nanoTime();
+			int minimal = GraphUtilities.minimalDnf(clauses).size();
+			double minimal_ms = elapsedMs(start);
+			if (r > 0)
+			{
+				// The first round only warms up the virtual machine
+				System.out.printf("%d clauses: pairwise %d in %8.1f ms, minimalDnf %d in %6.1f ms%n", clauses.size(), pairwise, pairwise_ms, minimal, minimal_ms);
+			}
+		}
+	}
+	
+	/**
+	 * Keeps the clauses that contain no other clause by comparing each pair.
+	 * @param clauses The clauses
+	 * @return The minimal clauses
+	 */
+	protected static List<Clause> pairwise(Set<Clause> clauses)
+	{
+		List<Clause> minimal = new ArrayList<Clause>();
+		for (Clause c : clauses)
+		{
+			boolean keep = true;
+			for (Clause d : clauses)
+			{
+				if (d.size() < c.size() && c.containsAll(d))
+				{
+					keep = false;
+					break;
+				}
+			}
+			if (keep)
+			{
+				minimal.add(c);
+			}
+		}
+		return minimal;
+	}
+}
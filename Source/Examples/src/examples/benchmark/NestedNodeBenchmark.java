@@ -0,0 +1,55 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import ca.uqac.lif.dag.NestedNode;
+import ca.uqac.lif.dag.Node;
+
+/**
+ * Measures the time taken to encapsulate a large explanation graph into a
+ * {@link NestedNode}, as is done by circuits each time they develop the
+ * explanation of one of their inputs or outputs. The program builds trees of
+ * increasing size with the same shape as in {@link PinTableBenchmark}, and
+ * calls {@link NestedNode#createFromTree(Node)} on each of them.
+ * <p>
+ * Usage: <tt>NestedNodeBenchmark [max-nodes] [fan-out] [rounds]</tt>
+ */
+public class NestedNodeBenchmark
+{
+	public static void main(String[] args)
+	{
+		int max_nodes = args.length > 0 ? Integer.parseInt(args[0]) : 80000;
+		int fan_out = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		for (int num_nodes = 10000; num_nodes <= max_nodes; num_nodes *= 2)
+		{
+			Node[] nodes = PinTableBenchmark.buildTree(num_nodes, fan_out);
+			// Warm-up round
+			int out_arity = NestedNode.createFromTree(nodes[0]).getOutputArity();
+			long start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+			{
+				NestedNode.createFromTree(nodes[0]);
+			}
+			double duration = elapsedMs(start) / rounds;
+			System.out.printf("%7d nodes, %7d leaves: %8.1f ms%n", num_nodes, out_arity, duration);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.allocatedBytes;
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.NodeSet;
+
+/**
+ * Compares the time taken and the memory allocated to record the nodes of a
+ * large graph as visited, with a {@link NodeSet} and with the hash sets it
+ * replaces. The nodes are those of the tree of {@link PinTableBenchmark},
+ * and each node is added then looked up once, as in a crawl.
+ * <p>
+ * Usage: <tt>NodeSetBenchmark [nodes] [rounds]</tt>
+ */
+public class NodeSetBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		Node[] nodes = PinTableBenchmark.buildTree(num_nodes, 4);
+		for (int r = 0; r <= rounds; r++)
+		{
+			// The first round only warms up the virtual machine
+			boolean print = r > 0;
+			run("HashSet", nodes, print, new HashSet<Node>());
+			run("Identity", nodes, print, Collections.newSetFromMap(new IdentityHashMap<Node,Boolean>()));
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			NodeSet set = new NodeSet();
+			int count = 0;
+			for (Node n : nodes)
+			{
+				set.add(n);
+			}
+			for (Node n : nodes)
+			{
+				count += set.contains(n) ? 1 : 0;
+			}
+			report("NodeSet", print, elapsedMs(start), allocatedBytes() - bytes, count);
+		}
+	}
+	
+	/**
+	 * Adds the nodes to a set and looks them up.
+	 * @param title The name of the set
+	 * @param nodes The nodes
+	 * @param print Whether to print the results
+	 * @param set The set
+	 */
+	protected static void run(String title, Node[] nodes, boolean print, Set<Node> set)
+	{
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		int count = 0;
+		for (Node n : nodes)
+		{
+			set.add(n);
+		}
+		for (Node n : nodes)
+		{
+			count += set.contains(n) ? 1 : 0;
+		}
+		report(title, print, elapsedMs(start), allocatedBytes() - bytes, count);
+	}
+	
+	/**
+	 * Prints the results of a round.
+	 */
+	protected static void report(String title, boolean print, double ms, long bytes, int count)
+	{
+		if (print)
+		{
+			System.out.printf("%-9s %7.1f ms, %7.1f MB allocated (%d)%n", title, ms, bytes / 1048576d, count);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import ca.uqac.lif.dag.Crawler;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.ParallelCrawler;
+
+/**
+ * Compares the time taken to crawl a large graph with the sequential
+ * {@link Crawler} and with the {@link ParallelCrawler}, for thread pools of
+ * increasing size. The graph is the same tree as in
+ * {@link PinTableBenchmark}; the visit performs a small amount of work on
+ * each node, so that the benchmark is not dominated by the bookkeeping of the
+ * crawl alone. For each pool, the benchmark also reports the number of
+ * tasks stolen by idle threads, which shows how widely the frontier is
+ * spread even on a machine with fewer processors than threads.
+ * <p>
+ * Usage: <tt>ParallelCrawlerBenchmark [nodes] [fan-out] [rounds] [work]
+ * [threads]</tt>
+ */
+public class ParallelCrawlerBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int fan_out = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		int work = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+		Node[] nodes = PinTableBenchmark.buildTree(num_nodes, fan_out);
+		int max_threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		System.out.println("Nodes:           " + nodes.length);
+		System.out.println("Processors:      " + Runtime.getRuntime().availableProcessors());
+		// Sequential baseline
+		SequentialWorker seq = new SequentialWorker(nodes[0], work);
+		seq.crawl();
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++)
+		{
+			seq.crawl();
+		}
+		double seq_duration = elapsedMs(start) / rounds;
+		System.out.printf("Sequential:      %.1f ms%n", seq_duration);
+		for (int threads = 1; threads <= max_threads; threads *= 2)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			ParallelWorker par = new ParallelWorker(nodes[0], pool, work);
+			par.crawl();
+			start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+			{
+				par.crawl();
+			}
+			double duration = elapsedMs(start) / rounds;
+			System.out.printf("Parallel (%2d):   %.1f ms (speedup %.2f, %d steals)%n", threads, duration, seq_duration / duration, pool.getStealCount());
+			pool.shutdown();
+		}
+		System.out.println("Checksum:        " + seq.m_checksum);
+	}
+
+	/**
+	 * Performs a fixed amount of arithmetic, standing for the processing of
+	 * a node.
+	 * @param n The node
+	 * @param work The number of iterations
+	 * @return A value computed from the node
+	 */
+	protected static long process(Node n, int work)
+	{
+		long x = System.identityHashCode(n);
+		for (int i = 0; i < work; i++)
+		{
+			x = x * 6364136223846793005L + 1442695040888963407L;
+		}
+		return x;
+	}
+
+	/**
+	 * Sequential crawler processing every node.
+	 */
+	protected static class SequentialWorker extends Crawler
+	{
+		protected final int m_work;
+
+		protected long m_checksum;
+
+		public SequentialWorker(Node start, int work)
+		{
+			super(start);
+			m_work = work;
+		}
+
+		@Override
+		public void visit(Node n)
+		{
+			m_checksum += process(n, m_work);
+		}
+	}
+
+	/**
+	 * Parallel crawler processing every node.
+	 */
+	protected static class ParallelWorker extends ParallelCrawler
+	{
+		protected final int m_work;
+
+		protected final LongAdder m_checksum = new LongAdder();
+
+		public ParallelWorker(Node start, ForkJoinPool pool, int work)
+		{
+			super(start, pool);
+			m_work = work;
+		}
+
+		@Override
+		public void visit(Node n)
+		{
+			m_checksum.add(process(n, m_work));
+		}
+	}
+}
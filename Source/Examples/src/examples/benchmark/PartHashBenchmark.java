@@ -0,0 +1,223 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import ca.uqac.lif.petitpoucet.ComposedPart;
+import ca.uqac.lif.petitpoucet.function.NthOutput;
+import ca.uqac.lif.petitpoucet.function.strings.Position;
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+
+/**
+ * Compares the hash codes of parts with the sums and products they replace,
+ * on populations of parts such as those found in large lineage graphs:
+ * <ul>
+ * <li>the elements of a vector, <tt>[i]</tt></li>
+ * <li>the elements of the first outputs of a function,
+ * <tt>[i] ∘ ↓j</tt></li>
+ * <li>the short ranges of a long string</li>
+ * <li>the positions in a text of many lines</li>
+ * </ul>
+ * For each population, the benchmark prints the number of distinct hash
+ * codes, the longest chain in a hash table of the population's size, and the
+ * time taken to put every part in a {@link HashMap} and to look it up.
+ * The former hash codes are obtained by wrapping each part in a key that
+ * computes them.
+ * <p>
+ * The map is filled once in the order in which the parts are created, and
+ * once in a random order. Parts created in order have nearly sequential
+ * hash codes when these codes are sums, which makes the map access memory
+ * sequentially; the random order removes this advantage.
+ * <p>
+ * Usage: <tt>PartHashBenchmark [parts] [rounds]</tt>
+ */
+public class PartHashBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_parts = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		Object[] elements = new Object[num_parts];
+		int[] elements_old = new int[num_parts];
+		for (int i = 0; i < num_parts; i++)
+		{
+			elements[i] = new NthElement(i);
+			elements_old[i] = i;
+		}
+		Object[] composed = new Object[num_parts];
+		int[] composed_old = new int[num_parts];
+		for (int i = 0; i < num_parts; i++)
+		{
+			// Four outputs, each with num_parts / 4 elements
+			int index = i / 4, output = i % 4;
+			composed[i] = new ComposedPart(new NthElement(index), new NthOutput(output));
+			composed_old[i] = index + output;
+		}
+		Object[] ranges = new Object[num_parts];
+		int[] ranges_old = new int[num_parts];
+		for (int i = 0; i < num_parts; i++)
+		{
+			// Ranges of 1 to 5 characters
+			int start = i / 5, end = start + i % 5;
+			ranges[i] = new Range(start, end);
+			ranges_old[i] = start + end;
+		}
+		Object[] positions = new Object[num_parts];
+		int[] positions_old = new int[num_parts];
+		for (int i = 0; i < num_parts; i++)
+		{
+			// Lines of 80 characters
+			int line = i / 80, column = i % 80;
+			positions[i] = new Position(line, column);
+			positions_old[i] = line * column;
+		}
+		for (int r = 0; r <= rounds; r++)
+		{
+			// The first round only warms up the virtual machine
+			boolean print = r > 0;
+			run("[i]", print, elements, elements_old);
+			run("[i] ∘ ↓j", print, composed, composed_old);
+			run("Range", print, ranges, ranges_old);
+			run("Position", print, positions, positions_old);
+		}
+	}
+	
+	/**
+	 * Measures the hash codes of a population of parts.
+	 * @param title The name of the population
+	 * @param print Whether to print the results
+	 * @param parts The parts
+	 * @param old_hashes The former hash codes of these parts
+	 */
+	protected static void run(String title, boolean print, Object[] parts, int[] old_hashes)
+	{
+		Key[] old_keys = new Key[parts.length];
+		int[] new_hashes = new int[parts.length];
+		for (int i = 0; i < parts.length; i++)
+		{
+			old_keys[i] = new Key(parts[i], old_hashes[i]);
+			new_hashes[i] = parts[i].hashCode();
+		}
+		report(title + " (before)", print, old_hashes, time(old_keys), time(shuffle(old_keys)));
+		report(title + " (after)", print, new_hashes, time(parts), time(shuffle(parts)));
+	}
+	
+	/**
+	 * Puts objects in a hash map, then looks them up.
+	 * @param keys The objects
+	 * @return The time taken, in milliseconds
+	 */
+	protected static double time(Object[] keys)
+	{
+		long start = System.nanoTime();
+		Map<Object,Integer> map = new HashMap<Object,Integer>();
+		for (int i = 0; i < keys.length; i++)
+		{
+			map.put(keys[i], i);
+		}
+		int found = 0;
+		for (Object k : keys)
+		{
+			found += map.containsKey(k) ? 1 : 0;
+		}
+		if (found != keys.length)
+		{
+			throw new IllegalStateException("Missing keys");
+		}
+		return elapsedMs(start);
+	}
+	
+	/**
+	 * Copies an array of objects in a random order.
+	 * @param keys The objects
+	 * @return The shuffled copy
+	 */
+	protected static Object[] shuffle(Object[] keys)
+	{
+		Object[] shuffled = keys.clone();
+		Random r = new Random(0);
+		for (int i = shuffled.length - 1; i > 0; i--)
+		{
+			int j = r.nextInt(i + 1);
+			Object o = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = o;
+		}
+		return shuffled;
+	}
+	
+	/**
+	 * Prints the distribution of hash codes and the time taken by a hash map.
+	 */
+	protected static void report(String title, boolean print, int[] hashes, double ms, double shuffled_ms)
+	{
+		if (!print)
+		{
+			return;
+		}
+		Set<Integer> distinct = new HashSet<Integer>();
+		int buckets = Integer.highestOneBit(hashes.length) << 1;
+		int[] chains = new int[buckets];
+		int longest = 0;
+		for (int h : hashes)
+		{
+			distinct.add(h);
+			// Same spreading of the bits as in HashMap
+			int b = (h ^ (h >>> 16)) & (buckets - 1);
+			longest = Math.max(longest, ++chains[b]);
+		}
+		System.out.printf("%-20s %8d distinct, longest chain %6d, %8.1f ms in order, %8.1f ms shuffled%n", title, distinct.size(), longest, ms, shuffled_ms);
+	}
+	
+	/**
+	 * Wraps an object and gives it a hash code of its own.
+	 */
+	protected static class Key
+	{
+		protected final Object m_object;
+		
+		protected final int m_hash;
+		
+		public Key(Object o, int hash)
+		{
+			super();
+			m_object = o;
+			m_hash = hash;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return m_hash;
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Key && ((Key) o).m_object.equals(m_object);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+import static examples.benchmark.BenchmarkUtilities.usedMemory;
+
+import ca.uqac.lif.dag.LabelledNode;
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.NodeConnector;
+import ca.uqac.lif.dag.Pin;
+
+/**
+ * Measures the memory footprint of nodes and the time taken to enumerate
+ * their links. The program builds a tree of {@link LabelledNode}s with a
+ * fixed fan-out, which is the typical shape of a lineage graph, and then
+ * repeatedly enumerates the input and output links of every node, in the
+ * same way as the crawlers and renderers of the library do.
+ * <p>
+ * Usage: <tt>PinTableBenchmark [nodes] [fan-out] [rounds]</tt>
+ */
+public class PinTableBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int fan_out = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		long mem_before = usedMemory();
+		Node[] nodes = buildTree(num_nodes, fan_out);
+		long mem_after = usedMemory();
+		System.out.println("Nodes:           " + nodes.length);
+		System.out.printf("Bytes per node:  %.1f%n", (mem_after - mem_before) / (double) nodes.length);
+		long checksum = 0;
+		// Warm-up round
+		checksum += enumerateLinks(nodes);
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++)
+		{
+			checksum += enumerateLinks(nodes);
+		}
+		double duration = elapsedMs(start);
+		System.out.printf("Traversal:       %.1f ms per round%n", duration / rounds);
+		System.out.println("Checksum:        " + checksum);
+	}
+
+	/**
+	 * Builds a tree of labelled nodes.
+	 * @param num_nodes The number of nodes in the tree
+	 * @param fan_out The number of children of each internal node
+	 * @return The array of nodes of the tree, in breadth-first order
+	 */
+	protected static Node[] buildTree(int num_nodes, int fan_out)
+	{
+		Node[] nodes = new Node[num_nodes];
+		for (int i = 0; i < num_nodes; i++)
+		{
+			nodes[i] = new LabelledNode(i);
+			if (i > 0)
+			{
+				NodeConnector.connect(nodes[(i - 1) / fan_out], 0, nodes[i], 0);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Enumerates all the input and output links of every node.
+	 * @param nodes The nodes
+	 * @return A checksum computed from the links, so that the work cannot be
+	 * optimized away
+	 */
+	protected static long enumerateLinks(Node[] nodes)
+	{
+		long sum = 0;
+		for (Node n : nodes)
+		{
+			for (int i = 0; i < n.getOutputArity(); i++)
+			{
+				for (Pin<? extends Node> pin : n.getOutputLinks(i))
+				{
+					sum += pin.getIndex() + 1;
+				}
+			}
+			for (int i = 0; i < n.getInputArity(); i++)
+			{
+				for (Pin<? extends Node> pin : n.getInputLinks(i))
+				{
+					sum += pin.getIndex() + 1;
+				}
+			}
+		}
+		return sum;
+	}
+}
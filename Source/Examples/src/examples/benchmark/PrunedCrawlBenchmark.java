@@ -0,0 +1,101 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import ca.uqac.lif.dag.Crawler;
+import ca.uqac.lif.dag.Crawler.Order;
+import ca.uqac.lif.dag.Node;
+
+/**
+ * Compares the time taken by a complete crawl of a large tree with the time
+ * taken to find its first leaf in depth-first order, by stopping the crawl
+ * as soon as the leaf is visited, and to visit the nodes within a few edges
+ * of the root. The tree is the same as in {@link PinTableBenchmark}.
+ * <p>
+ * Usage: <tt>PrunedCrawlBenchmark [nodes] [fan-out] [rounds]</tt>
+ */
+public class PrunedCrawlBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int fan_out = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		Node[] nodes = PinTableBenchmark.buildTree(num_nodes, fan_out);
+		for (int r = 0; r <= rounds; r++)
+		{
+			// The first round only warms up the virtual machine
+			boolean print = r > 0;
+			FirstLeaf full = new FirstLeaf(nodes[0], false);
+			full.setOrder(Order.DEPTH_FIRST);
+			long start = System.nanoTime();
+			full.crawl();
+			report("Complete", print, elapsedMs(start), full.m_visited);
+			FirstLeaf pruned = new FirstLeaf(nodes[0], true);
+			pruned.setOrder(Order.DEPTH_FIRST);
+			start = System.nanoTime();
+			pruned.crawl();
+			report("Stopped", print, elapsedMs(start), pruned.m_visited);
+			FirstLeaf shallow = new FirstLeaf(nodes[0], false);
+			shallow.setMaxDepth(3);
+			start = System.nanoTime();
+			shallow.crawl();
+			report("Depth 3", print, elapsedMs(start), shallow.m_visited);
+		}
+	}
+	
+	/**
+	 * Prints the results of a crawl.
+	 */
+	protected static void report(String title, boolean print, double ms, int visited)
+	{
+		if (print)
+		{
+			System.out.printf("%-9s %8.2f ms, %7d nodes visited%n", title, ms, visited);
+		}
+	}
+	
+	/**
+	 * Crawler that counts the nodes it visits and can stop at the first leaf.
+	 */
+	protected static class FirstLeaf extends Crawler
+	{
+		protected final boolean m_stopAtLeaf;
+		
+		protected int m_visited;
+		
+		public FirstLeaf(Node start, boolean stop_at_leaf)
+		{
+			super(start);
+			m_stopAtLeaf = stop_at_leaf;
+			allowBackward(false);
+		}
+		
+		@Override
+		public void visit(Node n)
+		{
+			m_visited++;
+			if (m_stopAtLeaf && n.getOutputNodeCount() == 0)
+			{
+				stop();
+			}
+		}
+	}
+}
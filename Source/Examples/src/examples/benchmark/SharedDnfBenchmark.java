@@ -0,0 +1,137 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.util.Set;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.AndNode;
+import ca.uqac.lif.petitpoucet.Clause;
+import ca.uqac.lif.petitpoucet.GraphUtilities;
+import ca.uqac.lif.petitpoucet.NodeFactory;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.PartNode;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+
+/**
+ * Measures the time taken by {@link GraphUtilities#asDnf(Node)} on the
+ * explanation of a pipeline of sliding windows: each element of a stage
+ * depends on a window of elements of the previous stage, so that the
+ * elements of a stage are shared by the windows of the next one, and the
+ * number of paths from the root to an input element grows exponentially
+ * with the number of stages. The benchmark also converts a chain of nodes
+ * deeper than the call stack allows for a recursive traversal.
+ * <p>
+ * Usage: <tt>SharedDnfBenchmark [stages] [width] [length] [depth] [rounds]</tt>
+ */
+public class SharedDnfBenchmark
+{
+	public static void main(String[] args)
+	{
+		int stages = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int width = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int length = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		int depth = args.length > 3 ? Integer.parseInt(args[3]) : 100000;
+		int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+		Node pipeline = buildPipeline(stages, width, length);
+		Node chain = buildChain(depth);
+		for (int r = 0; r <= rounds; r++)
+		{
+			long start = System.nanoTime();
+			Set<Clause> clauses = GraphUtilities.asDnf(pipeline);
+			double ms = elapsedMs(start);
+			String deep;
+			start = System.nanoTime();
+			try
+			{
+				deep = GraphUtilities.asDnf(chain).size() + " clause(s)";
+			}
+			catch (StackOverflowError e)
+			{
+				deep = "stack overflow";
+			}
+			double deep_ms = elapsedMs(start);
+			if (r > 0)
+			{
+				// The first round only warms up the virtual machine
+				System.out.printf("Pipeline: %d clauses in %8.1f ms; chain of %d: %s in %6.1f ms%n", clauses.size(), ms, depth, deep, deep_ms);
+			}
+		}
+	}
+	
+	/**
+	 * Builds the explanation of a pipeline of sliding windows.
+	 * @param stages The number of windowed stages
+	 * @param width The width of the windows
+	 * @param length The length of the output vector
+	 * @return The root of the graph
+	 */
+	protected static Node buildPipeline(int stages, int width, int length)
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		int size = length + stages * (width - 1);
+		PartNode[] previous = new PartNode[size];
+		for (int i = 0; i < size; i++)
+		{
+			previous[i] = factory.getPartNode(new NthElement(i), "stage 0");
+		}
+		for (int s = 1; s <= stages; s++)
+		{
+			size -= width - 1;
+			PartNode[] current = new PartNode[size];
+			for (int i = 0; i < size; i++)
+			{
+				current[i] = factory.getPartNode(new NthElement(i), "stage " + s);
+				AndNode and = factory.getAndNode();
+				current[i].addChild(and);
+				for (int j = 0; j < width; j++)
+				{
+					and.addChild(previous[i + j]);
+				}
+			}
+			previous = current;
+		}
+		PartNode root = factory.getPartNode(Part.all, "stage " + stages);
+		for (PartNode pn : previous)
+		{
+			root.addChild(pn);
+		}
+		return root;
+	}
+	
+	/**
+	 * Builds a chain of part nodes, each explained by the next.
+	 * @param depth The number of nodes in the chain
+	 * @return The first node of the chain
+	 */
+	protected static Node buildChain(int depth)
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode first = factory.getPartNode(Part.all, "chain 0");
+		PartNode last = first;
+		for (int i = 1; i < depth; i++)
+		{
+			PartNode next = factory.getPartNode(Part.all, "chain " + i);
+			last.addChild(next);
+			last = next;
+		}
+		return first;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.Clause;
+import ca.uqac.lif.petitpoucet.ClauseSearch;
+import ca.uqac.lif.petitpoucet.GraphUtilities;
+
+/**
+ * Measures the time taken by {@link ClauseSearch} to find the <i>k</i>
+ * smallest clauses of a conjunction of disjunctions sharing half of their
+ * leaves, as built by {@link ZddBenchmark}. For a small number of
+ * disjunctions, the time is compared with that of computing every clause
+ * with {@link GraphUtilities#asDnf(Node) asDnf} and sorting them by size.
+ * <p>
+ * Usage: <tt>SmallestClausesBenchmark [disjunctions] [leaves] [k] [rounds]</tt>
+ */
+public class SmallestClausesBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_or = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int num_leaves = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		Node small = ZddBenchmark.buildGraph(6, num_leaves);
+		Node large = ZddBenchmark.buildGraph(num_or, num_leaves);
+		for (int r = 0; r <= rounds; r++)
+		{
+			long start = System.nanoTime();
+			List<Clause> sorted = new ArrayList<Clause>(GraphUtilities.asDnf(small));
+			sorted.sort(Comparator.comparingInt(Clause::size));
+			int smallest = sorted.get(0).size();
+			double dnf_ms = elapsedMs(start);
+			start = System.nanoTime();
+			ClauseSearch small_search = new ClauseSearch(small);
+			List<Clause> small_clauses = take(small_search, k);
+			double small_ms = elapsedMs(start);
+			start = System.nanoTime();
+			ClauseSearch large_search = new ClauseSearch(large);
+			List<Clause> large_clauses = take(large_search, k);
+			double large_ms = elapsedMs(start);
+			if (r > 0)
+			{
+				// The first round only warms up the virtual machine
+				System.out.printf("6 disjunctions: asDnf and sort %8.2f ms (smallest %d), search %6.2f ms (smallest %d, %d states)%n", dnf_ms, smallest, small_ms, small_clauses.get(0).size(), small_search.getStateCount());
+				System.out.printf("%d disjunctions: search %6.2f ms for %d clauses of size %d to %d, %d states%n", num_or, large_ms, large_clauses.size(), large_clauses.get(0).size(), large_clauses.get(large_clauses.size() - 1).size(), large_search.getStateCount());
+			}
+		}
+	}
+	
+	/**
+	 * Gets the first clauses found by a search.
+	 */
+	protected static List<Clause> take(ClauseSearch search, int k)
+	{
+		List<Clause> clauses = new ArrayList<Clause>();
+		while (clauses.size() < k && search.hasNext())
+		{
+			clauses.add(search.next());
+		}
+		return clauses;
+	}
+}
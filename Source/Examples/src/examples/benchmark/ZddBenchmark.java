@@ -0,0 +1,116 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package examples.benchmark;
+
+import static examples.benchmark.BenchmarkUtilities.elapsedMs;
+
+import java.math.BigInteger;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.AndNode;
+import ca.uqac.lif.petitpoucet.GraphUtilities;
+import ca.uqac.lif.petitpoucet.NodeFactory;
+import ca.uqac.lif.petitpoucet.OrNode;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.PartNode;
+import ca.uqac.lif.petitpoucet.Zdd;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+
+/**
+ * Measures the time taken to build the {@link Zdd} of a conjunction of
+ * disjunctions, such as the explanation of a comparison of two vectors, to
+ * count its clauses and to reduce it to its minimal clauses. Consecutive
+ * disjunctions share half of their leaves, as in {@link DnfBenchmark}, so
+ * that many clauses are not minimal. For a small number of disjunctions,
+ * the time is compared with that of
+ * {@link GraphUtilities#asDnf(Node) asDnf}.
+ * <p>
+ * Usage: <tt>ZddBenchmark [disjunctions] [leaves] [rounds]</tt>
+ */
+public class ZddBenchmark
+{
+	public static void main(String[] args)
+	{
+		int num_or = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int num_leaves = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		Node small = buildGraph(6, num_leaves);
+		Node large = buildGraph(num_or, num_leaves);
+		for (int r = 0; r <= rounds; r++)
+		{
+			// The first round only warms up the virtual machine
+			boolean print = r > 0;
+			long start = System.nanoTime();
+			int size = GraphUtilities.asDnf(small).size();
+			report("asDnf, 6", print, elapsedMs(start), BigInteger.valueOf(size), -1);
+			run("ZDD, 6", print, small);
+			run("ZDD, " + num_or, print, large);
+		}
+	}
+	
+	/**
+	 * Builds the diagram of a graph, counts its clauses and its minimal
+	 * clauses.
+	 */
+	protected static void run(String title, boolean print, Node root)
+	{
+		long start = System.nanoTime();
+		Zdd zdd = new Zdd();
+		int f = zdd.build(root);
+		BigInteger count = zdd.count(f);
+		report(title, print, elapsedMs(start), count, zdd.getNodeCount());
+		start = System.nanoTime();
+		int m = zdd.minimal(f);
+		count = zdd.count(m);
+		report(title + ", minimal", print, elapsedMs(start), count, zdd.getNodeCount());
+	}
+	
+	/**
+	 * Builds a conjunction of disjunctions, where consecutive disjunctions
+	 * share half of their leaves.
+	 */
+	protected static Node buildGraph(int num_or, int num_leaves)
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode root = factory.getPartNode(Part.all, "output");
+		AndNode and = factory.getAndNode();
+		root.addChild(and);
+		for (int i = 0; i < num_or; i++)
+		{
+			OrNode or = factory.getOrNode();
+			and.addChild(or);
+			for (int j = 0; j < num_leaves; j++)
+			{
+				or.addChild(factory.getPartNode(new NthElement(i * num_leaves / 2 + j), "vector"));
+			}
+		}
+		return root;
+	}
+	
+	/**
+	 * Prints the results of a round.
+	 */
+	protected static void report(String title, boolean print, double ms, BigInteger clauses, int nodes)
+	{
+		if (print)
+		{
+			String count = clauses.bitLength() > 40 ? String.format("%.3e", clauses.doubleValue()) : clauses.toString();
+			System.out.printf("%-20s %9.2f ms, %10s clauses, %7d nodes%n", title, ms, count, nodes);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Micro-benchmarks measuring the time and memory consumed by the core data
+ * structures of the library on large graphs. These programs are not part of
+ * the test suite; each of them is meant to be run on its own, preferably
+ * with a generous heap (e.g. <tt>-Xmx4g</tt>).
+ */
+package examples.benchmark;
@@ -41,7 +41,8 @@ import ca.uqac.lif.util.Duplicable;
 public abstract class AtomicFunction extends Node implements Function, Duplicable, ExplanationQueryable
 {
 	/**
-	 * A context that can be assigned to a function.
+	 * A context that can be assigned to a function. The map is only created
+	 * when a first context value is set, as most functions never use it.
 	 */
 	protected Map<String,Object> m_context;
 	
@@ -65,7 +66,7 @@ public abstract class AtomicFunction extends Node implements Function, Duplicabl
 	protected AtomicFunction(int in_arity, int out_arity)
 	{
 		super(in_arity, out_arity);
-		m_context = new HashMap<>();
+		m_context = null;
 		m_inputPins = new AtomicFunctionInputPin[in_arity];
 		for (int i = 0; i < in_arity; i++)
 		{
@@ -81,12 +82,20 @@ public abstract class AtomicFunction extends Node implements Function, Duplicabl
 	@Override
 	public Object getContext(String key)
 	{
+		if (m_context == null)
+		{
+			return null;
+		}
 		return m_context.get(key);
 	}
 
 	@Override
 	public void setContext(String key, Object value)
 	{
+		if (m_context == null)
+		{
+			m_context = new HashMap<>();
+		}
 		m_context.put(key, value);
 	}
 
@@ -100,9 +109,9 @@ public abstract class AtomicFunction extends Node implements Function, Duplicabl
 	protected void copyInto(AtomicFunction f, boolean with_state)
 	{
 		super.copyInto(f, with_state);
-		if (with_state)
+		if (with_state && m_context != null)
 		{
-			f.m_context.putAll(m_context);
+			f.m_context = new HashMap<>(m_context);
 		}
 	}
 	
@@ -122,7 +131,7 @@ public abstract class AtomicFunction extends Node implements Function, Duplicabl
 	@Override
 	/*@ non_null @*/ public AtomicFunctionInputPin getInputPin(int index) throws IndexOutOfBoundsException
 	{
-		if (index < 0 || index >= m_inputs.size())
+		if (index < 0 || index >= getInputArity())
 		{
 			throw new IndexOutOfBoundsException();
 		}
@@ -132,7 +141,7 @@ public abstract class AtomicFunction extends Node implements Function, Duplicabl
 	@Override
 	/*@ non_null @*/ public AtomicFunctionOutputPin getOutputPin(int index) throws IndexOutOfBoundsException
 	{
-		if (index < 0 || index >= m_outputs.size())
+		if (index < 0 || index >= getOutputArity())
 		{
 			throw new IndexOutOfBoundsException();
 		}
@@ -167,7 +176,11 @@ public abstract class AtomicFunction extends Node implements Function, Duplicabl
 	@Override
 	/*@ non_null @*/ public final PartNode getExplanation(Part part)
 	{
-		return getExplanation(part, RelationNodeFactory.getFactory());
+		// Each query uses its own factory, which forgets its nodes once done
+		try (RelationNodeFactory factory = new RelationNodeFactory())
+		{
+			return getExplanation(part, factory);
+		}
 	}
 	
 	@Override
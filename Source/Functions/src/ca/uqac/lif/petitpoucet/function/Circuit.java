@@ -19,15 +19,14 @@ package ca.uqac.lif.petitpoucet.function;
 
 import java.util.ArrayDeque;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Queue;
-import java.util.Set;
 
 import ca.uqac.lif.dag.NestedNode;
 import ca.uqac.lif.dag.Node;
 import ca.uqac.lif.dag.NodeConnector;
+import ca.uqac.lif.dag.NodeSet;
 import ca.uqac.lif.dag.Pin;
 import ca.uqac.lif.petitpoucet.Part;
 import ca.uqac.lif.petitpoucet.NodeFactory;
@@ -255,12 +254,14 @@ public class Circuit extends NestedNode implements Function, Duplicable, Explana
 	protected static NestedNode developToInput(Part start, Node subject, RelationNodeFactory factory)
 	{
 		Queue<PartNode> to_explore = new ArrayDeque<>();
-		Set<PartNode> explored = new HashSet<>();
+		NodeSet queued = new NodeSet();
+		NodeSet explored = new NodeSet();
 		PartNode root = null;
 		if (subject instanceof ExplanationQueryable)
 		{
 			root = ((ExplanationQueryable) subject).getExplanation(start, factory);
 			to_explore.add(root);
+			queued.add(root);
 		}
 		while (!to_explore.isEmpty())
 		{
@@ -301,13 +302,14 @@ public class Circuit extends NestedNode implements Function, Duplicable, Explana
 				// Get explanation for this function's output
 				Part upstream_part = NthInput.replaceInByOut(current_part, pin.getIndex());
 				PartNode upstream_node = factory.getPartNode(upstream_part, upstream_subject);
-				if (to_explore.contains(upstream_node) || explored.contains(upstream_node))
+				if (queued.contains(upstream_node) || explored.contains(upstream_node))
 				{
 					continue;
 				}
 				PartNode upstream_root = ((ExplanationQueryable) upstream_subject).getExplanation(upstream_part, factory);
 				pn.addChild(upstream_root);
 				to_explore.add(upstream_root);
+				queued.add(upstream_root);
 			}
 		}
 		if (root == null)
@@ -341,12 +343,14 @@ public class Circuit extends NestedNode implements Function, Duplicable, Explana
 	protected static NestedNode developToOutput(Part start, Node subject, RelationNodeFactory factory)
 	{
 		Queue<PartNode> to_explore = new ArrayDeque<>();
-		Set<PartNode> explored = new HashSet<>();
+		NodeSet queued = new NodeSet();
+		NodeSet explored = new NodeSet();
 		PartNode root = null;
 		if (subject instanceof ExplanationQueryable)
 		{
 			root = ((ExplanationQueryable) subject).getExplanation(start, factory);
 			to_explore.add(root);
+			queued.add(root);
 		}
 		while (!to_explore.isEmpty())
 		{
@@ -382,13 +386,14 @@ public class Circuit extends NestedNode implements Function, Duplicable, Explana
 				// Get explanation for this function's input
 				Part downstream_part = NthOutput.replaceOutByIn(current_part, pin.getIndex());
 				PartNode downstream_node = factory.getPartNode(downstream_part, downstream_subject);
-				if (to_explore.contains(downstream_node) || explored.contains(downstream_node))
+				if (queued.contains(downstream_node) || explored.contains(downstream_node))
 				{
 					continue;
 				}
 				PartNode downstream_root = ((ExplanationQueryable) downstream_subject).getExplanation(downstream_part, factory);
 				pn.addChild(downstream_root);
 				to_explore.add(downstream_root);
+				queued.add(downstream_root);
 			}
 		}
 		if (root == null)
@@ -487,6 +492,13 @@ public class Circuit extends NestedNode implements Function, Duplicable, Explana
 		return c;
 	}
 	
+	@Override
+	/*@ non_null @*/ public Circuit freeze()
+	{
+		super.freeze();
+		return this;
+	}
+	
 	protected void copyInto(Circuit c, boolean with_state)
 	{
 		super.copyInto(c, with_state);
@@ -496,7 +508,7 @@ public class Circuit extends NestedNode implements Function, Duplicable, Explana
 	@Override
 	/*@ non_null @*/ public CircuitInputPin getInputPin(int index) throws IndexOutOfBoundsException
 	{
-		if (index < 0 || index >= m_inputs.size())
+		if (index < 0 || index >= getInputArity())
 		{
 			throw new IndexOutOfBoundsException();
 		}
@@ -506,7 +518,7 @@ public class Circuit extends NestedNode implements Function, Duplicable, Explana
 	@Override
 	/*@ non_null @*/ public CircuitOutputPin getOutputPin(int index) throws IndexOutOfBoundsException
 	{
-		if (index < 0 || index >= m_outputs.size())
+		if (index < 0 || index >= getOutputArity())
 		{
 			throw new IndexOutOfBoundsException();
 		}
@@ -516,7 +528,11 @@ public class Circuit extends NestedNode implements Function, Duplicable, Explana
 	@Override
 	public PartNode getExplanation(Part part)
 	{
-		return getExplanation(part, RelationNodeFactory.getFactory());
+		// Each query uses its own factory, which forgets its nodes once done
+		try (RelationNodeFactory factory = new RelationNodeFactory())
+		{
+			return getExplanation(part, factory);
+		}
 	}
 	
 	@Override
@@ -0,0 +1,174 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet.function;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import ca.uqac.lif.petitpoucet.GraphReader;
+import ca.uqac.lif.petitpoucet.GraphWriter;
+import ca.uqac.lif.petitpoucet.ObjectEncoder;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.function.reflect.Field;
+import ca.uqac.lif.petitpoucet.function.reflect.ReturnValue;
+import ca.uqac.lif.petitpoucet.function.strings.Position;
+import ca.uqac.lif.petitpoucet.function.strings.PositionRange;
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+import ca.uqac.lif.petitpoucet.function.vector.Size;
+
+/**
+ * Encoder for the parts defined in this library, to be added to a
+ * {@link GraphWriter} and a {@link GraphReader} when writing and reading the
+ * explanations produced by functions. Each part is written as a byte giving
+ * its class, followed by its integer or string fields. Only instances of the
+ * exact classes are accepted, since the fields of a descendant would be lost.
+ */
+public final class FunctionPartEncoder implements ObjectEncoder
+{
+	/**
+	 * The single visible instance of this encoder.
+	 */
+	public static final FunctionPartEncoder instance = new FunctionPartEncoder();
+	
+	/**
+	 * The classes handled by this encoder, indexed by the byte that designates
+	 * them.
+	 */
+	private static final Class<?>[] s_classes = {NthInput.class, NthOutput.class, NthElement.class, Size.class, Range.class, PositionRange.class, Field.class, ReturnValue.class};
+	
+	private FunctionPartEncoder()
+	{
+		super();
+	}
+	
+	@Override
+	public String getName()
+	{
+		return "function-parts";
+	}
+	
+	@Override
+	public boolean canEncode(Object o)
+	{
+		return getType(o) >= 0;
+	}
+	
+	@Override
+	public void encode(DataOutput out, Object o) throws IOException
+	{
+		int type = getType(o);
+		out.writeByte(type);
+		switch (type)
+		{
+		case 0:
+			GraphWriter.writeVarint(out, ((NthInput) o).getIndex());
+			break;
+		case 1:
+			GraphWriter.writeVarint(out, ((NthOutput) o).getIndex());
+			break;
+		case 2:
+			GraphWriter.writeVarint(out, ((NthElement) o).getIndex());
+			break;
+		case 4:
+			GraphWriter.writeVarint(out, ((Range) o).getStart());
+			GraphWriter.writeVarint(out, ((Range) o).getEnd());
+			break;
+		case 5:
+			writePosition(out, ((PositionRange) o).getStart());
+			writePosition(out, ((PositionRange) o).getEnd());
+			break;
+		case 6:
+			GraphWriter.writeString(out, ((Field) o).getName());
+			break;
+		case 7:
+			GraphWriter.writeString(out, ((ReturnValue) o).getMethodName());
+			break;
+		default:
+			// Size has no field
+		}
+	}
+	
+	@Override
+	public Part decode(DataInput in) throws IOException
+	{
+		int type = in.readUnsignedByte();
+		switch (type)
+		{
+		case 0:
+			return new NthInput(GraphReader.readVarint(in));
+		case 1:
+			return new NthOutput(GraphReader.readVarint(in));
+		case 2:
+			return new NthElement(GraphReader.readVarint(in));
+		case 3:
+			return Size.instance;
+		case 4:
+			return new Range(GraphReader.readVarint(in), GraphReader.readVarint(in));
+		case 5:
+			return new PositionRange(readPosition(in), readPosition(in));
+		case 6:
+			return new Field(GraphReader.readString(in));
+		case 7:
+			return new ReturnValue(GraphReader.readString(in));
+		default:
+			throw new IOException("Invalid part type " + type);
+		}
+	}
+	
+	/**
+	 * Writes a position as its line and column.
+	 * @param out The output to write to
+	 * @param p The position
+	 * @throws IOException If the position cannot be written
+	 */
+	protected static void writePosition(DataOutput out, Position p) throws IOException
+	{
+		GraphWriter.writeVarint(out, p.getLine());
+		GraphWriter.writeVarint(out, p.getColumn());
+	}
+	
+	/**
+	 * Reads a position written by {@link #writePosition(DataOutput, Position)}.
+	 * @param in The input to read from
+	 * @return The position
+	 * @throws IOException If the position cannot be read
+	 */
+	protected static Position readPosition(DataInput in) throws IOException
+	{
+		return new Position(GraphReader.readVarint(in), GraphReader.readVarint(in));
+	}
+	
+	/**
+	 * Gets the byte that designates the class of an object.
+	 * @param o The object
+	 * @return The byte, or -1 if the class is not handled by this encoder
+	 */
+	private static int getType(Object o)
+	{
+		for (int i = 0; i < s_classes.length; i++)
+		{
+			if (s_classes[i] == o.getClass())
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -22,16 +22,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import ca.uqac.lif.dag.NestedNode;
 import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.dag.NodeSet;
 import ca.uqac.lif.dag.Pin;
 import ca.uqac.lif.dag.Renderer;
 import ca.uqac.lif.petitpoucet.AndNode;
+import ca.uqac.lif.petitpoucet.FrozenDag;
 import ca.uqac.lif.petitpoucet.GraphUtilities;
 import ca.uqac.lif.petitpoucet.OrNode;
 import ca.uqac.lif.petitpoucet.Part;
@@ -46,6 +46,16 @@ import ca.uqac.lif.petitpoucet.PartNode;
  */
 public class LineageDotRenderer implements Renderer
 {
+	/**
+	 * The DOT attributes of an "and" node.
+	 */
+	protected static final String AND_NODE_ATTRIBUTES = " [shape=\"circle\",label=<<font color='white'><b>∧</b></font>>,width=.25,fixedsize=\"true\",fillcolor=\"blue\",textcolor=\"white\"];";
+	
+	/**
+	 * The DOT attributes of an "or" node.
+	 */
+	protected static final String OR_NODE_ATTRIBUTES = " [shape=\"circle\",label=<<font color='white'><b>∨</b></font>>,width=.25,fixedsize=\"true\",fillcolor=\"red\",textcolor=\"white\"];";
+	
 	/**
 	 * The nodes used as the starting point for the rendering.
 	 */
@@ -61,14 +71,14 @@ public class LineageDotRenderer implements Renderer
 	 * to avoid outputting code for the same node when encountered multiple times
 	 * in the traversal of the graph.
 	 */
-	/*@ non_null @*/ protected Set<Node> m_rendered;
+	/*@ non_null @*/ protected NodeSet m_rendered;
 
 	/**
 	 * The set of nodes that have been expanded (nodes that had their children
 	 * rendered). Used internally by the renderer to avoid expanding the same
 	 * node when encountered multiple times in the traversal of the graph.
 	 */
-	/*@ non_null @*/ protected Set<Node> m_expanded;
+	/*@ non_null @*/ protected NodeSet m_expanded;
 
 	/**
 	 * The prefix to give to each node ID in the graph.
@@ -85,6 +95,12 @@ public class LineageDotRenderer implements Renderer
 	 */
 	/*@ non_null @*/ protected List<Node> m_leaves;
 
+	/**
+	 * The frozen graph to render, if the renderer has been given a graph in
+	 * this form instead of a list of roots.
+	 */
+	/*@ null @*/ protected FrozenDag m_dag;
+
 	/**
 	 * A counter used to give unique IDs to each new node encountered in the
 	 * graph.
@@ -117,8 +133,8 @@ public class LineageDotRenderer implements Renderer
 		m_idCounter = 0;
 		m_roots = roots;
 		m_nodeIds = new HashMap<>();
-		m_rendered = new HashSet<>();
-		m_expanded = new HashSet<>();
+		m_rendered = new NodeSet();
+		m_expanded = new NodeSet();
 		m_prefix = prefix;
 		m_nestingLevel = nesting_level;
 		m_indent = getIndent(nesting_level);
@@ -161,6 +177,19 @@ public class LineageDotRenderer implements Renderer
 		this(roots, "", 0, false);
 	}
 	
+	/**
+	 * Creates a new instance of renderer for a frozen graph. The output is the
+	 * same as for the graph the snapshot was taken from, except for nested
+	 * nodes, which are not expanded in a frozen graph and are therefore
+	 * rendered like any other unknown node.
+	 * @param dag The graph to render
+	 */
+	public LineageDotRenderer(/*@ non_null @*/ FrozenDag dag)
+	{
+		this(new ArrayList<Node>(0), "", 0, false);
+		m_dag = dag;
+	}
+	
 	/**
 	 * Sets whether to hide captions of non-leaf nodes.
 	 * @param b Set to {@code true} to hide captions, {@code false} otherwise
@@ -178,13 +207,20 @@ public class LineageDotRenderer implements Renderer
 			ps.println("digraph G {");
 			ps.println("compound=true;");
 			ps.println("node [style=\"filled\",shape=\"rectangle\",fontsize=10,fontname=\"Arial\"]");
-			for (Node root : m_roots)
+			if (m_dag != null)
 			{
-				render(ps, root);
+				renderFrozen(ps);
 			}
-			if (m_roots.size() > 1)
+			else
 			{
-				printRanks(ps);
+				for (Node root : m_roots)
+				{
+					render(ps, root);
+				}
+				if (m_roots.size() > 1)
+				{
+					printRanks(ps);
+				}
 			}
 			ps.println("}");
 		}
@@ -202,29 +238,150 @@ public class LineageDotRenderer implements Renderer
 	}
 	
 	protected void printRanks(PrintStream ps)
+	{
+		List<String> root_ids = new ArrayList<>(m_roots.size());
+		for (Node root : m_roots)
+		{
+			root_ids.add(m_nodeIds.get(root));
+		}
+		List<String> leaf_ids = new ArrayList<>(m_leaves.size());
+		for (Node leaf : m_leaves)
+		{
+			leaf_ids.add(m_nodeIds.get(leaf));
+		}
+		printRanks(ps, root_ids, leaf_ids);
+	}
+	
+	/**
+	 * Prints the instructions placing the roots, and then the leaves, of the
+	 * graph on the same rank.
+	 * @param ps The print stream where the instructions should be printed
+	 * @param root_ids The IDs of the roots
+	 * @param leaf_ids The IDs of the leaves
+	 */
+	protected void printRanks(PrintStream ps, List<String> root_ids, List<String> leaf_ids)
 	{
 		ps.println("edge [style=invis];");
 		ps.print("{rank=same; ");
-		for (int i = 0; i < m_roots.size(); i++)
+		for (int i = 0; i < root_ids.size(); i++)
 		{
 			if (i > 0)
 			{
 				ps.print(" -> ");
 			}
-			ps.print(m_nodeIds.get(m_roots.get(i)));
+			ps.print(root_ids.get(i));
 		}
 		ps.println(";};");
 		ps.print("{rank=same; ");
-		for (int i = 0; i < m_leaves.size(); i++)
+		for (int i = 0; i < leaf_ids.size(); i++)
 		{
 			if (i > 0)
 			{
 				ps.print(" -> ");
 			}
-			ps.print(m_nodeIds.get(m_leaves.get(i)));
+			ps.print(leaf_ids.get(i));
 		}
 		ps.println(";};");
 	}
+	
+	/**
+	 * Renders a frozen graph. Nodes and transitions are printed in the same
+	 * order as by {@link #render(PrintStream, Node)}, but the graph is
+	 * traversed with an explicit stack instead of recursion.
+	 * @param ps The print stream where the graph should be printed
+	 */
+	protected void renderFrozen(PrintStream ps)
+	{
+		String[] ids = new String[m_dag.size()];
+		List<String> leaf_ids = new ArrayList<>();
+		// Stack of (node, index of the next child to process) pairs
+		int[] stack = new int[32];
+		for (int r = 0; r < m_dag.getRootCount(); r++)
+		{
+			int root = m_dag.getRoot(r);
+			if (ids[root] != null)
+			{
+				continue;
+			}
+			renderFrozenNode(ps, root, ids, leaf_ids);
+			int top = 0;
+			stack[top++] = root;
+			stack[top++] = 0;
+			while (top > 0)
+			{
+				int current = stack[top - 2];
+				int k = stack[top - 1];
+				if (k == m_dag.getDegree(current))
+				{
+					top -= 2;
+					if (top > 0)
+					{
+						// Back to the parent: print the transition to this child
+						int parent = stack[top - 2];
+						ps.println(m_indent + ids[parent] + " -> " + ids[current] + ";");
+						stack[top - 1]++;
+					}
+					continue;
+				}
+				int child = m_dag.getChild(current, k);
+				if (ids[child] != null)
+				{
+					ps.println(m_indent + ids[current] + " -> " + ids[child] + ";");
+					stack[top - 1]++;
+					continue;
+				}
+				renderFrozenNode(ps, child, ids, leaf_ids);
+				if (top + 2 > stack.length)
+				{
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[top++] = child;
+				stack[top++] = 0;
+			}
+		}
+		if (m_dag.getRootCount() > 1)
+		{
+			List<String> root_ids = new ArrayList<>(m_dag.getRootCount());
+			for (int r = 0; r < m_dag.getRootCount(); r++)
+			{
+				root_ids.add(ids[m_dag.getRoot(r)]);
+			}
+			printRanks(ps, root_ids, leaf_ids);
+		}
+	}
+	
+	/**
+	 * Renders a node of a frozen graph. This method only adds a line in the
+	 * output file for the node itself and its properties.
+	 * @param ps The print stream where the node should be printed
+	 * @param id The identifier of the node in the frozen graph
+	 * @param ids The array of IDs given to the nodes rendered so far
+	 * @param leaf_ids The list of IDs of the leaves rendered so far
+	 */
+	protected void renderFrozenNode(PrintStream ps, int id, String[] ids, List<String> leaf_ids)
+	{
+		String n_id = m_prefix + m_idCounter++;
+		ids[id] = n_id;
+		boolean is_leaf = m_dag.isLeaf(id);
+		if (is_leaf)
+		{
+			leaf_ids.add(n_id);
+		}
+		switch (m_dag.getKind(id))
+		{
+		case OR:
+			ps.println(m_indent + n_id + OR_NODE_ATTRIBUTES);
+			break;
+		case AND:
+			ps.println(m_indent + n_id + AND_NODE_ATTRIBUTES);
+			break;
+		case PART:
+			renderPart(ps, m_dag.getPart(id), m_dag.getSubject(id), is_leaf || m_dag.isRoot(id), n_id);
+			break;
+		default:
+			ps.println(m_indent + n_id + " [label=\"?\"];");
+		}
+	}
 
 	/**
 	 * Recursive function that renders a node and then calls itself to render its
@@ -337,12 +494,12 @@ public class LineageDotRenderer implements Renderer
 	
 	protected void renderAndNode(PrintStream ps, AndNode node, String n_id)
 	{
-		ps.println(m_indent + n_id + " [shape=\"circle\",label=<<font color='white'><b>∧</b></font>>,width=.25,fixedsize=\"true\",fillcolor=\"blue\",textcolor=\"white\"];");
+		ps.println(m_indent + n_id + AND_NODE_ATTRIBUTES);
 	}
 	
 	protected void renderOrNode(PrintStream ps, OrNode node, String n_id)
 	{
-		ps.println(m_indent + n_id + " [shape=\"circle\",label=<<font color='white'><b>∨</b></font>>,width=.25,fixedsize=\"true\",fillcolor=\"red\",textcolor=\"white\"];");
+		ps.println(m_indent + n_id + OR_NODE_ATTRIBUTES);
 	}
 
 	/**
@@ -354,10 +511,22 @@ public class LineageDotRenderer implements Renderer
 	 */
 	protected void renderPartNode(PrintStream ps, PartNode current, String n_id)
 	{
-		Part d = current.getPart();
-		Object o = current.getSubject();
+		renderPart(ps, current.getPart(), current.getSubject(), GraphUtilities.isLeaf(current) || m_roots.contains(current), n_id);
+	}
+	
+	/**
+	 * Renders a node referring to a part of an object.
+	 * @param ps The print stream where the node should be printed
+	 * @param d The part
+	 * @param o The object
+	 * @param leaf_or_root Set to {@code true} if the node is a leaf or a root
+	 * of the graph, {@code false} otherwise
+	 * @param n_id The unique ID given to that node
+	 */
+	protected void renderPart(PrintStream ps, Part d, Object o, boolean leaf_or_root, String n_id)
+	{
 		String color = getPartNodeColor(d);
-		if (m_noCaptions && ((!GraphUtilities.isLeaf(current) && !m_roots.contains(current)) || m_nestingLevel > 0))
+		if (m_noCaptions && (!leaf_or_root || m_nestingLevel > 0))
 		{
 			ps.println(m_indent + n_id + " [height=0.25,shape=\"circle\",label=\"\",fillcolor=\"" + color + "\"];");
 		}
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.uqac.lif.petitpoucet.ComposedPart;
+import ca.uqac.lif.petitpoucet.HashUtilities;
 import ca.uqac.lif.petitpoucet.Part;
 
 /**
@@ -48,6 +49,11 @@ public class NthInput implements Part
 	 */
 	private final int m_index;
 	
+	/**
+	 * The seed of the hash codes of NthInput parts.
+	 */
+	private static final int s_seed = HashUtilities.seed(NthInput.class);
+	
 	/**
 	 * Creates a new designator instance.
 	 * @param index The index of the function's input
@@ -94,7 +100,7 @@ public class NthInput implements Part
 	@Override
 	public int hashCode()
 	{
-		return m_index;
+		return HashUtilities.spread(s_seed, m_index);
 	}
 	
 	@Override
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.uqac.lif.petitpoucet.ComposedPart;
+import ca.uqac.lif.petitpoucet.HashUtilities;
 import ca.uqac.lif.petitpoucet.Part;
 
 /**
@@ -42,6 +43,11 @@ public class NthOutput implements Part
 	 * The index of the function's input.
 	 */
 	private final int m_index;
+	
+	/**
+	 * The seed of the hash codes of NthOutput parts.
+	 */
+	private static final int s_seed = HashUtilities.seed(NthOutput.class);
 
 	/**
 	 * Creates a new designator instance.
@@ -89,7 +95,7 @@ public class NthOutput implements Part
 	@Override
 	public int hashCode()
 	{
-		return m_index;
+		return HashUtilities.spread(s_seed, m_index);
 	}
 
 	@Override
@@ -19,6 +19,7 @@ package ca.uqac.lif.petitpoucet.function;
 
 import ca.uqac.lif.petitpoucet.NodeFactory;
 import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.PartInterner;
 
 /**
  * A {@link NodeFactory} that produces instances of {@link RelationNode} when
@@ -29,12 +30,17 @@ import ca.uqac.lif.petitpoucet.Part;
 public class RelationNodeFactory extends NodeFactory
 {
 	/**
-	 * A single instance of the node factory.
+	 * A single instance of the node factory. Since it is shared by all its
+	 * callers, it can be used by many threads at once.
 	 */
-	protected static final RelationNodeFactory s_factory = new RelationNodeFactory();
+	protected static final RelationNodeFactory s_factory = new RelationNodeFactory(true);
 	
 	/**
-	 * Gets a default instance of the node factory.
+	 * Gets a default instance of the node factory. This instance is shared by
+	 * all its callers and remembers every node it creates until it is
+	 * {@linkplain #close() closed}; queries whose graphs need not be merged
+	 * should rather use a new factory, as
+	 * {@link ExplanationQueryable#getExplanation(Part)} does.
 	 * @return The factory
 	 */
 	public static RelationNodeFactory getFactory()
@@ -42,17 +48,68 @@ public class RelationNodeFactory extends NodeFactory
 		return s_factory;
 	}
 	
+	/**
+	 * Gets a new empty instance of the node factory that can be used by many
+	 * threads at once.
+	 * @return The factory
+	 */
+	public static RelationNodeFactory getConcurrentFactory()
+	{
+		return new RelationNodeFactory(true);
+	}
+	
+	/**
+	 * Creates a new node factory.
+	 */
+	public RelationNodeFactory()
+	{
+		super();
+	}
+	
+	/**
+	 * Creates a new node factory.
+	 * @param concurrent Set to <tt>true</tt> to create a factory that can be
+	 * used by many threads at once
+	 */
+	public RelationNodeFactory(boolean concurrent)
+	{
+		super(concurrent);
+	}
+	
+	/**
+	 * Creates a new node factory that shares the canonical parts of another
+	 * factory.
+	 * @param interner The interner giving the canonical instance of each part
+	 */
+	protected RelationNodeFactory(/*@ non_null @*/ PartInterner interner)
+	{
+		super(interner);
+	}
+	
+	@Override
+	public RelationNodeFactory setCapacity(int capacity)
+	{
+		super.setCapacity(capacity);
+		return this;
+	}
+	
+	@Override
+	public RelationNodeFactory setWeakChildren(boolean b)
+	{
+		super.setWeakChildren(b);
+		return this;
+	}
+	
 	@Override
 	public RelationNodeFactory getFactory(Part p, Object subject)
 	{
-		ObjectPart op = new ObjectPart(p, subject);
-		if (m_factories.containsKey(op))
-		{
-			return (RelationNodeFactory) m_factories.get(op);
-		}
-		RelationNodeFactory new_factory = new RelationNodeFactory();
-		m_factories.put(op, new_factory);
-		return new_factory;
+		return (RelationNodeFactory) super.getFactory(p, subject);
+	}
+	
+	@Override
+	protected RelationNodeFactory newFactory()
+	{
+		return new RelationNodeFactory(m_interner);
 	}
 	
 	@Override
@@ -42,6 +42,16 @@ public class ReturnValue implements Part
 		m_methodName = method_name;
 	}
 	
+	/**
+	 * Gets the name of the method whose return value is designated by this
+	 * part.
+	 * @return The method name
+	 */
+	/*@ pure non_null @*/ public String getMethodName()
+	{
+		return m_methodName;
+	}
+	
 	@Override
 	public boolean appliesTo(Object o)
 	{
@@ -17,6 +17,8 @@
  */
 package ca.uqac.lif.petitpoucet.function.strings;
 
+import ca.uqac.lif.petitpoucet.HashUtilities;
+
 /**
  * A position in the string, expressed in terms of lines and columns.
  * Contrary to a linear index, a Position displays lines and
@@ -45,6 +47,16 @@ public class Position implements Comparable<Position>
 	 * The column corresponding to the position.
 	 */
 	private final int m_column;
+	
+	/**
+	 * The hash code of the position, computed when it is created.
+	 */
+	private final int m_hash;
+	
+	/**
+	 * The seed of the hash codes of positions.
+	 */
+	private static final int s_seed = HashUtilities.seed(Position.class);
 
 	/**
 	 * Creates a new position.
@@ -56,6 +68,7 @@ public class Position implements Comparable<Position>
 		super();
 		m_line = line;
 		m_column = column;
+		m_hash = HashUtilities.hash(s_seed, line, column);
 	}
 
 	/**
@@ -85,7 +98,7 @@ public class Position implements Comparable<Position>
 	@Override
 	public int hashCode()
 	{
-		return m_line * m_column;
+		return m_hash;
 	}
 
 	@Override
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.uqac.lif.petitpoucet.ComposedPart;
+import ca.uqac.lif.petitpoucet.HashUtilities;
 import ca.uqac.lif.petitpoucet.Part;
 import ca.uqac.lif.petitpoucet.function.NthInput;
 
@@ -47,6 +48,11 @@ public class Range implements Part, Comparable<Range>
 	 */
 	private final int m_endIndex;
 	
+	/**
+	 * The seed of the hash codes of ranges.
+	 */
+	private static final int s_seed = HashUtilities.seed(Range.class);
+	
 	/**
 	 * Creates a new range.
 	 * @param start The start position of the range
@@ -158,7 +164,8 @@ public class Range implements Part, Comparable<Range>
 	@Override
 	public int hashCode()
 	{
-		return m_startIndex + m_endIndex;
+		// Short ranges of a string have distinct and nearly sequential codes
+		return HashUtilities.spread(s_seed, 31 * m_startIndex + m_endIndex);
 	}
 	
 	@Override
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.uqac.lif.petitpoucet.ComposedPart;
+import ca.uqac.lif.petitpoucet.HashUtilities;
 import ca.uqac.lif.petitpoucet.Part;
 import ca.uqac.lif.petitpoucet.function.NthInput;
 import ca.uqac.lif.petitpoucet.function.NthOutput;
@@ -35,6 +36,11 @@ public class NthElement implements Part
 	 */
 	private final int m_index;
 	
+	/**
+	 * The seed of the hash codes of NthElement parts.
+	 */
+	private static final int s_seed = HashUtilities.seed(NthElement.class);
+	
 	/**
 	 * Creates a new designator instance.
 	 * @param index The index of the element inside the vector
@@ -81,7 +87,7 @@ public class NthElement implements Part
 	@Override
 	public int hashCode()
 	{
-		return m_index;
+		return HashUtilities.spread(s_seed, m_index);
 	}
 	
 	@Override
@@ -26,7 +26,10 @@ import ca.uqac.lif.petitpoucet.function.InvalidNumberOfArgumentsException;
 
 /**
  * An abstract function that evaluates another 1:1 function on each element of
- * a list, and calculates an aggregation over the output values.
+ * a list, and calculates an aggregation over the output values. As for
+ * {@link ParameterizedVectorFunction}, a condition made of a graph of other
+ * functions is {@linkplain ca.uqac.lif.dag.NestedNode#freeze() frozen} the
+ * first time it is evaluated.
  * @author Sylvain Hallé
  *
  */
@@ -56,7 +59,7 @@ public abstract class ObjectQuantifier extends AtomicFunction
 		for (int i = 0; i < list.size(); i++)
 		{
 			Object o = list.get(i);
-			Function f_o = m_condition.duplicate(false);
+			Function f_o = ParameterizedVectorFunction.duplicateFrozen(m_condition, false);
 			conditions[i] = f_o;
 			values[i] = f_o.evaluate(o)[0];
 		}
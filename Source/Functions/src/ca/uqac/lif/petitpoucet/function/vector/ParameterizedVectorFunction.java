@@ -31,6 +31,10 @@ import ca.uqac.lif.petitpoucet.function.RelationNodeFactory;
  * A function that applies another function repeatedly on elements of an input
  * vector. The two notable descendants of this class are {@link VectorApply}
  * and {@link Window}.
+ * <p>
+ * If the function to apply is made of a graph of other functions, such as a
+ * {@link ca.uqac.lif.petitpoucet.function.Circuit Circuit}, it is
+ * {@linkplain NestedNode#freeze() frozen} the first time it is applied.
  * 
  * @author Sylvain Hallé
  */
@@ -54,6 +58,42 @@ public abstract class ParameterizedVectorFunction extends VectorOutputFunction
 		m_lastInstances = new ArrayList<>();
 	}
 
+	/**
+	 * Creates a new instance of the function to apply, with its state.
+	 * @return The new instance
+	 */
+	/*@ non_null @*/ protected Function newInstance()
+	{
+		return duplicateFrozen(m_function, true);
+	}
+	
+	/**
+	 * Duplicates a function that is to be duplicated many times. A function
+	 * made of a graph of other functions, such as a
+	 * {@link ca.uqac.lif.petitpoucet.function.Circuit Circuit}, is first
+	 * {@linkplain NestedNode#freeze() frozen}, so that its duplicates are
+	 * created from a template instead of crawling its internal graph each
+	 * time.
+	 * <p>
+	 * Note that <tt>f</tt> itself is frozen, and remains so after the call:
+	 * {@link NestedNode#isFrozen()} returns <tt>true</tt>, and the function
+	 * keeps a reference to its template. Freezing does not modify its internal
+	 * nodes, their wiring or their order, and connecting its internal nodes
+	 * differently afterwards is detected on the next duplication.
+	 * @param f The function
+	 * @param with_state Set to <tt>true</tt> to duplicate the state of the
+	 * function
+	 * @return The duplicate
+	 */
+	/*@ non_null @*/ protected static Function duplicateFrozen(/*@ non_null @*/ Function f, boolean with_state)
+	{
+		if (f instanceof NestedNode && !((NestedNode) f).isFrozen())
+		{
+			((NestedNode) f).freeze();
+		}
+		return f.duplicate(with_state);
+	}
+	
 	/**
 	 * Produces a {@link NestedNode} containing the explanation tree for the
 	 * evaluation of a given instance of the inner function.
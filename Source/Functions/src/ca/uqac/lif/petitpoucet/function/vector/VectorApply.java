@@ -61,7 +61,7 @@ public class VectorApply extends ParameterizedVectorFunction
 			{
 				ins[j] = in_lists[j].get(i);
 			}
-			Function new_f = (Function) m_function.duplicate(true);
+			Function new_f = newInstance();
 			Object[] out = new_f.evaluate(ins);
 			out_list.add(out[0]);
 			m_lastInstances.add(new_f);
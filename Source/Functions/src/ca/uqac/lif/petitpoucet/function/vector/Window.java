@@ -63,7 +63,7 @@ public class Window extends ParameterizedVectorFunction
 		for (int i = 0; i < in_lists[0].size() - m_width + 1; i++)
 		{
 			List<?> sub_list = in_lists[0].subList(i, i + m_width);
-			Function f = (Function) m_function.duplicate(true);
+			Function f = newInstance();
 			Object[] out = f.evaluate(new Object[] {sub_list});
 			m_lastInstances.add(f);
 			out_list.add(out[0]);
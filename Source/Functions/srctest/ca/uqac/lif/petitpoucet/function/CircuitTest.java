@@ -221,6 +221,8 @@ public class CircuitTest
 		c.associateOutput(0, a.getOutputPin(0));
 		c.evaluate(2, 3);
 		PartNode root = c.getExplanation(NthOutput.FIRST);
+		// The explanation does not leave its nodes in the shared factory
+		assertFalse(RelationNodeFactory.getFactory().hasNodeFor(NthOutput.FIRST, c));
 		assertEquals(1, root.getOutputLinks(0).size());
 		Pin<? extends Node> p1 = (Pin<? extends Node>) root.getOutputLinks(0).get(0);
 		NestedNode nn = (NestedNode) p1.getNode();
@@ -345,6 +347,36 @@ public class CircuitTest
 		assertFalse(inputs[2]);
 	}
 
+	@Test
+	public void testFreeze()
+	{
+		// This circuit calculates (x+y)*z
+		Circuit c = new Circuit(3, 1);
+		Addition a = new Addition(2);
+		Multiplication m = new Multiplication(2);
+		c.addNodes(a, m);
+		c.associateInput(0, a.getInputPin(0));
+		c.associateInput(1, a.getInputPin(1));
+		c.associateInput(2, m.getInputPin(1));
+		NodeConnector.connect(a, 0, m, 0);
+		c.associateOutput(0, m.getOutputPin(0));
+		assertSame(c, c.freeze());
+		assertTrue(c.isFrozen());
+		Circuit c1 = c.duplicate();
+		Circuit c2 = c1.duplicate();
+		assertTrue(c2.isFrozen());
+		assertEquals(20, ((Number) c2.evaluate(2, 3, 4)[0]).intValue());
+		assertEquals(9, ((Number) c1.evaluate(1, 2, 3)[0]).intValue());
+		assertEquals(20, ((Number) c2.evaluate(2, 3, 4)[0]).intValue());
+		Node m2 = c2.getAssociatedOutput(0).getNode();
+		assertNotSame(m, m2);
+		assertEquals(0, c2.getNestedOutput(m2, 0));
+		assertEquals(1, m2.getInputLinks(0).size());
+		c1.addNodes(new Addition(2));
+		assertFalse(c1.isFrozen());
+		assertTrue(c2.isFrozen());
+	}
+
 	@Test
 	public void testSetValue1()
 	{
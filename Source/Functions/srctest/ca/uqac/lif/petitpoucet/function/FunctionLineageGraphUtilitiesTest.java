@@ -0,0 +1,73 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2021 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet.function;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.AndNode;
+import ca.uqac.lif.petitpoucet.NodeFactory;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.PartNode;
+
+/**
+ * Unit tests for {@link FunctionLineageGraphUtilities}.
+ */
+public class FunctionLineageGraphUtilitiesTest
+{
+	@Test
+	public void testSimplify()
+	{
+		// The constant leaf is deleted, which leaves the "and" node unary
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode root = factory.getPartNode(NthOutput.FIRST, "f");
+		AndNode and = factory.getAndNode();
+		root.addChild(and);
+		and.addChild(factory.getPartNode(NthInput.FIRST, "f"));
+		and.addChild(factory.getPartNode(Part.all, "f"));
+		Node new_root = FunctionLineageGraphUtilities.simplify(root);
+		assertEquals(NthOutput.FIRST, ((PartNode) new_root).getPart());
+		assertEquals(1, new_root.getOutputLinks(0).size());
+		PartNode leaf = (PartNode) new_root.getOutputLinks(0).get(0).getNode();
+		assertEquals(NthInput.FIRST, leaf.getPart());
+		// The original graph is not modified
+		assertEquals(2, and.getOutputLinks(0).size());
+	}
+	
+	@Test
+	public void testSimplifyList()
+	{
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode root1 = factory.getPartNode(NthOutput.FIRST, "f");
+		PartNode root2 = factory.getPartNode(NthOutput.SECOND, "f");
+		PartNode in = factory.getPartNode(NthInput.FIRST, "f");
+		root1.addChild(in);
+		root1.addChild(factory.getPartNode(Part.all, "f"));
+		root2.addChild(in);
+		List<Node> roots = FunctionLineageGraphUtilities.simplify(Arrays.asList(root1, root2));
+		assertEquals(1, roots.get(0).getOutputLinks(0).size());
+		// The leaf shared by the two graphs is copied once
+		assertSame(roots.get(0).getOutputLinks(0).get(0).getNode(), roots.get(1).getOutputLinks(0).get(0).getNode());
+		assertEquals(2, root1.getOutputLinks(0).size());
+	}
+}
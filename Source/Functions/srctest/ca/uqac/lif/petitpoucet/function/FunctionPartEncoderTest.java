@@ -0,0 +1,72 @@
+/*
+    Petit Poucet, a library for tracking links between objects.
+    Copyright (C) 2016-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.petitpoucet.function;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.dag.Node;
+import ca.uqac.lif.petitpoucet.ComposedPart;
+import ca.uqac.lif.petitpoucet.GraphReader;
+import ca.uqac.lif.petitpoucet.GraphWriter;
+import ca.uqac.lif.petitpoucet.NodeFactory;
+import ca.uqac.lif.petitpoucet.Part;
+import ca.uqac.lif.petitpoucet.PartNode;
+import ca.uqac.lif.petitpoucet.function.reflect.Field;
+import ca.uqac.lif.petitpoucet.function.reflect.ReturnValue;
+import ca.uqac.lif.petitpoucet.function.strings.Position;
+import ca.uqac.lif.petitpoucet.function.strings.PositionRange;
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.petitpoucet.function.vector.NthElement;
+import ca.uqac.lif.petitpoucet.function.vector.Size;
+
+/**
+ * Unit tests for {@link FunctionPartEncoder}.
+ */
+public class FunctionPartEncoderTest
+{
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		List<Part> parts = Arrays.asList(new NthInput(2), new NthOutput(0), new NthElement(300), Size.instance, new Range(3, 8), new PositionRange(new Position(1, 2), Position.NOWHERE), new Field("foo"), new ReturnValue("bar"), ComposedPart.compose(new NthElement(1), NthOutput.FIRST));
+		NodeFactory factory = NodeFactory.getFactory();
+		PartNode root = factory.getPartNode(Part.all, "out");
+		for (Part p : parts)
+		{
+			root.addChild(factory.getPartNode(p, "in"));
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new GraphWriter().addEncoder(FunctionPartEncoder.instance).write(root, baos);
+		Node copy = new GraphReader().addEncoder(FunctionPartEncoder.instance).read(new ByteArrayInputStream(baos.toByteArray())).get(0);
+		assertEquals(parts.size(), copy.getOutputLinks(0).size());
+		for (int i = 0; i < parts.size(); i++)
+		{
+			PartNode pn = (PartNode) copy.getOutputLinks(0).get(i).getNode();
+			assertEquals(parts.get(i), pn.getPart());
+			assertEquals(parts.get(i).getClass(), pn.getPart().getClass());
+			assertEquals("in", pn.getSubject());
+		}
+	}
+}
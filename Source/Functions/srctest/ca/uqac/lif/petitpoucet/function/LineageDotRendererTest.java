@@ -17,6 +17,7 @@
  */
 package ca.uqac.lif.petitpoucet.function;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.ByteArrayOutputStream;
@@ -24,7 +25,10 @@ import java.io.PrintStream;
 
 import org.junit.Test;
 
+import ca.uqac.lif.dag.Node;
 import ca.uqac.lif.dag.NodeConnector;
+import ca.uqac.lif.petitpoucet.FrozenDag;
+import ca.uqac.lif.petitpoucet.GraphUtilities;
 import ca.uqac.lif.petitpoucet.PartNode;
 import ca.uqac.lif.petitpoucet.function.number.Addition;
 import ca.uqac.lif.petitpoucet.function.number.Multiplication;
@@ -53,4 +57,25 @@ public class LineageDotRendererTest
 		renderer.render(ps);
 		assertNotNull(baos.toString());
 	}
+	
+	@Test
+	public void testRenderFrozen()
+	{
+		Circuit c = new Circuit(3, 1, "(x+y)×z");
+		Addition a = new Addition(2);
+		Multiplication m = new Multiplication(2);
+		c.addNodes(a, m);
+		c.associateInput(0, a.getInputPin(0));
+		c.associateInput(1, a.getInputPin(1));
+		c.associateInput(2, m.getInputPin(1));
+		NodeConnector.connect(a, 0, m, 0);
+		c.associateOutput(0, m.getOutputPin(0));
+		c.evaluate(-2, 2, 0);
+		Node root = GraphUtilities.flatten(c.getExplanation(NthOutput.FIRST));
+		ByteArrayOutputStream baos1 = new ByteArrayOutputStream();
+		new LineageDotRenderer(root).render(new PrintStream(baos1));
+		ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
+		new LineageDotRenderer(FrozenDag.freeze(root)).render(new PrintStream(baos2));
+		assertEquals(baos1.toString(), baos2.toString());
+	}
 }